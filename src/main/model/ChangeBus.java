@@ -0,0 +1,113 @@
+package model;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Tells the listeners subscribed to it about the changes to the folders and notes.
+//
+// A change is posted while the lock guarding it is held, so changes are queued in the
+// order they were made. They are delivered once the thread that made them has released
+// every lock of the folders it held, however deeply they were nested, on that thread;
+// if another thread is delivering changes already, it delivers these too, so listeners
+// always get them in order and never while the thread delivering holds a lock. Listeners may read the folders but must
+// not change them. An edit of a note or folder posted while the previous change queued
+// is an edit of the same one is dropped, as the listeners only need to know it changed.
+public class ChangeBus {
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Deque<ChangeEvent> queue = new ArrayDeque<>();
+    private boolean delivering = false;
+    // how many locks of the folders each thread holds, counted as they are taken and released
+    private final ThreadLocal<int[]> held = ThreadLocal.withInitial(() -> new int[1]);
+
+    // Is told about the changes posted on the bus.
+    public interface Listener {
+        // EFFECTS: called with each change, in the order they were made
+        void changed(ChangeEvent event);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: tells listener about every change delivered from now on
+    public void subscribe(Listener listener) {
+        this.listeners.add(listener);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: stops telling listener about changes
+    public void unsubscribe(Listener listener) {
+        this.listeners.remove(listener);
+    }
+
+    // REQUIRES: the lock guarding the change is held
+    // MODIFIES: this
+    // EFFECTS: queues the change to be delivered, unless it is an edit of the note or folder
+    //          whose edit was queued last and is still waiting to be delivered
+    synchronized void post(ChangeEvent event) {
+        ChangeEvent last = this.queue.peekLast();
+        boolean edit = event.getType() == ChangeEvent.Type.NOTE_EDITED
+                || event.getType() == ChangeEvent.Type.FOLDER_EDITED;
+        if (edit && last != null && last.getType() == event.getType() && last.getFolder() == event.getFolder()
+                && last.getNote() == event.getNote()) {
+            return;
+        }
+        this.queue.add(event);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: counts a lock of the folders taken by this thread, holding back the delivery of
+    //          changes until it is released
+    void hold() {
+        this.held.get()[0] += 1;
+    }
+
+    // REQUIRES: hold was called on this thread for the lock
+    // MODIFIES: this
+    // EFFECTS: counts a lock of the folders released by this thread, delivering the queued
+    //          changes once it holds none
+    void release() {
+        int[] count = this.held.get();
+        count[0] -= 1;
+        if (count[0] == 0) {
+            this.deliver();
+        }
+    }
+
+    // REQUIRES: the lock guarding the changes was released
+    // EFFECTS: tells the listeners about the queued changes, in order, unless another thread is
+    //          doing so already
+    void deliver() {
+        synchronized (this) {
+            if (this.delivering || this.queue.isEmpty()) {
+                return;
+            }
+            this.delivering = true;
+        }
+        boolean done = false;
+        try {
+            for (ChangeEvent event = this.next(); event != null; event = this.next()) {
+                for (Listener listener : this.listeners) {
+                    listener.changed(event);
+                }
+            }
+            done = true;
+        } finally {
+            if (!done) {
+                synchronized (this) {
+                    this.delivering = false;
+                }
+            }
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: returns the next change to deliver, or null once there are none, in which case
+    //          this thread is done delivering
+    private synchronized ChangeEvent next() {
+        ChangeEvent event = this.queue.poll();
+        if (event == null) {
+            this.delivering = false;
+        }
+        return event;
+    }
+}
@@ -0,0 +1,70 @@
+package model;
+
+// Represents a change to the folders or the notes of a folder, as published on a ChangeBus.
+//
+// The index is the position of the folder among the folders, or of the note in its
+// folder, when the change was made; a removed folder or note is at the position it
+// was removed from.
+public final class ChangeEvent {
+    private final Type type;
+    private final Folder folder;
+    private final Note note;
+    private final int index;
+
+    // The kinds of changes.
+    public enum Type {
+        FOLDER_ADDED,
+        FOLDER_REMOVED,
+        // the whole list of folders was replaced
+        FOLDERS_REPLACED,
+        // the folder was locked or unlocked, or its password changed
+        FOLDER_EDITED,
+        NOTE_ADDED,
+        NOTE_REMOVED,
+        NOTE_EDITED,
+        // the notes of the folder were sorted or replaced
+        NOTES_REPLACED
+    }
+
+    // EFFECTS: creates a change of the given type to the note of the folder at index;
+    //          note is null for a change to the folder itself and index is -1 for a change
+    //          to a whole list or an edit of a folder
+    ChangeEvent(Type type, Folder folder, Note note, int index) {
+        this.type = type;
+        this.folder = folder;
+        this.note = note;
+        this.index = index;
+    }
+
+    // EFFECTS: returns true if the change is to the folders themselves rather than to the notes
+    //          of a folder; false otherwise
+    public boolean isFolderChange() {
+        return this.type == Type.FOLDER_ADDED || this.type == Type.FOLDER_REMOVED
+                || this.type == Type.FOLDERS_REPLACED || this.type == Type.FOLDER_EDITED;
+    }
+
+    // EFFECTS: returns a description of the change, such as "NOTE_ADDED 3"
+    @Override
+    public String toString() {
+        return this.type + " " + this.index;
+    }
+
+    /**
+     * GETTERS AND SETTERS
+     */
+    public Type getType() {
+        return type;
+    }
+
+    public Folder getFolder() {
+        return folder;
+    }
+
+    public Note getNote() {
+        return note;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+}
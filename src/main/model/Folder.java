@@ -3,18 +3,79 @@ package model;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import persistence.Writable;
+import utils.BulkLock;
+import utils.InvertedIndex;
 import utils.Lockable;
+import utils.ProgressListener;
 import utils.SortOption;
 import utils.SortableSet;
 
-import java.util.Comparator;
-import java.util.Optional;
+import javax.crypto.SecretKey;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
 
 // Represents a folder to contain notes.
+//
+// Besides the notes in their own order, the folder keeps them ordered by the time
+// they were added and by the time they were last modified. Notes move within these
+// orders as their timestamps change, so either timestamp order is always ready as a
+// view, and sorting the notes by a timestamp copies that order instead of comparing
+// notes. Sorting leaves the notes' own order alone, which only changes when they are
+// explicitly reordered, so looking at a sort order never makes a save rewrite it.
+//
+// The statistics of the notes are counted the first time they are asked for, and are
+// then kept up to date as notes join, leave or are edited, without rescanning any text.
+//
+// The folder and its notes are guarded by a read/write lock. Every change to them,
+// including an edit of a note, holds the write lock for its whole length, while saving
+// and searching hold the read lock, so any number of threads can read the folder at
+// once and none of them sees a change half done. A search that finds the index behind
+// takes the write lock only to bring it up to date, then searches under the read lock.
+// Changes are stamped with when they were made, so a save that read the folder while
+// it was being edited only marks clean what it saw.
+//
+// The state a snapshot of the folders sees of the folder is kept in its history, which
+// shares the notes with the folder until they change.
+//
+// Once the folder is added to the folders, the notes added to it, removed from it and
+// edited are posted on their change bus.
+//
+// While the password of the folder is known, the notes without a password of their own
+// are saved encrypted with its key. Unlocking the folder decrypts those loaded encrypted,
+// and changing its password marks every note changed, so the next save writes them all
+// under the new key.
 public class Folder extends Lockable implements Writable {
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final History<Snapshot> history = new History<>();
+    // the bus of the folders the folder is in, if any
+    private volatile ChangeBus bus;
+    // assigned when the folder is made, so every thread sees the same one
+    private String id = UUID.randomUUID().toString();
     private final String name;
     private SortableSet<Note> notes;
+    private final InvertedIndex<Note> index = new InvertedIndex<>();
+    // notes added or edited since the index was last brought up to date
+    private final Set<Note> unindexed = new LinkedHashSet<>();
     private SortOption sortOption = SortOption.NEWEST_ADDED_FIRST;
+    // notes ordered by timestamp, ties broken by the order in which they joined the folder
+    private final Map<Note, Long> sequence = new HashMap<>();
+    private long nextSequence = 0;
+    private final TreeSet<Note> byAdded = new TreeSet<>(
+            Comparator.comparing(Note::getDateTimeAdded).thenComparing(this.sequence::get));
+    private final TreeSet<Note> byModified = new TreeSet<>(
+            Comparator.comparing(Note::getDateTimeModified).thenComparing(this.sequence::get));
+    // changes since the folder was last saved, each with the stamp of its latest change;
+    // a stamp of 0 means there is no such change
+    private long dirty = stamp();
+    private long reordered = 0;
+    private final Map<Note, Long> changedNotes = new LinkedHashMap<>();
+    private final Map<String, Long> removedNoteIds = new LinkedHashMap<>();
+    // the statistics of all notes, or null until they are first asked for
+    private Statistics statistics;
+    // the key of the current password, while it is known
+    private SecretKey key;
 
     // EFFECTS: creates a new folder with given name
     public Folder(String name) {
@@ -23,10 +84,21 @@ public class Folder extends Lockable implements Writable {
     }
 
     // Adds a note to the folder
-    // MODIFIES: this
-    // EFFECTS: adds a note to the folder
+    // MODIFIES: this, note
+    // EFFECTS: adds a note to the folder and indexes it for search
     public void addNote(Note note) {
-        this.notes.add(note);
+        this.update(() -> {
+            this.history.change(this::capture);
+            if (this.notes.add(note)) {
+                note.attachTo(this);
+                this.sequence.put(note, this.nextSequence++);
+                this.order(note);
+                this.indexNote(note);
+                this.changedNotes.put(note, stamp());
+                this.count(note);
+                this.post(ChangeEvent.Type.NOTE_ADDED, note, this.notes.size() - 1);
+            }
+        });
     }
 
     // Removes the note from this folder
@@ -35,13 +107,366 @@ public class Folder extends Lockable implements Writable {
     //          returning true if the note is present,
     //          false otherwise;
     public boolean removeNote(Note note) {
-        return this.notes.remove(note);
+        return this.write(() -> {
+            this.history.change(this::capture);
+            int index = this.bus == null ? -1 : this.notes.indexOf(note);
+            if (!this.notes.remove(note)) {
+                return false;
+            }
+            this.post(ChangeEvent.Type.NOTE_REMOVED, note, index);
+            this.uncount(note);
+            this.unorder(note);
+            this.sequence.remove(note);
+            this.index.remove(note);
+            this.unindexed.remove(note);
+            this.changedNotes.remove(note);
+            this.removedNoteIds.put(note.getId(), stamp());
+            return true;
+        });
+    }
+
+    // MODIFIES: this
+    // EFFECTS: locks every note of the folder with the password, hashing it on all
+    //          processors and reporting progress to listener
+    public void lockNotes(String password, ProgressListener listener) {
+        BulkLock.lockAll(this.copyNotes(), password, listener);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: unlocks every locked note of the folder whose password is the given one,
+    //          checking each distinct password hash once and reporting progress to listener;
+    //          returns how many notes were unlocked
+    public int unlockNotes(String password, ProgressListener listener) {
+        return BulkLock.unlockAll(this.copyNotes(), password, listener);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: changes the password of every note of the folder whose password is currentPassword
+    //          to newPassword, locking it, and reports progress to listener;
+    //          returns how many notes had their password changed
+    public int updateNotesPassword(String currentPassword, String newPassword, ProgressListener listener) {
+        return BulkLock.updatePasswordAll(this.copyNotes(), currentPassword, newPassword, listener);
+    }
+
+    // EFFECTS: returns a copy of the notes in order, which other threads cannot change
+    private List<Note> copyNotes() {
+        return this.read(() -> new ArrayList<>(this.notes.getItems()));
+    }
+
+    // EFFECTS: returns the result of the work, done while holding the read lock of the folder,
+    //          so that no other thread changes the folder or its notes meanwhile;
+    //          throws what the work throws
+    public <T, X extends Exception> T read(Guarded<T, X> work) throws X {
+        ChangeBus bus = this.hold();
+        this.lock.readLock().lock();
+        try {
+            return work.run();
+        } finally {
+            this.lock.readLock().unlock();
+            release(bus);
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: returns the result of the work, done while holding the write lock of the folder,
+    //          so that no other thread reads or changes the folder or its notes meanwhile;
+    //          throws what the work throws
+    <T, X extends Exception> T write(Guarded<T, X> work) throws X {
+        ChangeBus bus = this.hold();
+        this.lock.writeLock().lock();
+        try {
+            return work.run();
+        } finally {
+            if (this.lock.getWriteHoldCount() == 1) {
+                this.history.changed();
+            }
+            this.lock.writeLock().unlock();
+            release(bus);
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: tells the bus the folder posts on, if any, that this thread is taking a lock of
+    //          the folder, and returns it
+    private ChangeBus hold() {
+        ChangeBus bus = this.bus;
+        if (bus != null) {
+            bus.hold();
+        }
+        return bus;
+    }
+
+    // EFFECTS: tells bus, if not null, that this thread released the lock it was told of
+    private static void release(ChangeBus bus) {
+        if (bus != null) {
+            bus.release();
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: posts the changes to the folder on the bus from now on; on none if bus is null
+    void publishTo(ChangeBus bus) {
+        this.bus = bus;
+    }
+
+    // REQUIRES: the write lock of the folder is held
+    // EFFECTS: posts a change of the given type to the note at index on the bus, if there is one
+    private void post(ChangeEvent.Type type, Note note, int index) {
+        ChangeBus bus = this.bus;
+        if (bus != null) {
+            bus.post(new ChangeEvent(type, this, note, index));
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: makes the change while holding the write lock of the folder
+    @Override
+    protected void update(Runnable change) {
+        this.write(() -> {
+            change.run();
+            return null;
+        });
+    }
+
+    // EFFECTS: returns a stamp for a change made now, later than any stamp before it
+    static long stamp() {
+        return History.stamp();
+    }
+
+    // EFFECTS: returns the stamp of the latest change made so far; the changes made up to now
+    //          are those with a stamp at most this
+    static long lastStamp() {
+        return History.lastStamp();
+    }
+
+    // EFFECTS: returns the state of the folder when the snapshot with the given stamp was taken
+    Snapshot snapshotAt(long stamp) {
+        return new Snapshot(this.read(() -> this.history.at(stamp, this::capture)), stamp);
+    }
+
+    // EFFECTS: returns the current state of the folder, sharing its notes until they change
+    private Snapshot capture() {
+        return new Snapshot(this.getId(), this.name, this.isLocked(), this.getPasswordHash(), this.notes.snapshot());
+    }
+
+    // MODIFIES: this
+    // EFFECTS: records that the note changed since the folder was last saved,
+    //          if the note is in this folder
+    void noteChanged(Note note) {
+        this.update(() -> {
+            if (this.notes.contains(note)) {
+                this.changedNotes.put(note, stamp());
+                if (this.bus != null) {
+                    this.post(ChangeEvent.Type.NOTE_EDITED, note, this.notes.indexOf(note));
+                }
+            }
+        });
+    }
+
+    // MODIFIES: this
+    // EFFECTS: marks the folder's own fields as changed since it was last saved
+    @Override
+    protected void changed() {
+        this.update(() -> {
+            this.dirty = stamp();
+            this.post(ChangeEvent.Type.FOLDER_EDITED, null, -1);
+        });
+    }
+
+    // EFFECTS: derives the key of the password off the thread that applies it
+    @Override
+    protected void prepareKey(String password, String passwordHash) {
+        sessionKey(password, passwordHash);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: decrypts the texts of the notes still encrypted under the password and unlocks them
+    @Override
+    protected void passwordVerified(String password) {
+        SecretKey key = sessionKey(password, this.getPasswordHash());
+        for (Note note : this.notes) {
+            note.unseal(key);
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: keeps the key of the password to encrypt the notes with, marking them all changed
+    //          if it is new, so the notes saved before it was known are saved encrypted
+    @Override
+    protected void passwordSet(String password) {
+        SecretKey key = sessionKey(password, this.getPasswordHash());
+        if (!key.equals(this.key)) {
+            this.key = key;
+            this.markAllChanged();
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: marks the folder and all of its notes as changed since they were last saved
+    void markAllChanged() {
+        this.update(() -> {
+            long stamp = stamp();
+            this.dirty = stamp;
+            this.reordered = stamp;
+            for (Note note : this.notes) {
+                this.changedNotes.put(note, stamp);
+            }
+        });
+    }
+
+    // EFFECTS: returns true if the folder or any of its notes changed since
+    //          they were last saved; false otherwise
+    public boolean hasChanges() {
+        return this.read(() -> this.dirty != 0 || this.reordered != 0 || !this.changedNotes.isEmpty()
+                || !this.removedNoteIds.isEmpty());
+    }
+
+    // EFFECTS: returns true if the folder's own fields changed since it was last saved
+    public boolean isDirty() {
+        return this.read(() -> this.dirty != 0);
+    }
+
+    // EFFECTS: returns true if the order of the notes changed since the folder was last saved
+    public boolean isReordered() {
+        return this.read(() -> this.reordered != 0);
+    }
+
+    // EFFECTS: returns the notes added or changed since the folder was last saved
+    public Set<Note> getChangedNotes() {
+        return this.read(() -> new LinkedHashSet<>(this.changedNotes.keySet()));
+    }
+
+    // EFFECTS: returns the ids of the notes removed since the folder was last saved
+    public Set<String> getRemovedNoteIds() {
+        return this.read(() -> new LinkedHashSet<>(this.removedNoteIds.keySet()));
+    }
+
+    // MODIFIES: this
+    // EFFECTS: marks the folder and its notes as saved
+    public void markClean() {
+        this.markClean(Long.MAX_VALUE);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: marks the folder and its notes as saved as far as the changes with a stamp
+    //          at most savePoint go; later changes are still to be saved
+    public void markClean(long savePoint) {
+        this.update(() -> {
+            Iterator<Map.Entry<Note, Long>> changes = this.changedNotes.entrySet().iterator();
+            while (changes.hasNext()) {
+                Map.Entry<Note, Long> change = changes.next();
+                if (change.getValue() <= savePoint) {
+                    change.getKey().markClean();
+                    changes.remove();
+                }
+            }
+            this.removedNoteIds.values().removeIf(stamp -> stamp <= savePoint);
+            this.dirty = this.dirty <= savePoint ? 0 : this.dirty;
+            this.reordered = this.reordered <= savePoint ? 0 : this.reordered;
+        });
+    }
+
+    // MODIFIES: this
+    // EFFECTS: schedules the note's title and text to be re-indexed before the next
+    //          search if the note is in this folder
+    void indexNote(Note note) {
+        this.update(() -> {
+            if (this.notes.contains(note)) {
+                this.index.remove(note);
+                this.unindexed.add(note);
+            }
+        });
+    }
+
+    // REQUIRES: removed is made of whole words of the text the note was indexed with
+    // MODIFIES: this
+    // EFFECTS: re-indexes the note after the words removed in its text were replaced by those
+    //          added, if it is indexed in this folder; a note waiting to be indexed is left to be
+    //          indexed in full
+    void indexNoteEdit(Note note, String removed, String added) {
+        this.update(() -> {
+            if (this.index.contains(note)) {
+                this.index.update(note, removed, added);
+            }
+        });
+    }
+
+    // MODIFIES: this
+    // EFFECTS: indexes the notes added or edited since the index was last brought up to date
+    //          until the deadline, given in System.nanoTime() units, passes; returns true if
+    //          the index is up to date, false if notes are left to index
+    private boolean updateIndex(long deadline) {
+        Iterator<Note> pending = this.unindexed.iterator();
+        while (pending.hasNext()) {
+            if (System.nanoTime() - deadline > 0) {
+                return false;
+            }
+            Note note = pending.next();
+            this.index.put(note, note.getTitle(), note.readText());
+            pending.remove();
+        }
+        return true;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: returns what reading the search index of the folder gives, bringing the index
+    //          up to date first as far as the deadline, given in System.nanoTime() units,
+    //          allows; reading is also told whether the index is up to date, as the notes
+    //          left to index are missing from it; the folder does not change while the index
+    //          is read
+    <T> T readIndex(long deadline, BiFunction<InvertedIndex<Note>, Boolean, T> reading) {
+        this.lock.readLock().lock();
+        try {
+            // an index that is up to date is read under the read lock alone
+            if (this.unindexed.isEmpty()) {
+                return reading.apply(this.index, true);
+            }
+        } finally {
+            this.lock.readLock().unlock();
+        }
+        if (this.tryWriteLock(deadline)) {
+            try {
+                this.updateIndex(deadline);
+                // downgrade to the read lock, so that other threads can read the index too
+                this.lock.readLock().lock();
+            } finally {
+                this.lock.writeLock().unlock();
+            }
+        } else {
+            this.lock.readLock().lock();
+        }
+        try {
+            return reading.apply(this.index, this.unindexed.isEmpty());
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    // EFFECTS: takes the write lock of the folder and returns true if it can be taken before
+    //          the deadline, given in System.nanoTime() units; returns false without it if the
+    //          deadline passes first, the thread holds the read lock or it is interrupted
+    private boolean tryWriteLock(long deadline) {
+        if (this.lock.getReadHoldCount() > 0) {
+            return false;
+        }
+        try {
+            return this.lock.writeLock().tryLock(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // EFFECTS: returns false if the note cannot contain the text;
+    //          true if it may or it has not been indexed yet
+    boolean mayContain(Note note, String text) {
+        return this.read(() -> this.index.mayContain(note, text));
     }
 
     // The total number of notes in the folder.
     // EFFECTS: returns the total number of notes in the folder
     public int totalNotes() {
-        return this.notes.size();
+        return this.read(() -> this.notes.size());
     }
 
     // Searches for text in the folder's notes
@@ -49,7 +474,27 @@ public class Folder extends Lockable implements Writable {
     //          text is found in a note and the note is unlocked;
     //          returns an empty instance of Optional otherwise
     public Optional<Note> search(String text) {
-        for (Note note : this.getNotes()) {
+        return this.readIndex(System.nanoTime() + Long.MAX_VALUE, (index, upToDate) -> this.searchIndex(text));
+    }
+
+    // REQUIRES: the read lock of the folder is held
+    // EFFECTS: returns the first unlocked note holding the text as search does, using the index
+    //          to skip notes that cannot hold it; notes not indexed yet are always looked at
+    private Optional<Note> searchIndex(String text) {
+        Optional<Set<Note>> candidates = this.index.candidates(text);
+        if (!candidates.isPresent()) {
+            for (Note note : this.getNotes()) {
+                if (!note.isLocked() && note.search(text)) {
+                    return Optional.of(note);
+                }
+            }
+            return Optional.empty();
+        }
+
+        List<Note> ordered = new ArrayList<>(candidates.get());
+        ordered.addAll(this.unindexed);
+        ordered.sort(Comparator.comparingInt(this.notes::orderOf));
+        for (Note note : ordered) {
             if (!note.isLocked() && note.search(text)) {
                 return Optional.of(note);
             }
@@ -60,43 +505,229 @@ public class Folder extends Lockable implements Writable {
 
     // Sorts the notes using the given sort option.
     // MODIFIES: this
-    // EFFECTS: returns a list of sorted notes based on the sort option
+    // EFFECTS: records the sort option and returns the notes sorted by it, leaving the notes of
+    //          the folder in their order; the timestamp options copy the timestamp order, which is
+    //          kept as the notes change, so they take linear time and compare no notes;
+    //          returns null for no sort option
     public SortableSet<Note> sort(SortOption sortOption) {
-        this.setSortOption(sortOption);
+        return this.read(() -> {
+            ArrayList<Note> sorted = this.sorted(sortOption);
+            if (sorted == null) {
+                return null;
+            }
+            this.setSortOption(sortOption);
+            SortableSet<Note> notes = new SortableSet<>();
+            notes.setItems(sorted);
+            return notes;
+        });
+    }
+
+    // Reorders the notes using the given sort option.
+    // MODIFIES: this
+    // EFFECTS: puts the notes of the folder in the order of the sort option, which the next save
+    //          writes, and returns them; returns null for no sort option
+    public SortableSet<Note> reorder(SortOption sortOption) {
+        return this.write(() -> {
+            ArrayList<Note> sorted = this.sorted(sortOption);
+            if (sorted == null) {
+                return null;
+            }
+            this.setSortOption(sortOption);
+            this.history.change(this::capture);
+            this.notes.setItems(sorted);
+            this.reordered = stamp();
+            this.post(ChangeEvent.Type.NOTES_REPLACED, null, -1);
+            return this.getNotes();
+        });
+    }
+
+    // REQUIRES: the thread holds the read or write lock
+    // EFFECTS: returns a new list of the notes in the order of the sort option;
+    //          returns null for no sort option
+    private ArrayList<Note> sorted(SortOption sortOption) {
+        NavigableSet<Note> order = this.timestampOrder(sortOption);
+        if (order != null) {
+            return new ArrayList<>(order);
+        }
+        Comparator<Note> comparator = this.comparator(sortOption);
+        if (comparator == null) {
+            return null;
+        }
+        ArrayList<Note> sorted = this.notes.getItems();
+        sorted.sort(comparator);
+        return sorted;
+    }
+
+    // EFFECTS: returns the order of the sort option that has no view; the notes compare by
+    //          their cached collation keys and counts; returns null for other sort options
+    private Comparator<Note> comparator(SortOption sortOption) {
+        if (sortOption == SortOption.ALPHABETICAL) {
+            return Comparator.comparing(Note::getSummaryKey);
+        } else if (sortOption == SortOption.REVERSE_ALPHABETICAL) {
+            return Comparator.comparing(Note::getSummaryKey).reversed();
+        } else if (sortOption == SortOption.MOST_CHARACTERS_FIRST) {
+            return Comparator.comparingInt(Note::characterCount).reversed();
+        } else if (sortOption == SortOption.FEWEST_CHARACTERS_FIRST) {
+            return Comparator.comparingInt(Note::characterCount);
+        } else if (sortOption == SortOption.MOST_WORDS_FIRST) {
+            return Comparator.comparingInt(Note::wordCount).reversed();
+        } else if (sortOption == SortOption.FEWEST_WORDS_FIRST) {
+            return Comparator.comparingInt(Note::wordCount);
+        }
+        return null;
+    }
+
+    // EFFECTS: returns a read-only view of the notes in the order of the timestamp sort option,
+    //          which follows the notes as they change without copying them; it can only be
+    //          iterated while holding the read or write lock, e.g. inside read(...); notes with
+    //          equal timestamps are in the order they joined the folder, reversed for the newest
+    //          first options; returns null if the sort option does not order by a timestamp
+    public Collection<Note> view(SortOption sortOption) {
+        return this.read(() -> {
+            NavigableSet<Note> order = this.timestampOrder(sortOption);
+            return order == null ? null : new View(order);
+        });
+    }
+
+    // REQUIRES: the thread holds the read or write lock
+    // EFFECTS: returns the notes ordered by the timestamp of the sort option, as the folder keeps
+    //          them; returns null if the sort option does not order by a timestamp
+    private NavigableSet<Note> timestampOrder(SortOption sortOption) {
         if (sortOption == SortOption.NEWEST_ADDED_FIRST) {
-            this.notes.sort(Comparator.comparing(Note::getDateTimeAdded).reversed());
+            return this.byAdded.descendingSet();
         } else if (sortOption == SortOption.OLDEST_ADDED_FIRST) {
-            this.notes.sort(Comparator.comparing(Note::getDateTimeAdded));
+            return this.byAdded;
         } else if (sortOption == SortOption.NEWEST_MODIFIED_FIRST) {
-            this.notes.sort(Comparator.comparing(Note::getDateTimeModified).reversed());
+            return this.byModified.descendingSet();
         } else if (sortOption == SortOption.OLDEST_MODIFIED_FIRST) {
-            this.notes.sort(Comparator.comparing(Note::getDateTimeModified));
-        } else {
-            return null;
+            return this.byModified;
         }
+        return null;
+    }
 
-        return this.getNotes();
+    // MODIFIES: this
+    // EFFECTS: takes the note out of the timestamp orders, so that its timestamps can change;
+    //          returns true if the note is in this folder, false otherwise
+    boolean unorder(Note note) {
+        return this.write(() -> {
+            if (!this.sequence.containsKey(note)) {
+                return false;
+            }
+            this.byAdded.remove(note);
+            this.byModified.remove(note);
+            return true;
+        });
+    }
+
+    // REQUIRES: the note is in this folder
+    // MODIFIES: this
+    // EFFECTS: puts the note into the timestamp orders by its current timestamps
+    void order(Note note) {
+        this.update(() -> {
+            this.byAdded.add(note);
+            this.byModified.add(note);
+        });
+    }
+
+    // MODIFIES: this
+    // EFFECTS: returns the number of notes, words and characters in the folder; the text of
+    //          every note is only counted the first time, as later changes are applied to it
+    public Statistics getStatistics() {
+        // statistics already counted are read under the read lock alone
+        Statistics counted = this.read(() -> this.statistics);
+        if (counted != null) {
+            return counted;
+        }
+        return this.write(() -> {
+            if (this.statistics == null) {
+                Statistics statistics = Statistics.EMPTY;
+                for (Note note : this.notes) {
+                    statistics = statistics.plus(Statistics.of(note));
+                }
+                this.statistics = statistics;
+            }
+            return this.statistics;
+        });
+    }
+
+    // MODIFIES: this
+    // EFFECTS: takes the note's counts out of the statistics, so that its text can change;
+    //          returns true if the statistics include the note, false otherwise
+    boolean uncount(Note note) {
+        return this.write(() -> {
+            if (this.statistics == null || !this.sequence.containsKey(note)) {
+                return false;
+            }
+            this.statistics = this.statistics.minus(Statistics.of(note));
+            return true;
+        });
+    }
+
+    // REQUIRES: the note is in this folder
+    // MODIFIES: this
+    // EFFECTS: adds the note's counts to the statistics, if they have been counted
+    void count(Note note) {
+        this.update(() -> {
+            if (this.statistics != null) {
+                this.statistics = this.statistics.plus(Statistics.of(note));
+            }
+        });
+    }
+
+    // MODIFIES: this
+    // EFFECTS: replaces the notes of the folder with the given ones, which are all changed
+    private void replaceNotes(SortableSet<Note> notes) {
+        this.history.change(this::capture);
+        for (Note note : this.notes) {
+            if (!notes.contains(note)) {
+                this.removedNoteIds.put(note.getId(), stamp());
+            }
+        }
+        this.notes = notes;
+        this.index.clear();
+        this.unindexed.clear();
+        this.changedNotes.clear();
+        this.byAdded.clear();
+        this.byModified.clear();
+        this.sequence.clear();
+        this.statistics = null;
+        for (Note note : notes) {
+            note.attachTo(this);
+            this.sequence.put(note, this.nextSequence++);
+            this.order(note);
+            this.indexNote(note);
+        }
+        this.markAllChanged();
+        this.post(ChangeEvent.Type.NOTES_REPLACED, null, -1);
     }
 
     // REQUIRES: at least one note
     // EFFECTS: returns formatted string listing all folder notes
     public String displayNotes() {
-        StringBuilder stringBuilder = new StringBuilder();
-        stringBuilder.append("Notes:");
-        int i = 0;
-        for (Note note : this.notes) {
-            i += 1;
-            stringBuilder.append("\n- [").append(i).append("] ").append(note.getSummary());
-        }
+        return this.read(() -> {
+            StringBuilder stringBuilder = new StringBuilder();
+            stringBuilder.append("Notes:");
+            int i = 0;
+            for (Note note : this.notes) {
+                i += 1;
+                stringBuilder.append("\n- [").append(i).append("] ").append(note.getSummary());
+            }
 
-        return stringBuilder.toString();
+            return stringBuilder.toString();
+        });
     }
 
     // EFFECTS: returns a JSON representation of the folder,
     //          containing all the notes
     @Override
     public JSONObject toJson() {
+        return this.read(this::buildJson);
+    }
+
+    // EFFECTS: returns the JSON representation of the folder as toJson does
+    private JSONObject buildJson() {
         JSONObject json = new JSONObject();
+        json.put("id", this.getId());
         json.put("name", this.name);
 
         JSONArray jsonArray = new JSONArray();
@@ -119,6 +750,10 @@ public class Folder extends Lockable implements Writable {
     /**
      * GETTERS AND SETTERS
      */
+    public String getId() {
+        return id;
+    }
+
     public String getName() {
         return name;
     }
@@ -131,11 +766,145 @@ public class Folder extends Lockable implements Writable {
         return sortOption;
     }
 
+    // EFFECTS: returns the key of the folder's password, or null if it was not entered
+    //          since the folder was loaded
+    SecretKey getKey() {
+        return key;
+    }
+
+    public void setId(String id) {
+        this.update(() -> {
+            this.history.change(this::capture);
+            this.id = id;
+        });
+    }
+
+    @Override
+    public void setLocked(boolean locked) {
+        this.update(() -> {
+            this.history.change(this::capture);
+            super.setLocked(locked);
+        });
+    }
+
+    // REQUIRES: the notes without a password of their own have no encrypted text unless
+    //          passwordHash is the hash it was encrypted under, so they are unlocked first
+    // MODIFIES: this
+    // EFFECTS: sets the password hash, forgetting the key of the previous password and marking
+    //          every note changed, as the key their texts are saved with changed
+    @Override
+    public void setPasswordHash(String passwordHash) {
+        this.update(() -> {
+            this.history.change(this::capture);
+            if (!Objects.equals(passwordHash, this.getPasswordHash())) {
+                this.key = null;
+                this.markAllChanged();
+            }
+            super.setPasswordHash(passwordHash);
+        });
+    }
+
     public void setNotes(SortableSet<Note> notes) {
-        this.notes = notes;
+        this.update(() -> this.replaceNotes(notes));
     }
 
     public void setSortOption(SortOption sortOption) {
         this.sortOption = sortOption;
     }
+
+    // A read-only view of one of the timestamp orders of the notes, which is never copied.
+    private final class View extends AbstractCollection<Note> {
+        private final Collection<Note> order;
+
+        // EFFECTS: constructs a view of the order
+        View(Collection<Note> order) {
+            this.order = Collections.unmodifiableCollection(order);
+        }
+
+        // EFFECTS: returns an iterator over the order;
+        //          throws IllegalStateException if the thread holds no lock of the folder
+        @Override
+        public Iterator<Note> iterator() {
+            if (lock.getReadHoldCount() == 0 && !lock.isWriteLockedByCurrentThread()) {
+                throw new IllegalStateException("A view is iterated while holding the lock of its folder");
+            }
+            return this.order.iterator();
+        }
+
+        @Override
+        public int size() {
+            return read(this.order::size);
+        }
+    }
+
+    // The state of a folder when a snapshot of the folders was taken, which never changes.
+    public static final class Snapshot implements Iterable<Note.Snapshot> {
+        private final String id;
+        private final String name;
+        private final boolean locked;
+        private final String passwordHash;
+        private final SortableSet<Note> notes;
+        private final long stamp;
+
+        // EFFECTS: creates the state of a folder with the given fields and notes
+        private Snapshot(String id, String name, boolean locked, String passwordHash, SortableSet<Note> notes) {
+            this.id = id;
+            this.name = name;
+            this.locked = locked;
+            this.passwordHash = passwordHash;
+            this.notes = notes;
+            this.stamp = 0;
+        }
+
+        // EFFECTS: creates the state of a folder as the snapshot with the given stamp sees it
+        private Snapshot(Snapshot state, long stamp) {
+            this.id = state.id;
+            this.name = state.name;
+            this.locked = state.locked;
+            this.passwordHash = state.passwordHash;
+            this.notes = state.notes;
+            this.stamp = stamp;
+        }
+
+        // EFFECTS: returns the number of notes in the folder
+        public int size() {
+            return this.notes.size();
+        }
+
+        // EFFECTS: returns an iterator over the states of the notes of the folder, in order
+        @Override
+        public Iterator<Note.Snapshot> iterator() {
+            Iterator<Note> notes = this.notes.iterator();
+            return new Iterator<Note.Snapshot>() {
+                @Override
+                public boolean hasNext() {
+                    return notes.hasNext();
+                }
+
+                @Override
+                public Note.Snapshot next() {
+                    return notes.next().snapshotAt(stamp);
+                }
+            };
+        }
+
+        /**
+         * GETTERS AND SETTERS
+         */
+        public String getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isLocked() {
+            return locked;
+        }
+
+        public String getPasswordHash() {
+            return passwordHash;
+        }
+    }
 }
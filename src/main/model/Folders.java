@@ -3,11 +3,44 @@ package model;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import persistence.Writable;
+import utils.InvertedIndex;
 import utils.SortableSet;
 
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
 // A container class for all folders.
+//
+// The list of folders is guarded by a read/write lock of its own, taken before the
+// lock of any folder, so that a save or search can go through the folders while
+// another thread adds or edits them. A save takes a save point before it reads the
+// folders and marks clean only the changes made up to it.
+//
+// A snapshot of the folders is taken in constant time and never changes, so a save
+// can write it out without holding any lock while the folders keep being edited.
+//
+// The folders added and removed, and the notes added to, removed from and edited in
+// them, are posted on the change bus of the folders.
 public class Folders implements Writable {
+    public static final int DEFAULT_SEARCH_LIMIT = 100;
+    public static final Duration DEFAULT_SEARCH_BUDGET = Duration.ofMillis(50);
+    // BM25 term frequency saturation and document length normalisation
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    // number of postings collected between checks of the latency budget
+    private static final int BUDGET_CHECK_INTERVAL = 256;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ChangeBus bus = new ChangeBus();
     private SortableSet<Folder> folders;
+    // folders removed and when the order changed since the workspace was last saved,
+    // with the stamps of the changes; a stamp of 0 means the order did not change
+    private final Map<String, Long> removedFolderIds = new LinkedHashMap<>();
+    private long reordered = 0;
 
     // EFFECTS: creates an empty list of folders
     public Folders() {
@@ -18,49 +51,449 @@ public class Folders implements Writable {
     // EFFECTS: adds folder and returns true if it is not already present;
     //          returns false otherwise
     public boolean add(Folder folder) {
-        return this.folders.add(folder);
+        return this.write(() -> {
+            if (this.folders.add(folder)) {
+                folder.markAllChanged();
+                folder.publishTo(this.bus);
+                this.bus.post(new ChangeEvent(ChangeEvent.Type.FOLDER_ADDED, folder, null, this.folders.size() - 1));
+                return true;
+            }
+            return false;
+        });
     }
 
     // MODIFIES: this
     // EFFECTS: returns true and removes folder from list if it is present;
     //          returns false otherwise
     public boolean remove(Folder folder) {
-        return this.folders.remove(folder);
+        return this.write(() -> {
+            int index = this.folders.indexOf(folder);
+            if (this.folders.remove(folder)) {
+                this.removedFolderIds.put(folder.getId(), Folder.stamp());
+                folder.publishTo(null);
+                this.bus.post(new ChangeEvent(ChangeEvent.Type.FOLDER_REMOVED, folder, null, index));
+                return true;
+            }
+            return false;
+        });
+    }
+
+    // EFFECTS: returns the result of the work, done while holding the read lock of the folders,
+    //          so that no other thread adds, removes or reorders folders meanwhile;
+    //          throws what the work throws
+    public <T, X extends Exception> T read(Guarded<T, X> work) throws X {
+        this.bus.hold();
+        this.lock.readLock().lock();
+        try {
+            return work.run();
+        } finally {
+            this.lock.readLock().unlock();
+            this.bus.release();
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: returns the result of the work, done while holding the write lock of the folders,
+    //          so that no other thread reads or changes the list of folders meanwhile
+    private <T> T write(Guarded<T, RuntimeException> work) {
+        this.bus.hold();
+        this.lock.writeLock().lock();
+        try {
+            return work.run();
+        } finally {
+            this.lock.writeLock().unlock();
+            this.bus.release();
+        }
+    }
+
+    // EFFECTS: returns true if any folder or note was added, removed or changed
+    //          since the workspace was last saved; false otherwise
+    public boolean hasChanges() {
+        return this.read(() -> {
+            if (!this.removedFolderIds.isEmpty()) {
+                return true;
+            }
+            for (Folder folder : this.folders) {
+                if (folder.hasChanges()) {
+                    return true;
+                }
+            }
+            return false;
+        });
+    }
+
+    // EFFECTS: returns true if the order of the folders changed since the workspace was last saved
+    public boolean isReordered() {
+        return this.read(() -> this.reordered != 0);
+    }
+
+    // EFFECTS: returns the ids of the folders removed since the workspace was last saved
+    public Set<String> getRemovedFolderIds() {
+        return this.read(() -> new LinkedHashSet<>(this.removedFolderIds.keySet()));
+    }
+
+    // EFFECTS: returns the save point of the changes made so far, to be taken before the
+    //          folders are read for a save and passed to markClean once it is done
+    public long savePoint() {
+        return Folder.lastStamp();
+    }
+
+    // EFFECTS: returns a snapshot of the folders and their notes as they are now, in constant
+    //          time; the snapshot must be closed once it is no longer needed
+    public Snapshot snapshot() {
+        return this.read(() -> new Snapshot(History.open(), this.folders.snapshot()));
+    }
+
+    // MODIFIES: this
+    // EFFECTS: marks all folders and notes as saved
+    public void markClean() {
+        this.markClean(Long.MAX_VALUE);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: marks all folders and notes as saved as far as the changes up to the save point
+    //          go; changes made after it are still to be saved
+    public void markClean(long savePoint) {
+        this.write(() -> {
+            this.removedFolderIds.values().removeIf(stamp -> stamp <= savePoint);
+            this.reordered = this.reordered <= savePoint ? 0 : this.reordered;
+            for (Folder folder : this.folders) {
+                folder.markClean(savePoint);
+            }
+            return null;
+        });
+    }
+
+    // EFFECTS: returns the unlocked notes of all folders matching any term of the query,
+    //          ranked by relevance, using the default limit and latency budget
+    public SearchResults search(String query) {
+        return this.search(query, DEFAULT_SEARCH_LIMIT, DEFAULT_SEARCH_BUDGET);
+    }
+
+    // Searches for the terms of the query across all folders
+    // REQUIRES: limit > 0
+    // EFFECTS: returns at most limit unlocked notes holding any term of the query
+    //          in their title or text, ranked by BM25 relevance; indexing the notes added
+    //          or edited since the last search and scoring stop once the budget is spent,
+    //          in which case the results are incomplete
+    public SearchResults search(String query, int limit, Duration budget) {
+        return this.read(() -> this.searchFolders(query, limit, budget));
+    }
+
+    // EFFECTS: returns the results of searching for the query as search does
+    private SearchResults searchFolders(String query, int limit, Duration budget) {
+        Search search = new Search(InvertedIndex.tokenize(query), System.nanoTime() + budget.toNanos());
+        boolean collected = this.collect(search);
+        if (search.terms.isEmpty() || search.documents == 0) {
+            return new SearchResults(Collections.emptyList(), search.indexed);
+        }
+
+        search.score();
+        boolean complete = collected && search.indexed && search.hits.size() <= limit;
+        return new SearchResults(this.best(search.hits.values(), limit), complete);
+    }
+
+    // MODIFIES: search
+    // EFFECTS: collects the statistics and postings of every folder in turn, each under the
+    //          read lock of the folder so that both come from the same state of its index;
+    //          returns false if the deadline of the search passed before all were collected,
+    //          true otherwise
+    private boolean collect(Search search) {
+        int folderPosition = 0;
+        for (Folder folder : this.folders) {
+            int position = folderPosition;
+            if (!folder.readIndex(search.deadline, (index, upToDate) -> search.collect(folder, index, upToDate,
+                    position))) {
+                return false;
+            }
+            folderPosition += 1;
+        }
+        return true;
+    }
+
+    // EFFECTS: returns at most limit of the best hits, in no particular order
+    private Collection<SearchResults.Hit> best(Collection<SearchResults.Hit> hits, int limit) {
+        if (hits.size() <= limit) {
+            return hits;
+        }
+        PriorityQueue<SearchResults.Hit> best = new PriorityQueue<>(limit, SearchResults.Hit.BEST_FIRST.reversed());
+        for (SearchResults.Hit hit : hits) {
+            best.add(hit);
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        return best;
+    }
+
+    // EFFECTS: returns the number of notes, words and characters in all folders, adding up
+    //          the statistics each folder keeps rather than counting any text
+    public Statistics getStatistics() {
+        return this.read(() -> {
+            Statistics statistics = Statistics.EMPTY;
+            for (Folder folder : this.folders) {
+                statistics = statistics.plus(folder.getStatistics());
+            }
+            return statistics;
+        });
     }
 
     // REQUIRES: at least one folder
     // EFFECTS: returns formatted string listing all folders
     public String display() {
-        StringBuilder stringBuilder = new StringBuilder();
-        stringBuilder.append("Folders:");
-        int i = 0;
-        for (Folder folder : this.folders) {
-            i += 1;
-            stringBuilder.append("\n- [").append(i).append("] ").append(folder.getName());
-        }
-        return stringBuilder.toString();
+        return this.read(() -> {
+            StringBuilder stringBuilder = new StringBuilder();
+            stringBuilder.append("Folders:");
+            int i = 0;
+            for (Folder folder : this.folders) {
+                i += 1;
+                stringBuilder.append("\n- [").append(i).append("] ").append(folder.getName());
+            }
+            return stringBuilder.toString();
+        });
     }
 
     // EFFECTS: returns a JSON representation of the folders
     @Override
     public JSONObject toJson() {
-        JSONObject json = new JSONObject();
-        JSONArray jsonArray = new JSONArray();
-        for (Folder folder : this.folders) {
-            jsonArray.put(folder.toJson());
-        }
-        json.put("folders", jsonArray);
-        return json;
+        return this.read(() -> {
+            JSONObject json = new JSONObject();
+            JSONArray jsonArray = new JSONArray();
+            for (Folder folder : this.folders) {
+                jsonArray.put(folder.toJson());
+            }
+            json.put("folders", jsonArray);
+            return json;
+        });
     }
 
     /**
      * GETTERS AND SETTERS
      */
+    public ChangeBus getBus() {
+        return bus;
+    }
+
     public SortableSet<Folder> getFolders() {
         return folders;
     }
 
     public void setFolders(SortableSet<Folder> folders) {
-        this.folders = folders;
+        this.write(() -> {
+            long stamp = Folder.stamp();
+            for (Folder folder : this.folders) {
+                if (!folders.contains(folder)) {
+                    this.removedFolderIds.put(folder.getId(), stamp);
+                    folder.publishTo(null);
+                }
+            }
+            this.folders = folders;
+            this.reordered = stamp;
+            for (Folder folder : folders) {
+                folder.markAllChanged();
+                folder.publishTo(this.bus);
+            }
+            this.bus.post(new ChangeEvent(ChangeEvent.Type.FOLDERS_REPLACED, null, null, -1));
+            return null;
+        });
+    }
+
+    // Scores the notes of folders against the terms of a query using BM25.
+    private static class Search {
+        private final Set<String> terms;
+        private final long deadline;
+        private final Map<String, Integer> documentFrequencies = new HashMap<>();
+        private final Map<Note, SearchResults.Hit> hits = new HashMap<>();
+        // the postings of the terms in the unlocked notes, as they were when their folder was read
+        private final List<Posting> postings = new ArrayList<>();
+        private int documents = 0;
+        private long totalLength = 0;
+        private long visited = 0;
+        // false once the index of a folder could not be brought up to date before the deadline
+        private boolean indexed = true;
+
+        // EFFECTS: creates a search for the terms that must stop scoring at the deadline,
+        //          given in System.nanoTime() units
+        Search(List<String> terms, long deadline) {
+            this.terms = new LinkedHashSet<>(terms);
+            this.deadline = deadline;
+        }
+
+        // REQUIRES: the read lock of the folder is held and index is its index
+        // MODIFIES: this
+        // EFFECTS: adds the index's documents and term frequencies to the collection statistics,
+        //          recording if notes are missing from the index as it is not up to date, and
+        //          keeps the postings of the terms in the folder's unlocked notes to be scored;
+        //          returns false if the deadline passed before the folder was collected, in which
+        //          case none of it is kept, true otherwise
+        boolean collect(Folder folder, InvertedIndex<Note> index, boolean upToDate, int folderPosition) {
+            int kept = this.postings.size();
+            for (String term : this.terms) {
+                for (Map.Entry<Note, Integer> posting : index.posting(term).entrySet()) {
+                    this.visited += 1;
+                    if (this.visited % BUDGET_CHECK_INTERVAL == 0 && System.nanoTime() > this.deadline) {
+                        this.postings.subList(kept, this.postings.size()).clear();
+                        return false;
+                    }
+                    Note note = posting.getKey();
+                    if (!note.isLocked()) {
+                        long order = ((long) folderPosition << 32) | folder.getNotes().orderOf(note);
+                        this.postings.add(new Posting(note, order, term, posting.getValue(), index.length(note)));
+                    }
+                }
+            }
+            this.indexed = this.indexed && upToDate;
+            this.documents += index.size();
+            this.totalLength += index.totalLength();
+            for (String term : this.terms) {
+                this.documentFrequencies.merge(term, index.posting(term).size(), Integer::sum);
+            }
+            return true;
+        }
+
+        // REQUIRES: documents > 0
+        // MODIFIES: this
+        // EFFECTS: adds the scores of the collected postings to the hits of their notes, from the
+        //          statistics of the same folders
+        void score() {
+            double averageLength = Math.max(1.0, (double) this.totalLength / this.documents);
+            Map<String, Double> idfs = new HashMap<>();
+            for (String term : this.terms) {
+                idfs.put(term, this.inverseDocumentFrequency(this.documentFrequencies.get(term)));
+            }
+            for (Posting posting : this.postings) {
+                double length = posting.length / averageLength;
+                int frequency = posting.frequency;
+                this.hit(posting.note, posting.order).addScore(idfs.get(posting.term) * frequency * (K1 + 1)
+                        / (frequency + K1 * (1 - B + B * length)));
+            }
+        }
+
+        // MODIFIES: this
+        // EFFECTS: returns the hit of the note, creating it with the given order if the note has
+        //          not been scored yet
+        private SearchResults.Hit hit(Note note, long order) {
+            SearchResults.Hit hit = this.hits.get(note);
+            if (hit == null) {
+                hit = new SearchResults.Hit(note, order);
+                this.hits.put(note, hit);
+            }
+            return hit;
+        }
+
+        // EFFECTS: returns the BM25 inverse document frequency of a term
+        private double inverseDocumentFrequency(int documentFrequency) {
+            return Math.log(1 + (this.documents - documentFrequency + 0.5) / (documentFrequency + 0.5));
+        }
+    }
+
+    // A term found in a note, with how often and in how long a text, and where the note is.
+    private static final class Posting {
+        private final Note note;
+        private final long order;
+        private final String term;
+        private final int frequency;
+        private final int length;
+
+        // EFFECTS: creates a posting of the term, found frequency times in the note at the given
+        //          order across the folders, whose indexed length is length
+        Posting(Note note, long order, String term, int frequency, int length) {
+            this.note = note;
+            this.order = order;
+            this.term = term;
+            this.frequency = frequency;
+            this.length = length;
+        }
+    }
+
+    // The folders as they were when the snapshot was taken, which never changes.
+    //
+    // The folders and notes keep the states a snapshot needs while it is open, so it
+    // is closed once it was written out. A snapshot that is garbage collected without
+    // being closed is closed when the next snapshot is taken, so a leaked snapshot
+    // cannot keep the states it needed forever.
+    public static final class Snapshot implements Iterable<Folder.Snapshot>, AutoCloseable {
+        private static final ReferenceQueue<Snapshot> COLLECTED = new ReferenceQueue<>();
+        // the snapshots open, kept reachable until they are closed
+        private static final Set<Opened> OPENED = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        private final long stamp;
+        private final SortableSet<Folder> folders;
+        private final Opened opened;
+
+        // EFFECTS: creates a snapshot with the given stamp of the folders, first closing the
+        //          snapshots collected without being closed
+        private Snapshot(long stamp, SortableSet<Folder> folders) {
+            closeCollected();
+            this.stamp = stamp;
+            this.folders = folders;
+            this.opened = new Opened(this, stamp);
+            OPENED.add(this.opened);
+        }
+
+        // MODIFIES: History
+        // EFFECTS: closes the snapshots that were garbage collected without being closed
+        private static void closeCollected() {
+            for (Reference<? extends Snapshot> collected = COLLECTED.poll(); collected != null;
+                    collected = COLLECTED.poll()) {
+                ((Opened) collected).close();
+            }
+        }
+
+        // EFFECTS: returns the save point of the snapshot, to be passed to markClean once it is saved
+        public long getSavePoint() {
+            return this.stamp;
+        }
+
+        // EFFECTS: returns the number of folders in the snapshot
+        public int size() {
+            return this.folders.size();
+        }
+
+        // EFFECTS: returns an iterator over the states of the folders, in order
+        @Override
+        public Iterator<Folder.Snapshot> iterator() {
+            Iterator<Folder> folders = this.folders.iterator();
+            return new Iterator<Folder.Snapshot>() {
+                @Override
+                public boolean hasNext() {
+                    return folders.hasNext();
+                }
+
+                @Override
+                public Folder.Snapshot next() {
+                    return folders.next().snapshotAt(stamp);
+                }
+            };
+        }
+
+        // MODIFIES: this
+        // EFFECTS: closes the snapshot, so the states only it needed can be dropped
+        @Override
+        public void close() {
+            this.opened.close();
+        }
+    }
+
+    // The stamp of an open snapshot, which outlives the snapshot so that it can be closed
+    // once the snapshot is garbage collected.
+    private static final class Opened extends PhantomReference<Snapshot> {
+        private final long stamp;
+        private boolean closed = false;
+
+        // EFFECTS: creates the stamp of the snapshot, queued once the snapshot is collected
+        Opened(Snapshot snapshot, long stamp) {
+            super(snapshot, Snapshot.COLLECTED);
+            this.stamp = stamp;
+        }
+
+        // MODIFIES: this, History
+        // EFFECTS: closes the snapshot with the stamp, unless it was closed already
+        synchronized void close() {
+            if (!this.closed) {
+                this.closed = true;
+                Snapshot.OPENED.remove(this);
+                History.close(this.stamp);
+            }
+        }
     }
 }
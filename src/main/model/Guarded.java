@@ -0,0 +1,7 @@
+package model;
+
+// Work done while a folder or the folders cannot be changed by any other thread.
+public interface Guarded<T, X extends Exception> {
+    // EFFECTS: does the work and returns its result; throws X if it fails
+    T run() throws X;
+}
@@ -0,0 +1,146 @@
+package model;
+
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+// The states of an object that snapshots taken before its latest changes still need.
+//
+// Changes and snapshots are stamped from one clock. The object's current state holds
+// for every snapshot taken after the change it began with. When the object is about
+// to change while a snapshot taken after that is open, its current state is kept
+// first, so the snapshot still finds the object as it was. States no open snapshot
+// needs any more are dropped as the object changes, and an object only keeps a state
+// at all while a snapshot is open.
+final class History<S> {
+    private static final Object LOCK = new Object();
+    private static long clock = 0;
+    // the stamps of the open snapshots, with how many snapshots have each
+    private static final TreeMap<Long, Integer> OPEN = new TreeMap<>();
+    // the stamp of the change the current state began with
+    private long since = 0;
+    // true while a change is being made, once the state it started from was kept if needed
+    private boolean changing = false;
+    private Version<S> older;
+
+    // A kept state, and when it began.
+    private static class Version<S> {
+        private final S state;
+        private final long since;
+        private Version<S> older;
+
+        // EFFECTS: creates a kept state that began with the change stamped since
+        Version(S state, long since, Version<S> older) {
+            this.state = state;
+            this.since = since;
+            this.older = older;
+        }
+    }
+
+    // MODIFIES: History
+    // EFFECTS: returns a stamp for a change made now, later than any stamp before it
+    static long stamp() {
+        synchronized (LOCK) {
+            return ++clock;
+        }
+    }
+
+    // EFFECTS: returns the stamp of the latest change made so far
+    static long lastStamp() {
+        synchronized (LOCK) {
+            return clock;
+        }
+    }
+
+    // MODIFIES: History
+    // EFFECTS: opens a snapshot of everything as it is now and returns its stamp; the states
+    //          it needs are kept until it is closed
+    static long open() {
+        synchronized (LOCK) {
+            long stamp = ++clock;
+            OPEN.merge(stamp, 1, Integer::sum);
+            return stamp;
+        }
+    }
+
+    // REQUIRES: a snapshot with the stamp is open
+    // MODIFIES: History
+    // EFFECTS: closes a snapshot, so the states only it needed can be dropped
+    static void close(long stamp) {
+        synchronized (LOCK) {
+            OPEN.computeIfPresent(stamp, (key, count) -> count == 1 ? null : count - 1);
+        }
+    }
+
+    // EFFECTS: returns the number of snapshots open
+    static int openSnapshots() {
+        synchronized (LOCK) {
+            int open = 0;
+            for (int count : OPEN.values()) {
+                open += count;
+            }
+            return open;
+        }
+    }
+
+    // REQUIRES: the object cannot be read or changed by another thread meanwhile
+    // MODIFIES: this
+    // EFFECTS: records that the object is about to change, keeping its current state first
+    //          if an open snapshot needs it; does nothing if the change was already recorded
+    void change(Supplier<S> current) {
+        if (this.changing) {
+            return;
+        }
+        this.changing = true;
+        long stamp;
+        long newest;
+        long oldest;
+        synchronized (LOCK) {
+            stamp = ++clock;
+            newest = OPEN.isEmpty() ? 0 : OPEN.lastKey();
+            oldest = OPEN.isEmpty() ? 0 : OPEN.firstKey();
+        }
+        if (newest > this.since) {
+            this.older = new Version<>(current.get(), this.since, this.older);
+        }
+        this.drop(oldest);
+        this.since = stamp;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: records that the change of the object is complete
+    void changed() {
+        this.changing = false;
+    }
+
+    // REQUIRES: the snapshot with the stamp is open and the object is not being changed
+    // EFFECTS: returns the state of the object when the snapshot was taken, which is the
+    //          current one if the object did not change since
+    S at(long snapshot, Supplier<S> current) {
+        if (this.since < snapshot) {
+            return current.get();
+        }
+        for (Version<S> version = this.older; version != null; version = version.older) {
+            if (version.since < snapshot) {
+                return version.state;
+            }
+        }
+        throw new IllegalStateException("the state of the snapshot was not kept");
+    }
+
+    // MODIFIES: this
+    // EFFECTS: drops the kept states that no snapshot stamped oldest or later needs;
+    //          drops them all if oldest is 0
+    private void drop(long oldest) {
+        if (oldest == 0) {
+            this.older = null;
+            return;
+        }
+        Version<S> version = this.older;
+        while (version != null && version.since >= oldest) {
+            version = version.older;
+        }
+        if (version != null) {
+            version.older = null;
+        }
+    }
+}
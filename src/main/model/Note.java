@@ -4,18 +4,76 @@ import model.exceptions.LockedException;
 import model.exceptions.TitleNotSetException;
 import org.json.JSONObject;
 import persistence.Writable;
+import utils.BodyCipher;
 import utils.Lockable;
+import utils.PieceTable;
 
+import javax.crypto.SecretKey;
+import java.text.CollationKey;
+import java.text.Collator;
 import java.time.LocalDateTime;
-import java.util.StringTokenizer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 
 // Represents a note.
+//
+// The text of a note locked with a password is saved encrypted with a key derived
+// from the password. The text of a note without a password of its own is saved
+// encrypted with the key of its folder's password instead, if the folder has one.
+// A key is only known once its password was entered since the note was loaded, so
+// until then the text is saved as it was loaded. A note loaded with an encrypted text
+// stays locked and has no text until it is unlocked, which is when the text is
+// decrypted; a note protected by its folder is unlocked with the folder's password,
+// which unlocks every such note of the folder at once.
+//
+// The text in memory is kept in a piece table, so a range of it can be replaced in
+// time proportional to the change. The text as a string is only built again when
+// it is asked for after an edit.
+//
+// Every change to a note is made while holding the write lock of its folder, so a
+// thread saving or searching the folder never sees a change half done.
+//
+// The state a snapshot of the folders sees of the note is kept in its history. Its
+// text is only copied when the note is edited while a snapshot still needs the text
+// it had before.
 public class Note extends Lockable implements Writable {
+    // the number of characters of the text shown in a summary
+    public static final int SUMMARY_LENGTH = 20;
+    // the summary of an untitled note whose text is still encrypted
+    public static final String ENCRYPTED_SUMMARY = "Encrypted note";
+    private static final Collator COLLATOR = Collator.getInstance();
+    // assigned when the note is made, so every thread sees the same one
+    private String id = UUID.randomUUID().toString();
     private String title;
-    private String text;
+    private PieceTable text;
+    // while the text is not in memory, where to load it from and enough of it for a summary
+    private Supplier<String> textSource;
+    private String textPreview;
+    // the encrypted text, either not decrypted yet or kept from the last encryption of the text;
+    // volatile as readers holding only the read lock may keep an encryption of the same text
+    private volatile Supplier<String> encryptedText;
+    // the key encryptedText was made with, or null if it was loaded encrypted
+    private volatile SecretKey encryptedWith;
+    // the key of the current password, while it is known
+    private SecretKey key;
+    // derived from the title and text when first needed, and forgotten when they change
+    private String summary;
+    private CollationKey summaryKey;
+    private int characterCount = -1;
+    private int wordCount = -1;
+    private int titleWordCount = -1;
     private LocalDateTime dateTimeAdded = LocalDateTime.now();
     private LocalDateTime dateTimeModified = LocalDateTime.now();
     private Folder folder;
+    private boolean dirty = true;
+    private final History<Snapshot> history = new History<>();
+    // how many changes to the note are being made, one inside another
+    private int updating = 0;
 
     // MODIFIES: folder
     // EFFECTS: creates a new note with given title, text and password inside provided folder
@@ -54,33 +112,49 @@ public class Note extends Lockable implements Writable {
     // EFFECTS: changes the folder of the note to the new folder
     //          this includes removing the note from the previous folder
     //          and adding it to the new folder;
-    //          returns true if change was successful, false otherwise
+    //          returns true if change was successful, false otherwise, which is when
+    //          the text is still encrypted under the password of the current folder
     public boolean changeFolder(Folder newFolder) {
+        if (!this.hasLock() && this.isTextEncrypted()) {
+            return false;
+        }
         this.folder.removeNote(this);
         this.setFolder(newFolder);
         return true;
     }
 
     // EFFECTS: returns the character count of the note without including the title;
-    //          the character count includes whitespaces and newlines.
+    //          the character count includes whitespaces and newlines;
+    //          it is only counted again after the text changes
     public int characterCount() {
-        return this.countCharacters(this.text);
+        if (this.characterCount < 0) {
+            this.characterCount = this.countCharacters(this.readText());
+        }
+        return this.characterCount;
     }
 
     // EFFECTS: returns the character count of the note including the title;
     //          the character count includes whitespaces and newlines.
     public int characterCountWithTitle() {
-        return this.countCharacters(this.text + this.title);
+        return this.characterCount() + (this.title == null ? 0 : this.countCharacters(this.title));
     }
 
-    // EFFECTS: returns the word count of the note without including the title.
+    // EFFECTS: returns the word count of the note without including the title;
+    //          it is only counted again after the text changes
     public int wordCount() {
-        return this.countWords(this.text);
+        if (this.wordCount < 0) {
+            this.wordCount = this.countWords(this.readText());
+        }
+        return this.wordCount;
     }
 
-    // EFFECTS: returns the word count of the note including the title.
+    // EFFECTS: returns the word count of the note including the title;
+    //          the words of the title are only counted again after it changes
     public int wordCountWithTitle() {
-        return this.countWords(this.text + " " + this.title);
+        if (this.titleWordCount < 0) {
+            this.titleWordCount = this.title == null ? 0 : this.countWords(this.title);
+        }
+        return this.wordCount() + this.titleWordCount;
     }
 
     // EFFECTS: returns the character count of the provided text
@@ -89,31 +163,120 @@ public class Note extends Lockable implements Writable {
     }
 
     // EFFECTS: Returns the word count of the provided text
-    private int countWords(String text) {
-        StringTokenizer tokenizer = new StringTokenizer(text);
-        return tokenizer.countTokens();
+    private int countWords(CharSequence text) {
+        return this.countWords(text, 0, text.length());
+    }
+
+    // EFFECTS: Returns the word count of the provided text from start up to end
+    private int countWords(CharSequence text, int start, int end) {
+        int words = 0;
+        boolean inWord = false;
+        for (int i = start; i < end; i++) {
+            boolean separator = isSeparator(text.charAt(i));
+            if (!separator && !inWord) {
+                words += 1;
+            }
+            inWord = !separator;
+        }
+        return words;
+    }
+
+    // EFFECTS: returns true if the character separates words, as it does for a StringTokenizer
+    private static boolean isSeparator(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
     }
 
     // Edits the text of the note
     // MODIFIES: this
     // EFFECTS: updates the text of the note
     public void edit(String newText) {
-        this.setText(newText);
+        this.update(() -> {
+            this.setText(newText);
+            this.setDateTimeModified(LocalDateTime.now());
+        });
+    }
+
+    // Edits a range of the text of the note
+    // REQUIRES: 0 <= offset, length >= 0 and offset + length <= the length of the text
+    // MODIFIES: this
+    // EFFECTS: IF the text is still encrypted
+    //              throws LockedException
+    //          OTHERWISE
+    //              replaces length characters of the text starting at offset with replacement;
+    //              the text is not copied, and the words around the range are counted and indexed
+    //              again instead of the whole text
+    public void edit(int offset, int length, String replacement) throws LockedException {
+        boolean[] edited = {false};
+        this.update(() -> {
+            if (!this.isTextEncrypted()) {
+                this.replace(offset, length, replacement);
+                edited[0] = true;
+            }
+        });
+        if (!edited[0]) {
+            throw new LockedException("Note is locked!");
+        }
+    }
+
+    // REQUIRES: !isTextEncrypted()
+    // MODIFIES: this
+    // EFFECTS: replaces the range of the text as edit(offset, length, replacement) does
+    private void replace(int offset, int length, String replacement) {
+        PieceTable body = this.getBody();
+        int start = offset;
+        while (start > 0 && !isSeparator(body.charAt(start - 1))) {
+            start -= 1;
+        }
+        int end = offset + length;
+        while (end < body.length() && !isSeparator(body.charAt(end))) {
+            end += 1;
+        }
+        int wordsBefore = this.wordCount < 0 ? -1 : this.countWords(body, start, end);
+        String removed = body.subSequence(start, end).toString();
+        body.replace(offset, length, replacement);
+        int delta = replacement.length() - length;
+        this.encryptedText = null;
+        this.textChanged(body.length(), wordsBefore < 0 ? -1
+                : this.wordCount - wordsBefore + this.countWords(body, start, end + delta));
+        if (this.folder != null) {
+            this.folder.indexNoteEdit(this, removed, body.subSequence(start, end + delta).toString());
+        }
         this.setDateTimeModified(LocalDateTime.now());
     }
 
+    // REQUIRES: 0 <= offset <= the length of the text
+    // MODIFIES: this
+    // EFFECTS: inserts the text at offset of the text of the note;
+    //          throws LockedException if the text is still encrypted
+    public void insertText(int offset, String text) throws LockedException {
+        this.edit(offset, 0, text);
+    }
+
+    // REQUIRES: 0 <= offset, length >= 0 and offset + length <= the length of the text
+    // MODIFIES: this
+    // EFFECTS: deletes length characters of the text of the note starting at offset;
+    //          throws LockedException if the text is still encrypted
+    public void deleteText(int offset, int length) throws LockedException {
+        this.edit(offset, length, "");
+    }
+
     // Edits the text of the note
     // MODIFIES: this
     // EFFECTS: updates the text of the note
     public void editTitle(String newTitle) {
-        this.setTitle(newTitle);
-        this.setDateTimeModified(LocalDateTime.now());
+        this.update(() -> {
+            this.setTitle(newTitle);
+            this.setDateTimeModified(LocalDateTime.now());
+        });
     }
 
     // Searches for given text in the note
     // EFFECTS: returns true if the given text is found in the note title or text;
     //          false otherwise
     public boolean search(String text) {
+        if (this.folder != null && !this.folder.mayContain(this, text)) {
+            return false;
+        }
         try {
             if (this.searchInTitle(text)) {
                 return true;
@@ -127,9 +290,10 @@ public class Note extends Lockable implements Writable {
 
     // Searches for given text in the note's text
     // EFFECTS: returns true if the given text is found in the note text;
-    //          false otherwise
+    //          false otherwise; a text not in memory is read without being kept, so
+    //          searching only needs to read the note
     public boolean searchInText(String text) {
-        return this.searchText(this.text, text);
+        return this.searchText(this.readText(), text);
     }
 
     // Searches for given text in the note's title
@@ -155,17 +319,164 @@ public class Note extends Lockable implements Writable {
     // EFFECTS: returns a summary of the note;
     //          the summary is just the title if it is provided,
     //          otherwise it is at most the first 20 characters
-    //          with "..." appended
+    //          with "..." appended; does not load the text into memory
     public String getSummary() {
+        if (this.summary == null) {
+            this.summary = this.summarise();
+        }
+        return this.summary;
+    }
+
+    // EFFECTS: returns the key of the summary for comparing summaries alphabetically
+    //          in the default locale
+    public CollationKey getSummaryKey() {
+        if (this.summaryKey == null) {
+            this.summaryKey = COLLATOR.getCollationKey(this.getSummary());
+        }
+        return this.summaryKey;
+    }
+
+    // EFFECTS: returns the summary of the note as described by getSummary
+    private String summarise() {
         if (this.getTitle() != null) {
             return this.getTitle();
+        } else if (this.isTextEncrypted()) {
+            return ENCRYPTED_SUMMARY;
+        }
+        String preview = this.getTextPreview();
+        if (preview.length() > SUMMARY_LENGTH) {
+            return preview.substring(0, SUMMARY_LENGTH) + "...";
         } else {
-            if (this.getText().length() > 20) {
-                return this.getText().substring(0, 20) + "...";
-            } else {
-                return this.getText();
+            return preview;
+        }
+    }
+
+    // MODIFIES: this, this.folder
+    // EFFECTS: forgets what was derived from the text, and the summary if it is derived from it;
+    //          the statistics of the folder move from the old counts to the new ones
+    private void textChanged() {
+        this.textChanged(-1, -1);
+    }
+
+    // MODIFIES: this, this.folder
+    // EFFECTS: forgets what was derived from the text, and the summary if it is derived from it,
+    //          except for the counts known for the new text, which are -1 if they are not;
+    //          the statistics of the folder move from the old counts to the new ones
+    private void textChanged(int characterCount, int wordCount) {
+        boolean counted = this.folder != null && this.folder.uncount(this);
+        this.characterCount = characterCount;
+        this.wordCount = wordCount;
+        if (this.title == null) {
+            this.summary = null;
+            this.summaryKey = null;
+        }
+        if (counted) {
+            this.folder.count(this);
+        }
+    }
+
+    // EFFECTS: returns the first SUMMARY_LENGTH + 1 characters of the text, or all of it if it
+    //          is shorter; does not load the text into memory
+    public String getTextPreview() {
+        return this.read(() -> {
+            if (this.textSource != null) {
+                return this.textPreview;
+            }
+            String text = this.readText();
+            return text.length() > SUMMARY_LENGTH ? text.substring(0, SUMMARY_LENGTH + 1) : text;
+        });
+    }
+
+    // EFFECTS: returns the text of the note without keeping it in memory if it
+    //          has not been loaded yet; returns an empty text while it is encrypted
+    public String readText() {
+        return this.read(() -> {
+            Supplier<String> source = this.textSource;
+            if (source != null) {
+                return source.get();
             }
+            return this.isTextEncrypted() ? "" : this.textString();
+        });
+    }
+
+    // EFFECTS: returns the text in memory as a string; null if there is none
+    private String textString() {
+        return this.text == null ? null : this.text.toString();
+    }
+
+    // REQUIRES: !isTextEncrypted()
+    // MODIFIES: this
+    // EFFECTS: returns the text in memory, loading it first if it is not; a note without a text
+    //          is given an empty one
+    private PieceTable getBody() {
+        this.loadText();
+        if (this.text == null) {
+            this.text = new PieceTable("");
         }
+        return this.text;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: loads the text into memory if it is not yet
+    private void loadText() {
+        if (this.textSource != null) {
+            this.update(() -> {
+                // another thread may have loaded it meanwhile
+                if (this.textSource != null) {
+                    this.text = new PieceTable(this.textSource.get());
+                    this.textSource = null;
+                    this.textPreview = null;
+                }
+            });
+        }
+    }
+
+    // EFFECTS: returns true if the note is locked, or if it has no password of its own and its
+    //          text is still encrypted under the password of its folder
+    @Override
+    public boolean isLocked() {
+        return super.isLocked() || (!this.hasLock() && this.isTextEncrypted());
+    }
+
+    // EFFECTS: returns true if the note itself is locked, leaving out the lock of its folder
+    private boolean isLockSet() {
+        return super.isLocked();
+    }
+
+    // EFFECTS: returns true if the text is encrypted and waits for the note to be unlocked
+    public boolean isTextEncrypted() {
+        return this.text == null && this.textSource == null && this.encryptedText != null;
+    }
+
+    // EFFECTS: returns true if the text of the note is saved encrypted; false if it is saved
+    //          as plain text because neither the note nor its folder has a password, or
+    //          the password protecting it was not entered since the note was loaded
+    public boolean isEncrypted() {
+        return this.isTextEncrypted() || this.protectingKey() != null;
+    }
+
+    // EFFECTS: returns the key the text is saved encrypted with: that of the note's password if
+    //          it has one, otherwise that of its folder's password; null if it is not known
+    private SecretKey protectingKey() {
+        if (this.hasLock()) {
+            return this.key;
+        }
+        Folder folder = this.folder;
+        return folder == null ? null : folder.getKey();
+    }
+
+    // REQUIRES: isEncrypted()
+    // MODIFIES: this
+    // EFFECTS: returns the text of the note encrypted with the key protecting it,
+    //          encrypting it only if it changed since it was last encrypted
+    public String getEncryptedText() {
+        return this.read(this::capture).getEncryptedText();
+    }
+
+    // EFFECTS: returns true if the text of the note is in memory; false if it is
+    //          loaded the first time it is needed
+    public boolean isTextLoaded() {
+        return this.textSource == null;
     }
 
     // EFFECTS: IF note is locked
@@ -183,7 +494,7 @@ public class Note extends Lockable implements Writable {
             stringBuilder.append("Title: ").append(this.title).append("\n\n");
         }
 
-        stringBuilder.append(this.text).append("\n\n").append("Words: ").append(this.wordCount());
+        stringBuilder.append(this.getText()).append("\n\n").append("Words: ").append(this.wordCount());
 
         return stringBuilder.toString();
     }
@@ -195,32 +506,219 @@ public class Note extends Lockable implements Writable {
         this.folder.addNote(this);
     }
 
-    // EFFECTS: returns a JSON representation of the note;
-    //          it does NOT include the folder
+    // MODIFIES: this
+    // EFFECTS: records the folder the note was added to
+    void attachTo(Folder folder) {
+        this.folder = folder;
+    }
+
+    // MODIFIES: this, this.folder
+    // EFFECTS: makes the change while holding the write lock of the note's folder, if it is in one
     @Override
-    public JSONObject toJson() {
-        JSONObject json = new JSONObject();
-        json.put("text", this.text);
-        json.put("dateTimeAdded", this.dateTimeAdded);
-        json.put("dateTimeModified", this.dateTimeModified);
+    protected void update(Runnable change) {
+        Folder folder = this.folder;
+        if (folder == null) {
+            this.record(change);
+        } else {
+            folder.update(() -> this.record(change));
+        }
+    }
 
-        if (this.title != null) {
-            json.put("title", this.title);
+    // MODIFIES: this
+    // EFFECTS: makes the change, first keeping the state of the note if an open snapshot needs it
+    private void record(Runnable change) {
+        this.history.change(this::capture);
+        this.updating += 1;
+        try {
+            change.run();
+        } finally {
+            this.updating -= 1;
+            if (this.updating == 0) {
+                this.history.changed();
+            }
         }
-        this.addLockableToJson(json);
+    }
 
-        return json;
+    // EFFECTS: returns the state of the note when the snapshot with the given stamp was taken
+    Snapshot snapshotAt(long stamp) {
+        return this.read(() -> this.history.at(stamp, this::capture));
+    }
+
+    // EFFECTS: returns what reading gives while holding the read lock of the note's folder,
+    //          if it is in one, so that no edit of the note is seen half done
+    private <T> T read(Supplier<T> reading) {
+        while (true) {
+            Folder folder = this.folder;
+            if (folder == null) {
+                return reading.get();
+            }
+            List<T> result = folder.read(() -> folder == this.folder
+                    ? Collections.singletonList(reading.get()) : null);
+            if (result != null) {
+                return result.get(0);
+            }
+            // the note moved to another folder meanwhile, whose lock guards it now
+        }
+    }
+
+    // REQUIRES: the thread holds the lock of the note's folder, if it is in one
+    // EFFECTS: returns the current state of the note; the text of an encrypted note is
+    //          encrypted the first time the state is written, and again once the key
+    //          protecting it changed
+    private Snapshot capture() {
+        Supplier<String> plain = this.textSource;
+        if (plain == null && !this.isTextEncrypted()) {
+            String text = this.textString();
+            plain = () -> text;
+        }
+        SecretKey key = this.protectingKey();
+        if (key != null && !this.isTextEncrypted()
+                && (this.encryptedText == null || !key.equals(this.encryptedWith))) {
+            Supplier<String> source = plain;
+            this.encryptedWith = key;
+            this.encryptedText = once(() -> BodyCipher.encrypt(source.get(), key));
+        }
+        return new Snapshot(this, plain, this.isEncrypted() ? this.encryptedText : null);
+    }
+
+    // EFFECTS: returns a supplier of what supplier gives, asking supplier only the first time
+    private static Supplier<String> once(Supplier<String> supplier) {
+        String[] value = {null};
+        return () -> {
+            synchronized (value) {
+                if (value[0] == null) {
+                    value[0] = supplier.get();
+                }
+                return value[0];
+            }
+        };
+    }
+
+    // MODIFIES: this.folder
+    // EFFECTS: re-indexes the note in its folder after its title or text changed
+    private void reindex() {
+        if (this.folder != null) {
+            this.folder.indexNote(this);
+        }
+    }
+
+    // MODIFIES: this, this.folder
+    // EFFECTS: marks the note as changed since it was last saved
+    @Override
+    protected void changed() {
+        this.dirty = true;
+        if (this.folder != null) {
+            this.folder.noteChanged(this);
+        }
+    }
+
+    // EFFECTS: returns true if the note changed since it was last saved; false otherwise
+    public boolean isDirty() {
+        return this.dirty;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: marks the note as saved
+    public void markClean() {
+        this.dirty = false;
+    }
+
+    // EFFECTS: derives the key of the password off the thread that applies it
+    @Override
+    protected void prepareKey(String password, String passwordHash) {
+        sessionKey(password, passwordHash);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: decrypts the text if it is still encrypted
+    @Override
+    protected void passwordVerified(String password) {
+        if (this.isTextEncrypted()) {
+            this.decrypt(sessionKey(password, this.getPasswordHash()));
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: decrypts the text if it is still encrypted under the password of the note's folder,
+    //          which unlocks the note, unless the note has a password of its own
+    void unseal(SecretKey folderKey) {
+        this.update(() -> {
+            if (!this.hasLock() && this.isTextEncrypted()) {
+                this.decrypt(folderKey);
+                this.changed();
+            }
+        });
+    }
+
+    // REQUIRES: isTextEncrypted()
+    // MODIFIES: this
+    // EFFECTS: decrypts the text with key, keeping the encrypted text to save while it is unchanged;
+    //          throws IllegalArgumentException if the text was not encrypted with key
+    private void decrypt(SecretKey key) {
+        String text = BodyCipher.decrypt(this.encryptedText.get(), key);
+        this.encryptedWith = key;
+        this.text = new PieceTable(text);
+        this.textChanged();
+        this.reindex();
+    }
+
+    // MODIFIES: this
+    // EFFECTS: unlocks the note as Lockable does; a note without a password of its own in a folder
+    //          with one is unlocked by unlocking its folder with the password
+    @Override
+    public boolean unlock(String password) {
+        Folder folder = this.protectingFolder();
+        return folder == null ? super.unlock(password) : folder.unlock(password);
+    }
+
+    // EFFECTS: unlocks the note as Lockable does without waiting for the password to be checked;
+    //          a note without a password of its own in a folder with one is unlocked by unlocking
+    //          its folder with the password
+    @Override
+    public CompletableFuture<Boolean> unlockAsync(String password, Executor executor) {
+        Folder folder = this.protectingFolder();
+        return folder == null ? super.unlockAsync(password, executor) : folder.unlockAsync(password, executor);
+    }
+
+    // EFFECTS: returns the folder whose password protects the note, as the note has none of its own;
+    //          null if the note has a password or its folder has none
+    private Folder protectingFolder() {
+        Folder folder = this.folder;
+        return this.hasLock() || folder == null || !folder.hasLock() ? null : folder;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: keeps the key of the new password to encrypt the text with
+    @Override
+    protected void passwordSet(String password) {
+        if (!this.isTextEncrypted()) {
+            this.key = sessionKey(password, this.getPasswordHash());
+        }
+    }
+
+    // EFFECTS: returns a JSON representation of the note;
+    //          it does NOT include the folder
+    @Override
+    public JSONObject toJson() {
+        return this.read(this::capture).toJson();
     }
 
     /**
      * GETTERS AND SETTERS
      */
+    public String getId() {
+        return id;
+    }
+
     public String getTitle() {
         return title;
     }
 
+    // EFFECTS: returns the text of the note, loading it into memory the first time;
+    //          returns an empty text while it is encrypted
     public String getText() {
-        return text;
+        loadText();
+        return read(() -> isTextEncrypted() ? "" : textString());
     }
 
     public LocalDateTime getDateTimeAdded() {
@@ -235,19 +733,224 @@ public class Note extends Lockable implements Writable {
         return folder;
     }
 
+    public void setId(String id) {
+        this.update(() -> this.id = id);
+    }
+
+    @Override
+    public void setLocked(boolean locked) {
+        this.update(() -> super.setLocked(locked));
+    }
+
     public void setTitle(String title) {
-        this.title = title;
+        this.update(() -> {
+            this.title = title;
+            this.summary = null;
+            this.summaryKey = null;
+            this.titleWordCount = -1;
+            this.reindex();
+            this.changed();
+        });
     }
 
     public void setText(String text) {
-        this.text = text;
+        this.update(() -> {
+            this.text = text == null ? null : new PieceTable(text);
+            this.textSource = null;
+            this.textPreview = null;
+            this.encryptedText = null;
+            this.textChanged();
+            this.reindex();
+            this.changed();
+        });
+    }
+
+    // REQUIRES: preview is what getTextPreview would return for the text the source supplies
+    // MODIFIES: this
+    // EFFECTS: sets the text of the note to be loaded from source the first time it is needed
+    public void setText(String preview, Supplier<String> source) {
+        this.update(() -> {
+            this.text = null;
+            this.textSource = source;
+            this.textPreview = preview;
+            this.encryptedText = null;
+            this.textChanged();
+            this.reindex();
+            this.changed();
+        });
+    }
+
+    // REQUIRES: the note has the password hash the text was encrypted under, or has none and
+    //          the text was encrypted under the password hash of the folder it is or will be in
+    // MODIFIES: this
+    // EFFECTS: sets the text of the note to be decrypted from source once the note is unlocked,
+    //          locking the note, or leaving it to be unlocked with its folder if it has no password
+    public void setEncryptedText(Supplier<String> source) {
+        this.update(() -> {
+            this.text = null;
+            this.textSource = null;
+            this.textPreview = null;
+            this.encryptedText = source;
+            this.encryptedWith = null;
+            this.key = null;
+            this.textChanged();
+            if (this.hasLock()) {
+                this.setLocked(true);
+            }
+            this.reindex();
+            this.changed();
+        });
+    }
+
+    // REQUIRES: the note has the password hash the text was encrypted under, or has none and
+    //          the text was encrypted under the password hash of the folder it is or will be in
+    // MODIFIES: this
+    // EFFECTS: sets the text of the note to be decrypted once the note is unlocked, locking the note,
+    //          or leaving it to be unlocked with its folder if it has no password
+    public void setEncryptedText(String encryptedText) {
+        this.setEncryptedText(() -> encryptedText);
+    }
+
+    // REQUIRES: the text is not encrypted unless passwordHash is the hash it was encrypted under
+    // MODIFIES: this
+    // EFFECTS: sets the password hash, forgetting the key of the previous password
+    @Override
+    public void setPasswordHash(String passwordHash) {
+        this.update(() -> {
+            if (!Objects.equals(passwordHash, this.getPasswordHash())) {
+                this.key = null;
+                if (!this.isTextEncrypted()) {
+                    this.encryptedText = null;
+                }
+            }
+            super.setPasswordHash(passwordHash);
+        });
     }
 
     public void setDateTimeAdded(LocalDateTime dateTimeAdded) {
-        this.dateTimeAdded = dateTimeAdded;
+        this.update(() -> {
+            boolean ordered = this.folder != null && this.folder.unorder(this);
+            this.dateTimeAdded = dateTimeAdded;
+            if (ordered) {
+                this.folder.order(this);
+            }
+            this.changed();
+        });
     }
 
     public void setDateTimeModified(LocalDateTime dateTimeModified) {
-        this.dateTimeModified = dateTimeModified;
+        this.update(() -> {
+            boolean ordered = this.folder != null && this.folder.unorder(this);
+            this.dateTimeModified = dateTimeModified;
+            if (ordered) {
+                this.folder.order(this);
+            }
+            this.changed();
+        });
+    }
+
+    // The state of a note when a snapshot of the folders was taken, which never changes.
+    public static final class Snapshot implements Writable {
+        private final String id;
+        private final String title;
+        // the plain text, or null while it is encrypted
+        private final Supplier<String> text;
+        private final String textPreview;
+        // the encrypted text, or null if the text is saved as plain text
+        private final Supplier<String> encryptedText;
+        private final LocalDateTime dateTimeAdded;
+        private final LocalDateTime dateTimeModified;
+        private final boolean locked;
+        private final String passwordHash;
+
+        // EFFECTS: creates the state of the note with the given plain and encrypted texts
+        private Snapshot(Note note, Supplier<String> text, Supplier<String> encryptedText) {
+            this.id = note.getId();
+            this.title = note.title;
+            this.text = text;
+            this.textPreview = note.textSource == null ? null : note.textPreview;
+            this.encryptedText = encryptedText;
+            this.dateTimeAdded = note.dateTimeAdded;
+            this.dateTimeModified = note.dateTimeModified;
+            this.locked = note.isLockSet();
+            this.passwordHash = note.getPasswordHash();
+        }
+
+        // EFFECTS: returns true if the text is saved encrypted; false otherwise
+        public boolean isEncrypted() {
+            return this.encryptedText != null;
+        }
+
+        // EFFECTS: returns the text; an empty text while it is encrypted
+        public String readText() {
+            return this.text == null ? "" : this.text.get();
+        }
+
+        // EFFECTS: returns the first SUMMARY_LENGTH + 1 characters of the text, or all of it if it
+        //          is shorter
+        public String getTextPreview() {
+            if (this.textPreview != null) {
+                return this.textPreview;
+            }
+            String text = this.readText();
+            return text.length() > SUMMARY_LENGTH ? text.substring(0, SUMMARY_LENGTH + 1) : text;
+        }
+
+        // REQUIRES: isEncrypted()
+        // EFFECTS: returns the text encrypted with the key of the password
+        public String getEncryptedText() {
+            return this.encryptedText.get();
+        }
+
+        // EFFECTS: returns a JSON representation of the note as it was
+        @Override
+        public JSONObject toJson() {
+            JSONObject json = new JSONObject();
+            json.put("id", this.id);
+            if (this.isEncrypted()) {
+                json.put("encryptedText", this.getEncryptedText());
+            } else {
+                json.put("text", this.text == null ? null : this.text.get());
+            }
+            json.put("dateTimeAdded", this.dateTimeAdded);
+            json.put("dateTimeModified", this.dateTimeModified);
+
+            if (this.title != null) {
+                json.put("title", this.title);
+            }
+            json.put("locked", this.locked);
+            if (this.passwordHash != null) {
+                json.put("passwordHash", this.passwordHash);
+            }
+
+            return json;
+        }
+
+        /**
+         * GETTERS AND SETTERS
+         */
+        public String getId() {
+            return id;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public LocalDateTime getDateTimeAdded() {
+            return dateTimeAdded;
+        }
+
+        public LocalDateTime getDateTimeModified() {
+            return dateTimeModified;
+        }
+
+        public boolean isLocked() {
+            return locked;
+        }
+
+        public String getPasswordHash() {
+            return passwordHash;
+        }
     }
 }
@@ -0,0 +1,114 @@
+package model;
+
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Represents the relevance-ranked results of a search across folders.
+//
+// Hits are kept in a heap and only ranked as far as the requested pages reach,
+// so asking for the first page of a large result set does not sort all of it.
+public class SearchResults implements Iterable<Note> {
+    private final PriorityQueue<Hit> unranked;
+    private final List<Note> ranked = new ArrayList<>();
+    private final int total;
+    private final boolean complete;
+
+    // EFFECTS: creates search results from the scored hits; complete is false
+    //          if the search was cut short by its result limit or latency budget
+    SearchResults(Collection<Hit> hits, boolean complete) {
+        this.unranked = new PriorityQueue<>(Math.max(1, hits.size()), Hit.BEST_FIRST);
+        this.unranked.addAll(hits);
+        this.total = hits.size();
+        this.complete = complete;
+    }
+
+    // REQUIRES: pageIndex >= 0 and pageSize > 0
+    // MODIFIES: this
+    // EFFECTS: returns the notes on the given page, best match first,
+    //          assuming page indexing starts at 0; returns an empty list past the last page
+    public List<Note> page(int pageIndex, int pageSize) {
+        int from = pageIndex * pageSize;
+        int to = Math.min(from + pageSize, this.total);
+        if (from >= to) {
+            return Collections.emptyList();
+        }
+        this.rankUpTo(to);
+        return Collections.unmodifiableList(new ArrayList<>(this.ranked.subList(from, to)));
+    }
+
+    // EFFECTS: returns the number of notes found
+    public int size() {
+        return this.total;
+    }
+
+    // EFFECTS: returns true if no notes were found; false otherwise
+    public boolean isEmpty() {
+        return this.total == 0;
+    }
+
+    // EFFECTS: returns true if every matching note was scored; false if the
+    //          search stopped at its result limit or latency budget
+    public boolean isComplete() {
+        return this.complete;
+    }
+
+    // EFFECTS: returns a sequential stream of the notes, best match first
+    public Stream<Note> stream() {
+        return StreamSupport.stream(this.spliterator(), false);
+    }
+
+    // EFFECTS: returns an iterator over the notes, best match first
+    @Override
+    public Iterator<Note> iterator() {
+        return new Iterator<Note>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return this.next < total;
+            }
+
+            @Override
+            public Note next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                rankUpTo(this.next + 1);
+                return ranked.get(this.next++);
+            }
+        };
+    }
+
+    // MODIFIES: this
+    // EFFECTS: ranks hits until at least count notes are ranked
+    private void rankUpTo(int count) {
+        while (this.ranked.size() < count && !this.unranked.isEmpty()) {
+            this.ranked.add(this.unranked.poll().note);
+        }
+    }
+
+    // A note together with its relevance score.
+    static class Hit {
+        // best score first; ties go to the note found first
+        static final Comparator<Hit> BEST_FIRST = Comparator.comparingDouble((Hit hit) -> -hit.score)
+                .thenComparingLong(hit -> hit.order);
+
+        private final Note note;
+        private final long order;
+        private double score;
+
+        // EFFECTS: creates a new hit with zero score; order is the position in
+        //          which the note was found
+        Hit(Note note, long order) {
+            this.note = note;
+            this.order = order;
+        }
+
+        // MODIFIES: this
+        // EFFECTS: adds to the score of the hit
+        void addScore(double score) {
+            this.score += score;
+        }
+    }
+}
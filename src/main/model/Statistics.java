@@ -0,0 +1,77 @@
+package model;
+
+import java.util.Objects;
+
+// Represents the number of notes, words and characters of a group of notes.
+//
+// The counts are of the notes' texts, without their titles, as given by
+// Note.wordCount and Note.characterCount.
+public final class Statistics {
+    public static final Statistics EMPTY = new Statistics(0, 0, 0);
+    private final int notes;
+    private final long words;
+    private final long characters;
+
+    // EFFECTS: creates statistics of the given number of notes, words and characters
+    public Statistics(int notes, long words, long characters) {
+        this.notes = notes;
+        this.words = words;
+        this.characters = characters;
+    }
+
+    // EFFECTS: returns the statistics of the note alone, using its cached counts
+    static Statistics of(Note note) {
+        return new Statistics(1, note.wordCount(), note.characterCount());
+    }
+
+    // EFFECTS: returns the statistics of these notes together with the other notes
+    public Statistics plus(Statistics other) {
+        return new Statistics(this.notes + other.notes, this.words + other.words,
+                this.characters + other.characters);
+    }
+
+    // REQUIRES: the other notes are among these notes
+    // EFFECTS: returns the statistics of these notes without the other notes
+    public Statistics minus(Statistics other) {
+        return new Statistics(this.notes - other.notes, this.words - other.words,
+                this.characters - other.characters);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        Statistics that = (Statistics) o;
+        return this.notes == that.notes && this.words == that.words && this.characters == that.characters;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.notes, this.words, this.characters);
+    }
+
+    // EFFECTS: converts the statistics to a string
+    @Override
+    public String toString() {
+        return "Notes: " + this.notes + ", Words: " + this.words + ", Characters: " + this.characters;
+    }
+
+    /**
+     * GETTERS AND SETTERS
+     */
+    public int getNotes() {
+        return notes;
+    }
+
+    public long getWords() {
+        return words;
+    }
+
+    public long getCharacters() {
+        return characters;
+    }
+}
@@ -0,0 +1,79 @@
+package persistence;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+// Represents a file that is replaced atomically.
+//
+// Everything is written to a temporary file next to the destination, which
+// replaces the destination only once it is complete and synced to disk, so a
+// crash mid-write leaves the previous file intact.
+class AtomicFile {
+    static final String TEMPORARY_EXTENSION = ".tmp";
+    private final String destination;
+    private final String temporary;
+    private FileOutputStream stream;
+
+    // EFFECTS: constructs an atomic file that replaces the destination file
+    AtomicFile(String destination) {
+        this.destination = destination;
+        this.temporary = destination + TEMPORARY_EXTENSION;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: opens the temporary file and returns a stream writing to it;
+    //          throws FileNotFoundException if it cannot be opened for writing
+    OutputStream open() throws FileNotFoundException {
+        this.stream = new FileOutputStream(this.temporary);
+        return this.stream;
+    }
+
+    // REQUIRES: everything written has been flushed to the stream
+    // EFFECTS: syncs the temporary file to disk
+    void sync() throws IOException {
+        this.stream.getFD().sync();
+    }
+
+    // REQUIRES: the stream is synced and closed
+    // MODIFIES: this
+    // EFFECTS: replaces the destination file with the temporary file, atomically where supported;
+    //          throws IOException if it cannot be moved into place
+    void commit() throws IOException {
+        Path temporary = Paths.get(this.temporary);
+        Path destination = Paths.get(this.destination);
+        try {
+            Files.move(temporary, destination, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, destination, StandardCopyOption.REPLACE_EXISTING);
+        }
+        this.syncDirectory(destination);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: closes the stream and deletes the temporary file, leaving the destination untouched
+    void abort() {
+        try {
+            if (this.stream != null) {
+                this.stream.close();
+                Files.deleteIfExists(Paths.get(this.temporary));
+            }
+        } catch (IOException e) {
+            // nothing was committed, so there is nothing left to protect
+        }
+    }
+
+    // EFFECTS: syncs the directory holding the destination so that the rename into it is durable;
+    //          does nothing on platforms that cannot open directories
+    private void syncDirectory(Path destination) {
+        Path directory = destination.toAbsolutePath().getParent();
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // directories cannot be synced on every platform; the rename itself is still atomic
+        }
+    }
+}
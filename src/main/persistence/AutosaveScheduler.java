@@ -0,0 +1,141 @@
+package persistence;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+// Saves a workspace in the background a while after it changes.
+//
+// A burst of changes is coalesced into a single save once no change has arrived for
+// the quiet period, but never later than the maximum delay after the first change of
+// the burst, so a steady stream of edits is still saved regularly. A save is skipped
+// if nothing changed by the time it is due. Saves run one at a time on a daemon
+// thread of their own.
+public class AutosaveScheduler {
+    public static final Duration DEFAULT_QUIET_PERIOD = Duration.ofSeconds(2);
+    public static final Duration DEFAULT_MAX_DELAY = Duration.ofSeconds(30);
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "autosave");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Save save;
+    private final BooleanSupplier hasChanges;
+    private final Consumer<Exception> onFailure;
+    private final long quietPeriod;
+    private final long maxDelay;
+    // the save due for the current burst of changes, if any, and when the burst began
+    private ScheduledFuture<?> pending;
+    private long burstStart;
+    private long scheduled = 0;
+
+    // Saves the workspace.
+    public interface Save {
+        // EFFECTS: saves the workspace
+        void save() throws Exception;
+    }
+
+    // EFFECTS: creates a scheduler that runs save once changes stop arriving for the default
+    //          quiet period, at most the default maximum delay after they started, if hasChanges
+    //          is true by then; onFailure is given the exception of a failed save
+    public AutosaveScheduler(Save save, BooleanSupplier hasChanges, Consumer<Exception> onFailure) {
+        this(save, hasChanges, onFailure, DEFAULT_QUIET_PERIOD, DEFAULT_MAX_DELAY);
+    }
+
+    // REQUIRES: quietPeriod <= maxDelay
+    // EFFECTS: creates a scheduler that runs save once changes stop arriving for quietPeriod,
+    //          at most maxDelay after they started, if hasChanges is true by then; onFailure is
+    //          given the exception of a failed save
+    public AutosaveScheduler(Save save, BooleanSupplier hasChanges, Consumer<Exception> onFailure,
+                             Duration quietPeriod, Duration maxDelay) {
+        this.save = save;
+        this.hasChanges = hasChanges;
+        this.onFailure = onFailure;
+        this.quietPeriod = quietPeriod.toNanos();
+        this.maxDelay = maxDelay.toNanos();
+    }
+
+    // MODIFIES: this
+    // EFFECTS: records a change, moving the save of the current burst of changes to the end of
+    //          the quiet period, or to the maximum delay after the burst began if that is sooner
+    public synchronized void changed() {
+        if (this.executor.isShutdown()) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (this.pending == null) {
+            this.burstStart = now;
+        } else {
+            this.pending.cancel(false);
+        }
+        long delay = Math.max(0, Math.min(this.quietPeriod, this.burstStart + this.maxDelay - now));
+        long burst = ++this.scheduled;
+        this.pending = this.executor.schedule(() -> this.run(burst), delay, TimeUnit.NANOSECONDS);
+    }
+
+    // EFFECTS: returns true if a save is due for changes that were not saved yet; false otherwise
+    public synchronized boolean isPending() {
+        return this.pending != null;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: runs the save that is due right away instead of at the end of its burst, if any,
+    //          and waits for it to finish; a failed save is reported to onFailure
+    public void flush() throws InterruptedException {
+        Future<?> flushed;
+        synchronized (this) {
+            if (this.pending == null || this.executor.isShutdown()) {
+                return;
+            }
+            this.pending.cancel(false);
+            long burst = ++this.scheduled;
+            flushed = this.executor.submit(() -> this.run(burst));
+        }
+        try {
+            flushed.get();
+        } catch (ExecutionException e) {
+            // run reports a failed save to onFailure itself
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: drops the save that is due, if any, and stops saving; waits for a save that is
+    //          running to finish; call flush first to save the changes that are due
+    public void close() throws InterruptedException {
+        synchronized (this) {
+            if (this.pending != null) {
+                this.pending.cancel(false);
+                this.pending = null;
+            }
+            this.executor.shutdown();
+        }
+        this.executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: ends the burst of changes the save was scheduled for and saves, unless nothing
+    //          changed; reports a failed save to onFailure
+    private void run(long burst) {
+        synchronized (this) {
+            if (burst != this.scheduled) {
+                // a later change rescheduled the save after this one had already started
+                return;
+            }
+            this.pending = null;
+        }
+        if (!this.hasChanges.getAsBoolean()) {
+            return;
+        }
+        try {
+            this.save.save();
+        } catch (Exception e) {
+            this.onFailure.accept(e);
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package persistence;
+
+import model.Folder;
+import model.Folders;
+import model.Note;
+import utils.Lockable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.function.Supplier;
+
+// Represents a reader that reads folders from the binary data written by BinaryWriter
+//
+// Only the metadata of the notes is read eagerly. Their bodies are mapped into
+// memory from the snapshot's bodies file and each is decoded the first time its
+// note's text is needed, so loading takes time and memory in proportion to the
+// number of notes rather than their size. Encrypted bodies stay encrypted until
+// their note is unlocked.
+//
+// A bodies file is never replaced, only deleted once a newer snapshot is in place,
+// so the mappings stay valid for as long as a note refers to them.
+//
+// Files written in earlier versions of the format, which keep the bodies in the
+// snapshot itself, are read in full, so that the snapshot can be replaced by the
+// next save.
+public class BinaryReader implements SnapshotReader {
+    private static final int BUFFER_SIZE = 1 << 16;
+    // bodies are mapped in segments of about this many bytes, as a single mapping cannot exceed 2 GiB
+    private static final long SEGMENT_SIZE = 1L << 30;
+    // the first version of the format that keeps the bodies in a file of their own
+    private static final int BODIES_FILE_VERSION = 4;
+    private final String source;
+    private final long segmentSize;
+    private String generation;
+    private Progress progress = new Progress();
+
+    // EFFECTS: constructs reader to read from source file
+    public BinaryReader(String source) {
+        this(source, SEGMENT_SIZE);
+    }
+
+    // EFFECTS: constructs reader to read from source file, mapping bodies in segments of segmentSize bytes
+    BinaryReader(String source, long segmentSize) {
+        this.source = source;
+        this.segmentSize = segmentSize;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: reads folders from file, replays the file's change log if it was
+    //          written for this snapshot, and returns them with no unsaved changes;
+    //          throws IOException if an error occurs reading data from file or
+    //          the file is not a supported binary snapshot
+    @Override
+    public Folders read() throws IOException {
+        this.generation = null;
+        Folders folders;
+        try (FileChannel channel = FileChannel.open(Paths.get(this.source), StandardOpenOption.READ)) {
+            DataInputStream input = this.open(channel);
+            int version = this.readHeader(input);
+            if (version == 1) {
+                folders = this.readFolders(input);
+            } else if (version < BODIES_FILE_VERSION) {
+                long metadataStart = this.readMetadataStart(channel);
+                Bodies bodies = new Bodies(channel, metadataStart, this.segmentSize, true);
+                folders = this.readMappedFolders(this.open(channel.position(metadataStart)), bodies);
+            } else {
+                folders = this.readWithBodiesFile(input);
+            }
+        }
+        ChangeLog.forSnapshot(this.source).replay(folders, this.generation);
+        folders.markClean();
+        return folders;
+    }
+
+    // EFFECTS: reads the header from input and returns the version of the format
+    private int readHeader(DataInputStream input) throws IOException {
+        if (input.readInt() != BinaryWriter.MAGIC) {
+            throw new IOException(this.source + " is not a binary snapshot");
+        }
+        int version = input.readUnsignedShort();
+        if (version < 1 || version > BinaryWriter.VERSION) {
+            throw new IOException("Unsupported binary snapshot version " + version);
+        }
+        this.generation = readString(input);
+        return version;
+    }
+
+    // EFFECTS: reads the name table and folder records of the first version of the format
+    //          from input and returns the folders
+    private Folders readFolders(DataInputStream input) throws IOException {
+        String[] names = this.readNames(input);
+        Folders folders = new Folders();
+        int count = input.readInt();
+        this.progress.setTotalFolders(count);
+        for (int i = 0; i < count; i++) {
+            // the record length lets other readers skip folders; this one reads them all
+            input.readInt();
+            Folder folder = this.readFolder(input, names);
+            int notes = input.readInt();
+            for (int j = 0; j < notes; j++) {
+                String id = readString(input);
+                String title = readString(input);
+                Note note = new Note(readString(input));
+                this.readNoteFields(input, note, id, title);
+                note.setFolder(folder);
+            }
+            folders.add(folder);
+            this.progress.folderDone(folder.totalNotes());
+        }
+        return folders;
+    }
+
+    // EFFECTS: returns the offset of the metadata, read from the trailer at the end of the file
+    private long readMetadataStart(FileChannel channel) throws IOException {
+        ByteBuffer trailer = ByteBuffer.allocate(Long.BYTES);
+        while (trailer.hasRemaining()) {
+            if (channel.read(trailer, channel.size() - Long.BYTES + trailer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        return trailer.getLong(0);
+    }
+
+    // EFFECTS: reads the name of the bodies file and the metadata following it from input and
+    //          returns the folders, with the bodies of their notes mapped from the bodies file
+    private Folders readWithBodiesFile(DataInputStream input) throws IOException {
+        Path file = Paths.get(this.source).resolveSibling(readString(input));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return this.readMappedFolders(input, new Bodies(channel, channel.size(), this.segmentSize, false));
+        }
+    }
+
+    // EFFECTS: reads the metadata from input and returns the folders, with the bodies of
+    //          their notes taken from bodies
+    private Folders readMappedFolders(DataInputStream input, Bodies bodies) throws IOException {
+        String[] names = this.readNames(input);
+        Folders folders = new Folders();
+        int count = input.readInt();
+        this.progress.setTotalFolders(count);
+        for (int i = 0; i < count; i++) {
+            input.readInt();
+            Folder folder = this.readFolder(input, names);
+            int notes = input.readInt();
+            for (int j = 0; j < notes; j++) {
+                this.readMappedNote(input, bodies).setFolder(folder);
+            }
+            folders.add(folder);
+            this.progress.folderDone(folder.totalNotes());
+        }
+        return folders;
+    }
+
+    // EFFECTS: reads the metadata of a note and returns the note, with its body to be
+    //          taken from bodies the first time it is needed; a note without a preview has
+    //          an encrypted body
+    private Note readMappedNote(DataInputStream input, Bodies bodies) throws IOException {
+        String id = readString(input);
+        String title = readString(input);
+        String preview = readString(input);
+        Note note = new Note("");
+        this.readNoteFields(input, note, id, title);
+        long offset = input.readLong();
+        int length = input.readInt();
+        if (preview == null) {
+            note.setEncryptedText(bodies.source(offset, length));
+        } else if (length > 0) {
+            note.setText(preview, bodies.source(offset, length));
+        }
+        return note;
+    }
+
+    // EFFECTS: reads the table of folder names from input and returns it
+    private String[] readNames(DataInputStream input) throws IOException {
+        String[] names = new String[input.readInt()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = readString(input);
+        }
+        return names;
+    }
+
+    // EFFECTS: reads the fields of a folder from input and returns the folder, without its notes
+    private Folder readFolder(DataInputStream input, String[] names) throws IOException {
+        String id = readString(input);
+        Folder folder = new Folder(names[input.readInt()]);
+        folder.setId(id);
+        readLockableFields(input, folder);
+        return folder;
+    }
+
+    // MODIFIES: note
+    // EFFECTS: sets the id and title of the note and reads its timestamps and lockable details from input
+    private void readNoteFields(DataInputStream input, Note note, String id, String title) throws IOException {
+        note.setId(id);
+        note.setTitle(title);
+        note.setDateTimeAdded(readDateTime(input));
+        note.setDateTimeModified(readDateTime(input));
+        readLockableFields(input, note);
+    }
+
+    // EFFECTS: returns a buffered stream reading from the channel's current position;
+    //          closing the channel closes the stream
+    private DataInputStream open(FileChannel channel) {
+        return new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE));
+    }
+
+    // MODIFIES: lockable
+    // EFFECTS: reads lockable details from input and sets the appropriate fields
+    private static void readLockableFields(DataInput input, Lockable lockable) throws IOException {
+        lockable.setLocked(input.readBoolean());
+        lockable.setPasswordHash(readString(input));
+    }
+
+    // EFFECTS: reads a string written by BinaryWriter.writeString and returns it
+    static String readString(DataInput input) throws IOException {
+        int length = input.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // EFFECTS: reads a date and time written by BinaryWriter.writeDateTime and returns it
+    static LocalDateTime readDateTime(DataInput input) throws IOException {
+        Instant instant = Instant.ofEpochMilli(input.readLong()).plusNanos(input.readInt());
+        return LocalDateTime.ofEpochSecond(instant.getEpochSecond(), instant.getNano(), ZoneOffset.UTC);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: reports the folders and bytes read to progress
+    @Override
+    public void setProgress(Progress progress) {
+        this.progress = progress;
+    }
+
+    // EFFECTS: returns the generation of the snapshot last read; null if it has none
+    @Override
+    public String getGeneration() {
+        return this.generation;
+    }
+
+    // Maps the bodies section of a file into memory, one segment at a time.
+    //
+    // Bodies are requested in the order they are stored, so a new segment is mapped
+    // whenever a body does not fit in the current one. Mappings stay valid after the
+    // file is closed and are released once no note refers to them. Bodies that are
+    // not to be mapped are read into memory as they are requested instead.
+    private static class Bodies {
+        private final FileChannel channel;
+        private final long end;
+        private final long segmentSize;
+        private final boolean copied;
+        private MappedByteBuffer segment;
+        private long segmentStart;
+
+        // EFFECTS: constructs the bodies section of the file open in channel, which ends at end;
+        //          the bodies are read into memory if copied, and mapped otherwise
+        Bodies(FileChannel channel, long end, long segmentSize, boolean copied) {
+            this.channel = channel;
+            this.end = end;
+            this.segmentSize = segmentSize;
+            this.copied = copied;
+        }
+
+        // MODIFIES: this
+        // EFFECTS: returns a source decoding the body at offset with the given length;
+        //          throws IOException if the body lies outside the bodies section
+        Supplier<String> source(long offset, int length) throws IOException {
+            if (offset < 0 || offset + length > this.end) {
+                throw new IOException("Note body lies outside the file");
+            }
+            if (this.copied) {
+                String body = decode(this.read(offset, length), 0, length);
+                return () -> body;
+            }
+            if (this.segment == null || offset < this.segmentStart
+                    || offset + length > this.segmentStart + this.segment.capacity()) {
+                long size = Math.min(Math.max(this.segmentSize, length), this.end - offset);
+                this.segment = this.channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+                this.segmentStart = offset;
+            }
+            ByteBuffer segment = this.segment;
+            int position = (int) (offset - this.segmentStart);
+            return () -> decode(segment, position, length);
+        }
+
+        // EFFECTS: reads the length bytes at offset of the file into memory and returns them
+        private ByteBuffer read(long offset, int length) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (this.channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new EOFException();
+                }
+            }
+            return buffer;
+        }
+
+        // EFFECTS: decodes the UTF-8 bytes at position in the buffer
+        private static String decode(ByteBuffer buffer, int position, int length) {
+            byte[] bytes = new byte[length];
+            ByteBuffer view = buffer.duplicate();
+            view.position(position);
+            view.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
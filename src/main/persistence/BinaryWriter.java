@@ -0,0 +1,269 @@
+package persistence;
+
+import model.Folder;
+import model.Folders;
+import model.Note;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Represents a writer that writes a compact binary representation of folders to file
+//
+// The file starts with a header holding a magic number, the format version, the
+// snapshot's generation and the name of its bodies file. The metadata follows: a
+// table of the distinct folder names and one length-prefixed record per folder,
+// whose notes refer to their bodies by offset and length. The note bodies are
+// written back to back to the bodies file, which sits next to the snapshot and is
+// named after its generation. Keeping bodies apart lets BinaryReader load the
+// metadata alone and map the bodies into memory, decoding each only when needed.
+//
+// Every snapshot gets a bodies file of its own, so replacing a snapshot never
+// touches a file that notes read from the previous one may still have mapped, which
+// Windows would refuse. Once the new snapshot is in place, the bodies files of older
+// snapshots are deleted; one that cannot be deleted yet because it is still mapped
+// is left behind and deleted by a later save.
+//
+// The body of an encrypted note is its encrypted text, and such a note has no preview,
+// which tells readers that the body is encrypted.
+//
+// Strings are length-prefixed UTF-8 and timestamps are stored as epoch milliseconds
+// plus the nanoseconds within the millisecond, so nothing has to be formatted or
+// parsed as text.
+//
+// The folders are written from a snapshot of them, without holding any lock, so
+// other threads can keep editing them meanwhile. Each folder's record is built
+// alongside its bodies and written out with the metadata.
+public class BinaryWriter implements SnapshotWriter {
+    static final int MAGIC = 0x4E4D4253;
+    static final int VERSION = 4;
+    static final String BODIES_EXTENSION = ".bodies";
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int NANOS_PER_MILLI = 1_000_000;
+    private final String destination;
+    private final AtomicFile file;
+    private final String generation = UUID.randomUUID().toString();
+    private DataOutputStream output;
+    private FileOutputStream bodiesFile;
+    private DataOutputStream bodies;
+    private Progress progress = new Progress();
+
+    // EFFECTS: constructs writer to write to destination file
+    public BinaryWriter(String destination) {
+        this.destination = destination;
+        this.file = new AtomicFile(destination);
+    }
+
+    // EFFECTS: returns the bodies file of the snapshot with the given generation written to destination
+    static Path bodiesPath(String destination, String generation) {
+        Path snapshot = Paths.get(destination);
+        return snapshot.resolveSibling(snapshot.getFileName() + "." + generation + BODIES_EXTENSION);
+    }
+
+    // EFFECTS: deletes the bodies files of the snapshots written to destination, except the one
+    //          of the snapshot with generation keep; leaves those that cannot be deleted yet,
+    //          such as files still mapped on Windows, to a later call
+    static void deleteBodies(String destination, String keep) {
+        Path snapshot = Paths.get(destination).toAbsolutePath();
+        String prefix = snapshot.getFileName() + ".";
+        String kept = keep == null ? null : bodiesPath(destination, keep).getFileName().toString();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(snapshot.getParent())) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(prefix) && name.endsWith(BODIES_EXTENSION) && !name.equals(kept)) {
+                    deleteIfUnused(file);
+                }
+            }
+        } catch (IOException e) {
+            // the files left behind are deleted by a later save
+        }
+    }
+
+    // EFFECTS: deletes the file unless it cannot be deleted yet
+    private static void deleteIfUnused(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // still mapped by notes read from an older snapshot; a later save deletes it
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: opens writer; throws FileNotFoundException if destination file
+    //          cannot be opened for writing
+    @Override
+    public void open() throws FileNotFoundException {
+        OutputStream stream = this.progress.track(this.file.open());
+        this.output = new DataOutputStream(new BufferedOutputStream(stream, BUFFER_SIZE));
+        this.bodiesFile = new FileOutputStream(bodiesPath(this.destination, this.generation).toFile());
+        this.bodies = new DataOutputStream(new BufferedOutputStream(this.progress.track(this.bodiesFile),
+                BUFFER_SIZE));
+    }
+
+    // MODIFIES: this
+    // EFFECTS: writes binary representation of the snapshot of the folders to file; bodies
+    //          that are not in memory are copied without being kept;
+    //          throws IOException if the file cannot be written to
+    @Override
+    public void write(Folders.Snapshot folders) throws IOException {
+        this.output.writeInt(MAGIC);
+        this.output.writeShort(VERSION);
+        writeString(this.output, this.generation);
+        writeString(this.output, bodiesPath(this.destination, this.generation).getFileName().toString());
+        this.writeFolders(folders);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: closes writer, syncing the bodies and everything else written to disk, then
+    //          atomically replacing the destination file with it and deleting the bodies files
+    //          of older snapshots; throws IOException if the data cannot be written or moved into place
+    @Override
+    public void close() throws IOException {
+        try {
+            this.bodies.flush();
+            this.bodiesFile.getFD().sync();
+        } finally {
+            this.bodies.close();
+        }
+        try {
+            this.output.flush();
+            this.file.sync();
+        } finally {
+            this.output.close();
+        }
+        this.file.commit();
+        deleteBodies(this.destination, this.generation);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: closes writer and deletes everything written, leaving the destination untouched
+    @Override
+    public void abort() {
+        if (this.bodies != null) {
+            try {
+                this.bodies.close();
+            } catch (IOException e) {
+                // the file is deleted below either way
+            }
+            deleteIfUnused(bodiesPath(this.destination, this.generation));
+        }
+        this.file.abort();
+    }
+
+    // MODIFIES: this
+    // EFFECTS: reports the folders and bytes written to progress
+    @Override
+    public void setProgress(Progress progress) {
+        this.progress = progress;
+    }
+
+    // EFFECTS: returns the generation written into the snapshot, which identifies it
+    //          to the change log
+    @Override
+    public String getGeneration() {
+        return this.generation;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: writes the bodies of the notes of all folders to the bodies file, followed by
+    //          the metadata to the snapshot
+    private void writeFolders(Folders.Snapshot folders) throws IOException {
+        Map<String, Integer> names = new LinkedHashMap<>();
+        long offset = 0;
+        List<ByteArrayOutputStream> records = new ArrayList<>();
+        for (Folder.Snapshot folder : folders) {
+            names.putIfAbsent(folder.getName(), names.size());
+            ByteArrayOutputStream record = new ByteArrayOutputStream();
+            offset = this.writeBodies(folder, names.get(folder.getName()), offset, new DataOutputStream(record));
+            records.add(record);
+            this.progress.folderDone(folder.size());
+        }
+        this.writeMetadata(names, records);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: writes the table of distinct folder names followed by the folder records
+    private void writeMetadata(Map<String, Integer> names, List<ByteArrayOutputStream> records)
+            throws IOException {
+        this.output.writeInt(names.size());
+        for (String name : names.keySet()) {
+            writeString(this.output, name);
+        }
+        this.output.writeInt(records.size());
+        for (ByteArrayOutputStream record : records) {
+            this.output.writeInt(record.size());
+            record.writeTo(this.output);
+        }
+    }
+
+    // MODIFIES: this, record
+    // EFFECTS: writes the bodies of the folder's notes, the first starting at offset, and the
+    //          folder's record referring to them to record; returns the offset after the bodies
+    private long writeBodies(Folder.Snapshot folder, int nameIndex, long offset, DataOutputStream record)
+            throws IOException {
+        this.writeFolder(record, folder, nameIndex);
+        for (Note.Snapshot note : folder) {
+            String text = note.isEncrypted() ? note.getEncryptedText() : note.readText();
+            byte[] body = text.getBytes(StandardCharsets.UTF_8);
+            this.bodies.write(body);
+            this.writeNote(record, note, offset, body.length);
+            offset += body.length;
+        }
+        return offset;
+    }
+
+    // MODIFIES: output
+    // EFFECTS: writes the folder's fields, referring to its name by its index in the name table
+    private void writeFolder(DataOutputStream output, Folder.Snapshot folder, int nameIndex) throws IOException {
+        writeString(output, folder.getId());
+        output.writeInt(nameIndex);
+        output.writeBoolean(folder.isLocked());
+        writeString(output, folder.getPasswordHash());
+        output.writeInt(folder.size());
+    }
+
+    // MODIFIES: output
+    // EFFECTS: writes the note's metadata, referring to its body by offset and length
+    private void writeNote(DataOutputStream output, Note.Snapshot note, long offset, int length) throws IOException {
+        writeString(output, note.getId());
+        writeString(output, note.getTitle());
+        writeString(output, note.isEncrypted() ? null : note.getTextPreview());
+        writeDateTime(output, note.getDateTimeAdded());
+        writeDateTime(output, note.getDateTimeModified());
+        output.writeBoolean(note.isLocked());
+        writeString(output, note.getPasswordHash());
+        output.writeLong(offset);
+        output.writeInt(length);
+    }
+
+    // MODIFIES: output
+    // EFFECTS: writes the string as its length in UTF-8 bytes followed by the bytes;
+    //          a null string is written as length -1
+    static void writeString(DataOutput output, String string) throws IOException {
+        if (string == null) {
+            output.writeInt(-1);
+            return;
+        }
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    // MODIFIES: output
+    // EFFECTS: writes the date and time as milliseconds since the epoch in UTC followed by
+    //          the nanoseconds within the millisecond
+    static void writeDateTime(DataOutput output, LocalDateTime dateTime) throws IOException {
+        output.writeLong(dateTime.toInstant(ZoneOffset.UTC).toEpochMilli());
+        output.writeInt(dateTime.getNano() % NANOS_PER_MILLI);
+    }
+}
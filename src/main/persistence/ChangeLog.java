@@ -0,0 +1,338 @@
+package persistence;
+
+import model.Folder;
+import model.Folders;
+import model.Note;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import utils.SortableSet;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// Represents an append-only log of the changes saved since a workspace snapshot was written.
+//
+// Each line of the log is one JSON record. Records identify folders and notes by id and
+// replaying them is idempotent, so a log can be applied to any snapshot that was written
+// before or after the changes it records.
+//
+// The log is a write-ahead journal: it opens with the generation of the snapshot it
+// belongs to, and the records of each save are followed by a commit record and synced
+// to disk before the save returns. Replay only applies committed saves of the matching
+// snapshot, so a log torn by a crash or left behind by a newer snapshot is harmless.
+public class ChangeLog {
+    public static final String EXTENSION = ".log";
+    private static final String BEGIN = "begin";
+    private static final String COMMIT = "commit";
+    private static final String REMOVE_FOLDER = "removeFolder";
+    private static final String FOLDER = "folder";
+    private static final String REMOVE_NOTE = "removeNote";
+    private static final String NOTE = "note";
+    private static final String ORDER = "order";
+    private final Path path;
+    // the snapshot generation the log was last checked against, and the length of its committed part
+    private String generation;
+    private long committedLength;
+
+    // EFFECTS: constructs a change log stored at the given path
+    public ChangeLog(String path) {
+        this.path = Paths.get(path);
+    }
+
+    // EFFECTS: returns the change log belonging to the snapshot file
+    public static ChangeLog forSnapshot(String snapshot) {
+        return new ChangeLog(snapshot + EXTENSION);
+    }
+
+    // REQUIRES: generation is not null
+    // MODIFIES: this
+    // EFFECTS: appends a record for every folder and note changed since folders were last
+    //          marked clean as one committed save of the snapshot with the given generation,
+    //          returning the number of records written; starts the log afresh if it belongs to
+    //          another snapshot and drops any uncommitted tail left by an interrupted save;
+    //          throws IOException if the log cannot be written to
+    public int append(Folders folders, String generation) throws IOException {
+        if (!generation.equals(this.generation)) {
+            this.committedLength = this.readCommitted(generation, batch -> { });
+            this.generation = generation;
+        }
+        int records = 0;
+        try (FileChannel channel = FileChannel.open(this.path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.truncate(this.committedLength);
+            channel.position(this.committedLength);
+            Writer writer = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel),
+                    StandardCharsets.UTF_8));
+            if (this.committedLength == 0) {
+                this.write(writer, this.record(BEGIN).put("generation", generation));
+            }
+            records += folders.read(() -> this.appendChanges(writer, folders));
+            this.write(writer, this.record(COMMIT));
+            writer.flush();
+            channel.force(false);
+            this.committedLength = channel.position();
+        } catch (IOException e) {
+            this.generation = null;
+            throw e;
+        }
+        return records;
+    }
+
+    // REQUIRES: the read lock of folders is held
+    // MODIFIES: writer
+    // EFFECTS: writes a record for every folder and note changed since folders were last
+    //          marked clean, returning the number of records written
+    private int appendChanges(Writer writer, Folders folders) throws IOException {
+        int records = 0;
+        // removals go first so that a note moved between folders ends up in its new folder
+        for (String id : folders.getRemovedFolderIds()) {
+            records += this.write(writer, this.record(REMOVE_FOLDER).put("id", id));
+        }
+        for (Folder folder : folders.getFolders()) {
+            for (String id : folder.getRemovedNoteIds()) {
+                records += this.write(writer, this.record(REMOVE_NOTE).put("folder", folder.getId()).put("id", id));
+            }
+        }
+        for (Folder folder : folders.getFolders()) {
+            records += folder.read(() -> this.appendFolder(writer, folder));
+        }
+        return records;
+    }
+
+    // REQUIRES: the read lock of the folder is held
+    // MODIFIES: this
+    // EFFECTS: appends the records for the folder's own changes, changed notes and order,
+    //          returning the number of records written
+    private int appendFolder(Writer writer, Folder folder) throws IOException {
+        int records = 0;
+        if (folder.isDirty()) {
+            JSONObject record = this.record(FOLDER).put("id", folder.getId()).put("name", folder.getName());
+            record.put("locked", folder.isLocked());
+            if (folder.getPasswordHash() != null) {
+                record.put("passwordHash", folder.getPasswordHash());
+            }
+            records += this.write(writer, record);
+        }
+        for (Note note : folder.getChangedNotes()) {
+            records += this.write(writer, this.record(NOTE).put("folder", folder.getId()).put("note", note.toJson()));
+        }
+        if (folder.isReordered()) {
+            JSONArray ids = new JSONArray();
+            for (Note note : folder.getNotes()) {
+                ids.put(note.getId());
+            }
+            records += this.write(writer, this.record(ORDER).put("folder", folder.getId()).put("notes", ids));
+        }
+        return records;
+    }
+
+    // MODIFIES: folders
+    // EFFECTS: applies every committed record of the log to folders, in order, if the log
+    //          belongs to the snapshot with the given generation; does nothing if the log
+    //          does not exist or generation is null;
+    //          throws IOException if the log cannot be read
+    public void replay(Folders folders, String generation) throws IOException {
+        Map<String, Folder> foldersById = new HashMap<>();
+        Map<String, Note> notesById = new HashMap<>();
+        for (Folder folder : folders.getFolders()) {
+            this.register(folder, foldersById, notesById);
+        }
+        this.readCommitted(generation, batch -> {
+            for (JSONObject record : batch) {
+                this.apply(record, folders, foldersById, notesById);
+            }
+        });
+    }
+
+    // EFFECTS: reads the log, passing the records of each committed save to handler in order,
+    //          and returns the length in bytes of its committed part; stops at the first line
+    //          that is incomplete or unreadable; returns 0 without reading any further if the
+    //          log does not exist or does not belong to the snapshot with the given generation
+    private long readCommitted(String generation, Consumer<List<JSONObject>> handler) throws IOException {
+        if (generation == null || !Files.exists(this.path)) {
+            return 0;
+        }
+        try (InputStream stream = new BufferedInputStream(Files.newInputStream(this.path))) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            List<JSONObject> batch = new ArrayList<>();
+            long offset = 0;
+            long committed = 0;
+            for (int length = this.readLine(stream, line); length >= 0; length = this.readLine(stream, line)) {
+                offset += length;
+                JSONObject record = this.parse(line);
+                if (record == null || (committed == 0 && !this.begins(record, generation))) {
+                    break;
+                } else if (committed == 0 || record.getString("op").equals(COMMIT)) {
+                    handler.accept(batch);
+                    batch = new ArrayList<>();
+                    committed = offset;
+                } else {
+                    batch.add(record);
+                }
+            }
+            return committed;
+        }
+    }
+
+    // MODIFIES: stream, line
+    // EFFECTS: reads the next line of the stream into line and returns its length in bytes,
+    //          including the line break; returns -1 if the stream ends before the line does
+    private int readLine(InputStream stream, ByteArrayOutputStream line) throws IOException {
+        line.reset();
+        int length = 0;
+        for (int b = stream.read(); b != -1; b = stream.read()) {
+            length++;
+            if (b == '\n') {
+                return length;
+            }
+            line.write(b);
+        }
+        return -1;
+    }
+
+    // EFFECTS: returns the record held by the line; null if the line is not a complete record
+    private JSONObject parse(ByteArrayOutputStream line) {
+        try {
+            JSONObject record = new JSONObject(new String(line.toByteArray(), StandardCharsets.UTF_8));
+            return record.has("op") ? record : null;
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    // EFFECTS: returns true if the record opens a log of the snapshot with the given generation
+    private boolean begins(JSONObject record, String generation) {
+        return record.getString("op").equals(BEGIN) && generation.equals(record.optString("generation", null));
+    }
+
+    // MODIFIES: folders, foldersById, notesById
+    // EFFECTS: applies a single record to folders
+    private void apply(JSONObject record, Folders folders, Map<String, Folder> foldersById,
+                       Map<String, Note> notesById) {
+        String op = record.getString("op");
+        if (op.equals(REMOVE_FOLDER)) {
+            Folder folder = foldersById.remove(record.getString("id"));
+            if (folder != null) {
+                folders.remove(folder);
+                for (Note note : folder.getNotes()) {
+                    notesById.remove(note.getId());
+                }
+            }
+        } else if (op.equals(FOLDER)) {
+            this.applyFolder(record, folders, foldersById);
+        } else if (op.equals(REMOVE_NOTE)) {
+            Folder folder = foldersById.get(record.getString("folder"));
+            Note note = notesById.get(record.getString("id"));
+            if (folder != null && note != null && note.getFolder() == folder && folder.removeNote(note)) {
+                notesById.remove(note.getId());
+            }
+        } else if (op.equals(NOTE)) {
+            this.applyNote(record, foldersById, notesById);
+        } else if (op.equals(ORDER)) {
+            this.applyOrder(record, foldersById, notesById);
+        }
+    }
+
+    // MODIFIES: folders, foldersById
+    // EFFECTS: updates the folder of the record, creating it if it does not exist
+    private void applyFolder(JSONObject record, Folders folders, Map<String, Folder> foldersById) {
+        String id = record.getString("id");
+        Folder folder = foldersById.get(id);
+        if (folder == null) {
+            folder = new Folder(record.getString("name"));
+            folder.setId(id);
+            folders.add(folder);
+            foldersById.put(id, folder);
+        }
+        JsonReader.setLockableFields(folder, record);
+    }
+
+    // MODIFIES: foldersById, notesById
+    // EFFECTS: updates the note of the record, creating it or moving it into
+    //          the record's folder as needed
+    private void applyNote(JSONObject record, Map<String, Folder> foldersById, Map<String, Note> notesById) {
+        Folder folder = foldersById.get(record.getString("folder"));
+        if (folder == null) {
+            return;
+        }
+        JSONObject json = record.getJSONObject("note");
+        Note note = notesById.get(json.getString("id"));
+        if (note != null && note.getFolder() == folder) {
+            JsonReader.setNoteFields(note, json);
+            return;
+        }
+        if (note != null) {
+            // a moved note is read again, as its text may be encrypted under the password of its new folder
+            note.getFolder().removeNote(note);
+        }
+        note = JsonReader.parseNote(json);
+        note.setFolder(folder);
+        notesById.put(note.getId(), note);
+    }
+
+    // MODIFIES: foldersById
+    // EFFECTS: puts the notes of the record's folder in the recorded order;
+    //          notes the record does not mention keep their relative order at the end
+    private void applyOrder(JSONObject record, Map<String, Folder> foldersById, Map<String, Note> notesById) {
+        Folder folder = foldersById.get(record.getString("folder"));
+        if (folder == null) {
+            return;
+        }
+        SortableSet<Note> ordered = new SortableSet<>();
+        for (Object id : record.getJSONArray("notes")) {
+            Note note = notesById.get((String) id);
+            if (note != null && note.getFolder() == folder) {
+                ordered.add(note);
+            }
+        }
+        for (Note note : folder.getNotes()) {
+            ordered.add(note);
+        }
+        folder.setNotes(ordered);
+    }
+
+    // MODIFIES: foldersById, notesById
+    // EFFECTS: records the folder and its notes by id
+    private void register(Folder folder, Map<String, Folder> foldersById, Map<String, Note> notesById) {
+        foldersById.put(folder.getId(), folder);
+        for (Note note : folder.getNotes()) {
+            notesById.put(note.getId(), note);
+        }
+    }
+
+    // EFFECTS: returns a new record for the operation
+    private JSONObject record(String op) {
+        return new JSONObject().put("op", op);
+    }
+
+    // MODIFIES: writer
+    // EFFECTS: writes the record on its own line and returns 1
+    private int write(Writer writer, JSONObject record) throws IOException {
+        writer.write(record.toString());
+        writer.write('\n');
+        return 1;
+    }
+
+    // EFFECTS: returns the size of the log in bytes; 0 if it does not exist
+    public long size() throws IOException {
+        return Files.exists(this.path) ? Files.size(this.path) : 0;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: deletes the log if it exists
+    public void delete() throws IOException {
+        this.generation = null;
+        Files.deleteIfExists(this.path);
+    }
+}
@@ -0,0 +1,27 @@
+package persistence;
+
+import model.Folders;
+
+import java.io.IOException;
+
+// Converts workspaces between storage formats.
+public class Converter {
+    // EFFECTS: reads the workspace at source, including the changes in its change log, and
+    //          writes it as a fresh snapshot to destination, choosing both formats by the
+    //          files' extensions; returns the folders converted;
+    //          throws IOException if either file cannot be read or written
+    public static Folders convert(String source, String destination) throws IOException {
+        return convert(source, StorageFormat.forFile(source), destination, StorageFormat.forFile(destination));
+    }
+
+    // EFFECTS: reads the workspace at source in the source format, including the changes in its
+    //          change log, and writes it as a fresh snapshot to destination in the destination
+    //          format; returns the folders converted;
+    //          throws IOException if either file cannot be read or written
+    public static Folders convert(String source, StorageFormat sourceFormat,
+                                  String destination, StorageFormat destinationFormat) throws IOException {
+        Folders folders = new Workspace(source, sourceFormat).load();
+        new Workspace(destination, destinationFormat).saveSnapshot(folders);
+        return folders;
+    }
+}
@@ -3,102 +3,440 @@ package persistence;
 import model.Folder;
 import model.Folders;
 import model.Note;
-import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 import utils.Lockable;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
-import java.util.stream.Stream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 
 // Represents a reader that reads workroom from JSON data stored in file
-public class JsonReader {
+//
+// The file is parsed as a stream: folders and notes are constructed as their
+// tokens arrive, and only a single note is ever held as a JSON object, so the
+// memory needed does not depend on the size of the file.
+//
+// With a parallelism above one, the notes of each folder are split out of the
+// stream as text without being parsed, in batches of up to BATCH_CHARS characters,
+// and up to that many batches are parsed at once, while the notes are still added
+// in the order of the file. Only the batches in the pipeline's window are held as
+// text, so the memory needed still does not depend on the size of a folder; the
+// price is that folders themselves are read one after another, so a file of many
+// tiny folders gains little from the extra threads.
+public class JsonReader implements SnapshotReader {
+    // characters of note text parsed together by a thread when reading in parallel
+    private static final int BATCH_CHARS = 1 << 16;
     private String source;
+    private final int parallelism;
+    private String generation;
+    private Progress progress = new Progress();
 
     // EFFECTS: constructs reader to read from source file
     public JsonReader(String source) {
+        this(source, 1);
+    }
+
+    // REQUIRES: parallelism > 0
+    // EFFECTS: constructs reader to read from source file, parsing the notes of each folder
+    //          on up to parallelism threads
+    public JsonReader(String source, int parallelism) {
         this.source = source;
+        this.parallelism = parallelism;
     }
 
-    // EFFECTS: reads folders from file and returns it;
+    // MODIFIES: this
+    // EFFECTS: reads folders from file, replays the file's change log if it was
+    // written for this snapshot, and returns them with no unsaved changes;
     // throws IOException if an error occurs reading data from file
+    @Override
     public Folders read() throws IOException {
-        String jsonData = readFile(source);
-        JSONObject jsonObject = new JSONObject(jsonData);
-        return this.parseFolders(jsonObject);
+        this.generation = null;
+        Folders folders = this.readSnapshot();
+        ChangeLog.forSnapshot(this.source).replay(folders, this.generation);
+        folders.markClean();
+        return folders;
     }
 
-    // EFFECTS: reads source file as string and returns it
-    private String readFile(String source) throws IOException {
-        StringBuilder contentBuilder = new StringBuilder();
-
-        try (Stream<String> stream = Files.lines(Paths.get(source), StandardCharsets.UTF_8)) {
-            stream.forEach(contentBuilder::append);
+    // EFFECTS: reads folders from file and returns it;
+    // throws IOException if an error occurs reading data from file
+    private Folders readSnapshot() throws IOException {
+        InputStream stream = this.progress.track(Files.newInputStream(Paths.get(this.source)));
+        try (Reader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+                ParallelPipeline pipeline = new ParallelPipeline(this.parallelism)) {
+            return this.parseFolders(new JSONTokener(reader), pipeline);
+        } catch (JSONException e) {
+            // the tokener wraps errors of the underlying reader
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
         }
-
-        return contentBuilder.toString();
     }
 
-    // EFFECTS: parses folders from JSON object and returns it
-    private Folders parseFolders(JSONObject jsonObject) {
+    // EFFECTS: parses folders from the JSON stream and returns it
+    private Folders parseFolders(JSONTokener tokener, ParallelPipeline pipeline) {
         Folders folders = new Folders();
-        this.addFolders(folders, jsonObject);
+        boolean[] found = {false};
+        this.readObject(tokener, key -> {
+            if (key.equals("folders")) {
+                found[0] = true;
+                this.readArray(tokener, () -> this.addFolder(folders, this.readFolder(tokener, pipeline)));
+            } else if (key.equals("generation")) {
+                this.generation = this.nextString(tokener, key);
+            } else {
+                tokener.nextValue();
+            }
+        });
+        if (!found[0]) {
+            throw new JSONException("JSONObject[\"folders\"] not found.");
+        }
         return folders;
     }
 
     // MODIFIES: folders
-    // EFFECTS: parses folder from JSON object and adds it to folders
-    private void addFolders(Folders folders, JSONObject jsonObject) {
-        JSONArray jsonArray = jsonObject.getJSONArray("folders");
-        for (Object json : jsonArray) {
-            JSONObject nextFolder = (JSONObject) json;
-            addFolder(folders, nextFolder);
+    // EFFECTS: adds the folder read to folders and reports it to the progress
+    private void addFolder(Folders folders, Folder folder) {
+        folders.add(folder);
+        this.progress.folderDone(folder.totalNotes());
+    }
+
+    // EFFECTS: parses folder from the JSON stream and returns it;
+    //          notes that arrive before the folder's name are held until it is known
+    private Folder readFolder(JSONTokener tokener, ParallelPipeline pipeline) {
+        FolderBuilder builder = new FolderBuilder();
+        this.readObject(tokener, key -> {
+            switch (key) {
+                case "name":
+                    builder.setName(this.nextString(tokener, key));
+                    break;
+                case "id":
+                    builder.setId(this.nextString(tokener, key));
+                    break;
+                case "notes":
+                    this.readNotes(tokener, pipeline, builder);
+                    break;
+                default:
+                    builder.fields.put(key, tokener.nextValue());
+            }
+        });
+        Folder folder = builder.build();
+        setLockableFields(folder, builder.fields);
+        return folder;
+    }
+
+    // MODIFIES: builder
+    // EFFECTS: parses the notes array from the JSON stream and adds the notes to builder,
+    //          parsing batches of them on the threads of the pipeline if reading in parallel
+    private void readNotes(JSONTokener tokener, ParallelPipeline pipeline, FolderBuilder builder) {
+        if (this.parallelism == 1) {
+            this.readArray(tokener, () -> builder.addNote(parseNote(this.nextObject(tokener, "notes"))));
+            return;
+        }
+        try {
+            pipeline.run(new ObjectScanner(tokener), JsonReader::parseNotes, notes -> {
+                for (Note note : notes) {
+                    builder.addNote(note);
+                }
+            });
+        } catch (IOException e) {
+            throw new JSONException(e);
         }
     }
 
-    // MODIFIES: folders
-    // EFFECTS: parses folder from JSON object and adds it to folders
-    private void addFolder(Folders folders, JSONObject jsonObject) {
-        String name = jsonObject.getString("name");
-        Folder folder = new Folder(name);
-        JSONArray jsonArray = jsonObject.getJSONArray("notes");
-        for (Object json : jsonArray) {
-            JSONObject nextNote = (JSONObject) json;
-            addNote(folder, nextNote);
-        }
-        this.setLockableFields(folder, jsonObject);
-        folders.add(folder);
+    // EFFECTS: parses the notes from the texts of their JSON objects and returns them
+    private static List<Note> parseNotes(List<String> texts) {
+        List<Note> notes = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            notes.add(parseNote(new JSONObject(text)));
+        }
+        return notes;
     }
 
-    // MODIFIES: folder
-    // EFFECTS: parses note from JSON object and adds it to the folder
-    private void addNote(Folder folder, JSONObject jsonObject) {
-        String text = jsonObject.getString("text");
-        String title = jsonObject.optString("title", null);
-        String dateTimeAdded = jsonObject.getString("dateTimeAdded");
-        String dateTimeModified = jsonObject.getString("dateTimeModified");
+    // EFFECTS: parses note from JSON object and returns it, without adding it to a folder
+    static Note parseNote(JSONObject jsonObject) {
+        Note note = new Note(jsonObject.optString("text", ""));
+        setNoteFields(note, jsonObject);
+        return note;
+    }
 
-        Note note = new Note(text, folder);
-        note.setDateTimeAdded(LocalDateTime.parse(dateTimeAdded));
-        note.setDateTimeModified(LocalDateTime.parse(dateTimeModified));
-        if (title != null) {
-            note.setTitle(title);
+    // MODIFIES: note
+    // EFFECTS: parses note details from JSON object and sets the appropriate fields;
+    //          an encrypted text is kept encrypted until the note is unlocked
+    static void setNoteFields(Note note, JSONObject jsonObject) {
+        String id = jsonObject.optString("id", null);
+        if (id != null) {
+            note.setId(id);
+        }
+        String encryptedText = jsonObject.optString("encryptedText", null);
+        if (encryptedText == null) {
+            note.setText(jsonObject.getString("text"));
+        }
+        note.setTitle(jsonObject.optString("title", null));
+        note.setDateTimeAdded(LocalDateTime.parse(jsonObject.getString("dateTimeAdded")));
+        note.setDateTimeModified(LocalDateTime.parse(jsonObject.getString("dateTimeModified")));
+        setLockableFields(note, jsonObject);
+        if (encryptedText != null) {
+            note.setEncryptedText(encryptedText);
         }
-        this.setLockableFields(note, jsonObject);
     }
 
-    // MODIFIES: this
+    // MODIFIES: lockable
     // EFFECTS: parses lockable details from JSON object and sets the appropriate
     // fields
-    private void setLockableFields(Lockable lockable, JSONObject jsonObject) {
+    static void setLockableFields(Lockable lockable, JSONObject jsonObject) {
         lockable.setLocked(jsonObject.getBoolean("locked"));
+        lockable.setPasswordHash(jsonObject.optString("passwordHash", null));
+    }
+
+    // EFFECTS: reads the next value from the stream and returns it if it is a string;
+    //          throws JSONException otherwise
+    private String nextString(JSONTokener tokener, String key) {
+        Object value = tokener.nextValue();
+        if (!(value instanceof String)) {
+            throw new JSONException("JSONObject[\"" + key + "\"] is not a string.");
+        }
+        return (String) value;
+    }
+
+    // EFFECTS: reads the next value from the stream and returns it if it is an object;
+    //          throws JSONException otherwise
+    private JSONObject nextObject(JSONTokener tokener, String key) {
+        Object value = tokener.nextValue();
+        if (!(value instanceof JSONObject)) {
+            throw new JSONException("JSONArray[\"" + key + "\"] must only hold objects.");
+        }
+        return (JSONObject) value;
+    }
+
+    // EFFECTS: reads a JSON object from the stream, calling handler with each key;
+    //          the handler must consume the key's value
+    private void readObject(JSONTokener tokener, MemberHandler handler) {
+        if (tokener.nextClean() != '{') {
+            throw tokener.syntaxError("A JSONObject text must begin with '{'");
+        }
+        if (tokener.nextClean() == '}') {
+            return;
+        }
+        tokener.back();
+        while (true) {
+            handler.member(this.nextKey(tokener));
+            char next = tokener.nextClean();
+            if (next == '}') {
+                return;
+            } else if (next != ',') {
+                throw tokener.syntaxError("Expected a ',' or '}'");
+            }
+        }
+    }
+
+    // EFFECTS: reads an object key and the colon after it from the stream and returns the key
+    private String nextKey(JSONTokener tokener) {
+        char quote = tokener.nextClean();
+        if (quote != '"' && quote != '\'') {
+            throw tokener.syntaxError("A JSONObject key must be a string");
+        }
+        String key = tokener.nextString(quote);
+        if (tokener.nextClean() != ':') {
+            throw tokener.syntaxError("Expected a ':' after a key");
+        }
+        return key;
+    }
+
+    // EFFECTS: reads a JSON array from the stream, calling handler for each element;
+    //          the handler must consume the element
+    private void readArray(JSONTokener tokener, ElementHandler handler) {
+        if (tokener.nextClean() != '[') {
+            throw tokener.syntaxError("A JSONArray text must start with '['");
+        }
+        if (tokener.nextClean() == ']') {
+            return;
+        }
+        tokener.back();
+        while (true) {
+            handler.element();
+            char next = tokener.nextClean();
+            if (next == ']') {
+                return;
+            } else if (next != ',') {
+                throw tokener.syntaxError("Expected a ',' or ']'");
+            }
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: reports the folders and bytes read to progress
+    @Override
+    public void setProgress(Progress progress) {
+        this.progress = progress;
+    }
+
+    // EFFECTS: returns the generation of the snapshot last read; null if it has none
+    @Override
+    public String getGeneration() {
+        return this.generation;
+    }
+
+    // Handles a key of a streamed JSON object.
+    private interface MemberHandler {
+        // EFFECTS: consumes the value of the key from the stream
+        void member(String key);
+    }
+
+    // Handles an element of a streamed JSON array.
+    private interface ElementHandler {
+        // EFFECTS: consumes the element from the stream
+        void element();
+    }
+
+    // Splits the objects of a JSON array out of a stream as text, without parsing them,
+    // in batches of up to BATCH_CHARS characters; an object longer than that is a batch of its own.
+    private static class ObjectScanner implements Iterator<List<String>> {
+        private final JSONTokener tokener;
+        private boolean done;
+
+        // EFFECTS: constructs a scanner over the array starting at the tokener's position
+        ObjectScanner(JSONTokener tokener) {
+            this.tokener = tokener;
+            if (tokener.nextClean() != '[') {
+                throw tokener.syntaxError("A JSONArray text must start with '['");
+            }
+            this.done = tokener.nextClean() == ']';
+            if (!this.done) {
+                tokener.back();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !this.done;
+        }
+
+        // MODIFIES: this
+        // EFFECTS: returns the texts of the next batch of objects of the array and consumes
+        //          the separators after them
+        @Override
+        public List<String> next() {
+            if (this.done) {
+                throw new NoSuchElementException();
+            }
+            List<String> batch = new ArrayList<>();
+            int chars = 0;
+            while (!this.done && chars < BATCH_CHARS) {
+                String json = this.nextObject();
+                batch.add(json);
+                chars += json.length();
+                char next = this.tokener.nextClean();
+                if (next == ']') {
+                    this.done = true;
+                } else if (next != ',') {
+                    throw this.tokener.syntaxError("Expected a ',' or ']'");
+                }
+            }
+            return batch;
+        }
+
+        // MODIFIES: this
+        // EFFECTS: reads the text of an object up to its closing brace
+        private String nextObject() {
+            if (this.tokener.nextClean() != '{') {
+                throw this.tokener.syntaxError("A JSONObject text must begin with '{'");
+            }
+            StringBuilder json = new StringBuilder("{");
+            int depth = 1;
+            while (depth > 0) {
+                char c = this.nextChar();
+                json.append(c);
+                if (c == '"' || c == '\'') {
+                    this.appendString(json, c);
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                }
+            }
+            return json.toString();
+        }
+
+        // MODIFIES: this, json
+        // EFFECTS: appends the rest of a string opened by quote to json, up to and including its closing quote
+        private void appendString(StringBuilder json, char quote) {
+            for (char c = this.nextChar(); c != quote; c = this.nextChar()) {
+                json.append(c);
+                if (c == '\\') {
+                    json.append(this.nextChar());
+                }
+            }
+            json.append(quote);
+        }
+
+        // MODIFIES: this
+        // EFFECTS: returns the next character of the stream; throws JSONException at its end
+        private char nextChar() {
+            char c = this.tokener.next();
+            if (c == 0 && this.tokener.end()) {
+                throw this.tokener.syntaxError("Unterminated object");
+            }
+            return c;
+        }
+    }
+
+    // Collects the parts of a folder as they are read from the stream.
+    private static class FolderBuilder {
+        private final JSONObject fields = new JSONObject();
+        private final List<Note> pendingNotes = new ArrayList<>();
+        private Folder folder;
+        private String id;
+
+        // MODIFIES: this
+        // EFFECTS: sets the id of the folder, now or once it is created
+        void setId(String id) {
+            this.id = id;
+            if (this.folder != null) {
+                this.folder.setId(id);
+            }
+        }
+
+        // MODIFIES: this
+        // EFFECTS: creates the folder and moves any pending notes into it
+        void setName(String name) {
+            this.folder = new Folder(name);
+            if (this.id != null) {
+                this.folder.setId(this.id);
+            }
+            for (Note note : this.pendingNotes) {
+                note.setFolder(this.folder);
+            }
+            this.pendingNotes.clear();
+        }
+
+        // MODIFIES: this
+        // EFFECTS: adds the note to the folder, or holds it until the folder is created
+        void addNote(Note note) {
+            if (this.folder != null) {
+                note.setFolder(this.folder);
+            } else {
+                this.pendingNotes.add(note);
+            }
+        }
 
-        String passwordHash = jsonObject.optString("passwordHash", null);
-        if (passwordHash != null) {
-            lockable.setPasswordHash(passwordHash);
+        // EFFECTS: returns the folder; throws JSONException if it has no name
+        Folder build() {
+            if (this.folder == null) {
+                throw new JSONException("JSONObject[\"name\"] not found.");
+            }
+            return this.folder;
         }
     }
 }
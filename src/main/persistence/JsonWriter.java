@@ -1,46 +1,265 @@
 package persistence;
 
+import model.Folder;
 import model.Folders;
+import model.Note;
+import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
 
 // Represents a writer that writes JSON representation of folders to file
-public class JsonWriter {
+//
+// Folders and notes are written to a buffered stream as they are iterated,
+// so the whole document is never held in memory and writing starts at once.
+// The stream goes to a temporary file next to the destination, which replaces
+// the destination only once it is complete and synced to disk, so a crash
+// mid-save leaves the previous file intact.
+//
+// With a parallelism above one, the notes of each folder are serialised in batches
+// of NOTES_PER_BATCH concurrently on that many threads and written out in order,
+// producing the same bytes as writing them one after another. Only the batches in
+// the pipeline's window are held as text at once, so a single folder of any size
+// is never buffered whole; the price is that the notes of one folder are finished
+// before those of the next are started, so a workspace of many tiny folders gains
+// little from the extra threads.
+//
+// The folders are written from a snapshot of them, without holding any lock, so
+// other threads can keep editing them meanwhile.
+public class JsonWriter implements SnapshotWriter {
     private static final int TAB = 4;
-    private PrintWriter writer;
+    private static final int BUFFER_SIZE = 1 << 16;
+    // notes serialised together by a thread when writing in parallel
+    private static final int NOTES_PER_BATCH = 64;
+    private final AtomicFile file;
+    private final int parallelism;
+    private Writer writer;
     private String destination;
+    private final String generation = UUID.randomUUID().toString();
+    private Progress progress = new Progress();
 
     // EFFECTS: constructs writer to write to destination file
     public JsonWriter(String destination) {
+        this(destination, 1);
+    }
+
+    // REQUIRES: parallelism > 0
+    // EFFECTS: constructs writer to write to destination file, serialising
+    //          the notes of each folder on up to parallelism threads
+    public JsonWriter(String destination, int parallelism) {
         this.destination = destination;
+        this.file = new AtomicFile(destination);
+        this.parallelism = parallelism;
+    }
+
+    // EFFECTS: constructs writer to write fragments of a document to writer
+    private JsonWriter(Writer writer) {
+        this.file = null;
+        this.parallelism = 1;
+        this.writer = writer;
     }
 
     // MODIFIES: this
     // EFFECTS: opens writer; throws FileNotFoundException if destination file
     // cannot
     // be opened for writing
+    @Override
     public void open() throws FileNotFoundException {
-        writer = new PrintWriter(destination);
+        OutputStream stream = this.progress.track(this.file.open());
+        this.writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: writes JSON representation of the snapshot of the folders to file;
+    //          throws IOException if the file cannot be written to
+    @Override
+    public void write(Folders.Snapshot folders) throws IOException {
+        try {
+            this.writer.write("{\n");
+            this.writeMember("generation", JSONObject.quote(this.generation), 1);
+            this.indent(1);
+            this.writeKey("folders");
+            this.writer.write('[');
+            this.closeArray(this.writeFolders(folders), 1);
+            this.writer.write("\n}");
+        } catch (JSONException e) {
+            // JSONObject wraps errors of the underlying writer
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
     }
 
     // MODIFIES: this
-    // EFFECTS: writes JSON representation of folders to file
-    public void write(Folders folders) {
-        JSONObject json = folders.toJson();
-        this.saveToFile(json.toString(TAB));
+    // EFFECTS: closes writer, syncing everything written to disk and then atomically
+    //          replacing the destination file with it;
+    //          throws IOException if the data cannot be written or moved into place
+    @Override
+    public void close() throws IOException {
+        try {
+            this.writer.flush();
+            this.file.sync();
+        } finally {
+            this.writer.close();
+        }
+        this.file.commit();
     }
 
     // MODIFIES: this
-    // EFFECTS: closes writer
-    public void close() {
-        writer.close();
+    // EFFECTS: closes writer and deletes everything written, leaving the destination untouched
+    @Override
+    public void abort() {
+        this.file.abort();
     }
 
     // MODIFIES: this
-    // EFFECTS: writes string to file
-    private void saveToFile(String json) {
-        writer.print(json);
+    // EFFECTS: reports the folders and bytes written to progress
+    @Override
+    public void setProgress(Progress progress) {
+        this.progress = progress;
+    }
+
+    // EFFECTS: returns the generation written into the snapshot, which identifies it
+    //          to the change log
+    @Override
+    public String getGeneration() {
+        return this.generation;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: writes the folders as elements of an array, returning true if there were none
+    private boolean writeFolders(Folders.Snapshot folders) throws IOException {
+        boolean empty = true;
+        try (ParallelPipeline pipeline = new ParallelPipeline(this.parallelism)) {
+            for (Folder.Snapshot folder : folders) {
+                this.writer.write(empty ? "\n" : ",\n");
+                this.writeFolder(folder, 2, pipeline);
+                this.progress.folderDone(folder.size());
+                empty = false;
+            }
+        }
+        return empty;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: writes the folder at the given depth, streaming its notes one at a time,
+    //          or in batches serialised by the pipeline if writing in parallel
+    private void writeFolder(Folder.Snapshot folder, int depth, ParallelPipeline pipeline) throws IOException {
+        this.indent(depth);
+        this.writer.write("{\n");
+        this.writeMember("id", JSONObject.quote(folder.getId()), depth + 1);
+        this.writeMember("name", JSONObject.quote(folder.getName()), depth + 1);
+        this.writeMember("locked", String.valueOf(folder.isLocked()), depth + 1);
+        if (folder.getPasswordHash() != null) {
+            this.writeMember("passwordHash", JSONObject.quote(folder.getPasswordHash()), depth + 1);
+        }
+        this.indent(depth + 1);
+        this.writeKey("notes");
+        this.writer.write('[');
+        boolean[] empty = {true};
+        if (this.parallelism == 1) {
+            for (Note.Snapshot note : folder) {
+                this.writer.write(empty[0] ? "\n" : ",\n");
+                this.writeNote(note, depth + 2);
+                empty[0] = false;
+            }
+        } else {
+            pipeline.run(new Batches<>(folder.iterator()), batch -> serialise(batch, depth + 2), json -> {
+                this.writer.write(empty[0] ? "\n" : ",\n");
+                this.writer.write(json);
+                empty[0] = false;
+            });
+        }
+        this.closeArray(empty[0], depth + 1);
+        this.writer.write('\n');
+        this.indent(depth);
+        this.writer.write('}');
+    }
+
+    // EFFECTS: returns the notes as they are written as consecutive elements of a notes array
+    //          at the given depth
+    private static String serialise(List<Note.Snapshot> notes, int depth) throws IOException {
+        StringWriter json = new StringWriter();
+        JsonWriter writer = new JsonWriter(json);
+        for (int i = 0; i < notes.size(); i++) {
+            json.write(i == 0 ? "" : ",\n");
+            writer.writeNote(notes.get(i), depth);
+        }
+        return json.toString();
+    }
+
+    // MODIFIES: this
+    // EFFECTS: writes the note as an element of a notes array at the given depth
+    private void writeNote(Note.Snapshot note, int depth) throws IOException {
+        this.indent(depth);
+        note.toJson().write(this.writer, TAB, depth * TAB);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: writes a key and its already serialised value at the given depth, followed by a comma
+    private void writeMember(String key, String value, int depth) throws IOException {
+        this.indent(depth);
+        this.writeKey(key);
+        this.writer.write(value);
+        this.writer.write(",\n");
+    }
+
+    // MODIFIES: this
+    // EFFECTS: writes a quoted key followed by a colon
+    private void writeKey(String key) throws IOException {
+        JSONObject.quote(key, this.writer);
+        this.writer.write(": ");
+    }
+
+    // MODIFIES: this
+    // EFFECTS: closes an array opened at the given depth
+    private void closeArray(boolean empty, int depth) throws IOException {
+        if (!empty) {
+            this.writer.write('\n');
+            this.indent(depth);
+        }
+        this.writer.write(']');
+    }
+
+    // MODIFIES: this
+    // EFFECTS: writes indentation for the given depth
+    private void indent(int depth) throws IOException {
+        for (int i = 0; i < depth * TAB; i++) {
+            this.writer.write(' ');
+        }
+    }
+
+    // Groups the notes of a folder into batches of NOTES_PER_BATCH, taken as they are needed.
+    private static class Batches<E> implements Iterator<List<E>> {
+        private final Iterator<E> items;
+
+        // EFFECTS: constructs batches of the items
+        Batches(Iterator<E> items) {
+            this.items = items;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.items.hasNext();
+        }
+
+        @Override
+        public List<E> next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            List<E> batch = new ArrayList<>(NOTES_PER_BATCH);
+            while (batch.size() < NOTES_PER_BATCH && this.items.hasNext()) {
+                batch.add(this.items.next());
+            }
+            return batch;
+        }
     }
 }
@@ -0,0 +1,113 @@
+package persistence;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.*;
+
+// Runs a task for each of a sequence of items on a bounded pool of threads and
+// passes the results on in the order of the items.
+//
+// At most a small multiple of the pool size of results is held at once, so the
+// items can be produced and the results consumed as a stream. The pool is kept
+// until the pipeline is closed, so one pipeline can run many short sequences.
+class ParallelPipeline implements AutoCloseable {
+    // results waiting to be consumed, per thread
+    private static final int WINDOW_PER_THREAD = 2;
+    private final int parallelism;
+    // the pool the tasks run on, or null until the first task is submitted
+    private ExecutorService executor;
+
+    // A task run on each item.
+    interface Task<E, R> {
+        // EFFECTS: returns the result for the item
+        R apply(E item) throws IOException;
+    }
+
+    // Consumes the results of a pipeline.
+    interface Sink<R> {
+        // EFFECTS: consumes the next result
+        void accept(R result) throws IOException;
+    }
+
+    // REQUIRES: parallelism > 0
+    // EFFECTS: constructs a pipeline running tasks on up to parallelism threads;
+    //          with a parallelism of 1 everything runs on the calling thread
+    ParallelPipeline(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: applies task to every item on the threads of the pipeline and passes each
+    //          result to sink on the calling thread in the order of the items; rethrows the
+    //          first exception thrown by items, task or sink
+    <E, R> void run(Iterator<E> items, Task<E, R> task, Sink<R> sink) throws IOException {
+        if (this.parallelism == 1) {
+            while (items.hasNext()) {
+                sink.accept(task.apply(items.next()));
+            }
+            return;
+        }
+        Deque<Future<R>> pending = new ArrayDeque<>();
+        try {
+            while (items.hasNext()) {
+                E item = items.next();
+                pending.add(this.executor().submit(() -> task.apply(item)));
+                if (pending.size() >= this.parallelism * WINDOW_PER_THREAD) {
+                    sink.accept(result(pending.poll()));
+                }
+            }
+            while (!pending.isEmpty()) {
+                sink.accept(result(pending.poll()));
+            }
+        } finally {
+            for (Future<R> future : pending) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: stops the threads of the pipeline
+    @Override
+    public void close() {
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: returns the pool of daemon threads of the pipeline, starting it the first time
+    private ExecutorService executor() {
+        if (this.executor == null) {
+            this.executor = Executors.newFixedThreadPool(this.parallelism, runnable -> {
+                Thread thread = new Thread(runnable, "persistence-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return this.executor;
+    }
+
+    // EFFECTS: waits for the future and returns its result, rethrowing what its task threw
+    private static <R> R result(Future<R> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a worker");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
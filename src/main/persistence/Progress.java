@@ -0,0 +1,151 @@
+package persistence;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Represents how far a load or save of a workspace has got, and lets it be cancelled.
+//
+// The load or save updates the progress on the thread it runs on while any other
+// thread reads it. Once cancelled, the next folder or block of bytes processed
+// throws CancellationException, which leaves the files on disk as they were.
+public class Progress {
+    private final AtomicInteger folders = new AtomicInteger();
+    private final AtomicInteger notes = new AtomicInteger();
+    private final AtomicLong bytes = new AtomicLong();
+    private volatile int totalFolders = -1;
+    private volatile long totalBytes = -1;
+    private volatile boolean cancelled = false;
+
+    // MODIFIES: this
+    // EFFECTS: asks the load or save to stop at the next folder or block of bytes
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    // EFFECTS: returns true if the load or save was asked to stop; false otherwise
+    public boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    // EFFECTS: throws CancellationException if the load or save was asked to stop
+    void checkCancelled() {
+        if (this.cancelled) {
+            throw new CancellationException("cancelled");
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: records that a folder and its given number of notes were read or written;
+    //          throws CancellationException if the load or save was asked to stop
+    void folderDone(int notes) {
+        this.folders.incrementAndGet();
+        this.notes.addAndGet(notes);
+        this.checkCancelled();
+    }
+
+    // EFFECTS: returns the fraction of the work done, between 0 and 1, by folders if their total
+    //          is known and by bytes otherwise; 0 if neither total is known
+    public double fraction() {
+        int totalFolders = this.totalFolders;
+        long totalBytes = this.totalBytes;
+        if (totalFolders > 0) {
+            return Math.min(1.0, (double) this.folders.get() / totalFolders);
+        } else if (totalBytes > 0) {
+            return Math.min(1.0, (double) this.bytes.get() / totalBytes);
+        }
+        return 0;
+    }
+
+    // EFFECTS: returns the stream, counting the bytes read through it and stopping
+    //          with CancellationException once the load is asked to stop
+    InputStream track(InputStream stream) {
+        return new FilterInputStream(stream) {
+            @Override
+            public int read() throws IOException {
+                int read = super.read();
+                bytesDone(read < 0 ? 0 : 1);
+                return read;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = super.read(b, off, len);
+                bytesDone(Math.max(read, 0));
+                return read;
+            }
+        };
+    }
+
+    // EFFECTS: returns the stream, counting the bytes written through it and stopping
+    //          with CancellationException once the save is asked to stop
+    OutputStream track(OutputStream stream) {
+        return new FilterOutputStream(stream) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                bytesDone(1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                bytesDone(len);
+            }
+        };
+    }
+
+    // MODIFIES: this
+    // EFFECTS: records that count bytes were read or written;
+    //          throws CancellationException if the load or save was asked to stop
+    private void bytesDone(long count) {
+        this.bytes.addAndGet(count);
+        this.checkCancelled();
+    }
+
+    // EFFECTS: describes the progress, such as "2 of 5 folders, 40 notes, 120 KB"
+    @Override
+    public String toString() {
+        int totalFolders = this.totalFolders;
+        return this.folders.get() + (totalFolders >= 0 ? " of " + totalFolders : "") + " folders, "
+                + this.notes.get() + " notes, " + this.bytes.get() / 1024 + " KB";
+    }
+
+    /**
+     * GETTERS AND SETTERS
+     */
+    public int getFolders() {
+        return folders.get();
+    }
+
+    public int getNotes() {
+        return notes.get();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    // EFFECTS: returns the number of folders to read or write; -1 if it is not known
+    public int getTotalFolders() {
+        return totalFolders;
+    }
+
+    // EFFECTS: returns the number of bytes to read or write; -1 if it is not known
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    void setTotalFolders(int totalFolders) {
+        this.totalFolders = totalFolders;
+    }
+
+    void setTotalBytes(long totalBytes) {
+        this.totalBytes = totalBytes;
+    }
+}
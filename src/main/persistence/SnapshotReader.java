@@ -0,0 +1,22 @@
+package persistence;
+
+import model.Folders;
+
+import java.io.IOException;
+
+// Interface for readers of workspace snapshots.
+public interface SnapshotReader {
+    // MODIFIES: this
+    // EFFECTS: reads folders from the snapshot, replays the snapshot's change log if it was
+    //          written for this snapshot, and returns them with no unsaved changes;
+    //          throws IOException if an error occurs reading data from file
+    Folders read() throws IOException;
+
+    // MODIFIES: this
+    // EFFECTS: reports the folders and bytes read to progress; once it is cancelled,
+    //          reading throws CancellationException
+    void setProgress(Progress progress);
+
+    // EFFECTS: returns the generation of the snapshot last read; null if it has none
+    String getGeneration();
+}
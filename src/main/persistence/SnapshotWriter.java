@@ -0,0 +1,49 @@
+package persistence;
+
+import model.Folders;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+// Interface for writers of workspace snapshots.
+//
+// Nothing written is visible at the destination until the writer is closed,
+// at which point the previous snapshot is replaced atomically.
+public interface SnapshotWriter {
+    // MODIFIES: this
+    // EFFECTS: opens writer; throws FileNotFoundException if destination file
+    //          cannot be opened for writing
+    void open() throws FileNotFoundException;
+
+    // MODIFIES: this
+    // EFFECTS: writes the snapshot of the folders to the snapshot file;
+    //          throws IOException if the file cannot be written to
+    void write(Folders.Snapshot folders) throws IOException;
+
+    // MODIFIES: this
+    // EFFECTS: writes folders as they are now to the snapshot file;
+    //          throws IOException if the file cannot be written to
+    default void write(Folders folders) throws IOException {
+        try (Folders.Snapshot snapshot = folders.snapshot()) {
+            this.write(snapshot);
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: closes writer and replaces the destination file with the snapshot;
+    //          throws IOException if the data cannot be written or moved into place
+    void close() throws IOException;
+
+    // MODIFIES: this
+    // EFFECTS: closes writer and deletes everything written, leaving the destination untouched
+    void abort();
+
+    // MODIFIES: this
+    // EFFECTS: reports the folders and bytes written to progress; once it is cancelled,
+    //          writing throws CancellationException
+    void setProgress(Progress progress);
+
+    // EFFECTS: returns the generation written into the snapshot, which identifies it
+    //          to the change log
+    String getGeneration();
+}
@@ -0,0 +1,51 @@
+package persistence;
+
+// Represents the formats a workspace snapshot can be stored in.
+public enum StorageFormat {
+    JSON(".json"),
+    BINARY(".nmb");
+
+    private final String extension;
+
+    StorageFormat(String extension) {
+        this.extension = extension;
+    }
+
+    // EFFECTS: returns the format whose extension the file name ends with;
+    //          JSON if it has no known extension
+    public static StorageFormat forFile(String fileName) {
+        for (StorageFormat format : values()) {
+            if (fileName.endsWith(format.extension)) {
+                return format;
+            }
+        }
+        return JSON;
+    }
+
+    // EFFECTS: returns the file name with this format's extension appended,
+    //          unless it already ends with it
+    public String withExtension(String fileName) {
+        return fileName.endsWith(this.extension) ? fileName : fileName + this.extension;
+    }
+
+    // REQUIRES: parallelism > 0
+    // EFFECTS: returns a reader for a snapshot in this format, using up to parallelism
+    //          threads where the format supports it
+    public SnapshotReader newReader(String source, int parallelism) {
+        return this == BINARY ? new BinaryReader(source) : new JsonReader(source, parallelism);
+    }
+
+    // REQUIRES: parallelism > 0
+    // EFFECTS: returns a writer for a snapshot in this format, using up to parallelism
+    //          threads where the format supports it
+    public SnapshotWriter newWriter(String destination, int parallelism) {
+        return this == BINARY ? new BinaryWriter(destination) : new JsonWriter(destination, parallelism);
+    }
+
+    /**
+     * GETTERS AND SETTERS
+     */
+    public String getExtension() {
+        return extension;
+    }
+}
@@ -0,0 +1,217 @@
+package persistence;
+
+import model.Folders;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Represents a workspace saved to disk as a snapshot plus a change log.
+//
+// Once folders have been loaded from or saved to the workspace, later saves only
+// append the folders and notes that changed to the change log. When the log grows
+// larger than the snapshot, a fresh snapshot is written in the background and the log
+// dropped, so the save that grew the log returns without waiting for it; a load or save
+// made meanwhile waits for the snapshot to be written first.
+// Snapshots replace the previous file atomically and every append is synced before
+// the save returns, so a crash at any point leaves the last completed save on disk.
+// Loads and saves of a workspace run one at a time, whichever thread they run on.
+// Other threads may edit the folders while they are saved; a save only marks clean
+// the changes made before it started, so later ones are saved the next time. A
+// snapshot is written from a snapshot of the folders, so it holds no lock meanwhile.
+public class Workspace {
+    // the log is never compacted while smaller than this, however small the snapshot
+    private static final long MIN_COMPACTION_SIZE = 64 * 1024;
+    // writes the snapshots that compact the logs of every workspace, one at a time
+    private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final String destination;
+    private final StorageFormat format;
+    private final ChangeLog changeLog;
+    // threads used to read and write snapshots; the text they buffer is bounded by a few batches of notes each
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    // the folders the files on disk currently describe, if any, and the generation of the snapshot
+    private Folders synced;
+    private String generation;
+    // the compaction started last, if any
+    private Future<?> compaction;
+
+    // EFFECTS: constructs a workspace stored at the destination file, in the format
+    //          given by the file's extension
+    public Workspace(String destination) {
+        this(destination, StorageFormat.forFile(destination));
+    }
+
+    // EFFECTS: constructs a workspace stored at the destination file in the given format
+    public Workspace(String destination, StorageFormat format) {
+        this.destination = destination;
+        this.format = format;
+        this.changeLog = ChangeLog.forSnapshot(destination);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: reads folders from the workspace and returns them;
+    //          throws IOException if an error occurs reading data from file
+    public Folders load() throws IOException {
+        return this.load(new Progress());
+    }
+
+    // MODIFIES: this, progress
+    // EFFECTS: reads folders from the workspace and returns them, reporting the folders and
+    //          bytes read to progress; throws IOException if an error occurs reading data from
+    //          file and CancellationException if progress is cancelled before it is read
+    public synchronized Folders load(Progress progress) throws IOException {
+        SnapshotReader reader = this.format.newReader(this.destination, this.parallelism);
+        progress.setTotalBytes(Files.size(this.snapshotPath()));
+        reader.setProgress(progress);
+        Folders folders = reader.read();
+        this.synced = folders;
+        this.generation = reader.getGeneration();
+        return folders;
+    }
+
+    // MODIFIES: this, folders
+    // EFFECTS: saves the changes to folders, appending them to the change log if the
+    //          workspace already holds an earlier state of folders and writing a full
+    //          snapshot otherwise; marks the changes made before it started clean; starts
+    //          compacting the log in the background once it outgrows the snapshot;
+    //          throws IOException if the files cannot be written to
+    public void save(Folders folders) throws IOException {
+        this.save(folders, new Progress());
+    }
+
+    // MODIFIES: this, folders, progress
+    // EFFECTS: saves the changes to folders as save(folders) does, reporting the folders and
+    //          bytes of a snapshot written to progress; throws IOException if the files cannot
+    //          be written to and CancellationException if progress is cancelled before the
+    //          save completes, in which case the files are left as they were
+    public synchronized void save(Folders folders, Progress progress) throws IOException {
+        if (folders != this.synced || this.generation == null || folders.isReordered()
+                || !Files.exists(this.snapshotPath())) {
+            this.saveSnapshot(folders, progress);
+            return;
+        }
+        if (!folders.hasChanges()) {
+            return;
+        }
+        progress.checkCancelled();
+        long savePoint = folders.savePoint();
+        this.changeLog.append(folders, this.generation);
+        folders.markClean(savePoint);
+        if ((this.compaction == null || this.compaction.isDone()) && this.shouldCompact()) {
+            this.compaction = COMPACTOR.submit(() -> {
+                this.compact(folders);
+                return null;
+            });
+        }
+    }
+
+    // MODIFIES: this, folders
+    // EFFECTS: writes a fresh snapshot of folders and drops the change log, unless the workspace
+    //          no longer holds folders or the log no longer outgrows the snapshot
+    private synchronized void compact(Folders folders) throws IOException {
+        if (folders == this.synced && this.shouldCompact()) {
+            this.saveSnapshot(folders, new Progress());
+        }
+    }
+
+    // EFFECTS: waits until the compaction started last, if any, is done;
+    //          throws IOException if it failed, in which case the change log is left in place
+    public void awaitCompaction() throws IOException, InterruptedException {
+        Future<?> compaction;
+        synchronized (this) {
+            compaction = this.compaction;
+        }
+        if (compaction == null) {
+            return;
+        }
+        try {
+            compaction.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    // MODIFIES: this, folders
+    // EFFECTS: writes all folders to the snapshot, drops the change log and marks the changes
+    //          made before it started clean; leaves the previous snapshot in place if the new
+    //          one cannot be written; throws IOException if the files cannot be written to
+    public void saveSnapshot(Folders folders) throws IOException {
+        this.saveSnapshot(folders, new Progress());
+    }
+
+    // MODIFIES: this, folders, progress
+    // EFFECTS: writes all folders to the snapshot as saveSnapshot(folders) does, reporting the
+    //          folders and bytes written to progress; throws IOException if the files cannot be
+    //          written to and CancellationException if progress is cancelled before the snapshot
+    //          is complete, in which case the previous snapshot is left in place
+    public synchronized void saveSnapshot(Folders folders, Progress progress) throws IOException {
+        SnapshotWriter writer = this.format.newWriter(this.destination, this.parallelism);
+        writer.setProgress(progress);
+        long savePoint;
+        try (Folders.Snapshot snapshot = folders.snapshot()) {
+            progress.setTotalFolders(snapshot.size());
+            savePoint = snapshot.getSavePoint();
+            writer.open();
+            try {
+                writer.write(snapshot);
+                writer.close();
+            } catch (IOException | RuntimeException e) {
+                writer.abort();
+                throw e;
+            }
+        }
+        // the new snapshot no longer matches the log's generation, so a crash before this is harmless
+        this.changeLog.delete();
+        folders.markClean(savePoint);
+        this.synced = folders;
+        this.generation = writer.getGeneration();
+    }
+
+    // EFFECTS: returns true if the change log has outgrown the snapshot
+    private boolean shouldCompact() throws IOException {
+        long logSize = this.changeLog.size();
+        return logSize > MIN_COMPACTION_SIZE && logSize > Files.size(this.snapshotPath());
+    }
+
+    // EFFECTS: returns the path of the snapshot file
+    private Path snapshotPath() {
+        return Paths.get(this.destination);
+    }
+
+    /**
+     * GETTERS AND SETTERS
+     */
+    public String getDestination() {
+        return destination;
+    }
+
+    public StorageFormat getFormat() {
+        return format;
+    }
+
+    public ChangeLog getChangeLog() {
+        return changeLog;
+    }
+
+    public String getGeneration() {
+        return generation;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    // REQUIRES: parallelism > 0
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+}
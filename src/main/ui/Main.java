@@ -1,7 +1,10 @@
 package ui;
 
+import utils.Lockable;
+
 public class Main {
     public static void main(String[] args) {
+        Lockable.calibrateWorkFactorAsync(Lockable.DEFAULT_VERIFY_TARGET);
         new NoteManager();
     }
 }
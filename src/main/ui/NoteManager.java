@@ -1,11 +1,15 @@
 package ui;
 
+import model.ChangeBus;
+import model.ChangeEvent;
 import model.Folder;
 import model.Folders;
-import persistence.JsonReader;
-import persistence.JsonWriter;
-import ui.panels.*;
 import model.Note;
+import persistence.AutosaveScheduler;
+import persistence.StorageFormat;
+import persistence.Workspace;
+import ui.panels.*;
+import utils.Lockable;
 
 import javax.sound.sampled.*;
 import javax.swing.*;
@@ -13,28 +17,43 @@ import java.awt.*;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.Optional;
 
 // GUI-based Note Manager application.
+//
+// Loading and saving run in the background with their progress shown, so the window
+// stays responsive while a large workspace is read or written. Once the notes have
+// been loaded from or saved to a file, changes are also saved to it automatically
+// a short while after they stop.
+//
+// The panels follow the changes to the folders posted on their change bus, updating
+// only what each change affects.
 public class NoteManager extends JFrame {
     public static final int HEIGHT = 500;
     private static final Toolkit DEFAULT_TOOLKIT = Toolkit.getDefaultToolkit();
     private final SidePanel sidePanel;
     private final NotePanel notePanel;
     private final FolderActionsPanel folderActionsPanel;
-    private Folders folders = new Folders();
+    // read by the autosave thread
+    private volatile Folders folders = new Folders();
     private Folder defaultFolder;
     private Folder selectedFolder;
     private Note selectedNote;
-    private JsonReader jsonReader;
+    private volatile Workspace workspace;
+    private final AutosaveScheduler autosave = new AutosaveScheduler(this::autosave,
+            () -> this.workspace != null && this.folders.hasChanges(),
+            e -> SwingUtilities.invokeLater(
+                    () -> JOptionPane.showMessageDialog(this, "Unable to autosave the notes.")));
+    private final ChangeBus.Listener changeListener = this::changed;
+    // the load or save running in the background, if any
+    private PersistenceWorker<?> persistenceWorker;
     private final File audioFile = new File("data/beep.wav");
 
     // EFFECTS: creates a new NoteManager app and runs it
     public NoteManager() {
         super("Note Manager");
-        this.initFolders();
+        this.initDefaultFolder();
         this.setSelectedToDefault();
         this.sidePanel = new SidePanel(this);
         this.add(this.sidePanel, BorderLayout.WEST);
@@ -46,37 +65,64 @@ public class NoteManager extends JFrame {
         this.add(ioPanel, BorderLayout.EAST);
         this.folderActionsPanel = new FolderActionsPanel(this);
         this.add(this.folderActionsPanel, BorderLayout.SOUTH);
+        this.folders.getBus().subscribe(this.changeListener);
+        this.addCloseHandler();
+        this.pack();
+        this.setLocationRelativeTo(null);
+        this.setVisible(true);
+        this.promptToLoadFromFile();
+    }
+
+    // MODIFIES: this
+    // EFFECTS: prompts user to save when the window is closed, exiting once the notes are saved
+    //          or right away if they are not to be saved; the window stays open if the save is
+    //          cancelled or fails
+    private void addCloseHandler() {
+        this.setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
         this.addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosing(WindowEvent e) {
-                promptToSaveToFile();
-                System.exit(0);
+                if (!promptToSaveToFile(() -> exit(true))) {
+                    exit(false);
+                }
             }
         });
-        this.pack();
-        this.setLocationRelativeTo(null);
-        this.setVisible(true);
     }
 
     // MODIFIES: this
-    // EFFECTS: initializes folders by asking if users want to load from file;
-    //          initializes default if they don't
-    private void initFolders() {
-        if (!this.promptToLoadFromFile()) {
-            this.initDefaultFolder();
-        }
+    // EFFECTS: stops autosaving in the background, first saving the changes still due to be
+    //          autosaved if save is true and dropping them otherwise, then forgets the remembered
+    //          passwords and exits
+    private void exit(boolean save) {
+        PersistenceWorker.Operation<Void> stop = progress -> {
+            try {
+                if (save) {
+                    this.autosave.flush();
+                }
+                this.autosave.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        };
+        new PersistenceWorker<>(this, "Saving the last changes", stop, stopped -> this.quit(), e -> this.quit())
+                .start();
+    }
+
+    // EFFECTS: forgets the remembered passwords and exits
+    private void quit() {
+        Lockable.getSessions().purge();
+        System.exit(0);
     }
 
     // MODIFIES: this
-    // EFFECTS: reads user's data, setting folders and default folder and
-    //          returning true if there is at least one folder, otherwise
-    //          returns false
-    private boolean readUsersData() throws IOException {
-        Folders folders = this.jsonReader.read();
+    // EFFECTS: sets folders and default folder to the loaded folders and returns true
+    //          if there is at least one folder, otherwise returns false
+    private boolean useFolders(Folders folders) {
         if (folders.getFolders().size() > 0) {
             this.defaultFolder = folders.getFolders().get(0);
             this.setSelectedToDefault();
-            this.folders = folders;
+            this.setFolders(folders);
             return true;
         }
         return false;
@@ -90,17 +136,60 @@ public class NoteManager extends JFrame {
     }
 
     // MODIFIES: this
-    // EFFECTS: saves notes to a file; returning true if successful
-    public boolean saveToFile(String fileName) {
-        JsonWriter jsonWriter = new JsonWriter("data/" + fileName + ".json");
-        try {
-            jsonWriter.open();
-            jsonWriter.write(this.folders);
-            jsonWriter.close();
-            return true;
-        } catch (FileNotFoundException e) {
-            return false;
+    // EFFECTS: returns the workspace to save to the file in the given format, which is the
+    //          current one if it is stored there, so that only changes are written
+    private Workspace workspaceFor(String fileName, StorageFormat format) {
+        String destination = "data/" + format.withExtension(fileName);
+        if (this.workspace == null || !this.workspace.getDestination().equals(destination)
+                || this.workspace.getFormat() != format) {
+            this.workspace = new Workspace(destination, format);
         }
+        return this.workspace;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: saves notes to a file in the background, showing the progress, and runs
+    //          whenSaved on the event dispatch thread once they are saved; tells the user
+    //          if they could not be saved
+    public void saveInBackground(String fileName, Runnable whenSaved) {
+        Workspace workspace = this.workspaceFor(fileName, StorageFormat.forFile(fileName));
+        Folders folders = this.folders;
+        PersistenceWorker.Operation<Folders> save = progress -> {
+            workspace.save(folders, progress);
+            return folders;
+        };
+        this.runInBackground(new PersistenceWorker<>(this, "Saving to " + fileName, save, saved -> whenSaved.run(),
+                e -> JOptionPane.showMessageDialog(this, "There was an error while saving the notes.")));
+    }
+
+    // MODIFIES: this
+    // EFFECTS: loads notes from a file in the background, showing the progress; once they are
+    //          loaded, displays them and plays a beep; tells the user if they could not be loaded
+    public void loadInBackground(String fileName) {
+        StorageFormat format = StorageFormat.forFile(fileName);
+        Workspace workspace = new Workspace("data/" + format.withExtension(fileName), format);
+        this.runInBackground(new PersistenceWorker<>(this, "Loading " + fileName, workspace::load, folders -> {
+            this.workspace = workspace;
+            if (this.useFolders(folders)) {
+                this.refreshNotePanels();
+                this.refreshFolderActions(0);
+                this.beep();
+            } else {
+                JOptionPane.showMessageDialog(this, "Unable to load folders from the file.");
+            }
+        }, e -> JOptionPane.showMessageDialog(this, "Unable to load folders from the file.")));
+    }
+
+    // MODIFIES: this
+    // EFFECTS: starts the load or save unless another one is still running,
+    //          in which case the user is asked to wait for it
+    private void runInBackground(PersistenceWorker<?> worker) {
+        if (this.persistenceWorker != null && !this.persistenceWorker.isDone()) {
+            JOptionPane.showMessageDialog(this, "Wait for the current load or save to finish.");
+            return;
+        }
+        this.persistenceWorker = worker;
+        worker.start();
     }
 
     // MODIFIES: this
@@ -108,6 +197,7 @@ public class NoteManager extends JFrame {
     public void guiDisplayNote(Note note) {
         this.selectedNote = note;
         this.notePanel.refresh();
+        this.sidePanel.showSelectedNote();
     }
 
     // MODIFIES: this
@@ -117,6 +207,31 @@ public class NoteManager extends JFrame {
         this.sidePanel.refresh();
     }
 
+    // MODIFIES: this
+    // EFFECTS: schedules an autosave for the change and shows it in the panels it affects, on the
+    //          event dispatch thread
+    private void changed(ChangeEvent event) {
+        if (!SwingUtilities.isEventDispatchThread()) {
+            SwingUtilities.invokeLater(() -> this.changed(event));
+            return;
+        }
+        this.autosave.changed();
+        if (event.isFolderChange()) {
+            this.folderActionsPanel.apply(event);
+        } else if (event.getFolder() == this.selectedFolder) {
+            this.sidePanel.apply(event);
+        }
+    }
+
+    // EFFECTS: saves the changes to the file the notes were last loaded from or saved to, if any;
+    //          runs on the autosave thread
+    private void autosave() throws IOException {
+        Workspace workspace = this.workspace;
+        if (workspace != null) {
+            workspace.save(this.folders);
+        }
+    }
+
     // MODIFIES: this
     // EFFECTS: refreshes the app by updating folder actions panel
     public void refreshFolderActions(int index) {
@@ -124,25 +239,21 @@ public class NoteManager extends JFrame {
     }
 
     // MODIFIES: this
-    // EFFECTS: locks all lockable folders and notes
+    // EFFECTS: locks all lockable folders and notes, holding the read lock of the folders so
+    //          that none is added or removed meanwhile, and forgets the passwords remembered
+    //          for unlocking them again
     public void lock() {
-        for (Folder folder : this.folders.getFolders()) {
-            folder.lockIfPasswordSet();
-            for (Note note : folder.getNotes()) {
-                note.lockIfPasswordSet();
+        Folders folders = this.folders;
+        folders.read(() -> {
+            for (Folder folder : folders.getFolders()) {
+                folder.lockIfPasswordSet();
+                for (Note note : folder.getNotes()) {
+                    note.lockIfPasswordSet();
+                }
             }
-        }
-    }
-
-    // MODIFIES: this
-    // EFFECTS: saves notes to a file; returning true if successful
-    public boolean loadFromFile(String fileName) {
-        this.jsonReader = new JsonReader("data/" + fileName + ".json");
-        try {
-            return this.readUsersData();
-        } catch (IOException e) {
-            return false;
-        }
+            return null;
+        });
+        Lockable.getSessions().purge();
     }
 
     // MODIFIES: this
@@ -167,35 +278,30 @@ public class NoteManager extends JFrame {
     }
 
     // MODIFIES: this
-    // EFFECTS: prompts user to load folders from a file;
-    //          returns true and updates folders if successful;
-    //          false otherwise
-    public boolean promptToLoadFromFile() {
+    // EFFECTS: prompts user to load folders from a file, which are loaded in the background
+    //          and displayed once they are
+    public void promptToLoadFromFile() {
         String fileName = JOptionPane.showInputDialog(
                 "Enter name of the file to load from (press cancel to not load from file)"
         );
         if (fileName != null) {
-            if (this.loadFromFile(fileName)) {
-                return true;
-            } else {
-                JOptionPane.showMessageDialog(null, "Unable to load folders from the file.");
-                return false;
-            }
+            this.loadInBackground(fileName);
         }
-        return false;
     }
 
     // MODIFIES: this
-    // EFFECTS: prompts user to save folders to a file;
-    //          returns true and locks all lockable folders and notes
-    //          if successful; false otherwise
-    public boolean promptToSaveToFile() {
+    // EFFECTS: prompts user to save folders to a file; if they enter a file name, locks all
+    //          lockable folders and notes, saves them in the background, runs whenSaved on
+    //          the event dispatch thread once they are saved and returns true;
+    //          returns false otherwise
+    public boolean promptToSaveToFile(Runnable whenSaved) {
         String fileName = JOptionPane.showInputDialog(
                 "Enter name of the file to save to (press cancel to not save to file)"
         );
         if (fileName != null && !fileName.isEmpty()) {
             this.lock();
-            return this.saveToFile(fileName);
+            this.saveInBackground(fileName, whenSaved);
+            return true;
         }
         return false;
     }
@@ -230,8 +336,12 @@ public class NoteManager extends JFrame {
         return folders;
     }
 
+    // MODIFIES: this
+    // EFFECTS: sets the folders, following their changes instead of those of the previous folders
     public void setFolders(Folders folders) {
+        this.folders.getBus().unsubscribe(this.changeListener);
         this.folders = folders;
+        folders.getBus().subscribe(this.changeListener);
     }
 
     public Folder getDefaultFolder() {
@@ -1,29 +1,40 @@
 package ui;
 
+import model.ChangeBus;
 import model.Folder;
 import model.Folders;
 import model.exceptions.LockedException;
-import persistence.JsonReader;
-import persistence.JsonWriter;
+import persistence.AutosaveScheduler;
+import persistence.StorageFormat;
+import persistence.Workspace;
 import utils.Lockable;
 import model.Note;
 
 import java.io.Console;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.Optional;
 import java.util.Scanner;
 
 // Console-based note manager app.
+//
+// Once the notes have been loaded from or saved to a file, changes are saved to it
+// automatically in the background a short while after they stop, following the changes
+// posted on the change bus of the folders.
 public class NoteManagerConsole {
-    private Folders folders = new Folders();
+    // read by the autosave thread
+    private volatile Folders folders = new Folders();
     private Scanner scanner = new Scanner(System.in);
     private Folder defaultFolder;
     private final Console console = System.console();
-    private JsonReader jsonReader;
+    private volatile Workspace workspace;
+    private final AutosaveScheduler autosave = new AutosaveScheduler(this::autosave,
+            () -> this.workspace != null && this.folders.hasChanges(),
+            e -> System.out.println("\nUnable to autosave the notes!"));
+    private final ChangeBus.Listener changeListener = event -> this.autosave.changed();
 
     // EFFECTS: creates a new console based Note Manager app and runs it
     public NoteManagerConsole() {
+        this.folders.getBus().subscribe(this.changeListener);
         this.printInitialMessage();
         if (this.initFolders(true)) {
             System.out.println("Loaded notes from file!");
@@ -38,12 +49,13 @@ public class NoteManagerConsole {
     private boolean initFolders(boolean initDefault) {
         System.out.println(
                 "Do you want to load notes from a file?"
-                        + " Please enter the name of the file without extension"
-                        + " if yes, otherwise please enter 0."
+                        + " Please enter the name of the file without extension (or ending in .nmb"
+                        + " for a binary file) if yes, otherwise please enter 0."
         );
         String input = this.scanner.nextLine();
         if (!input.equals("0")) {
-            this.jsonReader = new JsonReader("data/" + input + ".json");
+            StorageFormat format = StorageFormat.forFile(input);
+            this.workspace = new Workspace("data/" + format.withExtension(input), format);
             try {
                 if (this.readUsersData()) {
                     return true;
@@ -65,10 +77,10 @@ public class NoteManagerConsole {
     //          returning true if there is at least one folder, otherwise
     //          returns false
     private boolean readUsersData() throws IOException {
-        Folders folders = this.jsonReader.read();
+        Folders folders = this.workspace.load();
         if (folders.getFolders().size() > 0) {
             this.defaultFolder = folders.getFolders().get(0);
-            this.folders = folders;
+            this.setFolders(folders);
             return true;
         }
         return false;
@@ -252,8 +264,9 @@ public class NoteManagerConsole {
         }
     }
 
-    // EFFECTS: reads next line on stdin, returning the trimmed string if it is not
-    //          an exit signal.
+    // MODIFIES: this
+    // EFFECTS: reads next line on stdin, returning the
+    //          trimmed string if it is not an exit signal.
     private String getNextInput() {
         String input = this.scanner.nextLine();
         this.checkQuit(input);
@@ -301,6 +314,7 @@ public class NoteManagerConsole {
         String msg = "\nEnter the number of the note you'd like to view."
                 + "\nEnter \"c\" if you'd like to create a new note."
                 + "\nEnter \"d\" if you'd like to delete a note."
+                + "\nEnter \"u\" if you'd like to unlock all notes with a password."
                 + "\nEnter 0 to return to main menu.";
 
         System.out.println(msg);
@@ -381,11 +395,24 @@ public class NoteManagerConsole {
                 this.deleteNote(folder);
             }
             return true;
+        } else if (input.equals("u")) {
+            this.unlockNotes(folder);
+            return true;
         }
 
         return false;
     }
 
+    // MODIFIES: folder (and in turn, this)
+    // EFFECTS: interactively unlocks all notes of the folder locked with the same password
+    private void unlockNotes(Folder folder) {
+        System.out.println("Enter the password of the notes you'd like to unlock:");
+        String password = this.readPassword();
+        int unlocked = folder.unlockNotes(password, (done, total) ->
+                System.out.print("\rChecked " + done + " of " + total + " locked notes"));
+        System.out.println("\nUnlocked " + unlocked + " notes.");
+    }
+
     // MODIFIES: folder (and in turn, this)
     // EFFECTS: interactively creates a new note
     private void createNote(Folder folder) {
@@ -593,7 +620,8 @@ public class NoteManagerConsole {
                         + " Otherwise, please enter 0."
         );
         String input = this.scanner.nextLine();
-        if (!input.equals("0")) {
+        boolean save = !input.equals("0");
+        if (save) {
             if (this.saveToFile(input)) {
                 System.out.println("Saved the notes to file `" + input + "`!");
             } else {
@@ -601,23 +629,52 @@ public class NoteManagerConsole {
             }
         }
         System.out.println("\nQuitting!");
+        this.stopAutosave(save);
+        Lockable.getSessions().purge();
         System.exit(0);
     }
 
     // MODIFIES: this
-    // EFFECTS: saves notes to a file; returning true if successful
+    // EFFECTS: stops autosaving, first saving the changes still due to be autosaved if save is
+    //          true and dropping them otherwise
+    private void stopAutosave(boolean save) {
+        try {
+            if (save) {
+                this.autosave.flush();
+            }
+            this.autosave.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: saves notes to a file; returning true if successful;
+    //          only the changes since the last save are written if the
+    //          notes were last loaded from or saved to the same file
     private boolean saveToFile(String fileName) {
-        JsonWriter jsonWriter = new JsonWriter("data/" + fileName + ".json");
+        StorageFormat format = StorageFormat.forFile(fileName);
+        String destination = "data/" + format.withExtension(fileName);
+        if (this.workspace == null || !this.workspace.getDestination().equals(destination)) {
+            this.workspace = new Workspace(destination, format);
+        }
         try {
-            jsonWriter.open();
-            jsonWriter.write(this.folders);
-            jsonWriter.close();
+            this.workspace.save(this.folders);
             return true;
-        } catch (FileNotFoundException e) {
+        } catch (IOException e) {
             return false;
         }
     }
 
+    // EFFECTS: saves the changes to the file the notes were last loaded from or saved to, if any;
+    //          runs on the autosave thread
+    private void autosave() throws IOException {
+        Workspace workspace = this.workspace;
+        if (workspace != null) {
+            workspace.save(this.folders);
+        }
+    }
+
     // MODIFIES: this in subsequent call
     // EFFECTS: asks user for file name to save notes to file
     private void handleSaveToFile() {
@@ -637,8 +694,12 @@ public class NoteManagerConsole {
         return folders;
     }
 
+    // MODIFIES: this
+    // EFFECTS: sets the folders, following their changes instead of those of the previous folders
     public void setFolders(Folders folders) {
+        this.folders.getBus().unsubscribe(this.changeListener);
         this.folders = folders;
+        folders.getBus().subscribe(this.changeListener);
     }
 
     public Scanner getScanner() {
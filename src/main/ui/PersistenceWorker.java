@@ -0,0 +1,87 @@
+package ui;
+
+import persistence.Progress;
+
+import javax.swing.*;
+import java.awt.*;
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+// Runs a load or save of a workspace off the event dispatch thread.
+//
+// While it runs, a progress monitor shows how many folders, notes and bytes it got
+// through, polled from its Progress on the event dispatch thread, and cancelling the
+// monitor cancels the load or save. The outcome is handed back on the event dispatch
+// thread; a cancelled load or save has no outcome.
+class PersistenceWorker<T> extends SwingWorker<T, Void> {
+    // milliseconds between updates of the progress monitor
+    private static final int POLL_INTERVAL = 100;
+    private static final int MAXIMUM = 1000;
+    private final Progress progress = new Progress();
+    private final Operation<T> operation;
+    private final Consumer<T> onSuccess;
+    private final Consumer<Exception> onFailure;
+    private final ProgressMonitor monitor;
+    private final Timer timer;
+
+    // A load or save reporting to a progress.
+    interface Operation<T> {
+        // EFFECTS: runs the load or save and returns its result
+        T run(Progress progress) throws IOException;
+    }
+
+    // EFFECTS: creates a worker running the operation, showing its progress under the message
+    //          in a monitor over parent; onSuccess is given the result and onFailure the
+    //          exception it failed with
+    PersistenceWorker(Component parent, String message, Operation<T> operation,
+                      Consumer<T> onSuccess, Consumer<Exception> onFailure) {
+        this.operation = operation;
+        this.onSuccess = onSuccess;
+        this.onFailure = onFailure;
+        this.monitor = new ProgressMonitor(parent, message, null, 0, MAXIMUM);
+        this.timer = new Timer(POLL_INTERVAL, e -> this.poll());
+    }
+
+    // MODIFIES: this
+    // EFFECTS: starts the operation on a background thread and the progress monitor
+    void start() {
+        this.timer.start();
+        this.execute();
+    }
+
+    // EFFECTS: runs the operation on the background thread
+    @Override
+    protected T doInBackground() throws IOException {
+        return this.operation.run(this.progress);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: shows the progress in the monitor, cancelling the operation if the monitor was cancelled
+    private void poll() {
+        if (this.monitor.isCanceled()) {
+            this.progress.cancel();
+        }
+        this.monitor.setNote(this.progress.toString());
+        this.monitor.setProgress((int) (this.progress.fraction() * (MAXIMUM - 1)));
+    }
+
+    // MODIFIES: this
+    // EFFECTS: closes the monitor and hands the outcome of the operation on,
+    //          on the event dispatch thread
+    @Override
+    protected void done() {
+        this.timer.stop();
+        this.monitor.close();
+        try {
+            this.onSuccess.accept(this.get());
+        } catch (ExecutionException e) {
+            if (!(e.getCause() instanceof CancellationException)) {
+                this.onFailure.accept(e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+            }
+        } catch (InterruptedException | CancellationException e) {
+            // the worker itself is never interrupted or cancelled; the operation is cancelled instead
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package ui.panels;
 
+import model.ChangeEvent;
 import model.Folder;
 import ui.NoteManager;
 
@@ -7,6 +8,9 @@ import javax.swing.*;
 import java.awt.*;
 
 // This panel holds buttons for folder related actions.
+//
+// The folders box follows the folders as they are added and removed, one item at a
+// time; it is only filled again when the folders are replaced.
 public class FolderActionsPanel extends JPanel {
     public static final int WIDTH = SidePanel.WIDTH + NotePanel.WIDTH;
     public static final int HEIGHT = 25;
@@ -34,13 +38,12 @@ public class FolderActionsPanel extends JPanel {
         }
         this.foldersBox.addActionListener(e -> {
             Folder newSelectedFolder = foldersBox.getItemAt(foldersBox.getSelectedIndex());
-            if (newSelectedFolder == null) {
+            if (newSelectedFolder == null || newSelectedFolder == noteManager.getSelectedFolder()) {
                 return;
             }
             noteManager.setSelectedFolder(newSelectedFolder);
             noteManager.setSelectedNoteToDefault();
             noteManager.refreshNotePanels();
-            refresh(foldersBox.getSelectedIndex());
         });
         this.add(this.foldersBox);
     }
@@ -53,11 +56,9 @@ public class FolderActionsPanel extends JPanel {
             String folderName = JOptionPane.showInputDialog("Enter name of the folder");
             if (folderName != null) {
                 Folder newFolder = new Folder(folderName);
+                // adding the folder adds it to the box, and selecting it there shows it
                 noteManager.getFolders().add(newFolder);
-                noteManager.setSelectedFolder(newFolder);
-                noteManager.setSelectedNoteToDefault();
-                noteManager.refreshNotePanels();
-                refresh(foldersBox.getItemCount());
+                foldersBox.setSelectedItem(newFolder);
             }
         });
         this.add(createFolderButton);
@@ -71,17 +72,33 @@ public class FolderActionsPanel extends JPanel {
             if (noteManager.getSelectedFolder().equals(noteManager.getDefaultFolder())) {
                 JOptionPane.showMessageDialog(noteManager, "Cannot delete the default folder!");
             } else {
-                noteManager.getFolders().remove(noteManager.getSelectedFolder());
-                noteManager.setSelectedToDefault();
-                noteManager.refreshNotePanels();
-                refresh(foldersBox.getItemCount() - 1);
+                Folder folder = noteManager.getSelectedFolder();
+                foldersBox.setSelectedItem(noteManager.getDefaultFolder());
+                noteManager.getFolders().remove(folder);
             }
         });
         this.add(deleteFolderButton);
     }
 
+    // REQUIRES: the change is to the folders themselves
     // MODIFIES: this
-    // EFFECTS: refreshes the panel by updating the folders box
+    // EFFECTS: adds or removes the folder the change is about in the folders box, repaints it
+    //          if the folder was edited, or fills it again if the folders were replaced
+    public void apply(ChangeEvent event) {
+        if (event.getType() == ChangeEvent.Type.FOLDER_ADDED) {
+            this.foldersBox.insertItemAt(event.getFolder(), event.getIndex());
+        } else if (event.getType() == ChangeEvent.Type.FOLDER_REMOVED) {
+            this.foldersBox.removeItem(event.getFolder());
+        } else if (event.getType() == ChangeEvent.Type.FOLDER_EDITED) {
+            this.foldersBox.repaint();
+        } else {
+            this.refresh(Math.max(0, this.foldersBox.getSelectedIndex()));
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: refreshes the panel by filling the folders box again and selecting the folder at
+    //          index, or the first one if there is none
     public void refresh(int index) {
         this.foldersBox.removeAllItems();
         this.revalidate();
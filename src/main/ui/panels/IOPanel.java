@@ -25,13 +25,7 @@ public class IOPanel extends JPanel {
     // EFFECTS: creates and adds the save button
     private void addSaveButton() {
         JButton saveButton = new JButton(saveText);
-        saveButton.addActionListener(e -> {
-            if (!this.noteManager.promptToSaveToFile()) {
-                JOptionPane.showMessageDialog(this, "There was an error while saving the notes.");
-            } else {
-                this.noteManager.beep();
-            }
-        });
+        saveButton.addActionListener(e -> this.noteManager.promptToSaveToFile(this.noteManager::beep));
         this.add(saveButton);
     }
 
@@ -39,13 +33,7 @@ public class IOPanel extends JPanel {
     // EFFECTS: creates and adds the load button
     private void addLoadButton() {
         JButton loadButton = new JButton(loadText);
-        loadButton.addActionListener(e -> {
-            if (noteManager.promptToLoadFromFile()) {
-                noteManager.refreshNotePanels();
-                noteManager.refreshFolderActions(0);
-                this.noteManager.beep();
-            }
-        });
+        loadButton.addActionListener(e -> this.noteManager.promptToLoadFromFile());
         this.add(loadButton);
     }
 }
@@ -34,7 +34,6 @@ public class NoteActionsPanel extends JPanel {
             Note newNote = new Note("Enter Note Text", noteManager.getSelectedFolder());
             noteManager.getSelectedFolder().addNote(newNote);
             noteManager.guiDisplayNote(newNote);
-            noteManager.refreshNotePanels();
         });
         this.add(createNoteButton);
     }
@@ -47,7 +46,6 @@ public class NoteActionsPanel extends JPanel {
             noteManager.getSelectedFolder().removeNote(noteManager.getSelectedNote());
             noteManager.setSelectedNoteToDefault();
             noteManager.guiDisplayNote(noteManager.getSelectedNote());
-            noteManager.refreshNotePanels();
         });
         this.add(deleteNoteButton);
     }
@@ -61,29 +59,40 @@ public class NoteActionsPanel extends JPanel {
     }
 
     // MODIFIES: this
-    // EFFECTS: edits selected note's password after prompting user to enter current/new password
+    // EFFECTS: edits selected note's password after prompting user to enter current/new password;
+    //          the current password is checked off the event dispatch thread
     private void editPasswordActionHandler() {
         Note note = this.noteManager.getSelectedNote();
         if (note == null) {
             JOptionPane.showMessageDialog(this.noteManager, "No note is selected!");
             return;
         }
-        if (note.isLocked()) {
-            JPasswordField pwd = new JPasswordField();
-            Optional<String> password = this.noteManager.getPassword("Enter Current Password", pwd);
-            if (!password.isPresent()) {
-                return;
-            }
-            if (!note.unlock(password.get())) {
+        if (!note.isLocked()) {
+            this.promptNewPassword(note);
+            return;
+        }
+        JPasswordField pwd = new JPasswordField();
+        Optional<String> password = this.noteManager.getPassword("Enter Current Password", pwd);
+        if (!password.isPresent()) {
+            return;
+        }
+        note.unlockAsync(password.get(), SwingUtilities::invokeLater).whenCompleteAsync((unlocked, error) -> {
+            if (error != null || !unlocked) {
                 JOptionPane.showMessageDialog(this.noteManager, "Incorrect password!");
-                return;
+            } else {
+                this.promptNewPassword(note);
             }
-        }
+        }, SwingUtilities::invokeLater);
+    }
+
+    // MODIFIES: note
+    // EFFECTS: prompts user to enter a new password and locks the note with it once it is hashed
+    private void promptNewPassword(Note note) {
         JPasswordField pwd = new JPasswordField();
         Optional<String> password = this.noteManager.getPassword("Enter New Password", pwd);
         if (!password.isPresent()) {
             return;
         }
-        note.lock(password.get());
+        note.lockAsync(password.get(), SwingUtilities::invokeLater);
     }
 }
@@ -0,0 +1,80 @@
+package ui.panels;
+
+import model.ChangeEvent;
+import model.Note;
+import utils.SortableSet;
+
+import javax.swing.*;
+
+// A list model showing a snapshot of the notes of a folder.
+//
+// The list reads the snapshot rather than the notes themselves, so it never sees a change
+// before it is told about it, however far the notes have moved on by the time it is. Each
+// change takes a new snapshot, in constant time. A change that is the only one made since
+// the rows were shown touches just its own row; a change that arrives after later ones were
+// made shows the new snapshot in full.
+class NoteListModel extends AbstractListModel<Note> {
+    private static final long serialVersionUID = 1L;
+    private SortableSet<Note> notes = new SortableSet<Note>().snapshot();
+
+    // MODIFIES: this
+    // EFFECTS: shows a snapshot of the notes, telling the list which rows were added or removed
+    //          since the notes were last shown and that the rest may have changed
+    void show(SortableSet<Note> notes) {
+        int oldSize = this.notes.size();
+        this.notes = notes.snapshot();
+        int size = this.notes.size();
+        if (size > oldSize) {
+            this.fireIntervalAdded(this, oldSize, size - 1);
+        } else if (size < oldSize) {
+            this.fireIntervalRemoved(this, size, oldSize - 1);
+        }
+        if (Math.min(size, oldSize) > 0) {
+            this.fireContentsChanged(this, 0, Math.min(size, oldSize) - 1);
+        }
+    }
+
+    // REQUIRES: the change is to the notes
+    // MODIFIES: this
+    // EFFECTS: shows a snapshot of the notes after the change, telling the list only about the
+    //          row of the note the change affects if no other change was made to the notes since
+    //          they were last shown; shows the snapshot in full otherwise
+    void apply(ChangeEvent event, SortableSet<Note> notes) {
+        SortableSet<Note> snapshot = notes.snapshot();
+        ChangeEvent.Type type = event.getType();
+        int index = event.getIndex();
+        int changes = snapshot.getModifications() - this.notes.getModifications();
+        if (type == ChangeEvent.Type.NOTE_ADDED && changes == 1 && holds(snapshot, index)) {
+            this.notes = snapshot;
+            this.fireIntervalAdded(this, index, index);
+        } else if (type == ChangeEvent.Type.NOTE_REMOVED && changes == 1 && holds(this.notes, index)) {
+            this.notes = snapshot;
+            this.fireIntervalRemoved(this, index, index);
+        } else if (type == ChangeEvent.Type.NOTE_EDITED && changes == 0 && holds(snapshot, index)) {
+            this.notes = snapshot;
+            this.fireContentsChanged(this, index, index);
+        } else {
+            this.show(snapshot);
+        }
+    }
+
+    // EFFECTS: returns true if index is a row of the notes; false otherwise
+    private static boolean holds(SortableSet<Note> notes, int index) {
+        return index >= 0 && index < notes.size();
+    }
+
+    // EFFECTS: returns the row of the note; -1 if it is not shown
+    int indexOf(Note note) {
+        return this.notes.indexOf(note);
+    }
+
+    @Override
+    public int getSize() {
+        return this.notes.size();
+    }
+
+    @Override
+    public Note getElementAt(int index) {
+        return this.notes.get(index);
+    }
+}
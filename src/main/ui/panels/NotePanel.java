@@ -1,15 +1,26 @@
 package ui.panels;
 
 import model.Note;
+import model.exceptions.LockedException;
 import ui.NoteManager;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
 import java.awt.*;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 // This panel displays note.
+//
+// The edits made to the text area are recorded as they happen and applied to the
+// note's text range by range when it is saved, so saving a large note does not copy
+// all of its text. The area is only filled again when the note changed since then.
 public class NotePanel extends JPanel {
     public static final int WIDTH = 500;
     public static final int HEIGHT = NoteManager.HEIGHT;
@@ -21,6 +32,11 @@ public class NotePanel extends JPanel {
     private JTextArea noteDisplayArea;
     private JTextField noteTitleField;
     private JTextField noNoteField;
+    // the edits made to the area since the note was displayed or saved, in order
+    private final List<PendingEdit> pendingEdits = new ArrayList<>();
+    private boolean filling = false;
+    private Note displayedNote;
+    private LocalDateTime displayedModified;
 
     // EFFECTS: creates a new note panel
     public NotePanel(NoteManager noteManager) {
@@ -30,9 +46,7 @@ public class NotePanel extends JPanel {
 
         this.enterPasswordButton.addActionListener(e -> {
             if (noteManager.getSelectedNote() != null && noteManager.getSelectedNote().isLocked()) {
-                if (tryUnlockNote(noteManager.getSelectedNote())) {
-                    updateNoteDisplay(noteManager.getSelectedNote());
-                }
+                tryUnlockNote(noteManager.getSelectedNote());
             } else {
                 JOptionPane.showMessageDialog(noteManager, "No locked note is selected.");
             }
@@ -50,10 +64,9 @@ public class NotePanel extends JPanel {
     // EFFECTS: displays the note after creating the note display area
     private void displayNote(Note note) {
         if (note.isLocked()) {
-            if (!this.tryUnlockNote(note)) {
-                this.lockedNoteDisplay();
-                return;
-            }
+            this.lockedNoteDisplay();
+            this.tryUnlockNote(note);
+            return;
         }
         this.noteTitleField = new JTextField(this.getNoteTitle(note));
         this.noteTitleField.setEditable(true);
@@ -66,13 +79,31 @@ public class NotePanel extends JPanel {
     // MODIFIES: this
     // EFFECTS: creates and adds note display area, displaying the specified note
     private void addNoteDisplayArea(Note note) {
-        this.noteDisplayArea = new JTextArea(note.getText());
+        this.noteDisplayArea = new JTextArea();
         this.noteDisplayArea.setEditable(true);
         this.noteDisplayArea.setMargin(new Insets(MARGIN, MARGIN, MARGIN, MARGIN));
         this.noteDisplayArea.addKeyListener(this.getSaveKeyHandler());
+        this.noteDisplayArea.getDocument().addDocumentListener(this.getEditRecorder());
+        this.fillNoteDisplayArea(note);
         this.add(this.noteDisplayArea);
     }
 
+    // MODIFIES: this
+    // EFFECTS: fills the note display area with the text of the note, unless it already holds
+    //          it; forgets the edits not saved
+    private void fillNoteDisplayArea(Note note) {
+        if (note == this.displayedNote && note.getDateTimeModified().equals(this.displayedModified)
+                && this.pendingEdits.isEmpty()) {
+            return;
+        }
+        this.filling = true;
+        this.noteDisplayArea.setText(note.getText());
+        this.filling = false;
+        this.pendingEdits.clear();
+        this.displayedNote = note;
+        this.displayedModified = note.getDateTimeModified();
+    }
+
     // MODIFIES: this
     // EFFECTS: displays no note text after creating the display field
     private void displayNoNote() {
@@ -87,12 +118,11 @@ public class NotePanel extends JPanel {
         this.enterPasswordButton.setVisible(false);
         if (this.noteDisplayArea != null) {
             if (note.isLocked()) {
-                if (!tryUnlockNote(note)) {
-                    this.lockedNoteDisplay();
-                    return;
-                }
+                this.lockedNoteDisplay();
+                this.tryUnlockNote(note);
+                return;
             }
-            this.noteDisplayArea.setText(note.getText());
+            this.fillNoteDisplayArea(note);
             this.noteTitleField.setText(this.getNoteTitle(note));
             this.noteDisplayArea.setVisible(true);
             this.noteTitleField.setVisible(true);
@@ -159,31 +189,98 @@ public class NotePanel extends JPanel {
     }
 
     // REQUIRES: note should be locked with a password
-    // MODIFIES: note (if user enters correct password)
-    // EFFECTS: prompts user to unlock the note
-    private boolean tryUnlockNote(Note note) {
+    // MODIFIES: this, note (if user enters correct password)
+    // EFFECTS: prompts user to unlock the note; the password is checked off the event
+    //          dispatch thread and the note is displayed once it is unlocked, if it is
+    //          still selected
+    private void tryUnlockNote(Note note) {
         JPasswordField pwd = new JPasswordField();
         Optional<String> password = this.noteManager.getPassword("Enter Password", pwd);
         if (!password.isPresent()) {
-            return false;
-        }
-        if (!note.unlock(password.get())) {
-            JOptionPane.showMessageDialog(this.noteManager, "Incorrect password!");
-            return false;
+            return;
         }
-        return true;
+        this.enterPasswordButton.setEnabled(false);
+        note.unlockAsync(password.get(), SwingUtilities::invokeLater).whenCompleteAsync((unlocked, error) -> {
+            this.enterPasswordButton.setEnabled(true);
+            if (error != null || !unlocked) {
+                JOptionPane.showMessageDialog(this.noteManager, "Incorrect password!");
+            } else if (note == this.noteManager.getSelectedNote()) {
+                this.updateNoteDisplay(note);
+            }
+        }, SwingUtilities::invokeLater);
     }
 
     // MODIFIES: this
-    // EFFECTS: updates selected note based on the changes and plays a beep
+    // EFFECTS: updates selected note based on the changes and plays a beep;
+    //          only the ranges of the text that were edited are replaced
     private void updateNote() {
+        Note note = this.noteManager.getSelectedNote();
         if (!this.noteTitleField.getText().equals(DEFAULT_TITLE) && !this.noteTitleField.getText().isEmpty()) {
-            this.noteManager.getSelectedNote().editTitle(noteTitleField.getText());
+            note.editTitle(noteTitleField.getText());
         }
-        this.noteManager.getSelectedNote().edit(noteDisplayArea.getText());
+        if (note != this.displayedNote) {
+            note.edit(noteDisplayArea.getText());
+        } else {
+            try {
+                for (PendingEdit edit : this.pendingEdits) {
+                    note.edit(edit.offset, edit.length, edit.text.toString());
+                }
+            } catch (LockedException e) {
+                JOptionPane.showMessageDialog(this.noteManager, e.getMessage());
+            }
+        }
+        this.pendingEdits.clear();
+        this.displayedNote = note;
+        this.displayedModified = note.getDateTimeModified();
         this.noteManager.beep();
     }
 
+    // EFFECTS: returns a listener that records the edits made to the note display area
+    private DocumentListener getEditRecorder() {
+        return new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                if (!filling) {
+                    recordEdit(e.getOffset(), 0, insertedText(e));
+                }
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                if (!filling) {
+                    recordEdit(e.getOffset(), e.getLength(), "");
+                }
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) { }
+        };
+    }
+
+    // EFFECTS: returns the text the document event inserted
+    private static String insertedText(DocumentEvent e) {
+        try {
+            return e.getDocument().getText(e.getOffset(), e.getLength());
+        } catch (BadLocationException ex) {
+            // the inserted range is in the document that reported it
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: records that length characters at offset were replaced by text, extending the
+    //          last edit instead if it inserted the text just before offset
+    private void recordEdit(int offset, int length, String text) {
+        if (!this.pendingEdits.isEmpty()) {
+            PendingEdit last = this.pendingEdits.get(this.pendingEdits.size() - 1);
+            if (length == 0 && last.offset + last.text.length() == offset) {
+                last.text.append(text);
+                return;
+            }
+        }
+        this.pendingEdits.add(new PendingEdit(offset, length, text));
+    }
+
     // EFFECTS: returns a key handler that saves notes when ctrl/cmd+s is pressed
     private KeyListener getSaveKeyHandler() {
         return new KeyListener() {
@@ -197,7 +294,6 @@ public class NotePanel extends JPanel {
                 }
                 if (e.isMetaDown() && e.getKeyChar() == 's') {
                     updateNote();
-                    noteManager.refreshNotePanels();
                 }
             }
 
@@ -205,4 +301,18 @@ public class NotePanel extends JPanel {
             public void keyReleased(KeyEvent e) { }
         };
     }
+
+    // An edit of the note display area that is not saved yet.
+    private static class PendingEdit {
+        private final int offset;
+        private final int length;
+        private final StringBuilder text;
+
+        // EFFECTS: creates an edit replacing length characters at offset with text
+        PendingEdit(int offset, int length, String text) {
+            this.offset = offset;
+            this.length = length;
+            this.text = new StringBuilder(text);
+        }
+    }
 }
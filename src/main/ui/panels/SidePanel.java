@@ -1,50 +1,97 @@
 package ui.panels;
 
+import model.ChangeEvent;
 import model.Note;
 import ui.NoteManager;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.ArrayList;
-import java.util.List;
 
 // This panel displays notes in the sidebar.
+//
+// The notes are shown in a list backed by a snapshot of the selected folder's notes,
+// taken again on every change. Rows have a fixed size, so the list never measures the
+// notes, and only the rows in view are rendered; refreshing tells the list how the
+// number of notes changed instead of rebuilding it, so it takes the same time however
+// many notes the folder has. A change to a single note only touches its row.
 public class SidePanel extends JPanel {
     public static final int WIDTH = 150;
     public static final int HEIGHT = NoteManager.HEIGHT;
+    // the number of rows that fit in the panel
+    public static final int ROWS = 20;
     private final NoteManager noteManager;
-    private final List<JButton> noteButtons = new ArrayList<>();
+    private final NoteListModel noteListModel = new NoteListModel();
+    private final JList<Note> noteList = new JList<>(this.noteListModel);
+    // true while the selection is set to match the selected note rather than by the user
+    private boolean selecting = false;
 
     // EFFECTS: creates a new side panel
     public SidePanel(NoteManager noteManager) {
         this.noteManager = noteManager;
         this.setPreferredSize(new Dimension(WIDTH, HEIGHT));
         this.setBackground(Color.gray);
-        this.setLayout(new GridLayout(20, 1));
-        this.displayNotes(noteManager.getSelectedFolder().getNotes());
+        this.setLayout(new BorderLayout());
+        this.addNoteList();
+        this.refresh();
     }
 
     // MODIFIES: this
-    // EFFECTS: displays notes in the sidebar by adding buttons per note
-    private void displayNotes(Iterable<Note> notes) {
-        for (Note note : notes) {
-            String summary = note.getSummary();
-            JButton noteButton = new JButton(summary);
-            noteButton.addActionListener(e -> this.noteManager.guiDisplayNote(note));
-            this.noteButtons.add(noteButton);
-            this.add(noteButton);
-        }
+    // EFFECTS: adds the list of notes, which displays a note when it is selected
+    private void addNoteList() {
+        this.noteList.setFixedCellHeight(HEIGHT / ROWS);
+        this.noteList.setFixedCellWidth(WIDTH);
+        this.noteList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        this.noteList.setCellRenderer(new SummaryRenderer());
+        this.noteList.addListSelectionListener(e -> {
+            Note note = this.noteList.getSelectedValue();
+            if (!this.selecting && !e.getValueIsAdjusting() && note != null) {
+                this.noteManager.guiDisplayNote(note);
+            }
+        });
+        this.add(new JScrollPane(this.noteList));
     }
 
     // MODIFIES: this
-    // EFFECTS: refreshes the buttons by adding/removing new notes
+    // EFFECTS: shows the notes of the selected folder and selects the selected note
     public void refresh() {
-        for (JButton button : this.noteButtons) {
-            this.remove(button);
+        this.noteListModel.show(this.noteManager.getSelectedFolder().getNotes());
+        this.showSelectedNote();
+    }
+
+    // REQUIRES: the change is to the notes of the selected folder
+    // MODIFIES: this
+    // EFFECTS: updates only the rows of the notes the change affects, unless it replaced all of
+    //          them, and selects the selected note
+    public void apply(ChangeEvent event) {
+        this.noteListModel.apply(event, this.noteManager.getSelectedFolder().getNotes());
+        this.showSelectedNote();
+    }
+
+    // MODIFIES: this
+    // EFFECTS: selects the selected note in the list, scrolling to it; clears the selection
+    //          if there is no selected note or it is not in the list
+    public void showSelectedNote() {
+        Note selectedNote = this.noteManager.getSelectedNote();
+        int index = selectedNote == null ? -1 : this.noteListModel.indexOf(selectedNote);
+        this.selecting = true;
+        if (index < 0) {
+            this.noteList.clearSelection();
+        } else {
+            this.noteList.setSelectedIndex(index);
+            this.noteList.ensureIndexIsVisible(index);
+        }
+        this.selecting = false;
+    }
+
+    // Renders a note by its summary.
+    private static class SummaryRenderer extends DefaultListCellRenderer {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                      boolean isSelected, boolean cellHasFocus) {
+            String summary = ((Note) value).getSummary();
+            return super.getListCellRendererComponent(list, summary, index, isSelected, cellHasFocus);
         }
-        this.revalidate();
-        this.repaint();
-        this.noteButtons.clear();
-        this.displayNotes(this.noteManager.getSelectedFolder().getNotes());
     }
 }
@@ -0,0 +1,92 @@
+package utils;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+// Encrypts and decrypts the bodies of password protected notes.
+//
+// Keys are derived from a password with PBKDF2, salted with the BCrypt hash of the
+// lock, so every lock has its own key and the key can be derived again from the
+// password alone. The number of PBKDF2 iterations follows the work factor of the
+// hash, so guessing the key is no cheaper than guessing the password from the hash,
+// up to MAX_ITERATIONS, which bounds the time to unlock a note at the highest costs.
+// Bodies are encrypted with AES in GCM mode, which also detects tampering, and
+// stored as Base64 of a random nonce followed by the cipher text.
+public final class BodyCipher {
+    // PBKDF2 iterations per BCrypt round, which take about as long on current machines
+    private static final long ITERATIONS_PER_ROUND = 100;
+    // iterations at work factors above 16, where following the hash would take minutes or overflow
+    static final int MAX_ITERATIONS = 10_000_000;
+    private static final int KEY_BITS = 256;
+    private static final int NONCE_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private BodyCipher() {
+    }
+
+    // REQUIRES: passwordHash is a BCrypt hash of password
+    // EFFECTS: returns the key for bodies locked with password under the given password hash
+    public static SecretKey deriveKey(String password, String passwordHash) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), passwordHash.getBytes(StandardCharsets.UTF_8),
+                iterations(Lockable.workFactorOf(passwordHash)), KEY_BITS);
+        try {
+            byte[] key = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+            return new SecretKeySpec(key, "AES");
+        } catch (GeneralSecurityException e) {
+            // every Java platform since 8 supports PBKDF2 with HMAC-SHA256
+            throw new IllegalStateException(e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    // REQUIRES: Lockable.MIN_WORK_FACTOR <= workFactor <= Lockable.MAX_WORK_FACTOR
+    // EFFECTS: returns the PBKDF2 iterations for keys of hashes with the given work factor
+    static int iterations(int workFactor) {
+        return (int) Math.min(ITERATIONS_PER_ROUND << workFactor, MAX_ITERATIONS);
+    }
+
+    // EFFECTS: returns the text encrypted with key under a fresh nonce
+    public static String encrypt(String text, SecretKey key) {
+        byte[] nonce = new byte[NONCE_LENGTH];
+        RANDOM.nextBytes(nonce);
+        try {
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, nonce));
+            byte[] encrypted = cipher.doFinal(text.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(ByteBuffer.allocate(NONCE_LENGTH + encrypted.length)
+                    .put(nonce).put(encrypted).array());
+        } catch (GeneralSecurityException e) {
+            // every Java platform since 8 supports AES in GCM mode
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // EFFECTS: returns the text encrypted by encrypt with key;
+    //          throws IllegalArgumentException if it was not encrypted with key or was altered
+    public static String decrypt(String cipherText, SecretKey key) {
+        byte[] bytes = Base64.getDecoder().decode(cipherText);
+        if (bytes.length < NONCE_LENGTH) {
+            throw new IllegalArgumentException("Encrypted body is truncated");
+        }
+        try {
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, bytes, 0, NONCE_LENGTH));
+            byte[] text = cipher.doFinal(bytes, NONCE_LENGTH, bytes.length - NONCE_LENGTH);
+            return new String(text, StandardCharsets.UTF_8);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("Encrypted body could not be authenticated", e);
+        }
+    }
+}
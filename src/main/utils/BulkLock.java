@@ -0,0 +1,119 @@
+package utils;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
+
+// Locks, unlocks and changes the password of many lockables at once.
+//
+// The BCrypt work is spread over the password workers, and lockables sharing a
+// password hash have it checked only once. Lockables locked together share one hash,
+// so unlocking them together later costs a single BCrypt check rather than one per
+// lockable. The results are applied on the calling thread in the order of the
+// lockables, reporting progress as they are.
+public final class BulkLock {
+    private BulkLock() {
+    }
+
+    // MODIFIES: lockables
+    // EFFECTS: locks every lockable with the password, all with one hash of it
+    public static void lockAll(Collection<? extends Lockable> lockables, String password,
+                               ProgressListener listener) {
+        if (lockables.isEmpty()) {
+            return;
+        }
+        Lockable first = lockables.iterator().next();
+        String hash = CompletableFuture.supplyAsync(() -> first.hashPassword(password),
+                Lockable.PASSWORD_WORKERS).join();
+        int done = 0;
+        for (Lockable lockable : lockables) {
+            lockable.applyLock(password, hash);
+            done += 1;
+            listener.progress(done, lockables.size());
+        }
+    }
+
+    // MODIFIES: lockables
+    // EFFECTS: unlocks every locked lockable whose password is the given one, rehashing
+    //          hashes made with a lower work factor than configured; returns how many
+    //          lockables were unlocked
+    public static int unlockAll(Collection<? extends Lockable> lockables, String password,
+                                ProgressListener listener) {
+        List<Lockable> locked = new ArrayList<>();
+        List<String> hashes = new ArrayList<>();
+        for (Lockable lockable : lockables) {
+            String hash = lockable.getPasswordHash();
+            if (lockable.isLocked() && hash != null) {
+                locked.add(lockable);
+                hashes.add(hash);
+            }
+        }
+        Map<String, CompletableFuture<String>> checks = checkDistinct(locked, hashes, (lockable, hash) ->
+                lockable.verifyPassword(password, hash));
+        int unlocked = 0;
+        for (int i = 0; i < locked.size(); i++) {
+            String newHash = checks.get(hashes.get(i)).join();
+            if (newHash != null) {
+                locked.get(i).applyUnlock(password, newHash);
+                unlocked += 1;
+            }
+            listener.progress(i + 1, locked.size());
+        }
+        return unlocked;
+    }
+
+    // MODIFIES: lockables
+    // EFFECTS: locks every lockable whose password is currentPassword with newPassword instead,
+    //          unless its password changed meanwhile; lockables sharing a current hash share the new
+    //          one too; the current hashes are never rehashed, as they are replaced; returns how many
+    //          passwords were changed
+    public static int updatePasswordAll(Collection<? extends Lockable> lockables, String currentPassword,
+                                        String newPassword, ProgressListener listener) {
+        List<Lockable> withLock = new ArrayList<>();
+        List<String> currentHashes = new ArrayList<>();
+        for (Lockable lockable : lockables) {
+            String hash = lockable.getPasswordHash();
+            if (hash != null) {
+                withLock.add(lockable);
+                currentHashes.add(hash);
+            }
+        }
+        Map<String, CompletableFuture<String>> checks = checkDistinct(withLock, currentHashes, (lockable, hash) ->
+                lockable.confirmPassword(currentPassword, hash));
+        Map<String, CompletableFuture<String>> newHashes = new HashMap<>();
+        for (int i = 0; i < withLock.size(); i++) {
+            Lockable lockable = withLock.get(i);
+            newHashes.computeIfAbsent(currentHashes.get(i), current -> checks.get(current).thenApplyAsync(hash ->
+                    hash != null ? lockable.hashPassword(newPassword) : null, Lockable.PASSWORD_WORKERS));
+        }
+        int updated = 0;
+        for (int i = 0; i < withLock.size(); i++) {
+            String newHash = newHashes.get(currentHashes.get(i)).join();
+            if (newHash != null && withLock.get(i).applyPasswordUpdate(currentPassword, currentHashes.get(i),
+                    newPassword, newHash)) {
+                updated += 1;
+            }
+            listener.progress(i + 1, withLock.size());
+        }
+        return updated;
+    }
+
+    // REQUIRES: hashes holds the password hash of each lockable, in the same order
+    // EFFECTS: starts check on a password worker once for each distinct password hash of the
+    //          lockables, with the first lockable holding it, and returns the futures of its
+    //          results keyed by hash; check returns the hash to keep if the password matches
+    //          and null otherwise
+    private static Map<String, CompletableFuture<String>> checkDistinct(List<Lockable> lockables, List<String> hashes,
+                                                                       BiFunction<Lockable, String, String> check) {
+        Map<String, CompletableFuture<String>> checks = new HashMap<>();
+        for (int i = 0; i < lockables.size(); i++) {
+            Lockable lockable = lockables.get(i);
+            String hash = hashes.get(i);
+            if (!checks.containsKey(hash)) {
+                checks.put(hash, CompletableFuture.supplyAsync(() -> check.apply(lockable, hash),
+                        Lockable.PASSWORD_WORKERS));
+            }
+        }
+        return checks;
+    }
+}
@@ -0,0 +1,363 @@
+package utils;
+
+import java.util.*;
+
+// An incrementally maintained inverted index from tokens to the documents containing them.
+//
+// Tokens are maximal runs of letters and digits, lower-cased character by character.
+// The index answers substring queries conservatively: it returns a superset of the
+// documents whose text contains the query, which the caller then verifies. A query
+// token that is cut off by the start or end of the query may only be part of a
+// document token, so it is matched as a suffix, prefix or infix accordingly.
+//
+// Whole and prefix tokens are found by an exact or range lookup in the sorted
+// vocabulary, and suffix tokens by a range lookup in the reversed vocabulary.
+// Infix tokens, which a bare one-word query is, are found through an index from
+// every substring of up to GRAM_LENGTH characters to the vocabulary tokens holding
+// it: a shorter query token is looked up directly, and a longer one intersects the
+// tokens of its grams before checking them. Their cost therefore follows the number
+// of tokens sharing the query's rarest gram rather than the size of the vocabulary,
+// at the price of keeping up to GRAM_LENGTH entries per character of every distinct
+// token.
+public class InvertedIndex<E> {
+    // the length of the longest substrings of tokens indexed for infix lookups
+    private static final int GRAM_LENGTH = 3;
+    private final TreeMap<String, HashMap<E, Integer>> postings = new TreeMap<>();
+    private final TreeSet<String> reversedTokens = new TreeSet<>();
+    private final HashMap<String, HashSet<String>> grams = new HashMap<>();
+    private final HashMap<E, HashMap<String, Integer>> documents = new HashMap<>();
+    private final HashMap<E, Integer> lengths = new HashMap<>();
+    private long totalLength = 0;
+
+    // MODIFIES: this
+    // EFFECTS: indexes the document under the tokens of the given fields,
+    //          replacing whatever was indexed for it before; null fields are skipped
+    public void put(E document, String... fields) {
+        this.remove(document);
+        HashMap<String, Integer> terms = new HashMap<>();
+        int length = 0;
+        for (String field : fields) {
+            if (field != null) {
+                for (String token : tokenize(field)) {
+                    terms.merge(token, 1, Integer::sum);
+                    length += 1;
+                }
+            }
+        }
+        for (Map.Entry<String, Integer> term : terms.entrySet()) {
+            this.postingOf(term.getKey()).put(document, term.getValue());
+        }
+        this.documents.put(document, terms);
+        this.lengths.put(document, length);
+        this.totalLength += length;
+    }
+
+    // REQUIRES: removed is made of whole tokens indexed for the document
+    // MODIFIES: this
+    // EFFECTS: re-indexes the document after part of a field holding the text removed came to
+    //          hold the text added instead, tokenizing only those two texts;
+    //          throws IllegalArgumentException if the document is not indexed
+    public void update(E document, String removed, String added) {
+        HashMap<String, Integer> terms = this.documents.get(document);
+        if (terms == null) {
+            throw new IllegalArgumentException("the document is not indexed");
+        }
+        List<String> removedTokens = tokenize(removed);
+        List<String> addedTokens = tokenize(added);
+        for (String token : removedTokens) {
+            this.count(document, terms, token, -1);
+        }
+        for (String token : addedTokens) {
+            this.count(document, terms, token, 1);
+        }
+        int delta = addedTokens.size() - removedTokens.size();
+        this.lengths.merge(document, delta, Integer::sum);
+        this.totalLength += delta;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: changes the number of times the document, whose terms are given, holds the token
+    //          by delta, dropping the token from the document and the index once nothing holds it
+    private void count(E document, HashMap<String, Integer> terms, String token, int delta) {
+        int count = terms.getOrDefault(token, 0) + delta;
+        if (count > 0) {
+            terms.put(token, count);
+            this.postingOf(token).put(document, count);
+        } else if (terms.remove(token) != null) {
+            this.removeFromPosting(token, document);
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: returns the posting of the token, adding the token to the vocabulary
+    //          with an empty posting if it is not in it yet
+    private HashMap<E, Integer> postingOf(String token) {
+        HashMap<E, Integer> posting = this.postings.get(token);
+        if (posting == null) {
+            posting = new HashMap<>();
+            this.postings.put(token, posting);
+            this.reversedTokens.add(reverse(token));
+            for (String gram : grams(token)) {
+                this.grams.computeIfAbsent(gram, g -> new HashSet<>()).add(token);
+            }
+        }
+        return posting;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: removes the document from the posting of the token, dropping the token
+    //          from the vocabulary once no document holds it
+    private void removeFromPosting(String token, E document) {
+        HashMap<E, Integer> posting = this.postings.get(token);
+        posting.remove(document);
+        if (posting.isEmpty()) {
+            this.postings.remove(token);
+            this.reversedTokens.remove(reverse(token));
+            for (String gram : grams(token)) {
+                HashSet<String> tokens = this.grams.get(gram);
+                tokens.remove(token);
+                if (tokens.isEmpty()) {
+                    this.grams.remove(gram);
+                }
+            }
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: removes the document from the index, returning true if it was indexed;
+    //          false otherwise
+    public boolean remove(E document) {
+        HashMap<String, Integer> terms = this.documents.remove(document);
+        if (terms == null) {
+            return false;
+        }
+        this.totalLength -= this.lengths.remove(document);
+        for (String token : terms.keySet()) {
+            this.removeFromPosting(token, document);
+        }
+        return true;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: removes every document from the index
+    public void clear() {
+        this.postings.clear();
+        this.reversedTokens.clear();
+        this.grams.clear();
+        this.documents.clear();
+        this.lengths.clear();
+        this.totalLength = 0;
+    }
+
+    // EFFECTS: returns the documents that may contain the query as a substring;
+    //          returns an empty instance of Optional if the query has no tokens,
+    //          in which case the index cannot narrow the search down
+    public Optional<Set<E>> candidates(String query) {
+        List<QueryToken> tokens = parseQuery(query);
+        if (tokens.isEmpty()) {
+            return Optional.empty();
+        }
+
+        Set<E> result = null;
+        for (QueryToken token : tokens) {
+            Set<E> matches = this.lookup(token);
+            if (result == null) {
+                result = matches;
+            } else {
+                result.retainAll(matches);
+            }
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        return Optional.of(result);
+    }
+
+    // EFFECTS: returns false if the document cannot contain the query as a substring;
+    //          returns true if it may, or if the document is not indexed
+    public boolean mayContain(E document, String query) {
+        HashMap<String, Integer> terms = this.documents.get(document);
+        if (terms == null) {
+            return true;
+        }
+        for (QueryToken token : parseQuery(query)) {
+            boolean found = false;
+            for (String term : terms.keySet()) {
+                if (token.matches(term)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // EFFECTS: returns true if the document is indexed; false otherwise
+    public boolean contains(E document) {
+        return this.documents.containsKey(document);
+    }
+
+    // EFFECTS: returns the number of indexed documents
+    public int size() {
+        return this.documents.size();
+    }
+
+    // EFFECTS: returns the documents holding the (already tokenized) term,
+    //          mapped to the number of times they hold it
+    public Map<E, Integer> posting(String term) {
+        HashMap<E, Integer> posting = this.postings.get(term);
+        if (posting == null) {
+            return Collections.emptyMap();
+        }
+        return Collections.unmodifiableMap(posting);
+    }
+
+    // EFFECTS: returns the number of tokens indexed for the document;
+    //          returns 0 if the document is not indexed
+    public int length(E document) {
+        return this.lengths.getOrDefault(document, 0);
+    }
+
+    // EFFECTS: returns the number of tokens indexed across all documents
+    public long totalLength() {
+        return this.totalLength;
+    }
+
+    // EFFECTS: returns a new set of the documents holding a token the query token matches
+    private Set<E> lookup(QueryToken token) {
+        Set<E> matches = new HashSet<>();
+        for (String term : this.matchingTerms(token)) {
+            matches.addAll(this.postings.get(term).keySet());
+        }
+        return matches;
+    }
+
+    // EFFECTS: returns the indexed tokens the query token matches
+    private Collection<String> matchingTerms(QueryToken token) {
+        if (token.leftAnchored && token.rightAnchored) {
+            return this.postings.containsKey(token.text) ? Collections.singleton(token.text) : Collections.emptySet();
+        } else if (token.leftAnchored) {
+            return this.postings.subMap(token.text, true, token.text + Character.MAX_VALUE, false).keySet();
+        } else if (!token.rightAnchored) {
+            return this.infixTerms(token.text);
+        }
+        List<String> terms = new ArrayList<>();
+        String reversed = reverse(token.text);
+        for (String match : this.reversedTokens.subSet(reversed, true, reversed + Character.MAX_VALUE, false)) {
+            terms.add(reverse(match));
+        }
+        return terms;
+    }
+
+    // EFFECTS: returns the indexed tokens containing text, found through the tokens holding its grams
+    private Collection<String> infixTerms(String text) {
+        if (text.length() <= GRAM_LENGTH) {
+            HashSet<String> tokens = this.grams.get(text);
+            return tokens == null ? Collections.emptySet() : tokens;
+        }
+        HashSet<String> rarest = null;
+        for (int start = 0; start + GRAM_LENGTH <= text.length(); start++) {
+            HashSet<String> tokens = this.grams.get(text.substring(start, start + GRAM_LENGTH));
+            if (tokens == null) {
+                return Collections.emptySet();
+            }
+            if (rarest == null || tokens.size() < rarest.size()) {
+                rarest = tokens;
+            }
+        }
+        List<String> terms = new ArrayList<>();
+        for (String term : rarest) {
+            if (term.contains(text)) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+
+    // EFFECTS: returns the distinct substrings of the token of up to GRAM_LENGTH characters
+    private static Set<String> grams(String token) {
+        Set<String> grams = new HashSet<>();
+        for (int start = 0; start < token.length(); start++) {
+            for (int end = start + 1; end <= Math.min(token.length(), start + GRAM_LENGTH); end++) {
+                grams.add(token.substring(start, end));
+            }
+        }
+        return grams;
+    }
+
+    // EFFECTS: splits text into lower-cased tokens of letters and digits
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                token.append(Character.toLowerCase(c));
+            } else if (token.length() > 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        if (token.length() > 0) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+
+    // EFFECTS: splits the query into tokens, recording for each token whether
+    //          it is delimited on its left and right within the query
+    private static List<QueryToken> parseQuery(String query) {
+        List<QueryToken> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < query.length()) {
+            if (!Character.isLetterOrDigit(query.charAt(i))) {
+                i += 1;
+                continue;
+            }
+            int start = i;
+            StringBuilder token = new StringBuilder();
+            while (i < query.length() && Character.isLetterOrDigit(query.charAt(i))) {
+                token.append(Character.toLowerCase(query.charAt(i)));
+                i += 1;
+            }
+            tokens.add(new QueryToken(token.toString(), start > 0, i < query.length()));
+        }
+        return tokens;
+    }
+
+    // EFFECTS: returns the string reversed
+    private static String reverse(String text) {
+        return new StringBuilder(text).reverse().toString();
+    }
+
+    // A token of a search query, with its anchoring inside the query.
+    private static class QueryToken {
+        private final String text;
+        private final boolean leftAnchored;
+        private final boolean rightAnchored;
+
+        // EFFECTS: creates a new query token
+        QueryToken(String text, boolean leftAnchored, boolean rightAnchored) {
+            this.text = text;
+            this.leftAnchored = leftAnchored;
+            this.rightAnchored = rightAnchored;
+        }
+
+        // EFFECTS: returns true if a document token containing this token
+        //          is consistent with the token's anchoring
+        boolean matches(String term) {
+            if (this.leftAnchored && this.rightAnchored) {
+                return term.equals(this.text);
+            } else if (this.leftAnchored) {
+                return term.startsWith(this.text);
+            } else if (this.rightAnchored) {
+                return term.endsWith(this.text);
+            } else {
+                return term.contains(this.text);
+            }
+        }
+    }
+}
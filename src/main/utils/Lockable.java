@@ -3,17 +3,50 @@ package utils;
 import org.json.JSONObject;
 import org.mindrot.jbcrypt.BCrypt;
 
+import javax.crypto.SecretKey;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 // A class to model a lockable.
 //
 // Objects are NOT locked by default.
+//
+// Hashing and checking passwords is deliberately slow, so the asynchronous
+// methods do it on a dedicated pool of worker threads and only then apply the
+// result on the executor the caller chooses, e.g. the Swing event dispatch thread.
+//
+// Passwords verified once are remembered in an in-memory unlock session, so
+// unlocking the same lock again shortly after skips the BCrypt check.
+//
+// New hashes use the configured work factor, which can be calibrated to the
+// machine. A hash made with a lower work factor is replaced the next time its
+// password is entered correctly.
 public class Lockable {
-    private boolean locked = false;
-    private String passwordHash = null;
+    public static final int MIN_WORK_FACTOR = 4;
+    public static final int MAX_WORK_FACTOR = 31;
+    public static final int DEFAULT_WORK_FACTOR = 10;
+    // how long checking a password may take on this machine when calibrating the work factor
+    public static final Duration DEFAULT_VERIFY_TARGET = Duration.ofMillis(250);
+    private static final String CALIBRATION_PASSWORD = "calibration password";
+    private static volatile int workFactor = DEFAULT_WORK_FACTOR;
+    private static final UnlockSessions SESSIONS = new UnlockSessions(UnlockSessions.DEFAULT_IDLE_TIMEOUT);
+    static final ExecutorService PASSWORD_WORKERS = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "password-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+    private volatile boolean locked = false;
+    private volatile String passwordHash = null;
 
     // EFFECTS: locks the object if password is set
     public void lockIfPasswordSet() {
         if (this.passwordHash != null) {
-            this.locked = true;
+            this.setLocked(true);
         }
     }
 
@@ -21,8 +54,7 @@ public class Lockable {
     // MODIFIES: this
     // EFFECTS: locks the object with the provided password
     public void lock(String password) {
-        this.setLocked(true);
-        this.setSecurePassword(password);
+        this.applyLock(password, securePassword(password));
     }
 
     // Updates the password of the object
@@ -30,8 +62,60 @@ public class Lockable {
     // EFFECTS: updates the password for the object
     public void updatePassword(String newPassword) {
         // lock if not locked
-        this.setLocked(true);
-        this.setSecurePassword(newPassword);
+        this.applyLock(newPassword, securePassword(newPassword));
+    }
+
+    // Locks the object with a password without waiting for the password to be hashed
+    // EFFECTS: hashes the password on a worker thread, then locks the object with it
+    //          on executor; returns a future completed once the object is locked
+    public CompletableFuture<Void> lockAsync(String password, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> this.hashPassword(password), PASSWORD_WORKERS)
+                .thenAcceptAsync(hash -> this.applyLock(password, hash), executor);
+    }
+
+    // EFFECTS: hashes the password on a worker thread, then locks the object with it
+    //          on that thread; returns a future completed once the object is locked
+    public CompletableFuture<Void> lockAsync(String password) {
+        return this.lockAsync(password, Runnable::run);
+    }
+
+    // Updates the password of the object without waiting for the password to be hashed
+    // EFFECTS: hashes the new password on a worker thread, then locks the object with it
+    //          on executor; returns a future completed once the password is updated
+    public CompletableFuture<Void> updatePasswordAsync(String newPassword, Executor executor) {
+        return this.lockAsync(newPassword, executor);
+    }
+
+    // EFFECTS: hashes the new password on a worker thread, then locks the object with it
+    //          on that thread; returns a future completed once the password is updated
+    public CompletableFuture<Void> updatePasswordAsync(String newPassword) {
+        return this.updatePasswordAsync(newPassword, Runnable::run);
+    }
+
+    // Unlocks the object without waiting for the password to be checked
+    // REQUIRES: password is set
+    // EFFECTS: checks the password on a worker thread, then on executor unlocks the object
+    //          if the password is correct and the password was not changed meanwhile,
+    //          rehashing it if it was hashed with a lower work factor than configured;
+    //          returns a future of whether the object was unlocked
+    public CompletableFuture<Boolean> unlockAsync(String password, Executor executor) {
+        String hash = this.passwordHash;
+        return CompletableFuture.supplyAsync(() -> this.verifyPassword(password, hash), PASSWORD_WORKERS)
+                .thenApplyAsync(newHash -> {
+                    if (newHash != null && hash.equals(this.passwordHash)) {
+                        this.applyUnlock(password, newHash);
+                        return true;
+                    }
+                    return false;
+                }, executor);
+    }
+
+    // REQUIRES: password is set
+    // EFFECTS: checks the password on a worker thread, then on that thread unlocks the object
+    //          if the password is correct and the password was not changed meanwhile;
+    //          returns a future of whether the object was unlocked
+    public CompletableFuture<Boolean> unlockAsync(String password) {
+        return this.unlockAsync(password, Runnable::run);
     }
 
     // Checks if the provided password is the correct password
@@ -39,29 +123,196 @@ public class Lockable {
     // EFFECTS: returns true if the provided password is the
     // password set for this object, false otherwise
     public boolean isCorrectPassword(String password) {
-        return BCrypt.checkpw(password, this.getPasswordHash());
+        return checkPassword(password, this.getPasswordHash());
+    }
+
+    // MODIFIES: SESSIONS
+    // EFFECTS: returns true if password matches hash, consulting the unlock sessions
+    //          before BCrypt and remembering the password if BCrypt accepts it
+    static boolean checkPassword(String password, String hash) {
+        if (SESSIONS.verify(hash, password)) {
+            return true;
+        }
+        if (BCrypt.checkpw(password, hash)) {
+            SESSIONS.remember(hash, password);
+            return true;
+        }
+        return false;
+    }
+
+    // REQUIRES: password matches hash
+    // MODIFIES: SESSIONS
+    // EFFECTS: returns hash if it was made with at least the configured work factor;
+    //          otherwise returns a new hash of password made with it
+    static String rehash(String password, String hash) {
+        if (workFactorOf(hash) >= workFactor) {
+            return hash;
+        }
+        return securePassword(password);
+    }
+
+    // MODIFIES: SESSIONS
+    // EFFECTS: returns a new hash of password, preparing the key for it; meant for worker threads
+    String hashPassword(String password) {
+        String hash = securePassword(password);
+        this.prepareKey(password, hash);
+        return hash;
+    }
+
+    // MODIFIES: SESSIONS
+    // EFFECTS: returns null if password does not match hash; otherwise returns the hash to
+    //          keep for it, rehashed if needed, preparing the keys for both hashes;
+    //          meant for worker threads
+    String verifyPassword(String password, String hash) {
+        if (this.confirmPassword(password, hash) == null) {
+            return null;
+        }
+        String newHash = rehash(password, hash);
+        if (!newHash.equals(hash)) {
+            this.prepareKey(password, newHash);
+        }
+        return newHash;
+    }
+
+    // MODIFIES: SESSIONS
+    // EFFECTS: returns null if password does not match hash; otherwise returns hash, preparing
+    //          the key for it but never rehashing it, as the object is about to be given a new
+    //          password; meant for worker threads
+    String confirmPassword(String password, String hash) {
+        if (!checkPassword(password, hash)) {
+            return null;
+        }
+        this.prepareKey(password, hash);
+        return hash;
+    }
+
+    // REQUIRES: hash is a hash of password
+    // MODIFIES: this
+    // EFFECTS: locks the object with hash
+    void applyLock(String password, String hash) {
+        this.update(() -> {
+            this.setLocked(true);
+            this.setPasswordHash(hash);
+            this.passwordSet(password);
+        });
+    }
+
+    // REQUIRES: currentPassword matches currentHash and newHash is a hash of newPassword
+    // MODIFIES: this
+    // EFFECTS: locks the object with newHash in place of currentHash and returns true, unless
+    //          its hash is no longer currentHash, in which case returns false
+    boolean applyPasswordUpdate(String currentPassword, String currentHash, String newPassword, String newHash) {
+        boolean[] applied = {false};
+        this.update(() -> {
+            if (currentHash.equals(this.passwordHash)) {
+                this.passwordVerified(currentPassword);
+                this.setLocked(true);
+                this.setPasswordHash(newHash);
+                this.passwordSet(newPassword);
+                applied[0] = true;
+            }
+        });
+        return applied[0];
+    }
+
+    // REQUIRES: password matches the current hash and newHash is a hash of it
+    // MODIFIES: this
+    // EFFECTS: unlocks the object, keeping newHash as its hash
+    void applyUnlock(String password, String newHash) {
+        this.update(() -> {
+            this.passwordVerified(password);
+            this.setLocked(false);
+            this.setPasswordHash(newHash);
+            this.passwordSet(password);
+        });
+    }
+
+    // EFFECTS: returns the key for protecting content with password under passwordHash,
+    //          deriving it only once per unlock session
+    protected static SecretKey sessionKey(String password, String passwordHash) {
+        return SESSIONS.getKey(passwordHash, () -> BodyCipher.deriveKey(password, passwordHash));
+    }
+
+    // EFFECTS: returns the work factor stored in a BCrypt hash
+    public static int workFactorOf(String hash) {
+        // hashes look like $2a$10$..., the cost being the two digits after the second $
+        int start = hash.indexOf('$', 1) + 1;
+        return Integer.parseInt(hash.substring(start, start + 2));
+    }
+
+    // EFFECTS: returns the unlock sessions shared by all lockables
+    public static UnlockSessions getSessions() {
+        return SESSIONS;
     }
 
     // Generates a secure hash for a password
-    // EFFECTS: returns a secure hash from provided password
-    private String securePassword(String password) {
-        return BCrypt.hashpw(password, BCrypt.gensalt());
+    // MODIFIES: SESSIONS
+    // EFFECTS: returns a secure hash from provided password using the configured work factor,
+    //          remembering the password for it in the unlock sessions
+    static String securePassword(String password) {
+        String hash = BCrypt.hashpw(password, BCrypt.gensalt(workFactor));
+        SESSIONS.remember(hash, password);
+        return hash;
+    }
+
+    // Picks the work factor to hash passwords with on this machine
+    // REQUIRES: MIN_WORK_FACTOR <= minimum <= MAX_WORK_FACTOR
+    // EFFECTS: returns the highest work factor, starting from minimum, with which checking
+    //          a password takes at most target; returns minimum if even that takes longer
+    public static int calibrateWorkFactor(Duration target, int minimum) {
+        int best = minimum;
+        for (int cost = minimum; cost <= MAX_WORK_FACTOR; cost++) {
+            String hash = BCrypt.hashpw(CALIBRATION_PASSWORD, BCrypt.gensalt(cost));
+            long start = System.nanoTime();
+            BCrypt.checkpw(CALIBRATION_PASSWORD, hash);
+            if (System.nanoTime() - start > target.toNanos()) {
+                break;
+            }
+            best = cost;
+        }
+        return best;
+    }
+
+    // EFFECTS: calibrates the work factor on a worker thread, never going below the default,
+    //          and configures it; returns a future of the work factor picked
+    public static CompletableFuture<Integer> calibrateWorkFactorAsync(Duration target) {
+        return CompletableFuture.supplyAsync(() -> {
+            int cost = calibrateWorkFactor(target, DEFAULT_WORK_FACTOR);
+            setWorkFactor(cost);
+            return cost;
+        }, PASSWORD_WORKERS);
+    }
+
+    // EFFECTS: returns the work factor new password hashes are made with
+    public static int getWorkFactor() {
+        return workFactor;
+    }
+
+    // REQUIRES: MIN_WORK_FACTOR <= workFactor <= MAX_WORK_FACTOR
+    // EFFECTS: sets the work factor new password hashes are made with
+    public static void setWorkFactor(int workFactor) {
+        Lockable.workFactor = workFactor;
     }
 
     // Sets password after securing it
     // MODIFIES: this
     // EFFECTS: generates a secure hash for the password and then sets it
     public void setSecurePassword(String password) {
-        this.setPasswordHash(this.securePassword(password));
+        String hash = securePassword(password);
+        this.update(() -> {
+            this.setPasswordHash(hash);
+            this.passwordSet(password);
+        });
     }
 
     // Unlocks the object if the password is correct
     // MODIFIES: this
-    // EFFECTS: returns true and unlocks the object if the password is correct;
+    // EFFECTS: returns true and unlocks the object if the password is correct,
+    // rehashing it if it was hashed with a lower work factor than configured;
     // returns false otherwise
     public boolean unlock(String password) {
         if (this.isCorrectPassword(password)) {
-            this.setLocked(false);
+            this.applyUnlock(password, rehash(password, this.passwordHash));
             return true;
         } else {
             return false;
@@ -71,8 +322,10 @@ public class Lockable {
     // MODIFIES: this
     // EFFECTS: removes lock from the object
     public void removeLock() {
-        this.locked = false;
-        this.passwordHash = null;
+        this.update(() -> {
+            this.setLocked(false);
+            this.setPasswordHash(null);
+        });
     }
 
     // EFFECTS: returns true if the object has a lock; false otherwise
@@ -80,6 +333,34 @@ public class Lockable {
         return this.passwordHash != null;
     }
 
+    // EFFECTS: called after the lock state or password hash of the object changed;
+    //          does nothing unless overridden
+    protected void changed() {
+    }
+
+    // MODIFIES: this
+    // EFFECTS: makes a change to the lock of the object that other threads must see all of or
+    //          none of; runs it as it is unless overridden
+    protected void update(Runnable change) {
+        change.run();
+    }
+
+    // EFFECTS: called on a worker thread once password is known to match passwordHash, which
+    //          the object is about to be locked with or already is, so the work to use the
+    //          password can be done ahead of time; does nothing unless overridden
+    protected void prepareKey(String password, String passwordHash) {
+    }
+
+    // EFFECTS: called when password was found to match the current hash, before the object
+    //          is unlocked or given a new password; does nothing unless overridden
+    protected void passwordVerified(String password) {
+    }
+
+    // EFFECTS: called after the object was locked with password or unlocked with it, once the
+    //          hash of password is set; does nothing unless overridden
+    protected void passwordSet(String password) {
+    }
+
     // MODIFIES: jsonObject
     // EFFECTS: adds JSON representation of the fields of this class to jsonObject
     protected void addLockableToJson(JSONObject jsonObject) {
@@ -101,10 +382,22 @@ public class Lockable {
     }
 
     public void setLocked(boolean locked) {
-        this.locked = locked;
+        if (this.locked != locked) {
+            this.locked = locked;
+            this.changed();
+        }
     }
 
     public void setPasswordHash(String passwordHash) {
-        this.passwordHash = passwordHash;
+        if (!Objects.equals(this.passwordHash, passwordHash)) {
+            if (this.passwordHash != null) {
+                SESSIONS.release(this.passwordHash, this);
+            }
+            if (passwordHash != null) {
+                SESSIONS.hold(passwordHash, this);
+            }
+            this.passwordHash = passwordHash;
+            this.changed();
+        }
     }
 }
@@ -0,0 +1,213 @@
+package utils;
+
+import java.util.ArrayList;
+
+// A text that can be edited by range without copying it.
+//
+// The text is a list of pieces, each a range of either the original text or of a
+// buffer that inserted text is appended to. Inserting or deleting only splits the
+// pieces at the edited range, so an edit costs time in the size of the change and
+// the number of pieces rather than the length of the text. Once there are more
+// than MAX_PIECES pieces, they are copied back into a single original text.
+//
+// The position of the last piece looked up is remembered, so reading characters
+// near the previous one does not walk the pieces from the start.
+public class PieceTable implements CharSequence {
+    public static final int MAX_PIECES = 1024;
+    private String original;
+    private StringBuilder added;
+    private ArrayList<Piece> pieces;
+    private int length;
+    // the text as a string, built when first asked for after an edit
+    private String string;
+    // the index of a piece and the offset it starts at
+    private int cursorIndex;
+    private int cursorStart;
+
+    // EFFECTS: creates a piece table holding the text
+    public PieceTable(String text) {
+        this.reset(text);
+    }
+
+    // REQUIRES: 0 <= offset <= length()
+    // MODIFIES: this
+    // EFFECTS: inserts the text at offset
+    public void insert(int offset, CharSequence text) {
+        this.replace(offset, 0, text);
+    }
+
+    // REQUIRES: 0 <= offset, length >= 0 and offset + length <= length()
+    // MODIFIES: this
+    // EFFECTS: deletes length characters starting at offset
+    public void delete(int offset, int length) {
+        this.replace(offset, length, "");
+    }
+
+    // REQUIRES: 0 <= offset, length >= 0 and offset + length <= length()
+    // MODIFIES: this
+    // EFFECTS: replaces length characters starting at offset with the text;
+    //          throws IndexOutOfBoundsException if the range is not in the text
+    public void replace(int offset, int length, CharSequence text) {
+        if (offset < 0 || length < 0 || offset + length > this.length) {
+            throw new IndexOutOfBoundsException("range [" + offset + ", " + (offset + length)
+                    + ") is not within the text of length " + this.length);
+        }
+        if (length == 0 && text.length() == 0) {
+            return;
+        }
+        int first = this.split(offset);
+        int last = this.split(offset + length);
+        this.pieces.subList(first, last).clear();
+        this.cursorIndex = first;
+        this.cursorStart = offset;
+        this.length -= length;
+        if (text.length() > 0) {
+            this.add(first, text);
+        }
+        this.string = null;
+        if (this.pieces.size() > MAX_PIECES) {
+            this.reset(this.toString());
+        }
+    }
+
+    // REQUIRES: the pieces before index end at the cursor, where text is inserted
+    // MODIFIES: this
+    // EFFECTS: inserts the text as a piece at index, extending the piece before it instead
+    //          if it ends where the added buffer does, as it does while text is typed
+    private void add(int index, CharSequence text) {
+        Piece previous = index > 0 ? this.pieces.get(index - 1) : null;
+        if (previous != null && previous.added && previous.start + previous.length == this.added.length()) {
+            previous.length += text.length();
+            this.cursorStart += text.length();
+        } else {
+            this.pieces.add(index, new Piece(true, this.added.length(), text.length()));
+        }
+        this.added.append(text);
+        this.length += text.length();
+    }
+
+    // REQUIRES: 0 <= offset <= length()
+    // MODIFIES: this
+    // EFFECTS: splits the piece containing offset so that a piece starts at offset, and
+    //          returns the index of that piece; returns the number of pieces if offset is
+    //          the end of the text
+    private int split(int offset) {
+        int index = this.locate(offset);
+        if (offset == this.cursorStart) {
+            return index;
+        }
+        Piece piece = this.pieces.get(index);
+        int before = offset - this.cursorStart;
+        this.pieces.add(index + 1, new Piece(piece.added, piece.start + before, piece.length - before));
+        piece.length = before;
+        return index + 1;
+    }
+
+    // REQUIRES: 0 <= offset <= length()
+    // MODIFIES: this
+    // EFFECTS: moves the cursor to the piece containing offset and returns its index;
+    //          returns the number of pieces if offset is the end of the text
+    private int locate(int offset) {
+        while (this.cursorIndex > 0 && offset < this.cursorStart) {
+            this.cursorIndex -= 1;
+            this.cursorStart -= this.pieces.get(this.cursorIndex).length;
+        }
+        while (this.cursorIndex < this.pieces.size()
+                && offset >= this.cursorStart + this.pieces.get(this.cursorIndex).length) {
+            this.cursorStart += this.pieces.get(this.cursorIndex).length;
+            this.cursorIndex += 1;
+        }
+        return this.cursorIndex;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: replaces the pieces with a single piece of the original text
+    private void reset(String text) {
+        this.original = text;
+        this.added = new StringBuilder();
+        this.pieces = new ArrayList<>();
+        if (!text.isEmpty()) {
+            this.pieces.add(new Piece(false, 0, text.length()));
+        }
+        this.length = text.length();
+        this.string = text;
+        this.cursorIndex = 0;
+        this.cursorStart = 0;
+    }
+
+    // EFFECTS: returns the number of pieces of the text
+    public int pieceCount() {
+        return this.pieces.size();
+    }
+
+    @Override
+    public int length() {
+        return this.length;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: returns the character at index; throws IndexOutOfBoundsException if it is not in the text
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= this.length) {
+            throw new IndexOutOfBoundsException("index " + index + " is not within the text of length " + this.length);
+        }
+        Piece piece = this.pieces.get(this.locate(index));
+        return this.buffer(piece).charAt(piece.start + index - this.cursorStart);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: returns a copy of the characters from start up to end
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || start > end || end > this.length) {
+            throw new IndexOutOfBoundsException("range [" + start + ", " + end
+                    + ") is not within the text of length " + this.length);
+        }
+        StringBuilder builder = new StringBuilder(end - start);
+        int index = this.locate(start);
+        int pieceStart = this.cursorStart;
+        while (pieceStart < end) {
+            Piece piece = this.pieces.get(index);
+            int from = Math.max(start, pieceStart) - pieceStart;
+            int to = Math.min(end, pieceStart + piece.length) - pieceStart;
+            builder.append(this.buffer(piece), piece.start + from, piece.start + to);
+            pieceStart += piece.length;
+            index += 1;
+        }
+        return builder.toString();
+    }
+
+    // MODIFIES: this
+    // EFFECTS: returns the text as a string, copying the pieces only the first time after an edit
+    @Override
+    public String toString() {
+        if (this.string == null) {
+            StringBuilder builder = new StringBuilder(this.length);
+            for (Piece piece : this.pieces) {
+                builder.append(this.buffer(piece), piece.start, piece.start + piece.length);
+            }
+            this.string = builder.toString();
+        }
+        return this.string;
+    }
+
+    // EFFECTS: returns the buffer the piece is a range of
+    private CharSequence buffer(Piece piece) {
+        return piece.added ? this.added : this.original;
+    }
+
+    // A range of the original text or of the added buffer.
+    private static class Piece {
+        private final boolean added;
+        private final int start;
+        private int length;
+
+        // EFFECTS: creates a piece of length characters of a buffer, starting at start
+        Piece(boolean added, int start, int length) {
+            this.added = added;
+            this.start = start;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package utils;
+
+// Is told how far a long running operation has got.
+public interface ProgressListener {
+    // a listener that ignores progress
+    ProgressListener NONE = (done, total) -> { };
+
+    // REQUIRES: 0 <= done <= total
+    // EFFECTS: called each time more of the operation's total steps are done
+    void progress(int done, int total);
+}
@@ -6,4 +6,10 @@ public enum SortOption {
     OLDEST_ADDED_FIRST,
     NEWEST_MODIFIED_FIRST,
     OLDEST_MODIFIED_FIRST,
+    ALPHABETICAL,
+    REVERSE_ALPHABETICAL,
+    MOST_CHARACTERS_FIRST,
+    FEWEST_CHARACTERS_FIRST,
+    MOST_WORDS_FIRST,
+    FEWEST_WORDS_FIRST,
 }
@@ -3,63 +3,333 @@ package utils;
 import java.util.*;
 
 // A class representing a sortable set.
+//
+// Items are kept in insertion order in a list, alongside a hash index from item
+// to its position in that list. Removal leaves a tombstone (null) behind instead
+// of shifting the list; tombstones are compacted away once they outnumber the items.
+// This keeps add, remove and contains amortized constant time.
+//
+// The list is split into chunks of CHUNK_SIZE items, so a snapshot of the set takes
+// constant time: it shares the chunks with the set, and the set copies a chunk only
+// the first time it writes to it after the snapshot was taken. A snapshot never
+// changes and cannot be changed. Each chunk counts the items it holds, so finding
+// the item at an index, or the index of an item, skips over whole chunks rather than
+// compacting the list first. That lookup is constant time while the set has no
+// tombstones, and takes time proportional to size / CHUNK_SIZE while it has some.
+//
+// An iterator goes through the set itself and fails fast once the set is changed,
+// so taking one costs nothing; iterate over a snapshot to change the set meanwhile.
+//
+// Every method synchronizes on the set, so threads may read and change it at once.
 public class SortableSet<E> implements Iterable<E> {
-    private ArrayList<E> items;
+    // the number of items in a chunk of the list
+    public static final int CHUNK_SIZE = 64;
+    private final boolean snapshot;
+    private ArrayList<Chunk> chunks;
+    // true if the list of chunks is shared with a snapshot
+    private boolean listShared;
+    // chunks of an older generation are shared with a snapshot
+    private int generation;
+    private int slots;
+    private int size;
+    private int tombstones;
+    // the number of times items were added, removed, sorted or replaced
+    private int modifications;
+    // the position of every item, or null until it is needed
+    private HashMap<E, Integer> positions;
+
+    // A chunk of the item list.
+    private static class Chunk {
+        private final Object[] items;
+        private final int generation;
+        // the number of slots that hold an item rather than a tombstone
+        private int count;
+
+        // EFFECTS: creates a chunk holding a copy of the items, written in the given generation
+        Chunk(Object[] items, int generation) {
+            this.items = Arrays.copyOf(items, CHUNK_SIZE);
+            this.generation = generation;
+            for (Object item : this.items) {
+                if (item != null) {
+                    this.count += 1;
+                }
+            }
+        }
+    }
 
     // EFFECTS: creates a new sortable set
     public SortableSet() {
-        this.items = new ArrayList<>();
+        this.snapshot = false;
+        this.chunks = new ArrayList<>();
+        this.positions = new HashMap<>();
+    }
+
+    // EFFECTS: creates a snapshot sharing the chunks of the list with the set it is taken of
+    private SortableSet(SortableSet<E> set) {
+        this.snapshot = true;
+        this.chunks = set.chunks;
+        this.listShared = true;
+        this.generation = set.generation;
+        this.slots = set.slots;
+        this.size = set.size;
+        this.tombstones = set.tombstones;
+        this.modifications = set.modifications;
     }
 
+    // REQUIRES: item is not null
     // MODIFIES: this
     // EFFECTS: adds an item and returns true if it is not already present;
-    //          returns false otherwise
-    public boolean add(E item) {
-        if (!this.items.contains(item)) {
-            this.items.add(item);
-            return true;
-        } else {
+    //          returns false otherwise; throws UnsupportedOperationException for a snapshot
+    public synchronized boolean add(E item) {
+        this.checkWritable();
+        if (this.positions().containsKey(item)) {
             return false;
         }
+        this.positions.put(item, this.slots);
+        this.slots += 1;
+        this.write(this.slots - 1, item);
+        this.size += 1;
+        this.modifications += 1;
+        return true;
     }
 
     // MODIFIES: this
     // EFFECTS: returns true and removes item from the set if it is present;
-    //          returns false otherwise
-    public boolean remove(E item) {
-        return this.items.remove(item);
+    //          returns false otherwise; throws UnsupportedOperationException for a snapshot
+    public synchronized boolean remove(E item) {
+        this.checkWritable();
+        Integer position = this.positions().remove(item);
+        if (position == null) {
+            return false;
+        }
+        this.write(position, null);
+        if (position == this.slots - 1) {
+            this.slots -= 1;
+            if (this.slots % CHUNK_SIZE == 0) {
+                this.ownList();
+                this.chunks.remove(this.chunks.size() - 1);
+            }
+        } else {
+            this.tombstones += 1;
+        }
+        this.size -= 1;
+        this.modifications += 1;
+        if (this.tombstones > this.size) {
+            this.compact();
+        }
+        return true;
+    }
+
+    // EFFECTS: returns true if the item is present in the set; false otherwise
+    public synchronized boolean contains(E item) {
+        return this.positions().containsKey(item);
+    }
+
+    // EFFECTS: returns the index of the item, assuming indexing starts at 0;
+    //          returns -1 if the item is not present; takes constant time if nothing was removed
+    //          since the set was last compacted, and time proportional to size / CHUNK_SIZE otherwise
+    public synchronized int indexOf(E item) {
+        Integer position = this.positions().get(item);
+        if (position == null) {
+            return -1;
+        }
+        return this.tombstones == 0 ? position : this.rank(position);
+    }
+
+    // EFFECTS: returns a number that orders the item among the others as their indices do,
+    //          in constant time, until the set is sorted or its items are replaced; returns -1
+    //          if the item is not present
+    public synchronized int orderOf(E item) {
+        Integer position = this.positions().get(item);
+        return position == null ? -1 : position;
     }
 
     // REQUIRES: 0 <= index < this.size()
-    // EFFECTS: returns the item at index `index`, assuming indexing starts at 0.
-    public E get(int index) {
-        return this.items.get(index);
+    // EFFECTS: returns the item at index `index`, assuming indexing starts at 0; takes constant
+    //          time if nothing was removed since the set was last compacted, and time proportional
+    //          to size / CHUNK_SIZE otherwise
+    public synchronized E get(int index) {
+        return this.tombstones == 0 ? this.slot(index) : this.select(index);
     }
 
     // EFFECTS: returns the size of the set
-    public int size() {
-        return this.items.size();
+    public synchronized int size() {
+        return this.size;
     }
 
     // MODIFIES: this
-    // EFFECTS: sorts the set in place according to the specific comparator
-    public void sort(Comparator<? super E> c) {
-        this.items.sort(c);
+    // EFFECTS: sorts the set in place according to the specific comparator;
+    //          throws UnsupportedOperationException for a snapshot
+    public synchronized void sort(Comparator<? super E> c) {
+        this.checkWritable();
+        ArrayList<E> items = this.getItems();
+        items.sort(c);
+        this.rebuild(items);
+        this.modifications += 1;
     }
 
     // EFFECTS: returns item corresponding to the provided index,
     //          assuming that indexing starts at 1
-    public Optional<E> safeGetIndexOne(int index) {
-        if (index < this.items.size() + 1 && index > 0) {
-            return Optional.of(this.items.get(index - 1));
+    public synchronized Optional<E> safeGetIndexOne(int index) {
+        if (index < this.size + 1 && index > 0) {
+            return Optional.of(this.get(index - 1));
         } else {
             return Optional.empty();
         }
     }
 
     // EFFECTS: returns true if the set is empty; false otherwise
-    public boolean isEmpty() {
-        return this.items.isEmpty();
+    public synchronized boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: returns a snapshot of the set as it is now, in constant time; the snapshot is
+    //          not affected by later changes to the set and cannot be changed itself
+    public synchronized SortableSet<E> snapshot() {
+        if (this.snapshot) {
+            return this;
+        }
+        SortableSet<E> snapshot = new SortableSet<>(this);
+        this.share();
+        return snapshot;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: shares the list of chunks and the chunks as they are now, so the set copies them
+    //          before it writes to them
+    private void share() {
+        this.listShared = true;
+        this.generation += 1;
+    }
+
+    // EFFECTS: returns true if the set is a snapshot, which cannot be changed; false otherwise
+    public boolean isSnapshot() {
+        return this.snapshot;
+    }
+
+    // EFFECTS: throws UnsupportedOperationException if the set is a snapshot
+    private void checkWritable() {
+        if (this.snapshot) {
+            throw new UnsupportedOperationException("a snapshot cannot be changed");
+        }
+    }
+
+    // EFFECTS: returns the item in the slot at position, which is null for a tombstone
+    @SuppressWarnings("unchecked")
+    private E slot(int position) {
+        return (E) this.chunks.get(position / CHUNK_SIZE).items[position % CHUNK_SIZE];
+    }
+
+    // EFFECTS: returns the number of items in the slots before position
+    private int rank(int position) {
+        int chunk = position / CHUNK_SIZE;
+        int rank = 0;
+        for (int i = 0; i < chunk; i++) {
+            rank += this.chunks.get(i).count;
+        }
+        Object[] items = this.chunks.get(chunk).items;
+        for (int i = 0; i < position % CHUNK_SIZE; i++) {
+            if (items[i] != null) {
+                rank += 1;
+            }
+        }
+        return rank;
+    }
+
+    // REQUIRES: 0 <= index < size
+    // EFFECTS: returns the item with index items before it, skipping the chunks that end before it
+    @SuppressWarnings("unchecked")
+    private E select(int index) {
+        int remaining = index;
+        int chunk = 0;
+        while (remaining >= this.chunks.get(chunk).count) {
+            remaining -= this.chunks.get(chunk).count;
+            chunk += 1;
+        }
+        for (Object item : this.chunks.get(chunk).items) {
+            if (item != null) {
+                if (remaining == 0) {
+                    return (E) item;
+                }
+                remaining -= 1;
+            }
+        }
+        throw new IllegalStateException("chunk holds fewer items than it counts");
+    }
+
+    // REQUIRES: position < slots
+    // MODIFIES: this
+    // EFFECTS: puts the item in the slot at position, first copying the chunk holding it
+    //          if it is shared with a snapshot
+    private void write(int position, E item) {
+        int index = position / CHUNK_SIZE;
+        if (index == this.chunks.size()) {
+            this.ownList();
+            this.chunks.add(new Chunk(new Object[0], this.generation));
+        } else if (this.chunks.get(index).generation != this.generation) {
+            this.ownList();
+            this.chunks.set(index, new Chunk(this.chunks.get(index).items, this.generation));
+        }
+        Chunk chunk = this.chunks.get(index);
+        if (chunk.items[position % CHUNK_SIZE] != null) {
+            chunk.count -= 1;
+        }
+        if (item != null) {
+            chunk.count += 1;
+        }
+        chunk.items[position % CHUNK_SIZE] = item;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: copies the list of chunks if it is shared with a snapshot, sharing the chunks
+    private void ownList() {
+        if (this.listShared) {
+            this.chunks = new ArrayList<>(this.chunks);
+            this.listShared = false;
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: removes the tombstones left behind by removals, if any,
+    //          so that list positions match item indices again
+    private void compact() {
+        if (this.tombstones > 0) {
+            this.rebuild(this.getItems());
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: replaces the list with new chunks holding the items, dropping the position index
+    //          until it is needed again
+    private void rebuild(List<E> items) {
+        this.chunks = new ArrayList<>(items.size() / CHUNK_SIZE + 1);
+        this.listShared = false;
+        Object[] all = items.toArray();
+        for (int start = 0; start < all.length; start += CHUNK_SIZE) {
+            this.chunks.add(new Chunk(Arrays.copyOfRange(all, start, Math.min(all.length, start + CHUNK_SIZE)),
+                    this.generation));
+        }
+        this.slots = all.length;
+        this.size = all.length;
+        this.tombstones = 0;
+        this.positions = null;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: returns the position of every item, building the index first if it is not
+    private HashMap<E, Integer> positions() {
+        if (this.positions == null) {
+            HashMap<E, Integer> positions = new HashMap<>(this.size * 2);
+            for (int i = 0; i < this.slots; i++) {
+                E item = this.slot(i);
+                if (item != null) {
+                    positions.put(item, i);
+                }
+            }
+            this.positions = positions;
+        }
+        return this.positions;
     }
 
     // EFFECTS: returns true if the passed object is equal to the set; false otherwise
@@ -72,29 +342,91 @@ public class SortableSet<E> implements Iterable<E> {
             return false;
         }
         SortableSet<?> that = (SortableSet<?>) o;
-        return Objects.equals(items, that.items);
+        return Objects.equals(this.getItems(), that.getItems());
     }
 
     // EFFECTS: returns the hash code of the set
     @Override
     public int hashCode() {
-        return Objects.hash(items);
+        return Objects.hash(this.getItems());
     }
 
-    // EFFECTS: returns an iterator over the elements of the set
+    // EFFECTS: returns an iterator over the elements of the set in order; the iterator throws
+    //          ConcurrentModificationException once the set is changed, so iterate over a snapshot
+    //          to change the set meanwhile
     @Override
     public Iterator<E> iterator() {
-        return this.items.iterator();
+        return new SetIterator();
+    }
+
+    // A fail-fast iterator over the items in the slots of the set, skipping tombstones.
+    private class SetIterator implements Iterator<E> {
+        private final int expectedModifications;
+        private int cursor;
+
+        // EFFECTS: creates an iterator starting at the first item of the set
+        SetIterator() {
+            synchronized (SortableSet.this) {
+                this.expectedModifications = SortableSet.this.modifications;
+                this.cursor = this.skipTombstones(0);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            synchronized (SortableSet.this) {
+                return this.cursor < SortableSet.this.slots;
+            }
+        }
+
+        @Override
+        public E next() {
+            synchronized (SortableSet.this) {
+                if (SortableSet.this.modifications != this.expectedModifications) {
+                    throw new ConcurrentModificationException();
+                }
+                if (this.cursor >= SortableSet.this.slots) {
+                    throw new NoSuchElementException();
+                }
+                E item = SortableSet.this.slot(this.cursor);
+                this.cursor = this.skipTombstones(this.cursor + 1);
+                return item;
+            }
+        }
+
+        // EFFECTS: returns the first position at or after `from` that is not a tombstone
+        private int skipTombstones(int from) {
+            while (from < SortableSet.this.slots && SortableSet.this.slot(from) == null) {
+                from += 1;
+            }
+            return from;
+        }
     }
 
     /**
      * GETTERS AND SETTERS
      */
-    public ArrayList<E> getItems() {
+    // EFFECTS: returns the number of times items were added to or removed from the set, or the
+    //          set was sorted or its items replaced; a snapshot keeps the number of its set
+    public synchronized int getModifications() {
+        return this.modifications;
+    }
+
+    // EFFECTS: returns a copy of the items of the set in order
+    public synchronized ArrayList<E> getItems() {
+        ArrayList<E> items = new ArrayList<>(this.size);
+        for (E item : this) {
+            items.add(item);
+        }
         return items;
     }
 
-    public void setItems(ArrayList<E> items) {
-        this.items = items;
+    // MODIFIES: this
+    // EFFECTS: replaces the items of the set with the given ones, which must be distinct;
+    //          throws UnsupportedOperationException for a snapshot
+    public synchronized void setItems(ArrayList<E> items) {
+        this.checkWritable();
+        this.rebuild(items);
+        this.modifications += 1;
     }
 }
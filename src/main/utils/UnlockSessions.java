@@ -0,0 +1,227 @@
+package utils;
+
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+// Remembers which passwords were verified recently, so unlocking the same lock again
+// within a session does not pay for another BCrypt check.
+//
+// Entries are keyed by the BCrypt hash of a lock and hold a salted SHA-256 digest of
+// the password that matched it, never the password itself, along with the key derived
+// from the password for encrypting note bodies once it is needed. They live only in
+// memory and expire once unused for the idle timeout, so nothing about them reaches disk.
+// Expired entries are dropped whenever the sessions are consulted, and a key is never
+// handed out from an expired entry.
+//
+// A session only ever confirms the password that opened it. A wrong password closes the
+// session, so the caller falls through to BCrypt for that guess and every later one until
+// the right password is checked by BCrypt again; guessing therefore never gets cheaper
+// than BCrypt's work factor allows.
+//
+// Several locks may hold the same hash, e.g. the notes BulkLock locked together. The
+// locks holding each hash are tracked, and a session is forgotten once no lock holds its
+// hash. The locks are only weakly referenced, so one that is garbage collected without
+// releasing its hash no longer keeps the session alive.
+public class UnlockSessions {
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(5);
+    private static final int SALT_LENGTH = 16;
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    // the locks holding each hash, weakly referenced
+    private final Map<String, Set<Object>> holders = new ConcurrentHashMap<>();
+    private final LongSupplier clock;
+    private volatile long idleTimeout;
+
+    // EFFECTS: creates an empty cache whose entries expire after being unused for idleTimeout
+    public UnlockSessions(Duration idleTimeout) {
+        this(idleTimeout, System::nanoTime);
+    }
+
+    // EFFECTS: creates an empty cache whose entries expire after being unused for idleTimeout,
+    //          reading the time in nanoseconds from clock
+    UnlockSessions(Duration idleTimeout, LongSupplier clock) {
+        this.clock = clock;
+        this.setIdleTimeout(idleTimeout);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: returns true if password was remembered for passwordHash and the entry has not
+    //          expired, renewing it; returns false otherwise, forgetting the entry if the
+    //          password is not the one remembered
+    public boolean verify(String passwordHash, String password) {
+        long now = this.clock.getAsLong();
+        this.purgeExpired(now);
+        Session session = this.sessions.get(passwordHash);
+        if (session == null) {
+            return false;
+        }
+        if (this.isExpired(session, now)) {
+            this.sessions.remove(passwordHash, session);
+            return false;
+        }
+        if (!MessageDigest.isEqual(session.verifier, digest(session.salt, password))) {
+            // a miss closes the session, so the next guess is checked by BCrypt
+            this.sessions.remove(passwordHash, session);
+            return false;
+        }
+        session.lastUsed = now;
+        return true;
+    }
+
+    // REQUIRES: password is correct for passwordHash
+    // MODIFIES: this
+    // EFFECTS: remembers that password matches passwordHash
+    public void remember(String passwordHash, String password) {
+        long now = this.clock.getAsLong();
+        this.purgeExpired(now);
+        byte[] salt = new byte[SALT_LENGTH];
+        RANDOM.nextBytes(salt);
+        this.sessions.put(passwordHash, new Session(salt, digest(salt, password), now));
+    }
+
+    // REQUIRES: the password the key is derived from matches passwordHash
+    // MODIFIES: this
+    // EFFECTS: returns the key remembered for passwordHash if its entry has not expired;
+    //          otherwise derives it, remembering it if an unexpired password is remembered
+    //          for passwordHash
+    public SecretKey getKey(String passwordHash, Supplier<SecretKey> derive) {
+        long now = this.clock.getAsLong();
+        this.purgeExpired(now);
+        Session session = this.sessions.get(passwordHash);
+        if (session == null || this.isExpired(session, now)) {
+            return derive.get();
+        }
+        SecretKey key = session.key;
+        if (key == null) {
+            key = derive.get();
+            session.key = key;
+        }
+        return key;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: forgets the password remembered for passwordHash, if any
+    public void forget(String passwordHash) {
+        this.sessions.remove(passwordHash);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: records that lock holds passwordHash, until it releases it or is garbage collected
+    public void hold(String passwordHash, Object lock) {
+        this.holders.compute(passwordHash, (hash, locks) -> {
+            Set<Object> held = locks == null ? Collections.newSetFromMap(new WeakHashMap<>()) : locks;
+            held.add(lock);
+            return held;
+        });
+    }
+
+    // MODIFIES: this
+    // EFFECTS: records that lock no longer holds passwordHash, forgetting the password
+    //          remembered for it once no lock holds it
+    public void release(String passwordHash, Object lock) {
+        this.holders.compute(passwordHash, (hash, locks) -> {
+            if (locks != null) {
+                locks.remove(lock);
+            }
+            if (locks == null || locks.isEmpty()) {
+                this.sessions.remove(hash);
+                return null;
+            }
+            return locks;
+        });
+    }
+
+    // MODIFIES: this
+    // EFFECTS: forgets every remembered password
+    public void purge() {
+        this.sessions.clear();
+    }
+
+    // MODIFIES: this
+    // EFFECTS: forgets the remembered passwords that expired, and those of hashes whose locks
+    //          were all garbage collected
+    public void purgeExpired() {
+        this.purgeExpired(this.clock.getAsLong());
+    }
+
+    // MODIFIES: this
+    // EFFECTS: forgets the remembered passwords that expired by now, and those of hashes whose
+    //          locks were all garbage collected
+    private void purgeExpired(long now) {
+        Iterator<Map.Entry<String, Session>> iterator = this.sessions.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (this.isExpired(iterator.next().getValue(), now)) {
+                iterator.remove();
+            }
+        }
+        for (String passwordHash : this.holders.keySet()) {
+            this.holders.computeIfPresent(passwordHash, (hash, locks) -> {
+                if (!locks.isEmpty()) {
+                    return locks;
+                }
+                this.sessions.remove(hash);
+                return null;
+            });
+        }
+    }
+
+    // EFFECTS: returns true if the session was unused for longer than the idle timeout by now
+    private boolean isExpired(Session session, long now) {
+        return now - session.lastUsed > this.idleTimeout;
+    }
+
+    // EFFECTS: returns the number of remembered passwords, including expired ones not yet purged
+    public int size() {
+        return this.sessions.size();
+    }
+
+    // EFFECTS: returns the SHA-256 digest of salt followed by the UTF-8 bytes of password
+    private static byte[] digest(byte[] salt, String password) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(salt);
+            return digest.digest(password.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * GETTERS AND SETTERS
+     */
+    public Duration getIdleTimeout() {
+        return Duration.ofNanos(idleTimeout);
+    }
+
+    public void setIdleTimeout(Duration idleTimeout) {
+        this.idleTimeout = idleTimeout.toNanos();
+    }
+
+    // A password verified for a lock.
+    private static class Session {
+        private final byte[] salt;
+        private final byte[] verifier;
+        private volatile long lastUsed;
+        private volatile SecretKey key;
+
+        // EFFECTS: creates a session for the salted digest of a password, last used at the given time
+        Session(byte[] salt, byte[] verifier, long lastUsed) {
+            this.salt = salt;
+            this.verifier = verifier;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import utils.SortOption;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChangeBusTest {
+    private Folders folders;
+    private Folder folder;
+    private List<ChangeEvent> events;
+    private ChangeBus.Listener listener;
+
+    @BeforeEach
+    public void setUp() {
+        this.folders = new Folders();
+        this.folder = new Folder("name");
+        new Note("first", this.folder);
+        this.folders.add(this.folder);
+        this.events = new ArrayList<>();
+        this.listener = this.events::add;
+        this.folders.getBus().subscribe(this.listener);
+    }
+
+    @Test
+    public void testFolderAddedAndRemoved() {
+        Folder another = new Folder("another");
+        this.folders.add(another);
+        this.folders.remove(this.folder);
+        assertEquals(2, this.events.size());
+        checkEvent(this.events.get(0), ChangeEvent.Type.FOLDER_ADDED, another, null, 1);
+        checkEvent(this.events.get(1), ChangeEvent.Type.FOLDER_REMOVED, this.folder, null, 0);
+        assertTrue(this.events.get(0).isFolderChange());
+    }
+
+    @Test
+    public void testNoteAddedEditedAndRemoved() {
+        Note note = new Note("second", this.folder);
+        note.edit("edited");
+        this.folder.removeNote(note);
+        assertEquals(3, this.events.size());
+        checkEvent(this.events.get(0), ChangeEvent.Type.NOTE_ADDED, this.folder, note, 1);
+        checkEvent(this.events.get(1), ChangeEvent.Type.NOTE_EDITED, this.folder, note, 1);
+        checkEvent(this.events.get(2), ChangeEvent.Type.NOTE_REMOVED, this.folder, note, 1);
+        assertFalse(this.events.get(0).isFolderChange());
+    }
+
+    @Test
+    public void testFolderEdited() {
+        // locking sets both the lock state and the password, which are delivered as one edit
+        this.folder.lock("password");
+        assertEquals(1, this.events.size());
+        checkEvent(this.events.get(0), ChangeEvent.Type.FOLDER_EDITED, this.folder, null, -1);
+        assertTrue(this.events.get(0).isFolderChange());
+
+        this.folder.setLocked(false);
+        this.folder.lockIfPasswordSet();
+        this.folder.removeLock();
+        assertEquals(4, this.events.size());
+        checkEvent(this.events.get(3), ChangeEvent.Type.FOLDER_EDITED, this.folder, null, -1);
+    }
+
+    @Test
+    public void testNotesReplaced() {
+        this.folder.reorder(SortOption.ALPHABETICAL);
+        this.folders.setFolders(this.folders.getFolders());
+        assertEquals(2, this.events.size());
+        checkEvent(this.events.get(0), ChangeEvent.Type.NOTES_REPLACED, this.folder, null, -1);
+        checkEvent(this.events.get(1), ChangeEvent.Type.FOLDERS_REPLACED, null, null, -1);
+    }
+
+    @Test
+    public void testChangesMadeByListenerDeliveredAfter() {
+        this.folders.getBus().subscribe(event -> {
+            if (event.getType() == ChangeEvent.Type.NOTE_ADDED) {
+                event.getNote().editTitle("title");
+            }
+        });
+        Note note = new Note("second", this.folder);
+        assertEquals(2, this.events.size());
+        checkEvent(this.events.get(0), ChangeEvent.Type.NOTE_ADDED, this.folder, note, 1);
+        checkEvent(this.events.get(1), ChangeEvent.Type.NOTE_EDITED, this.folder, note, 1);
+        assertEquals("title", note.getTitle());
+    }
+
+    @Test
+    public void testChangesDeliveredOnceOutermostLockReleased() {
+        Note note = this.folders.read(() -> {
+            Note added = new Note("second", this.folder);
+            added.edit("edited");
+            assertTrue(this.events.isEmpty());
+            return added;
+        });
+        assertEquals(2, this.events.size());
+        checkEvent(this.events.get(0), ChangeEvent.Type.NOTE_ADDED, this.folder, note, 1);
+        checkEvent(this.events.get(1), ChangeEvent.Type.NOTE_EDITED, this.folder, note, 1);
+    }
+
+    @Test
+    public void testNoChangesAfterUnsubscribingOrRemoving() {
+        this.folders.remove(this.folder);
+        this.events.clear();
+        new Note("second", this.folder);
+        assertTrue(this.events.isEmpty());
+
+        this.folders.getBus().unsubscribe(this.listener);
+        this.folders.add(new Folder("another"));
+        assertTrue(this.events.isEmpty());
+    }
+
+    // EFFECTS: checks that the event is of the given type, about the folder and note at index
+    private static void checkEvent(ChangeEvent event, ChangeEvent.Type type, Folder folder, Note note, int index) {
+        assertEquals(type, event.getType());
+        assertSame(folder, event.getFolder());
+        assertSame(note, event.getNote());
+        assertEquals(index, event.getIndex());
+    }
+}
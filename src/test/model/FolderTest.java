@@ -1,11 +1,24 @@
 package model;
 
+import model.exceptions.LockedException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import utils.Lockable;
+import utils.ProgressListener;
 import utils.SortOption;
 import utils.SortableSet;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -80,6 +93,80 @@ public class FolderTest {
         assertFalse(this.folder.search("dog").isPresent());
     }
 
+    @Test
+    public void testSearchReturnsFirstInFolderOrder() {
+        Note first = new Note("a lazy cat", this.folder);
+        new Note("a lazy dog", this.folder);
+
+        Optional<Note> result = this.folder.search("lazy");
+        assertTrue(result.isPresent());
+        assertEquals(first, result.get());
+    }
+
+    @Test
+    public void testSearchPartialWords() {
+        Note note = new Note("title", "jumps over the lazy dog", this.folder);
+        assertEquals(Optional.of(note), this.folder.search("ver the la"));
+        assertEquals(Optional.of(note), this.folder.search("itl"));
+        assertEquals(Optional.of(note), this.folder.search(" "));
+        assertFalse(this.folder.search("Lazy").isPresent());
+    }
+
+    @Test
+    public void testSearchAfterEdit() {
+        Note note = new Note("the quick brown fox", this.folder);
+        note.edit("jumps over the lazy dog");
+        assertFalse(this.folder.search("fox").isPresent());
+        assertEquals(Optional.of(note), this.folder.search("dog"));
+
+        note.editTitle("heading");
+        assertEquals(Optional.of(note), this.folder.search("heading"));
+    }
+
+    @Test
+    public void testSearchAfterRangeEdit() throws LockedException {
+        Note note = new Note("the quick brown fox", this.folder);
+        assertEquals(Optional.of(note), this.folder.search("fox"));
+        note.edit(4, 11, "slow red");
+        assertFalse(this.folder.search("quick").isPresent());
+        assertEquals(Optional.of(note), this.folder.search("slow red fox"));
+
+        note.edit(5, 0, "x");
+        assertFalse(this.folder.search("slow").isPresent());
+        assertEquals(Optional.of(note), this.folder.search("the sxlow"));
+    }
+
+    @Test
+    public void testSearchWhileReading() {
+        Note note = new Note("the quick brown fox", this.folder);
+        assertEquals(Optional.of(note), this.folder.search("fox"));
+        note.edit("jumps over the lazy dog");
+        // the index cannot be brought up to date under the read lock, so the edited note is
+        // looked at as it is
+        assertEquals(Optional.of(note), this.folder.read(() -> this.folder.search("dog")));
+        assertFalse(this.folder.read(() -> this.folder.search("fox")).isPresent());
+    }
+
+    @Test
+    public void testGetId() throws InterruptedException {
+        Folder other = new Folder("other");
+        String[] seen = new String[1];
+        Thread reader = new Thread(() -> seen[0] = other.getId());
+        reader.start();
+        reader.join();
+        assertEquals(other.getId(), seen[0]);
+        assertNotEquals(this.folder.getId(), other.getId());
+        other.setId("id");
+        assertEquals("id", other.getId());
+    }
+
+    @Test
+    public void testSearchAfterRemove() {
+        Note note = new Note("the quick brown fox", this.folder);
+        this.folder.removeNote(note);
+        assertFalse(this.folder.search("fox").isPresent());
+    }
+
     @Test
     public void testSortNewestAddedFirst() {
         this.createSortNotes();
@@ -88,10 +175,33 @@ public class FolderTest {
         expectedOrder.add(this.getNote(1));
         expectedOrder.add(this.getNote(0));
 
+        SortableSet<Note> notes = this.folder.getNotes().snapshot();
+        this.folder.markClean();
         assertEquals(expectedOrder, this.folder.sort(SortOption.NEWEST_ADDED_FIRST));
+        // sorting leaves the notes of the folder in their order, so a save need not rewrite it
+        assertEquals(notes, this.folder.getNotes());
+        assertFalse(this.folder.isReordered());
         this.checkSortOption(SortOption.NEWEST_ADDED_FIRST);
     }
 
+    @Test
+    public void testReorder() {
+        this.createSortNotes();
+        this.folder.markClean();
+        SortableSet<Note> expectedOrder = new SortableSet<>();
+        expectedOrder.add(this.getNote(2));
+        expectedOrder.add(this.getNote(1));
+        expectedOrder.add(this.getNote(0));
+
+        assertEquals(expectedOrder, this.folder.reorder(SortOption.NEWEST_ADDED_FIRST));
+        assertEquals(expectedOrder, this.folder.getNotes());
+        assertTrue(this.folder.isReordered());
+        this.checkSortOption(SortOption.NEWEST_ADDED_FIRST);
+        Note two = expectedOrder.get(1);
+        assertEquals(two, this.folder.reorder(SortOption.ALPHABETICAL).get(2));
+        assertNull(this.folder.reorder(null));
+    }
+
     @Test
     public void testSortOldestAddedFirst() {
         this.createSortNotes();
@@ -130,11 +240,132 @@ public class FolderTest {
         this.checkSortOption(SortOption.OLDEST_MODIFIED_FIRST);
     }
 
+    @Test
+    public void testSortAlphabetical() {
+        Note banana = new Note("banana", "text", this.folder);
+        Note apple = new Note("Apple", "text", this.folder);
+        Note cherry = new Note("cherry pie is the best", this.folder);
+        assertEquals(Arrays.asList(apple, banana, cherry),
+                this.folder.sort(SortOption.ALPHABETICAL).getItems());
+        assertEquals(Arrays.asList(cherry, banana, apple),
+                this.folder.sort(SortOption.REVERSE_ALPHABETICAL).getItems());
+        this.checkSortOption(SortOption.REVERSE_ALPHABETICAL);
+
+        banana.editTitle("aardvark");
+        assertEquals(banana, this.folder.sort(SortOption.ALPHABETICAL).get(0));
+    }
+
+    @Test
+    public void testSortBySize() {
+        Note shortNote = new Note("tiny", this.folder);
+        Note longNote = new Note("a much longer note", this.folder);
+        Note wordy = new Note("a b c d e", this.folder);
+        assertEquals(Arrays.asList(longNote, wordy, shortNote),
+                this.folder.sort(SortOption.MOST_CHARACTERS_FIRST).getItems());
+        assertEquals(Arrays.asList(shortNote, wordy, longNote),
+                this.folder.sort(SortOption.FEWEST_CHARACTERS_FIRST).getItems());
+        assertEquals(Arrays.asList(wordy, longNote, shortNote),
+                this.folder.sort(SortOption.MOST_WORDS_FIRST).getItems());
+        assertEquals(Arrays.asList(shortNote, longNote, wordy),
+                this.folder.sort(SortOption.FEWEST_WORDS_FIRST).getItems());
+
+        shortNote.edit("now this is the longest note of all");
+        assertEquals(shortNote, this.folder.sort(SortOption.MOST_WORDS_FIRST).get(0));
+    }
+
+    @Test
+    public void testStatisticsFollowChanges() {
+        Note first = new Note("one two three", this.folder);
+        assertEquals(new Statistics(1, 3, 13), this.folder.getStatistics());
+
+        Note second = new Note("title", "four five", this.folder);
+        assertEquals(new Statistics(2, 5, 22), this.folder.getStatistics());
+        first.edit("one");
+        assertEquals(new Statistics(2, 3, 12), this.folder.getStatistics());
+        second.editTitle("a much longer title");
+        assertEquals(new Statistics(2, 3, 12), this.folder.getStatistics());
+
+        first.changeFolder(new Folder("other"));
+        assertEquals(new Statistics(1, 2, 9), this.folder.getStatistics());
+        first.edit("one two");
+        assertEquals(new Statistics(1, 2, 9), this.folder.getStatistics());
+        this.folder.setNotes(new SortableSet<>());
+        assertEquals(Statistics.EMPTY, this.folder.getStatistics());
+    }
+
+    @Test
+    public void testCountedStatisticsReadWhileFolderIsRead() throws InterruptedException {
+        new Note("one two three", this.folder);
+        assertEquals(new Statistics(1, 3, 13), this.folder.getStatistics());
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread reader = new Thread(() -> {
+            try {
+                this.folder.read(() -> {
+                    held.countDown();
+                    release.await();
+                    return null;
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        reader.start();
+        held.await();
+
+        try {
+            assertEquals(new Statistics(1, 3, 13),
+                    assertTimeoutPreemptively(Duration.ofSeconds(5), () -> this.folder.getStatistics()));
+        } finally {
+            release.countDown();
+            reader.join();
+        }
+    }
+
     @Test
     public void testSortNull() {
         assertNull(this.folder.sort(null));
     }
 
+    @Test
+    public void testViewsFollowTimestamps() {
+        LocalDateTime time = LocalDateTime.parse("2021-03-04T03:02:16");
+        Note first = new Note("first", this.folder);
+        Note second = new Note("second", this.folder);
+        Note third = new Note("third", this.folder);
+        first.setDateTimeAdded(time);
+        second.setDateTimeAdded(time.plusHours(1));
+        // equal timestamps keep both notes, in the order they joined the folder
+        third.setDateTimeAdded(time);
+        assertEquals(Arrays.asList(first, third, second), this.viewed(SortOption.OLDEST_ADDED_FIRST));
+        assertEquals(Arrays.asList(second, third, first), this.viewed(SortOption.NEWEST_ADDED_FIRST));
+
+        first.setDateTimeModified(time.plusDays(1));
+        second.setDateTimeModified(time);
+        third.setDateTimeModified(time.plusHours(2));
+        Collection<Note> newestModified = this.folder.view(SortOption.NEWEST_MODIFIED_FIRST);
+        assertEquals(Arrays.asList(first, third, second), this.viewed(SortOption.NEWEST_MODIFIED_FIRST));
+        second.edit("edited");
+        assertEquals(second, this.viewed(SortOption.NEWEST_MODIFIED_FIRST).get(0));
+        assertEquals(second, this.viewed(SortOption.OLDEST_MODIFIED_FIRST).get(2));
+        // a view follows the notes instead of being a copy
+        assertEquals(Arrays.asList(second, first, third),
+                this.folder.read(() -> new ArrayList<>(newestModified)));
+
+        this.folder.removeNote(second);
+        assertFalse(this.viewed(SortOption.NEWEST_MODIFIED_FIRST).contains(second));
+        assertEquals(2, this.folder.view(SortOption.OLDEST_ADDED_FIRST).size());
+        assertThrows(UnsupportedOperationException.class, () -> this.folder.read(() -> newestModified.remove(first)));
+        // a view is only iterated under the lock of its folder
+        assertThrows(IllegalStateException.class, newestModified::iterator);
+        assertNull(this.folder.view(null));
+    }
+
+    // EFFECTS: returns the notes of the view of the sort option, read under the lock of the folder
+    private List<Note> viewed(SortOption sortOption) {
+        return this.folder.read(() -> new ArrayList<>(this.folder.view(sortOption)));
+    }
+
     @Test
     public void testTotalNotes() {
         assertEquals(0, this.folder.totalNotes());
@@ -197,4 +428,159 @@ public class FolderTest {
     public void testToString() {
         assertEquals("folder-name", this.folder.toString());
     }
+
+    @Test
+    public void testChangeTracking() {
+        assertTrue(this.folder.hasChanges());
+        Note note = new Note("one", this.folder);
+        assertTrue(this.folder.getChangedNotes().contains(note));
+        this.folder.markClean();
+        assertFalse(this.folder.hasChanges());
+        assertFalse(note.isDirty());
+
+        note.editTitle("title");
+        assertTrue(this.folder.hasChanges());
+        assertTrue(this.folder.getChangedNotes().contains(note));
+        this.folder.markClean();
+
+        this.folder.removeNote(note);
+        assertTrue(this.folder.getRemovedNoteIds().contains(note.getId()));
+        assertTrue(this.folder.getChangedNotes().isEmpty());
+        this.folder.markClean();
+
+        this.folder.lock("password");
+        assertTrue(this.folder.isDirty());
+        this.folder.markClean();
+
+        this.folder.sort(SortOption.OLDEST_ADDED_FIRST);
+        this.folder.sort(SortOption.ALPHABETICAL);
+        assertFalse(this.folder.isDirty());
+        assertFalse(this.folder.isReordered());
+        this.folder.reorder(SortOption.ALPHABETICAL);
+        assertTrue(this.folder.isReordered());
+    }
+
+    @Test
+    public void testMarkCleanUpToSavePoint() {
+        Note saved = new Note("saved", this.folder);
+        Note removed = new Note("removed", this.folder);
+        this.folder.removeNote(removed);
+        long savePoint = Folder.lastStamp();
+        Note edited = new Note("edited", this.folder);
+        saved.editTitle("edited after the save point");
+        this.folder.markClean(savePoint);
+
+        assertTrue(this.folder.hasChanges());
+        assertTrue(this.folder.getChangedNotes().contains(saved));
+        assertTrue(this.folder.getChangedNotes().contains(edited));
+        assertTrue(this.folder.getRemovedNoteIds().isEmpty());
+        assertFalse(this.folder.isDirty());
+        this.folder.markClean(Folder.lastStamp());
+        assertFalse(this.folder.hasChanges());
+    }
+
+    @Test
+    public void testConcurrentEditsAndReads() throws InterruptedException {
+        for (int i = 0; i < 50; i++) {
+            new Note("note " + i, this.folder);
+        }
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        Thread editor = new Thread(() -> {
+            try {
+                for (int i = 0; i < 2000; i++) {
+                    Note note = this.folder.getNotes().get(i % this.folder.totalNotes());
+                    note.insertText(0, "word ");
+                    note.deleteText(0, 1);
+                    new Note("added " + i, this.folder);
+                    this.folder.removeNote(note);
+                    this.folder.reorder(i % 2 == 0 ? SortOption.ALPHABETICAL : SortOption.NEWEST_MODIFIED_FIRST);
+                }
+            } catch (Throwable e) {
+                failures.add(e);
+            }
+        });
+        editor.start();
+        while (editor.isAlive()) {
+            // a note is added before another is removed
+            int notes = this.folder.toJson().getJSONArray("notes").length();
+            assertTrue(notes == 50 || notes == 51);
+            this.folder.search("word");
+            this.folder.displayNotes();
+            notes = this.folder.getStatistics().getNotes();
+            assertTrue(notes == 50 || notes == 51);
+        }
+        editor.join();
+        assertTrue(failures.isEmpty(), failures.toString());
+    }
+
+    @Test
+    public void testIterateViewAndReadTextsWhileEditing() throws InterruptedException {
+        String words = String.join(" ", Collections.nCopies(20, "alpha"));
+        for (int i = 0; i < 20; i++) {
+            new Note(words, this.folder);
+        }
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        Thread editor = new Thread(() -> {
+            try {
+                for (int i = 0; i < 20000; i++) {
+                    Note note = this.folder.getNotes().get(i % this.folder.totalNotes());
+                    int offset = 6 * (i % 20);
+                    note.edit(offset, 5, note.readText().startsWith("alpha", offset) ? "omega" : "alpha");
+                    this.folder.removeNote(new Note(words, this.folder));
+                }
+            } catch (Throwable e) {
+                failures.add(e);
+            }
+        });
+        editor.start();
+        while (editor.isAlive()) {
+            this.folder.read(() -> {
+                for (Note note : this.folder.view(SortOption.NEWEST_MODIFIED_FIRST)) {
+                    // every edit replaces a whole word at once, so no reader sees one half done
+                    for (String text : Arrays.asList(note.getText(), note.readText(),
+                            note.toJson().getString("text"))) {
+                        assertTrue(text.matches("((alpha|omega) ){19}(alpha|omega)"), text);
+                    }
+                }
+                return null;
+            });
+        }
+        editor.join();
+        assertTrue(failures.isEmpty(), failures.toString());
+    }
+
+    @Test
+    public void testSearchDoesNotKeepLazyTexts() {
+        Folder folder = new Folder("lazy");
+        Note match = new Note("");
+        match.setText("needle in ", () -> "needle in a haystack");
+        Note other = new Note("");
+        other.setText("just hay", () -> "just hay");
+        match.setFolder(folder);
+        other.setFolder(folder);
+        assertFalse(match.isTextLoaded());
+
+        assertEquals(match, folder.search("needle").get());
+        assertFalse(other.isTextLoaded());
+        assertFalse(folder.search("haystacks").isPresent());
+    }
+
+    @Test
+    public void testBulkLockNotes() {
+        Lockable.setWorkFactor(Lockable.MIN_WORK_FACTOR);
+        try {
+            Note first = new Note("first", this.folder);
+            Note second = new Note("second", this.folder);
+            this.folder.lockNotes("password", ProgressListener.NONE);
+            assertTrue(first.isLocked() && second.isLocked());
+
+            assertEquals(2, this.folder.updateNotesPassword("password", "new password", ProgressListener.NONE));
+            assertEquals(0, this.folder.unlockNotes("password", ProgressListener.NONE));
+            assertEquals(2, this.folder.unlockNotes("new password", ProgressListener.NONE));
+            assertFalse(first.isLocked() || second.isLocked());
+            assertTrue(this.folder.getChangedNotes().contains(first));
+        } finally {
+            Lockable.setWorkFactor(Lockable.DEFAULT_WORK_FACTOR);
+        }
+    }
 }
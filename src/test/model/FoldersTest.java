@@ -2,8 +2,17 @@ package model;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import utils.SortOption;
 import utils.SortableSet;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class FoldersTest {
@@ -48,6 +57,22 @@ public class FoldersTest {
         assertEquals(folders, this.folders.getFolders());
     }
 
+    @Test
+    public void testStatistics() {
+        assertEquals(Statistics.EMPTY, this.folders.getStatistics());
+        Folder folderOne = new Folder("one");
+        Folder folderTwo = new Folder("two");
+        new Note("a b", folderOne);
+        Note note = new Note("c d e", folderTwo);
+        this.folders.add(folderOne);
+        this.folders.add(folderTwo);
+        assertEquals(new Statistics(2, 5, 8), this.folders.getStatistics());
+
+        note.edit("c");
+        assertEquals(new Statistics(2, 3, 4), this.folders.getStatistics());
+        assertEquals("Notes: 2, Words: 3, Characters: 4", this.folders.getStatistics().toString());
+    }
+
     @Test
     public void testDisplay() {
         Folder folderOne = new Folder("one");
@@ -57,4 +82,218 @@ public class FoldersTest {
 
         assertEquals("Folders:\n- [1] one\n- [2] two", this.folders.display());
     }
+
+    @Test
+    public void testSearchRanksAcrossFolders() {
+        Folder folderOne = new Folder("one");
+        Folder folderTwo = new Folder("two");
+        this.folders.add(folderOne);
+        this.folders.add(folderTwo);
+        Note once = new Note("a fox and a dog", folderOne);
+        Note twice = new Note("Fox", "the fox jumps", folderTwo);
+        new Note("nothing to see", folderTwo);
+
+        SearchResults results = this.folders.search("fox");
+        assertTrue(results.isComplete());
+        assertEquals(2, results.size());
+        assertEquals(Arrays.asList(twice, once), results.stream().collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testSearchSkipsLockedNotes() {
+        Folder folder = new Folder("one");
+        this.folders.add(folder);
+        Note unlocked = new Note("the fox", folder);
+        Note locked = new Note("the fox", folder);
+        locked.setLocked(true);
+
+        SearchResults results = this.folders.search("fox");
+        assertEquals(Collections.singletonList(unlocked), results.page(0, 10));
+    }
+
+    @Test
+    public void testSearchNoMatches() {
+        Folder folder = new Folder("one");
+        this.folders.add(folder);
+        new Note("the fox", folder);
+
+        assertTrue(this.folders.search("dog").isEmpty());
+        assertTrue(this.folders.search(" ").isEmpty());
+        assertTrue(new Folders().search("fox").isEmpty());
+    }
+
+    @Test
+    public void testSearchLimitAndPages() {
+        Folder folder = new Folder("one");
+        this.folders.add(folder);
+        for (int i = 0; i < 5; i++) {
+            new Note("note " + i, folder);
+        }
+
+        SearchResults results = this.folders.search("note", 3, Duration.ofSeconds(1));
+        assertFalse(results.isComplete());
+        assertEquals(3, results.size());
+        List<Note> firstPage = results.page(0, 2);
+        assertEquals(2, firstPage.size());
+        assertEquals(folder.getNotes().get(0), firstPage.get(0));
+        assertEquals(1, results.page(1, 2).size());
+        assertTrue(results.page(2, 2).isEmpty());
+    }
+
+    @Test
+    public void testSearchWhileFolderIsRead() throws InterruptedException {
+        Folder folder = new Folder("one");
+        this.folders.add(folder);
+        Note indexed = new Note("the fox", folder);
+        assertTrue(this.folders.search("fox").isComplete());
+        CountDownLatch release = new CountDownLatch(1);
+        Thread reader = this.holdReadLock(folder, release);
+
+        try {
+            SearchResults results = assertTimeoutPreemptively(Duration.ofSeconds(5),
+                    () -> this.folders.search("fox"));
+            assertTrue(results.isComplete());
+            assertEquals(Collections.singletonList(indexed), results.page(0, 10));
+        } finally {
+            release.countDown();
+            reader.join();
+        }
+    }
+
+    @Test
+    public void testSearchGivesUpIndexingAtTheBudget() throws InterruptedException {
+        Folder folder = new Folder("one");
+        this.folders.add(folder);
+        new Note("the fox", folder);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread reader = this.holdReadLock(folder, release);
+
+        try {
+            SearchResults results = assertTimeoutPreemptively(Duration.ofSeconds(5),
+                    () -> this.folders.search("fox", 10, Duration.ofMillis(50)));
+            assertFalse(results.isComplete());
+        } finally {
+            release.countDown();
+            reader.join();
+        }
+        assertTrue(this.folders.search("fox").isComplete());
+    }
+
+    @Test
+    public void testChangeTracking() {
+        Folder folder = new Folder("name");
+        this.folders.add(folder);
+        assertTrue(this.folders.hasChanges());
+        this.folders.markClean();
+        assertFalse(this.folders.hasChanges());
+
+        new Note("text", folder);
+        assertTrue(this.folders.hasChanges());
+        this.folders.markClean();
+
+        this.folders.remove(folder);
+        assertTrue(this.folders.hasChanges());
+        assertTrue(this.folders.getRemovedFolderIds().contains(folder.getId()));
+        this.folders.markClean();
+        assertFalse(this.folders.hasChanges());
+
+        this.folders.setFolders(new SortableSet<>());
+        assertTrue(this.folders.isReordered());
+    }
+
+    @Test
+    public void testSnapshotIsNotAffectedByChanges() {
+        Folder folder = new Folder("name");
+        Note note = new Note("title", "text", folder);
+        Note removed = new Note("removed", folder);
+        this.folders.add(folder);
+        Folder removedFolder = new Folder("removed");
+        this.folders.add(removedFolder);
+
+        try (Folders.Snapshot snapshot = this.folders.snapshot()) {
+            note.edit("edited");
+            note.editTitle("new title");
+            note.lock("password");
+            folder.removeNote(removed);
+            new Note("added", folder);
+            folder.reorder(SortOption.REVERSE_ALPHABETICAL);
+            this.folders.remove(removedFolder);
+            this.folders.add(new Folder("added"));
+
+            assertEquals(2, snapshot.size());
+            Folder.Snapshot folderSnapshot = snapshot.iterator().next();
+            assertEquals("name", folderSnapshot.getName());
+            assertEquals(2, folderSnapshot.size());
+            List<Note.Snapshot> notes = new ArrayList<>();
+            folderSnapshot.forEach(notes::add);
+            assertEquals("title", notes.get(0).getTitle());
+            assertEquals("text", notes.get(0).readText());
+            assertFalse(notes.get(0).isLocked());
+            assertFalse(notes.get(0).isEncrypted());
+            assertEquals("removed", notes.get(1).readText());
+        }
+        assertEquals("new title", note.toJson().getString("title"));
+    }
+
+    @Test
+    public void testSnapshotsTakenBetweenChanges() {
+        Folder folder = new Folder("name");
+        Note note = new Note("first", folder);
+        this.folders.add(folder);
+
+        Folders.Snapshot first = this.folders.snapshot();
+        note.edit("second");
+        Folders.Snapshot second = this.folders.snapshot();
+        note.edit("third");
+        assertEquals("first", first.iterator().next().iterator().next().readText());
+        assertEquals("second", second.iterator().next().iterator().next().readText());
+        first.close();
+        second.close();
+        second.close();
+        try (Folders.Snapshot third = this.folders.snapshot()) {
+            assertEquals("third", third.iterator().next().iterator().next().readText());
+            assertTrue(third.getSavePoint() > second.getSavePoint());
+        }
+    }
+
+    @Test
+    public void testLeakedSnapshotIsClosed() throws InterruptedException {
+        Folder folder = new Folder("name");
+        new Note("first", folder);
+        this.folders.add(folder);
+        int open = History.openSnapshots();
+        this.leakSnapshot();
+        assertEquals(open + 1, History.openSnapshots());
+
+        for (int i = 0; i < 50 && History.openSnapshots() > open; i++) {
+            System.gc();
+            Thread.sleep(10);
+            this.folders.snapshot().close();
+        }
+        assertEquals(open, History.openSnapshots());
+    }
+
+    // takes a snapshot of the folders and drops it without closing it
+    private void leakSnapshot() {
+        assertEquals(1, this.folders.snapshot().size());
+    }
+
+    // holds the read lock of the folder on another thread until release is counted down
+    private Thread holdReadLock(Folder folder, CountDownLatch release) throws InterruptedException {
+        CountDownLatch held = new CountDownLatch(1);
+        Thread reader = new Thread(() -> {
+            try {
+                folder.read(() -> {
+                    held.countDown();
+                    release.await();
+                    return null;
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        reader.start();
+        held.await();
+        return reader;
+    }
 }
@@ -195,4 +195,227 @@ class NoteTest {
             // expected
         }
     }
+
+    @Test
+    public void testDirtyTracking() {
+        assertTrue(this.note.isDirty());
+        this.note.markClean();
+        assertFalse(this.note.isDirty());
+        this.note.edit("new text");
+        assertTrue(this.note.isDirty());
+        this.note.markClean();
+        this.note.lock("password");
+        assertTrue(this.note.isDirty());
+    }
+
+    @Test
+    public void testGetId() {
+        assertNotNull(this.note.getId());
+        assertEquals(this.note.getId(), this.note.getId());
+        assertNotEquals(this.note.getId(), new Note("other").getId());
+        this.note.setId("id");
+        assertEquals("id", this.note.getId());
+    }
+
+    @Test
+    public void testLazyText() {
+        int[] loads = {0};
+        Note lazy = new Note("");
+        lazy.setText("A long body that goes", () -> {
+            loads[0]++;
+            return "A long body that goes on and on";
+        });
+        assertFalse(lazy.isTextLoaded());
+        assertEquals("A long body that goes", lazy.getTextPreview());
+        assertEquals("A long body that goe...", lazy.getSummary());
+        assertEquals(0, loads[0]);
+
+        assertEquals("A long body that goes on and on", lazy.readText());
+        assertFalse(lazy.isTextLoaded());
+        assertEquals("A long body that goes on and on", lazy.getText());
+        assertEquals("A long body that goes on and on", lazy.getText());
+        assertTrue(lazy.isTextLoaded());
+        assertEquals(2, loads[0]);
+        assertEquals(8, lazy.wordCount());
+
+        lazy.setText("short");
+        assertEquals("short", lazy.getTextPreview());
+        assertEquals("short", lazy.getSummary());
+    }
+
+    @Test
+    public void testEncryptedText() {
+        Note locked = new Note(null, "Secret text that is long enough", "password", new Folder("folder"));
+        assertTrue(locked.isEncrypted());
+        assertFalse(locked.isTextEncrypted());
+        String encrypted = locked.getEncryptedText();
+        assertEquals(encrypted, locked.toJson().getString("encryptedText"));
+        assertFalse(locked.toJson().has("text"));
+        assertFalse(encrypted.contains("Secret"));
+
+        Note loaded = new Note("");
+        loaded.setPasswordHash(locked.getPasswordHash());
+        loaded.setEncryptedText(encrypted);
+        assertTrue(loaded.isLocked());
+        assertTrue(loaded.isTextEncrypted());
+        assertEquals("", loaded.getText());
+        assertEquals(Note.ENCRYPTED_SUMMARY, loaded.getSummary());
+        assertEquals(encrypted, loaded.toJson().getString("encryptedText"));
+
+        assertFalse(loaded.unlock("wrong password"));
+        assertTrue(loaded.isTextEncrypted());
+        assertTrue(loaded.unlock("password"));
+        assertEquals("Secret text that is long enough", loaded.getText());
+        // the encryption is kept until the text changes
+        assertEquals(encrypted, loaded.getEncryptedText());
+        loaded.setText("changed");
+        assertNotEquals(encrypted, loaded.getEncryptedText());
+    }
+
+    @Test
+    public void testRemoveLockStopsEncryption() {
+        Note locked = new Note("text", "text", "password", new Folder("folder"));
+        locked.unlock("password");
+        locked.removeLock();
+        assertFalse(locked.isEncrypted());
+        assertEquals("text", locked.toJson().getString("text"));
+    }
+
+    @Test
+    public void testTextEncryptedWithFolderPassword() {
+        Folder folder = new Folder("folder");
+        Note note = new Note(null, "Secret text of the folder", folder);
+        assertFalse(note.isEncrypted());
+        folder.lock("folder password");
+        assertTrue(note.isEncrypted());
+        assertFalse(note.isLocked());
+        String encrypted = note.getEncryptedText();
+        assertEquals(encrypted, note.toJson().getString("encryptedText"));
+        assertFalse(note.toJson().has("text"));
+
+        Folder loadedFolder = new Folder("folder");
+        loadedFolder.setPasswordHash(folder.getPasswordHash());
+        Note loaded = new Note("");
+        loaded.setEncryptedText(encrypted);
+        loaded.setFolder(loadedFolder);
+        assertTrue(loaded.isLocked());
+        assertFalse(loaded.toJson().getBoolean("locked"));
+        assertEquals("", loaded.getText());
+        assertEquals(encrypted, loaded.toJson().getString("encryptedText"));
+        assertFalse(loaded.changeFolder(new Folder("other")));
+        assertSame(loadedFolder, loaded.getFolder());
+
+        assertFalse(loaded.unlock("wrong password"));
+        assertTrue(loaded.unlock("folder password"));
+        assertFalse(loaded.isLocked());
+        assertEquals("Secret text of the folder", loaded.getText());
+        assertEquals(encrypted, loaded.getEncryptedText());
+
+        // a new password of the folder encrypts the text again, and removing it stops encrypting
+        loadedFolder.lock("new folder password");
+        assertNotEquals(encrypted, loaded.getEncryptedText());
+        assertTrue(loadedFolder.getChangedNotes().contains(loaded));
+        loadedFolder.removeLock();
+        assertFalse(loaded.isEncrypted());
+        assertEquals("Secret text of the folder", loaded.toJson().getString("text"));
+    }
+
+    @Test
+    public void testRangedEditOfTextEncryptedWithFolderPassword() throws LockedException {
+        Folder folder = new Folder("folder");
+        Note note = new Note(null, "Secret text", folder);
+        folder.lock("folder password");
+        String encrypted = note.getEncryptedText();
+        Folder loadedFolder = new Folder("folder");
+        loadedFolder.setPasswordHash(folder.getPasswordHash());
+        Note loaded = new Note("");
+        loaded.setEncryptedText(encrypted);
+        loaded.setFolder(loadedFolder);
+
+        assertThrows(LockedException.class, () -> loaded.insertText(0, "more "));
+        assertThrows(LockedException.class, () -> loaded.edit(3, 2, "x"));
+        assertThrows(LockedException.class, () -> loaded.deleteText(0, 0));
+        assertTrue(loaded.isTextEncrypted());
+        assertEquals(encrypted, loaded.toJson().getString("encryptedText"));
+
+        assertTrue(loaded.unlock("folder password"));
+        loaded.insertText(0, "More ");
+        assertEquals("More Secret text", loaded.getText());
+    }
+
+    @Test
+    public void testOwnPasswordTakesPrecedenceOverFolders() {
+        Folder folder = new Folder("folder");
+        folder.lock("folder password");
+        Note note = new Note(null, "Secret text", "password", folder);
+        Note loaded = new Note("");
+        loaded.setPasswordHash(note.getPasswordHash());
+        loaded.setEncryptedText(note.getEncryptedText());
+        Folder loadedFolder = new Folder("folder");
+        loadedFolder.setPasswordHash(folder.getPasswordHash());
+        loaded.setFolder(loadedFolder);
+
+        assertFalse(loaded.unlock("folder password"));
+        assertTrue(loaded.isLocked());
+        assertTrue(loaded.unlock("password"));
+        assertEquals("Secret text", loaded.getText());
+    }
+
+    @Test
+    public void testCachedSummaryAndCounts() {
+        Note untitled = new Note("one two three four five six");
+        assertEquals("one two three four f...", untitled.getSummary());
+        assertSame(untitled.getSummary(), untitled.getSummary());
+        assertEquals(6, untitled.wordCount());
+        assertEquals(27, untitled.characterCount());
+
+        untitled.edit("one two");
+        assertEquals("one two", untitled.getSummary());
+        assertEquals(2, untitled.wordCount());
+        assertEquals(7, untitled.characterCount());
+
+        untitled.setTitle("Title");
+        assertEquals("Title", untitled.getSummary());
+        assertEquals(0, untitled.getSummaryKey().compareTo(new Note("Title", "other", new Folder("f"))
+                .getSummaryKey()));
+        assertTrue(untitled.getSummaryKey().compareTo(new Note("zebra").getSummaryKey()) < 0);
+    }
+
+    @Test
+    public void testCountsWithoutTitle() {
+        Note untitled = new Note("one\ttwo\n three ");
+        assertEquals(3, untitled.wordCount());
+        assertEquals(3, untitled.wordCountWithTitle());
+        assertEquals(15, untitled.characterCountWithTitle());
+
+        untitled.editTitle("a title");
+        assertEquals(5, untitled.wordCountWithTitle());
+        assertEquals(22, untitled.characterCountWithTitle());
+    }
+
+    @Test
+    public void testEditRange() throws LockedException {
+        Folder folder = new Folder("folder");
+        Note note = new Note("the quick fox", folder);
+        assertEquals(new Statistics(1, 3, 13), folder.getStatistics());
+        LocalDateTime modified = LocalDateTime.MIN;
+        note.setDateTimeModified(modified);
+
+        note.insertText(9, "est");
+        assertEquals("the quickest fox", note.getText());
+        assertEquals(3, note.wordCount());
+        note.insertText(12, " brown");
+        assertEquals(4, note.wordCount());
+        note.deleteText(3, 1);
+        assertEquals("thequickest brown fox", note.getText());
+        assertEquals(3, note.wordCount());
+        note.edit(0, 11, "a  lazy dog,");
+        assertEquals("a  lazy dog, brown fox", note.getText());
+        assertEquals(5, note.wordCount());
+        assertEquals(22, note.characterCount());
+        assertEquals(new Statistics(1, 5, 22), folder.getStatistics());
+        assertTrue(note.getDateTimeModified().isAfter(modified));
+        assertTrue(folder.search("lazy").isPresent());
+        assertThrows(IndexOutOfBoundsException.class, () -> note.deleteText(20, 5));
+    }
 }
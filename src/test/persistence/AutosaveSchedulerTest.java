@@ -0,0 +1,110 @@
+package persistence;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AutosaveSchedulerTest {
+    private static final Duration QUIET_PERIOD = Duration.ofMillis(100);
+    private static final Duration MAX_DELAY = Duration.ofMillis(400);
+    private final AtomicInteger saves = new AtomicInteger();
+    private final AtomicBoolean dirty = new AtomicBoolean(true);
+    private final List<Exception> failures = new CopyOnWriteArrayList<>();
+    private AutosaveScheduler scheduler;
+
+    @BeforeEach
+    public void setUp() {
+        this.scheduler = new AutosaveScheduler(() -> {
+            this.saves.incrementAndGet();
+            this.dirty.set(false);
+        }, this.dirty::get, this.failures::add, QUIET_PERIOD, MAX_DELAY);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        this.scheduler.close();
+    }
+
+    @Test
+    public void testBurstIsSavedOnce() throws InterruptedException {
+        for (int i = 0; i < 5; i++) {
+            this.scheduler.changed();
+            Thread.sleep(10);
+        }
+        assertTrue(this.scheduler.isPending());
+        assertEquals(0, this.saves.get());
+        Thread.sleep(QUIET_PERIOD.toMillis() * 3);
+        assertEquals(1, this.saves.get());
+        assertFalse(this.scheduler.isPending());
+        assertTrue(this.failures.isEmpty());
+    }
+
+    @Test
+    public void testSteadyChangesSavedByMaxDelay() throws InterruptedException {
+        long start = System.nanoTime();
+        while (this.saves.get() == 0 && System.nanoTime() - start < MAX_DELAY.toNanos() * 3) {
+            this.dirty.set(true);
+            this.scheduler.changed();
+            Thread.sleep(QUIET_PERIOD.toMillis() / 4);
+        }
+        assertEquals(1, this.saves.get());
+        assertTrue(System.nanoTime() - start < MAX_DELAY.toNanos() * 2);
+    }
+
+    @Test
+    public void testNothingToSaveIsSkipped() throws InterruptedException {
+        this.dirty.set(false);
+        this.scheduler.changed();
+        Thread.sleep(QUIET_PERIOD.toMillis() * 3);
+        assertEquals(0, this.saves.get());
+    }
+
+    @Test
+    public void testFailureReported() throws InterruptedException {
+        this.scheduler.close();
+        IOException failure = new IOException("disk full");
+        this.scheduler = new AutosaveScheduler(() -> {
+            throw failure;
+        }, () -> true, this.failures::add, QUIET_PERIOD, MAX_DELAY);
+        this.scheduler.changed();
+        Thread.sleep(QUIET_PERIOD.toMillis() * 3);
+        assertEquals(1, this.failures.size());
+        assertSame(failure, this.failures.get(0));
+    }
+
+    @Test
+    public void testCloseDropsPendingSave() throws InterruptedException {
+        this.scheduler.changed();
+        this.scheduler.close();
+        assertFalse(this.scheduler.isPending());
+        this.scheduler.changed();
+        Thread.sleep(QUIET_PERIOD.toMillis() * 2);
+        assertEquals(0, this.saves.get());
+    }
+
+    @Test
+    public void testFlushSavesPendingChangesAtOnce() throws InterruptedException {
+        this.scheduler.changed();
+        this.scheduler.flush();
+        assertEquals(1, this.saves.get());
+        assertFalse(this.scheduler.isPending());
+        this.scheduler.close();
+        Thread.sleep(QUIET_PERIOD.toMillis() * 2);
+        assertEquals(1, this.saves.get());
+    }
+
+    @Test
+    public void testFlushWithNothingPending() throws InterruptedException {
+        this.scheduler.flush();
+        assertEquals(0, this.saves.get());
+    }
+}
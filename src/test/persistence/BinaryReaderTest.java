@@ -0,0 +1,191 @@
+package persistence;
+
+import model.Folder;
+import model.Folders;
+import model.Note;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryReaderTest {
+    private String source;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        this.source = JsonTest.temporaryFile(".nmb");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(Paths.get(this.source));
+        BinaryWriter.deleteBodies(this.source, null);
+    }
+
+    @Test
+    public void testReaderNonExistentFile() {
+        BinaryReader reader = new BinaryReader("./data/noSuchFile.nmb");
+        assertThrows(IOException.class, reader::read);
+    }
+
+    @Test
+    public void testReaderJsonFile() {
+        BinaryReader reader = new BinaryReader("./data/testReaderEmptyFolders.json");
+        assertThrows(IOException.class, reader::read);
+    }
+
+    @Test
+    public void testReaderUnsupportedVersion() throws IOException {
+        try (DataOutputStream output = new DataOutputStream(Files.newOutputStream(Paths.get(this.source)))) {
+            output.writeInt(BinaryWriter.MAGIC);
+            output.writeShort(BinaryWriter.VERSION + 1);
+        }
+        IOException e = assertThrows(IOException.class, new BinaryReader(this.source)::read);
+        assertTrue(e.getMessage().contains("version"));
+    }
+
+    @Test
+    public void testReaderTruncatedFile() throws IOException {
+        try (DataOutputStream output = new DataOutputStream(Files.newOutputStream(Paths.get(this.source)))) {
+            output.writeInt(BinaryWriter.MAGIC);
+            output.writeShort(BinaryWriter.VERSION);
+            output.writeInt(100);
+        }
+        assertThrows(EOFException.class, new BinaryReader(this.source)::read);
+    }
+
+    @Test
+    public void testReaderMapsBodiesLazily() throws IOException {
+        Folders folders = new Folders();
+        Folder folder = new Folder("Folder");
+        for (int i = 0; i < 10; i++) {
+            new Note(i % 2 == 0 ? "Title " + i : null, i == 3 ? "" : "Body of note " + i + " \u00e9\u4e2d", folder);
+        }
+        folders.add(folder);
+        folders.add(new Folder("Empty"));
+        this.write(folders);
+
+        // a tiny segment size maps almost every body separately
+        Folders read = new BinaryReader(this.source, 20).read();
+        assertEquals(2, read.getFolders().size());
+        Folder readFolder = read.getFolders().get(0);
+        assertEquals(10, readFolder.totalNotes());
+        assertEquals("Body of note 1 \u00e9\u4e2d", readFolder.getNotes().get(1).getSummary());
+        for (int i = 0; i < 10; i++) {
+            Note note = readFolder.getNotes().get(i);
+            assertEquals(i == 3, note.isTextLoaded());
+            assertEquals(folder.getNotes().get(i).getTitle(), note.getTitle());
+            assertEquals(folder.getNotes().get(i).getText(), note.getText());
+        }
+        assertFalse(read.hasChanges());
+    }
+
+    @Test
+    public void testReplacingSnapshotKeepsMappedBodies() throws IOException {
+        Folders folders = new Folders();
+        Folder folder = new Folder("Folder");
+        new Note("Body of the first note", folder);
+        new Note("Body of the second note", folder);
+        folders.add(folder);
+        BinaryWriter first = this.write(folders);
+        Folder read = new BinaryReader(this.source).read().getFolders().get(0);
+
+        folder.getNotes().get(0).edit("Edited body");
+        BinaryWriter second = this.write(folders);
+
+        assertFalse(Files.exists(BinaryWriter.bodiesPath(this.source, first.getGeneration())));
+        assertTrue(Files.exists(BinaryWriter.bodiesPath(this.source, second.getGeneration())));
+        assertEquals("Body of the first note", read.getNotes().get(0).getText());
+        assertEquals("Body of the second note", read.getNotes().get(1).getText());
+        Folder reread = new BinaryReader(this.source).read().getFolders().get(0);
+        assertEquals("Edited body", reread.getNotes().get(0).getText());
+    }
+
+    @Test
+    public void testReaderVersionThree() throws IOException {
+        LocalDateTime time = LocalDateTime.parse("2021-03-04T03:02:16.320");
+        try (DataOutputStream output = new DataOutputStream(Files.newOutputStream(Paths.get(this.source)))) {
+            output.writeInt(BinaryWriter.MAGIC);
+            output.writeShort(3);
+            BinaryWriter.writeString(output, "generation");
+            long bodiesStart = output.size();
+            output.write("Text".getBytes(StandardCharsets.UTF_8));
+            long metadataStart = output.size();
+            output.writeInt(1);
+            BinaryWriter.writeString(output, "Folder");
+            output.writeInt(1);
+            output.writeInt(0);
+            BinaryWriter.writeString(output, "folder id");
+            output.writeInt(0);
+            output.writeBoolean(false);
+            BinaryWriter.writeString(output, null);
+            output.writeInt(1);
+            BinaryWriter.writeString(output, "note id");
+            BinaryWriter.writeString(output, "Title");
+            BinaryWriter.writeString(output, "Te");
+            BinaryWriter.writeDateTime(output, time);
+            BinaryWriter.writeDateTime(output, time);
+            output.writeBoolean(false);
+            BinaryWriter.writeString(output, null);
+            output.writeLong(bodiesStart);
+            output.writeInt(4);
+            output.writeLong(metadataStart);
+        }
+        Note note = new BinaryReader(this.source).read().getFolders().get(0).getNotes().get(0);
+        assertEquals("Text", note.getText());
+        assertEquals("Title", note.getTitle());
+    }
+
+    @Test
+    public void testReaderVersionOne() throws IOException {
+        LocalDateTime time = LocalDateTime.parse("2021-03-04T03:02:16.320");
+        try (DataOutputStream output = new DataOutputStream(Files.newOutputStream(Paths.get(this.source)))) {
+            output.writeInt(BinaryWriter.MAGIC);
+            output.writeShort(1);
+            BinaryWriter.writeString(output, "generation");
+            output.writeInt(1);
+            BinaryWriter.writeString(output, "Folder");
+            output.writeInt(1);
+            output.writeInt(0);
+            BinaryWriter.writeString(output, "folder id");
+            output.writeInt(0);
+            output.writeBoolean(false);
+            BinaryWriter.writeString(output, null);
+            output.writeInt(1);
+            BinaryWriter.writeString(output, "note id");
+            BinaryWriter.writeString(output, "Title");
+            BinaryWriter.writeString(output, "Text");
+            BinaryWriter.writeDateTime(output, time);
+            BinaryWriter.writeDateTime(output, time);
+            output.writeBoolean(false);
+            BinaryWriter.writeString(output, null);
+        }
+        BinaryReader reader = new BinaryReader(this.source);
+        Folder folder = reader.read().getFolders().get(0);
+        assertEquals("generation", reader.getGeneration());
+        assertEquals("Folder", folder.getName());
+        assertEquals("folder id", folder.getId());
+        Note note = folder.getNotes().get(0);
+        assertEquals("Text", note.getText());
+        assertEquals("Title", note.getTitle());
+        assertEquals(time, note.getDateTimeModified());
+    }
+
+    // EFFECTS: writes the folders to the source and returns the writer used
+    private BinaryWriter write(Folders folders) throws IOException {
+        BinaryWriter writer = new BinaryWriter(this.source);
+        writer.open();
+        writer.write(folders);
+        writer.close();
+        return writer;
+    }
+}
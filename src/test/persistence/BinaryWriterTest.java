@@ -0,0 +1,142 @@
+package persistence;
+
+import model.Folder;
+import model.Folders;
+import model.Note;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BinaryWriterTest extends JsonTest {
+    private String destination;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        this.destination = temporaryFile(".nmb");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(Paths.get(this.destination));
+        BinaryWriter.deleteBodies(this.destination, null);
+    }
+
+    @Test
+    public void testWriterInvalidFile() {
+        try {
+            BinaryWriter writer = new BinaryWriter("./data/my\0illegal:fileName.nmb");
+            writer.open();
+            fail("IOException was expected");
+        } catch (IOException e) {
+            // pass
+        }
+    }
+
+    @Test
+    public void testWriterEmptyFolders() throws IOException {
+        this.write(new Folders());
+        assertEquals(0, new BinaryReader(this.destination).read().getFolders().size());
+    }
+
+    @Test
+    public void testWriterNonEmptyFolders() throws IOException {
+        Folders folders = new Folders();
+        folders.add(this.folderOne);
+        folders.add(this.folderTwo);
+        folders.add(this.folderThree);
+        BinaryWriter writer = this.write(folders);
+
+        BinaryReader reader = new BinaryReader(this.destination);
+        Folders read = reader.read();
+        assertFalse(read.hasChanges());
+        assertEquals(writer.getGeneration(), reader.getGeneration());
+        this.checkFolders(read.getFolders());
+        assertEquals(this.folderTwo.getId(), read.getFolders().get(1).getId());
+        assertEquals(this.folderTwo.getNotes().get(0).getId(), read.getFolders().get(1).getNotes().get(0).getId());
+    }
+
+    @Test
+    public void testWriterEncryptsLockedNotes() throws IOException {
+        Folders folders = new Folders();
+        folders.add(this.folderOne);
+        BinaryWriter writer = this.write(folders);
+        Path bodies = BinaryWriter.bodiesPath(this.destination, writer.getGeneration());
+        String bytes = new String(Files.readAllBytes(bodies), StandardCharsets.UTF_8);
+        assertTrue(bytes.contains("Sample Text"));
+        assertFalse(bytes.contains("Sample Text Two"));
+
+        Note loaded = new BinaryReader(this.destination).read().getFolders().get(0).getNotes().get(1);
+        assertTrue(loaded.isTextEncrypted());
+        assertEquals(Note.ENCRYPTED_SUMMARY, loaded.getSummary());
+        assertTrue(loaded.unlock("password"));
+        assertEquals("Sample Text Two", loaded.getText());
+    }
+
+    @Test
+    public void testWriterKeepsFullTimestampPrecision() throws IOException {
+        Folder folder = new Folder("Folder");
+        Note note = new Note("text", folder);
+        LocalDateTime added = LocalDateTime.parse("1969-07-20T20:17:40.123456789");
+        note.setDateTimeAdded(added);
+        note.setDateTimeModified(added.plusNanos(1));
+        Folders folders = new Folders();
+        folders.add(folder);
+        this.write(folders);
+
+        Note read = new BinaryReader(this.destination).read().getFolders().get(0).getNotes().get(0);
+        assertEquals(added, read.getDateTimeAdded());
+        assertEquals(added.plusNanos(1), read.getDateTimeModified());
+    }
+
+    @Test
+    public void testWriterInternsFolderNames() throws IOException {
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            name.append("long name ");
+        }
+        Folders folders = new Folders();
+        folders.add(new Folder(name.toString()));
+        this.write(folders);
+        long once = Files.size(Paths.get(this.destination));
+
+        folders.add(new Folder(name.toString()));
+        this.write(folders);
+        long twice = Files.size(Paths.get(this.destination));
+        assertTrue(twice - once < name.length());
+
+        Folders read = new BinaryReader(this.destination).read();
+        assertEquals(2, read.getFolders().size());
+        assertEquals(name.toString(), read.getFolders().get(1).getName());
+    }
+
+    @Test
+    public void testWriterCopiesBodiesWithoutLoadingThem() throws IOException {
+        Folders folders = new Folders();
+        folders.add(this.folderOne);
+        this.write(folders);
+        Folders read = new BinaryReader(this.destination).read();
+        this.write(read);
+
+        assertFalse(read.getFolders().get(0).getNotes().get(0).isTextLoaded());
+        Folders reread = new BinaryReader(this.destination).read();
+        assertEquals("Sample Text", reread.getFolders().get(0).getNotes().get(0).getText());
+    }
+
+    // EFFECTS: writes the folders to the destination and returns the writer used
+    private BinaryWriter write(Folders folders) throws IOException {
+        BinaryWriter writer = new BinaryWriter(this.destination);
+        writer.open();
+        writer.write(folders);
+        writer.close();
+        return writer;
+    }
+}
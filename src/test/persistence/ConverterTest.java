@@ -0,0 +1,81 @@
+package persistence;
+
+import model.Folders;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConverterTest extends JsonTest {
+    private String json;
+    private String binary;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        this.json = temporaryFile(".json");
+        this.binary = temporaryFile(".nmb");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        for (String file : new String[]{this.json, this.binary}) {
+            Files.deleteIfExists(Paths.get(file));
+            BinaryWriter.deleteBodies(file, null);
+            Files.deleteIfExists(Paths.get(file + ChangeLog.EXTENSION));
+        }
+    }
+
+    @Test
+    public void testConvertBothWays() throws IOException {
+        Folders folders = new Folders();
+        folders.add(this.folderOne);
+        folders.add(this.folderTwo);
+        folders.add(this.folderThree);
+        Workspace workspace = new Workspace(this.json);
+        workspace.save(folders);
+        this.folderOne.getNotes().get(0).setTitle("Logged title");
+        workspace.save(folders);
+
+        Converter.convert(this.json, this.binary);
+        Folders binary = new Workspace(this.binary).load();
+        assertEquals("Logged title", binary.getFolders().get(0).getNotes().get(0).getTitle());
+        this.checkFolders(binary.getFolders());
+
+        Files.delete(Paths.get(this.json + ChangeLog.EXTENSION));
+        Converter.convert(this.binary, this.json);
+        Folders json = new Workspace(this.json).load();
+        this.checkFolders(json.getFolders());
+        assertEquals(this.folderOne.getId(), json.getFolders().get(0).getId());
+    }
+
+    @Test
+    public void testConvertWithExplicitFormats() throws IOException {
+        Folders folders = new Folders();
+        folders.add(this.folderOne);
+        new Workspace(this.json).save(folders);
+        String binaryWithoutExtension = this.binary.replace(".nmb", "");
+
+        try {
+            Converter.convert(this.json, StorageFormat.JSON, binaryWithoutExtension, StorageFormat.BINARY);
+            Folders read = new Workspace(binaryWithoutExtension, StorageFormat.BINARY).load();
+            assertEquals(this.folderOne.getName(), read.getFolders().get(0).getName());
+        } finally {
+            Files.deleteIfExists(Paths.get(binaryWithoutExtension));
+            BinaryWriter.deleteBodies(binaryWithoutExtension, null);
+        }
+    }
+
+    @Test
+    public void testStorageFormatForFile() {
+        assertEquals(StorageFormat.BINARY, StorageFormat.forFile("notes.nmb"));
+        assertEquals(StorageFormat.JSON, StorageFormat.forFile("notes.json"));
+        assertEquals(StorageFormat.JSON, StorageFormat.forFile("notes"));
+        assertEquals("notes.nmb", StorageFormat.BINARY.withExtension("notes"));
+        assertEquals("notes.nmb", StorageFormat.BINARY.withExtension("notes.nmb"));
+    }
+}
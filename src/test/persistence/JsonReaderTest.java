@@ -2,9 +2,13 @@ package persistence;
 
 import model.Folder;
 import model.Folders;
+import org.json.JSONException;
 import utils.SortableSet;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
@@ -45,4 +49,79 @@ class JsonReaderTest extends JsonTest {
             fail("Couldn't read from file");
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void testReaderNotesBeforeFolderName() {
+        JsonReader reader = new JsonReader("./data/testReaderNotesBeforeName.json");
+        try {
+            Folders folders = reader.read();
+            assertEquals(1, folders.getFolders().size());
+            Folder folder = folders.getFolders().get(0);
+            assertEquals("Folder 1", folder.getName());
+            assertEquals(2, folder.totalNotes());
+            assertEquals("Note 1", folder.getNotes().get(0).getTitle());
+            assertEquals(folder, folder.getNotes().get(1).getFolder());
+        } catch (IOException e) {
+            fail("Couldn't read from file");
+        }
+    }
+
+    @Test
+    void testReaderMissingFolders() {
+        JsonReader reader = new JsonReader("./data/testReaderNoFolders.json");
+        try {
+            reader.read();
+            fail("JSONException expected");
+        } catch (JSONException e) {
+            // pass
+        } catch (IOException e) {
+            fail("Couldn't read from file");
+        }
+    }
+
+    @Test
+    void testParallelReaderMatchesSequential() throws IOException {
+        Folders folders = this.manyFolders();
+        String source = temporaryFile(".json");
+        try {
+            JsonWriter writer = new JsonWriter(source);
+            writer.open();
+            writer.write(folders);
+            writer.close();
+            byte[] written = Files.readAllBytes(Paths.get(source));
+
+            JsonReader reader = new JsonReader(source, 4);
+            Folders read = reader.read();
+            assertEquals(writer.getGeneration(), reader.getGeneration());
+            assertEquals(folders.getFolders().size(), read.getFolders().size());
+            for (int i = 0; i < read.getFolders().size(); i++) {
+                assertEquals(folders.getFolders().get(i).getName(), read.getFolders().get(i).getName());
+                assertEquals(folders.getFolders().get(i).getId(), read.getFolders().get(i).getId());
+            }
+
+            // writing what was read in parallel reproduces the file exactly
+            writer = new JsonWriter(source);
+            writer.open();
+            writer.write(read);
+            writer.close();
+            String rewritten = new String(Files.readAllBytes(Paths.get(source)), StandardCharsets.UTF_8);
+            assertEquals(new String(written, StandardCharsets.UTF_8).replace(reader.getGeneration(), ""),
+                    rewritten.replace(writer.getGeneration(), ""));
+        } finally {
+            Files.deleteIfExists(Paths.get(source));
+        }
+    }
+
+    @Test
+    void testParallelReaderMalformedFolder() throws IOException {
+        String source = temporaryFile(".json");
+        try {
+            Files.write(Paths.get(source), "{\"folders\": [{\"name\": \"a\"}, {\"notes\": []}]}".getBytes());
+            assertThrows(JSONException.class, () -> new JsonReader(source, 4).read());
+            Files.write(Paths.get(source), "{\"folders\": [{\"name\": \"a\"".getBytes());
+            assertThrows(JSONException.class, () -> new JsonReader(source, 4).read());
+        } finally {
+            Files.deleteIfExists(Paths.get(source));
+        }
+    }
+}
@@ -1,11 +1,15 @@
 package persistence;
 
 import model.Folder;
+import model.Folders;
 import model.Note;
 import utils.Lockable;
 import utils.SortableSet;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.time.LocalDateTime;
+import java.util.Collections;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -21,6 +25,36 @@ public class JsonTest {
         this.folderTwo.lock("folder password");
     }
 
+    // EFFECTS: creates an empty file in the temporary directory whose name ends with suffix
+    //          and returns its path, so tests leave the files under ./data alone
+    static String temporaryFile(String suffix) throws IOException {
+        return Files.createTempFile("noteManager", suffix).toString();
+    }
+
+    // EFFECTS: returns many folders whose names and notes hold JSON punctuation and escapes
+    Folders manyFolders() {
+        Folders folders = new Folders();
+        for (int i = 0; i < 40; i++) {
+            Folder folder = new Folder("Folder {" + i + "} [\"quoted\"] \\ '\u00e9'");
+            for (int j = 0; j < i % 5; j++) {
+                Note note = new Note(j % 2 == 0 ? "Title }{ " + j : null, "Text ]\n\"" + i + "\" {" + j + "}", folder);
+                this.setNoteDateTime(note);
+            }
+            if (i % 7 == 0) {
+                folder.lock("folder password");
+            }
+            folders.add(folder);
+        }
+        // a folder large enough to be split into several batches of notes
+        Folder large = new Folder("Large folder");
+        for (int i = 0; i < 300; i++) {
+            Note note = new Note("Note " + i, String.join(" ", Collections.nCopies(60, "{[word" + i + "]}")), large);
+            this.setNoteDateTime(note);
+        }
+        folders.add(large);
+        return folders;
+    }
+
     void checkFolders(SortableSet<Folder> folders) {
         this.checkFolder(folders.get(0), this.folderOne);
         this.checkFolder(folders.get(1), this.folderTwo);
@@ -38,18 +72,33 @@ public class JsonTest {
     private void checkFolder(Folder expected, Folder actual) {
         assertEquals(expected.getName(), actual.getName());
         assertEquals(expected.getNotes().size(), actual.getNotes().size());
+        // checked before the notes, as unlocking a note protected by the folder unlocks the folder
+        this.checkLockable(expected, actual, "folder password");
         for (int i = 0; i < expected.getNotes().size(); i++) {
             this.checkNote(expected.getNotes().get(i), actual.getNotes().get(i));
         }
-        this.checkLockable(expected, actual, "folder password");
     }
 
     private void checkNote(Note expected, Note actual) {
         assertEquals(expected.getTitle(), actual.getTitle());
-        assertEquals(expected.getText(), actual.getText());
         assertEquals(expected.getDateTimeAdded(), actual.getDateTimeAdded());
         assertEquals(expected.getDateTimeModified(), actual.getDateTimeModified());
+        if (expected.isTextEncrypted() && !expected.hasLock()) {
+            // the text of a note without a password in a locked folder is encrypted under the
+            // folder's password, and the note is locked until the folder is unlocked
+            assertTrue(expected.isLocked());
+            assertEquals("", expected.getText());
+            assertFalse(expected.unlock("password"));
+            assertTrue(expected.unlock("folder password"));
+            assertFalse(expected.getFolder().isLocked());
+        }
         this.checkLockable(expected, actual, "password");
+        if (expected.isTextEncrypted()) {
+            // the text of a locked note is only decrypted once it is unlocked
+            assertEquals("", expected.getText());
+            assertTrue(expected.unlock("password"));
+        }
+        assertEquals(expected.getText(), actual.getText());
     }
 
     private void checkLockable(Lockable expected, Lockable actual, String actualPassword) {
@@ -4,9 +4,12 @@ import model.Folders;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.fail;
+import static org.junit.jupiter.api.Assertions.*;
 
 // This class is modelled after the `JsonWriterTest` class present here:
 public class JsonWriterTest extends JsonTest {
@@ -25,14 +28,16 @@ public class JsonWriterTest extends JsonTest {
     void testWriterEmptyFolders() {
         try {
             Folders folders = new Folders();
-            JsonWriter writer = new JsonWriter("./data/testWriterEmptyFolders.json");
+            String destination = temporaryFile(".json");
+            JsonWriter writer = new JsonWriter(destination);
             writer.open();
             writer.write(folders);
             writer.close();
 
-            JsonReader reader = new JsonReader("./data/testWriterEmptyFolders.json");
+            JsonReader reader = new JsonReader(destination);
             folders = reader.read();
             assertEquals(0, folders.getFolders().size());
+            Files.delete(Paths.get(destination));
         } catch (IOException e) {
             fail("Exception should not have been thrown");
         }
@@ -46,16 +51,100 @@ public class JsonWriterTest extends JsonTest {
             folders.add(this.folderTwo);
             folders.add(this.folderThree);
 
-            JsonWriter writer = new JsonWriter("./data/testWriterNonEmptyFolders.json");
+            String destination = temporaryFile(".json");
+            JsonWriter writer = new JsonWriter(destination);
             writer.open();
             writer.write(folders);
             writer.close();
 
-            JsonReader reader = new JsonReader("./data/testWriterNonEmptyFolders.json");
+            JsonReader reader = new JsonReader(destination);
             folders = reader.read();
             this.checkFolders(folders.getFolders());
+            Files.delete(Paths.get(destination));
         } catch (IOException e) {
             fail("Exception should not have been thrown");
         }
     }
+
+    @Test
+    void testWriterEncryptsLockedNotes() throws IOException {
+        Path path = Paths.get(temporaryFile(".json"));
+        try {
+            Folders folders = new Folders();
+            folders.add(this.folderOne);
+            JsonWriter writer = new JsonWriter(path.toString());
+            writer.open();
+            writer.write(folders);
+            writer.close();
+            String json = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+            assertTrue(json.contains("Sample Text"));
+            assertFalse(json.contains("Sample Text Two"));
+            assertTrue(json.contains("encryptedText"));
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    void testWriterReplacesFileOnlyOnClose() throws IOException {
+        Path path = Paths.get(temporaryFile(".json"));
+        try {
+            Files.write(path, "previous".getBytes());
+            Folders folders = new Folders();
+            folders.add(this.folderOne);
+            JsonWriter writer = new JsonWriter(path.toString());
+            writer.open();
+            writer.write(folders);
+            assertEquals("previous", new String(Files.readAllBytes(path)));
+
+            writer.close();
+            assertFalse(Files.exists(Paths.get(path + AtomicFile.TEMPORARY_EXTENSION)));
+            JsonReader reader = new JsonReader(path.toString());
+            assertEquals(this.folderOne.getName(), reader.read().getFolders().get(0).getName());
+            assertEquals(writer.getGeneration(), reader.getGeneration());
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    void testWriterAbortKeepsFile() throws IOException {
+        Path path = Paths.get(temporaryFile(".json"));
+        try {
+            Files.write(path, "previous".getBytes());
+            JsonWriter writer = new JsonWriter(path.toString());
+            writer.open();
+            writer.write(new Folders());
+            writer.abort();
+            assertEquals("previous", new String(Files.readAllBytes(path)));
+            assertFalse(Files.exists(Paths.get(path + AtomicFile.TEMPORARY_EXTENSION)));
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    void testParallelWriterMatchesSequential() throws IOException {
+        Folders folders = this.manyFolders();
+        Path sequential = Paths.get(temporaryFile(".json"));
+        Path parallel = Paths.get(temporaryFile(".json"));
+        try {
+            String sequentialJson = this.writeWithoutGeneration(folders, sequential, 1);
+            String parallelJson = this.writeWithoutGeneration(folders, parallel, 4);
+            assertEquals(sequentialJson, parallelJson);
+        } finally {
+            Files.deleteIfExists(sequential);
+            Files.deleteIfExists(parallel);
+        }
+    }
+
+    // EFFECTS: writes folders to path using parallelism threads and returns the bytes
+    //          written, with the random generation blanked out
+    private String writeWithoutGeneration(Folders folders, Path path, int parallelism) throws IOException {
+        JsonWriter writer = new JsonWriter(path.toString(), parallelism);
+        writer.open();
+        writer.write(folders);
+        writer.close();
+        return new String(Files.readAllBytes(path), StandardCharsets.UTF_8).replace(writer.getGeneration(), "");
+    }
 }
@@ -0,0 +1,90 @@
+package persistence;
+
+import model.Folder;
+import model.Folders;
+import model.Note;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+
+// Compares how long saving and loading take in each storage format.
+//
+// Run with the number of notes to generate as the only argument, e.g. 1000000.
+public class StorageBenchmark {
+    private static final int NOTES_PER_FOLDER = 1000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws IOException {
+        int notes = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        Folders folders = generate(notes);
+        System.out.printf("%d notes in %d folders%n", notes, folders.getFolders().size());
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (StorageFormat format : StorageFormat.values()) {
+            benchmark(folders, format, 1);
+            if (format == StorageFormat.JSON && processors > 1) {
+                benchmark(folders, format, processors);
+            }
+        }
+    }
+
+    // EFFECTS: prints the best save and load times of the folders in the format over several rounds,
+    //          using the given number of threads
+    private static void benchmark(Folders folders, StorageFormat format, int parallelism) throws IOException {
+        String file = "./data/benchmark" + format.getExtension();
+        long bestSave = Long.MAX_VALUE;
+        long bestLoad = Long.MAX_VALUE;
+        try {
+            for (int i = 0; i < ROUNDS; i++) {
+                long start = System.nanoTime();
+                Workspace workspace = new Workspace(file, format);
+                workspace.setParallelism(parallelism);
+                workspace.saveSnapshot(folders);
+                bestSave = Math.min(bestSave, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                workspace = new Workspace(file, format);
+                workspace.setParallelism(parallelism);
+                workspace.load();
+                bestLoad = Math.min(bestLoad, System.nanoTime() - start);
+            }
+            System.out.printf("%-6s x%-2d save %6d ms  load %6d ms  size %8d KiB%n", format, parallelism,
+                    bestSave / 1_000_000, bestLoad / 1_000_000, size(file) / 1024);
+        } finally {
+            Files.deleteIfExists(Paths.get(file));
+            BinaryWriter.deleteBodies(file, null);
+        }
+    }
+
+    // EFFECTS: returns the size of the snapshot in file, including the bodies file of a binary one
+    private static long size(String file) throws IOException {
+        long size = Files.size(Paths.get(file));
+        try (DirectoryStream<Path> bodies = Files.newDirectoryStream(Paths.get(file).toAbsolutePath().getParent(),
+                Paths.get(file).getFileName() + ".*" + BinaryWriter.BODIES_EXTENSION)) {
+            for (Path body : bodies) {
+                size += Files.size(body);
+            }
+        }
+        return size;
+    }
+
+    // EFFECTS: returns folders holding the given number of generated notes
+    private static Folders generate(int notes) {
+        Folders folders = new Folders();
+        LocalDateTime time = LocalDateTime.parse("2021-03-04T03:02:16.320");
+        Folder folder = null;
+        for (int i = 0; i < notes; i++) {
+            if (i % NOTES_PER_FOLDER == 0) {
+                folder = new Folder("Folder " + i / NOTES_PER_FOLDER);
+                folders.add(folder);
+            }
+            Note note = new Note("Note " + i, "Text of note " + i + " with a few more words to index", folder);
+            note.setDateTimeAdded(time.plusSeconds(i));
+            note.setDateTimeModified(time.plusSeconds(i).plusNanos(1000));
+        }
+        return folders;
+    }
+}
@@ -0,0 +1,56 @@
+package persistence;
+
+import model.Folders;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StorageFormatTest extends JsonTest {
+    private final List<String> files = new ArrayList<>();
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        for (String file : this.files) {
+            Files.deleteIfExists(Paths.get(file));
+            BinaryWriter.deleteBodies(file, null);
+            Files.deleteIfExists(Paths.get(file + ChangeLog.EXTENSION));
+        }
+    }
+
+    @Test
+    public void testForFileAndWithExtensionRoundTrip() {
+        for (StorageFormat format : StorageFormat.values()) {
+            String fileName = format.withExtension("notes");
+            assertEquals("notes" + format.getExtension(), fileName);
+            assertEquals(format, StorageFormat.forFile(fileName));
+            assertEquals(fileName, format.withExtension(fileName));
+        }
+        assertEquals(StorageFormat.JSON, StorageFormat.forFile("notes"));
+        assertEquals(StorageFormat.JSON, StorageFormat.forFile("notes.txt"));
+    }
+
+    @Test
+    public void testSaveInFormatInferredFromExtension() throws IOException {
+        for (StorageFormat format : StorageFormat.values()) {
+            String base = temporaryFile("");
+            String fileName = format.withExtension(base);
+            this.files.add(base);
+            this.files.add(fileName);
+            Folders folders = new Folders();
+            folders.add(this.folderOne);
+            folders.add(this.folderTwo);
+            folders.add(this.folderThree);
+
+            new Workspace(fileName).save(folders);
+
+            this.checkFolders(new Workspace(fileName, format).load().getFolders());
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package persistence;
+
+import model.Folder;
+import model.Folders;
+import model.Note;
+import model.SearchResults;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import utils.SortOption;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WorkspaceTest extends JsonTest {
+    private String destination;
+    private Workspace workspace;
+    private Folders folders;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        this.destination = temporaryFile(".json");
+        this.workspace = new Workspace(this.destination);
+        this.folders = new Folders();
+        this.folders.add(this.folderOne);
+        this.folders.add(this.folderTwo);
+        this.folders.add(this.folderThree);
+        this.workspace.save(this.folders);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(Paths.get(this.destination));
+        this.workspace.getChangeLog().delete();
+    }
+
+    @Test
+    public void testFirstSaveWritesSnapshot() throws IOException {
+        assertFalse(this.folders.hasChanges());
+        assertEquals(0, this.workspace.getChangeLog().size());
+        this.checkFolders(new Workspace(this.destination).load().getFolders());
+    }
+
+    @Test
+    public void testSaveWithoutChangesWritesNothing() throws IOException {
+        long modified = Files.getLastModifiedTime(Paths.get(this.destination)).toMillis();
+        this.workspace.save(this.folders);
+        assertEquals(0, this.workspace.getChangeLog().size());
+        assertEquals(modified, Files.getLastModifiedTime(Paths.get(this.destination)).toMillis());
+    }
+
+    @Test
+    public void testIncrementalSave() throws IOException {
+        String snapshot = new String(Files.readAllBytes(Paths.get(this.destination)));
+        Note edited = this.folderOne.getNotes().get(0);
+        edited.edit("edited text");
+        Note moved = this.folderTwo.getNotes().get(0);
+        moved.changeFolder(this.folderThree);
+        this.folderOne.removeNote(this.folderOne.getNotes().get(1));
+        Folder added = new Folder("Folder 4");
+        new Note("new note", added);
+        this.folders.add(added);
+        this.folders.remove(this.folderTwo);
+        this.workspace.save(this.folders);
+
+        assertFalse(this.folders.hasChanges());
+        assertTrue(this.workspace.getChangeLog().size() > 0);
+        assertEquals(snapshot, new String(Files.readAllBytes(Paths.get(this.destination))));
+
+        Folders loaded = new Workspace(this.destination).load();
+        assertFalse(loaded.hasChanges());
+        assertEquals(3, loaded.getFolders().size());
+        Folder one = loaded.getFolders().get(0);
+        assertEquals(1, one.totalNotes());
+        assertEquals("edited text", one.getNotes().get(0).getText());
+        assertEquals(edited.getId(), one.getNotes().get(0).getId());
+        Folder three = loaded.getFolders().get(1);
+        assertEquals("Folder 3", three.getName());
+        assertEquals(moved.getId(), three.getNotes().get(0).getId());
+        assertEquals(three, three.getNotes().get(0).getFolder());
+        Folder four = loaded.getFolders().get(2);
+        assertEquals(added.getId(), four.getId());
+        assertEquals("new note", four.getNotes().get(0).getText());
+    }
+
+    @Test
+    public void testLogCompactedInBackground() throws Exception {
+        Note edited = this.folderOne.getNotes().get(0);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1500; i++) {
+            text.append("a long line of text ");
+        }
+        // each save appends about 30 KiB, so the third grows the log past the compaction threshold
+        for (int i = 0; i < 3; i++) {
+            edited.edit(text.append('!').toString());
+            this.workspace.save(this.folders);
+        }
+        this.workspace.awaitCompaction();
+
+        assertEquals(0, this.workspace.getChangeLog().size());
+        assertFalse(this.folders.hasChanges());
+        Folders loaded = new Workspace(this.destination).load();
+        assertEquals(text.toString(), loaded.getFolders().get(0).getNotes().get(0).getText());
+    }
+
+    @Test
+    public void testIncrementalSaveKeepsOrder() throws IOException {
+        new Note("newer", this.folderOne).setDateTimeAdded(this.folderOne.getNotes().get(0).getDateTimeAdded()
+                .plusDays(1));
+        this.folderOne.reorder(SortOption.NEWEST_ADDED_FIRST);
+        this.workspace.save(this.folders);
+
+        Folder one = new Workspace(this.destination).load().getFolders().get(0);
+        assertEquals(3, one.totalNotes());
+        for (int i = 0; i < one.totalNotes(); i++) {
+            assertEquals(this.folderOne.getNotes().get(i).getId(), one.getNotes().get(i).getId());
+        }
+    }
+
+    @Test
+    public void testReplayIsIdempotent() throws IOException {
+        this.folderOne.getNotes().get(0).edit("edited text");
+        this.folderOne.removeNote(this.folderOne.getNotes().get(1));
+        this.workspace.save(this.folders);
+        Folders loaded = new Workspace(this.destination).load();
+
+        this.workspace.getChangeLog().replay(loaded, this.workspace.getGeneration());
+        assertEquals(1, loaded.getFolders().get(0).totalNotes());
+        assertEquals("edited text", loaded.getFolders().get(0).getNotes().get(0).getText());
+    }
+
+    @Test
+    public void testSaveOtherFoldersWritesSnapshot() throws IOException {
+        Folders other = new Folders();
+        other.add(new Folder("other"));
+        this.workspace.save(other);
+        assertEquals(0, this.workspace.getChangeLog().size());
+        assertEquals("other", new Workspace(this.destination).load().getFolders().get(0).getName());
+    }
+
+    @Test
+    public void testSaveSnapshotDropsChangeLog() throws IOException {
+        this.folderOne.getNotes().get(0).edit("edited text");
+        this.workspace.save(this.folders);
+        assertTrue(this.workspace.getChangeLog().size() > 0);
+        this.workspace.saveSnapshot(this.folders);
+        assertEquals(0, this.workspace.getChangeLog().size());
+        Folder one = new Workspace(this.destination).load().getFolders().get(0);
+        assertEquals("edited text", one.getNotes().get(0).getText());
+    }
+
+    @Test
+    public void testTornTailIsIgnored() throws IOException {
+        this.folderOne.getNotes().get(0).edit("edited text");
+        this.workspace.save(this.folders);
+        this.appendToLog("{\"op\":\"note\",\"folder\":\"" + this.folderOne.getId() + "\",\"no");
+
+        Folder one = new Workspace(this.destination).load().getFolders().get(0);
+        assertEquals("edited text", one.getNotes().get(0).getText());
+    }
+
+    @Test
+    public void testUncommittedSaveIsIgnored() throws IOException {
+        this.folderOne.getNotes().get(0).edit("edited text");
+        this.workspace.save(this.folders);
+        String committed = new String(Files.readAllBytes(this.logPath()), StandardCharsets.UTF_8);
+        this.appendToLog("{\"op\":\"removeFolder\",\"id\":\"" + this.folderOne.getId() + "\"}\n");
+
+        Folders loaded = new Workspace(this.destination).load();
+        assertEquals(3, loaded.getFolders().size());
+        assertEquals("edited text", loaded.getFolders().get(0).getNotes().get(0).getText());
+
+        // the next save drops the uncommitted tail before appending
+        this.folderTwo.getNotes().get(0).edit("edited again");
+        this.workspace.save(this.folders);
+        String log = new String(Files.readAllBytes(this.logPath()), StandardCharsets.UTF_8);
+        assertTrue(log.startsWith(committed));
+        assertFalse(log.contains("removeFolder"));
+        // the note is protected by the password of its folder, so its text is logged encrypted
+        assertFalse(log.contains("edited again"));
+        loaded = new Workspace(this.destination).load();
+        assertEquals(3, loaded.getFolders().size());
+        Note again = loaded.getFolders().get(1).getNotes().get(0);
+        assertTrue(again.unlock("folder password"));
+        assertEquals("edited again", again.getText());
+    }
+
+    @Test
+    public void testStaleLogIsIgnored() throws IOException {
+        this.folderOne.getNotes().get(0).edit("edited text");
+        this.workspace.save(this.folders);
+        byte[] staleLog = Files.readAllBytes(this.logPath());
+        this.folderOne.getNotes().get(0).edit("newer text");
+        this.workspace.saveSnapshot(this.folders);
+        // as if the snapshot was written but the process died before the log was deleted
+        Files.write(this.logPath(), staleLog);
+
+        Folder one = new Workspace(this.destination).load().getFolders().get(0);
+        assertEquals("newer text", one.getNotes().get(0).getText());
+    }
+
+    @Test
+    public void testLoadedWorkspaceAppendsToLog() throws IOException {
+        Workspace loadedWorkspace = new Workspace(this.destination);
+        Folders loaded = loadedWorkspace.load();
+        assertEquals(this.workspace.getGeneration(), loadedWorkspace.getGeneration());
+        loaded.getFolders().get(0).getNotes().get(0).edit("edited text");
+        loadedWorkspace.save(loaded);
+
+        assertTrue(this.workspace.getChangeLog().size() > 0);
+        Folder one = new Workspace(this.destination).load().getFolders().get(0);
+        assertEquals("edited text", one.getNotes().get(0).getText());
+    }
+
+    @Test
+    public void testBinaryWorkspaceIncrementalSave() throws IOException {
+        String destination = temporaryFile(".nmb");
+        Workspace binary = new Workspace(destination);
+        try {
+            assertEquals(StorageFormat.BINARY, binary.getFormat());
+            binary.save(this.folders);
+            this.folderOne.getNotes().get(0).edit("edited text");
+            binary.save(this.folders);
+            assertTrue(binary.getChangeLog().size() > 0);
+
+            Folders loaded = new Workspace(destination).load();
+            assertEquals("edited text", loaded.getFolders().get(0).getNotes().get(0).getText());
+            assertEquals(3, loaded.getFolders().size());
+        } finally {
+            Files.deleteIfExists(Paths.get(destination));
+            BinaryWriter.deleteBodies(destination, null);
+            binary.getChangeLog().delete();
+        }
+    }
+
+    @Test
+    public void testProgressReported() throws IOException {
+        Progress saved = new Progress();
+        this.workspace.saveSnapshot(this.folders, saved);
+        assertEquals(3, saved.getFolders());
+        assertEquals(3, saved.getTotalFolders());
+        assertEquals(4, saved.getNotes());
+        assertEquals(Files.size(Paths.get(this.destination)), saved.getBytes());
+        assertEquals(1.0, saved.fraction());
+
+        Progress loaded = new Progress();
+        new Workspace(this.destination).load(loaded);
+        assertEquals(3, loaded.getFolders());
+        assertEquals(Files.size(Paths.get(this.destination)), loaded.getTotalBytes());
+        assertEquals(1.0, loaded.fraction());
+        assertTrue(loaded.toString().startsWith("3 folders, 4 notes, "));
+    }
+
+    @Test
+    public void testCancelledSaveKeepsSnapshot() throws IOException {
+        String snapshot = new String(Files.readAllBytes(Paths.get(this.destination)));
+        this.folderOne.getNotes().get(0).edit("edited text");
+        Progress progress = new Progress();
+        progress.cancel();
+        assertThrows(CancellationException.class, () -> this.workspace.saveSnapshot(this.folders, progress));
+        assertThrows(CancellationException.class, () -> this.workspace.save(this.folders, progress));
+        assertEquals(snapshot, new String(Files.readAllBytes(Paths.get(this.destination))));
+        assertEquals(0, this.workspace.getChangeLog().size());
+        assertTrue(this.folders.hasChanges());
+        assertFalse(Files.exists(Paths.get(this.destination + AtomicFile.TEMPORARY_EXTENSION)));
+    }
+
+    @Test
+    public void testCancelledLoad() {
+        Progress progress = new Progress();
+        progress.cancel();
+        assertThrows(CancellationException.class, () -> new Workspace(this.destination).load(progress));
+    }
+
+    // EFFECTS: returns the path of the workspace's change log
+    private Path logPath() {
+        return Paths.get(this.destination + ChangeLog.EXTENSION);
+    }
+
+    // EFFECTS: appends the text to the change log, as an interrupted save would
+    private void appendToLog(String text) throws IOException {
+        Files.write(this.logPath(), text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+
+    @Test
+    public void testSearchLoadedWorkspaceWithinBudget() throws IOException {
+        Folder large = new Folder("large");
+        for (int i = 0; i < 2000; i++) {
+            new Note("note " + i, large).edit("the quick fox number " + i);
+        }
+        Folders saved = new Folders();
+        saved.add(large);
+        Path destination = Paths.get(temporaryFile(".nmb"));
+        Workspace workspace = new Workspace(destination.toString(), StorageFormat.BINARY);
+        try {
+            workspace.save(saved);
+            Folders loaded = new Workspace(destination.toString(), StorageFormat.BINARY).load();
+            SearchResults partial = loaded.search("fox", Folders.DEFAULT_SEARCH_LIMIT, Duration.ZERO);
+            assertFalse(partial.isComplete());
+            assertTrue(partial.size() < 2000);
+
+            SearchResults results = loaded.search("fox", 2000, Duration.ofMinutes(1));
+            assertTrue(results.isComplete());
+            assertEquals(2000, results.size());
+        } finally {
+            Files.deleteIfExists(destination);
+            BinaryWriter.deleteBodies(destination.toString(), null);
+            workspace.getChangeLog().delete();
+        }
+    }
+
+    @Test
+    public void testSaveWhileEditing() throws Exception {
+        this.checkSaveWhileEditing(this.workspace);
+    }
+
+    @Test
+    public void testBinarySnapshotWhileEditing() throws Exception {
+        String destination = temporaryFile(".nmb");
+        Workspace workspace = new Workspace(destination, StorageFormat.BINARY);
+        try {
+            workspace.saveSnapshot(this.folders);
+            this.checkSaveWhileEditing(workspace);
+        } finally {
+            Files.deleteIfExists(Paths.get(destination));
+            BinaryWriter.deleteBodies(destination, null);
+            workspace.getChangeLog().delete();
+        }
+    }
+
+    // EFFECTS: saves the folders to the workspace over and over while another thread edits,
+    //          adds and removes notes, then checks that a last save keeps every edit
+    private void checkSaveWhileEditing(Workspace workspace) throws Exception {
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        Thread editor = new Thread(() -> {
+            try {
+                for (int i = 0; i < 500; i++) {
+                    Note note = this.folderOne.getNotes().get(0);
+                    note.insertText(note.getText().length(), " " + i);
+                    new Note("added " + i, this.folderTwo).changeFolder(this.folderThree);
+                    this.folderThree.removeNote(this.folderThree.getNotes().get(0));
+                    this.folderTwo.reorder(i % 2 == 0 ? SortOption.ALPHABETICAL : SortOption.OLDEST_ADDED_FIRST);
+                }
+            } catch (Throwable e) {
+                failures.add(e);
+            }
+        });
+        editor.start();
+        while (editor.isAlive()) {
+            workspace.save(this.folders);
+            if (workspace.getChangeLog().size() > 1 << 16) {
+                workspace.saveSnapshot(this.folders);
+            }
+        }
+        editor.join();
+        assertTrue(failures.isEmpty(), failures.toString());
+        workspace.save(this.folders);
+        assertFalse(this.folders.hasChanges());
+
+        Folders loaded = new Workspace(workspace.getDestination(), workspace.getFormat()).load();
+        assertEquals(this.folders.toJson().toString(), loaded.toJson().toString());
+    }
+}
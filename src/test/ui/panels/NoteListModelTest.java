@@ -0,0 +1,120 @@
+package ui.panels;
+
+import model.ChangeBus;
+import model.Folder;
+import model.Folders;
+import model.Note;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NoteListModelTest {
+    private Folders folders;
+    private Folder folder;
+    private Note first;
+    private Note second;
+    private Note third;
+    private NoteListModel model;
+    private ChangeBus.Listener listener;
+    private List<String> fired;
+
+    @BeforeEach
+    public void setUp() {
+        this.folders = new Folders();
+        this.folder = new Folder("folder");
+        this.first = new Note("first", this.folder);
+        this.second = new Note("second", this.folder);
+        this.third = new Note("third", this.folder);
+        this.folders.add(this.folder);
+        this.model = new NoteListModel();
+        this.model.show(this.folder.getNotes());
+        this.listener = event -> {
+            if (!event.isFolderChange()) {
+                this.model.apply(event, this.folder.getNotes());
+            }
+        };
+        this.folders.getBus().subscribe(this.listener);
+        this.fired = new ArrayList<>();
+        this.model.addListDataListener(new Recorder());
+    }
+
+    @Test
+    public void testShow() {
+        this.checkRows(this.first, this.second, this.third);
+        assertEquals(1, this.model.indexOf(this.second));
+        assertEquals(-1, this.model.indexOf(new Note("other")));
+    }
+
+    @Test
+    public void testAdded() {
+        Note added = new Note("added", this.folder);
+        this.checkRows(this.first, this.second, this.third, added);
+        assertEquals(Arrays.asList("added 3-3"), this.fired);
+    }
+
+    @Test
+    public void testRemoved() {
+        this.folder.removeNote(this.second);
+        this.checkRows(this.first, this.third);
+        assertEquals(Arrays.asList("removed 1-1"), this.fired);
+
+        new Note("added", this.folder);
+        this.folder.removeNote(this.first);
+        assertEquals(this.third, this.model.getElementAt(0));
+        assertEquals(0, this.model.indexOf(this.third));
+        assertEquals(2, this.model.getSize());
+    }
+
+    @Test
+    public void testEdited() {
+        this.second.edit("edited");
+        this.checkRows(this.first, this.second, this.third);
+        assertEquals(Arrays.asList("changed 1-1"), this.fired);
+    }
+
+    @Test
+    public void testRowsDoNotFollowNotesUntilToldOfChange() {
+        this.folders.getBus().unsubscribe(this.listener);
+        Note added = new Note("added", this.folder);
+        this.folder.removeNote(this.first);
+        this.checkRows(this.first, this.second, this.third);
+
+        this.folders.getBus().subscribe(this.listener);
+        this.second.edit("edited");
+        this.checkRows(this.second, this.third, added);
+        assertEquals(Arrays.asList("changed 0-2"), this.fired);
+    }
+
+    // EFFECTS: checks that the model shows exactly the notes, in order
+    private void checkRows(Note... notes) {
+        assertEquals(notes.length, this.model.getSize());
+        for (int i = 0; i < notes.length; i++) {
+            assertSame(notes[i], this.model.getElementAt(i));
+        }
+    }
+
+    // Records the changes the model fires as "<kind> <first row>-<last row>".
+    private class Recorder implements ListDataListener {
+        @Override
+        public void intervalAdded(ListDataEvent e) {
+            fired.add("added " + e.getIndex0() + "-" + e.getIndex1());
+        }
+
+        @Override
+        public void intervalRemoved(ListDataEvent e) {
+            fired.add("removed " + e.getIndex0() + "-" + e.getIndex1());
+        }
+
+        @Override
+        public void contentsChanged(ListDataEvent e) {
+            fired.add("changed " + e.getIndex0() + "-" + e.getIndex1());
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package utils;
+
+import org.junit.jupiter.api.Test;
+import org.mindrot.jbcrypt.BCrypt;
+
+import javax.crypto.SecretKey;
+import java.util.Arrays;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BodyCipherTest {
+    private final String hash = BCrypt.hashpw("password", BCrypt.gensalt(Lockable.MIN_WORK_FACTOR));
+    private final SecretKey key = BodyCipher.deriveKey("password", this.hash);
+
+    @Test
+    public void testRoundTrip() {
+        String encrypted = BodyCipher.encrypt("Some text \u00e9\n", this.key);
+        assertFalse(encrypted.contains("Some text"));
+        assertEquals("Some text \u00e9\n", BodyCipher.decrypt(encrypted, this.key));
+        assertEquals("", BodyCipher.decrypt(BodyCipher.encrypt("", this.key), this.key));
+    }
+
+    @Test
+    public void testFreshNonce() {
+        assertNotEquals(BodyCipher.encrypt("text", this.key), BodyCipher.encrypt("text", this.key));
+    }
+
+    @Test
+    public void testDeriveKey() {
+        assertArrayEquals(this.key.getEncoded(), BodyCipher.deriveKey("password", this.hash).getEncoded());
+        assertFalse(Arrays.equals(this.key.getEncoded(),
+                BodyCipher.deriveKey("other", this.hash).getEncoded()));
+    }
+
+    @Test
+    public void testIterationsFollowWorkFactorUpToMaximum() {
+        assertEquals(100 << Lockable.MIN_WORK_FACTOR, BodyCipher.iterations(Lockable.MIN_WORK_FACTOR));
+        assertEquals(102_400, BodyCipher.iterations(Lockable.DEFAULT_WORK_FACTOR));
+        assertEquals(6_553_600, BodyCipher.iterations(16));
+        assertEquals(BodyCipher.MAX_ITERATIONS, BodyCipher.iterations(17));
+        assertEquals(BodyCipher.MAX_ITERATIONS, BodyCipher.iterations(25));
+        assertEquals(BodyCipher.MAX_ITERATIONS, BodyCipher.iterations(Lockable.MAX_WORK_FACTOR));
+    }
+
+    @Test
+    public void testDecryptWrongKey() {
+        String encrypted = BodyCipher.encrypt("text", this.key);
+        SecretKey other = BodyCipher.deriveKey("other", this.hash);
+        assertThrows(IllegalArgumentException.class, () -> BodyCipher.decrypt(encrypted, other));
+    }
+
+    @Test
+    public void testDecryptTampered() {
+        byte[] bytes = Base64.getDecoder().decode(BodyCipher.encrypt("text", this.key));
+        bytes[bytes.length - 1] ^= 1;
+        String tampered = Base64.getEncoder().encodeToString(bytes);
+        assertThrows(IllegalArgumentException.class, () -> BodyCipher.decrypt(tampered, this.key));
+        assertThrows(IllegalArgumentException.class, () -> BodyCipher.decrypt("AAAA", this.key));
+    }
+}
@@ -0,0 +1,164 @@
+package utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BulkLockTest {
+    private List<Lockable> lockables;
+    private List<Integer> progress;
+
+    @BeforeEach
+    public void setUp() {
+        Lockable.setWorkFactor(Lockable.MIN_WORK_FACTOR);
+        this.lockables = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            this.lockables.add(new Lockable());
+        }
+        this.progress = new ArrayList<>();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        Lockable.setWorkFactor(Lockable.DEFAULT_WORK_FACTOR);
+    }
+
+    @Test
+    public void testLockAll() {
+        BulkLock.lockAll(this.lockables, "password", (done, total) -> this.progress.add(done));
+        for (Lockable lockable : this.lockables) {
+            assertTrue(lockable.isLocked());
+            assertTrue(lockable.isCorrectPassword("password"));
+        }
+        // the lockables share one hash
+        for (Lockable lockable : this.lockables) {
+            assertEquals(this.lockables.get(0).getPasswordHash(), lockable.getPasswordHash());
+        }
+        assertEquals(6, this.progress.size());
+        assertEquals(6, (int) this.progress.get(5));
+    }
+
+    @Test
+    public void testUnlockAllAfterLockAllChecksOnce() {
+        List<String> prepared = new ArrayList<>();
+        List<Lockable> counted = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            counted.add(new Lockable() {
+                @Override
+                protected void prepareKey(String password, String passwordHash) {
+                    prepared.add(passwordHash);
+                }
+            });
+        }
+        BulkLock.lockAll(counted, "password", ProgressListener.NONE);
+        assertEquals(1, prepared.size());
+        // as after a restart, nothing is remembered of the password
+        Lockable.getSessions().purge();
+
+        assertEquals(6, BulkLock.unlockAll(counted, "password", ProgressListener.NONE));
+        assertEquals(2, prepared.size());
+        for (Lockable lockable : counted) {
+            assertFalse(lockable.isLocked());
+        }
+    }
+
+    @Test
+    public void testLockAllNothing() {
+        BulkLock.lockAll(Collections.emptyList(), "password", (done, total) -> this.progress.add(done));
+        assertTrue(this.progress.isEmpty());
+    }
+
+    @Test
+    public void testUnlockAll() {
+        this.lockables.get(0).lock("password");
+        this.lockables.get(1).lock("other");
+        this.lockables.get(2).lock("password");
+        // two lockables sharing a hash are checked together
+        this.lockables.get(3).lock("password");
+        this.lockables.get(4).setPasswordHash(this.lockables.get(3).getPasswordHash());
+        this.lockables.get(4).lockIfPasswordSet();
+
+        int unlocked = BulkLock.unlockAll(this.lockables, "password", (done, total) -> {
+            assertEquals(5, total);
+            this.progress.add(done);
+        });
+        assertEquals(4, unlocked);
+        assertFalse(this.lockables.get(0).isLocked());
+        assertTrue(this.lockables.get(1).isLocked());
+        assertFalse(this.lockables.get(2).isLocked());
+        assertFalse(this.lockables.get(3).isLocked());
+        assertFalse(this.lockables.get(4).isLocked());
+        assertFalse(this.lockables.get(5).isLocked());
+        assertEquals(5, this.progress.size());
+    }
+
+    @Test
+    public void testUnlockAllRehashesWeakHashes() {
+        this.lockables.get(0).lock("password");
+        Lockable.setWorkFactor(Lockable.MIN_WORK_FACTOR + 1);
+        assertEquals(1, BulkLock.unlockAll(this.lockables, "password", ProgressListener.NONE));
+        assertEquals(Lockable.MIN_WORK_FACTOR + 1, Lockable.workFactorOf(this.lockables.get(0).getPasswordHash()));
+        assertTrue(this.lockables.get(0).isCorrectPassword("password"));
+    }
+
+    @Test
+    public void testUpdatePasswordAll() {
+        this.lockables.get(0).lock("password");
+        this.lockables.get(1).lock("other");
+        this.lockables.get(2).lock("password");
+        this.lockables.get(2).unlock("password");
+
+        int updated = BulkLock.updatePasswordAll(this.lockables, "password", "new password",
+                (done, total) -> this.progress.add(total));
+        assertEquals(2, updated);
+        assertTrue(this.lockables.get(0).isCorrectPassword("new password"));
+        assertTrue(this.lockables.get(1).isCorrectPassword("other"));
+        assertTrue(this.lockables.get(2).isLocked());
+        assertTrue(this.lockables.get(2).isCorrectPassword("new password"));
+        assertFalse(this.lockables.get(3).hasLock());
+        assertEquals(3, this.progress.size());
+        assertEquals(3, (int) this.progress.get(0));
+    }
+
+    @Test
+    public void testUpdatePasswordAllAppliesUnderUpdateWithoutRehashing() {
+        List<String> prepared = new ArrayList<>();
+        List<Boolean> verifiedInUpdate = new ArrayList<>();
+        Lockable lockable = new Lockable() {
+            private boolean updating = false;
+
+            @Override
+            protected void update(Runnable change) {
+                this.updating = true;
+                change.run();
+                this.updating = false;
+            }
+
+            @Override
+            protected void prepareKey(String password, String passwordHash) {
+                prepared.add(passwordHash);
+            }
+
+            @Override
+            protected void passwordVerified(String password) {
+                verifiedInUpdate.add(this.updating);
+            }
+        };
+        lockable.lock("password");
+        String weakHash = lockable.getPasswordHash();
+        Lockable.setWorkFactor(Lockable.MIN_WORK_FACTOR + 1);
+
+        assertEquals(1, BulkLock.updatePasswordAll(Collections.singletonList(lockable), "password",
+                "new password", (done, total) -> this.progress.add(total)));
+        assertTrue(lockable.isCorrectPassword("new password"));
+        assertEquals(Arrays.asList(weakHash, lockable.getPasswordHash()), prepared);
+        assertEquals(Collections.singletonList(true), verifiedInUpdate);
+    }
+}
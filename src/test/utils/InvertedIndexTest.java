@@ -0,0 +1,152 @@
+package utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InvertedIndexTest {
+    private InvertedIndex<String> index;
+
+    @BeforeEach
+    public void setUp() {
+        this.index = new InvertedIndex<>();
+        this.index.put("fox", "The quick brown fox");
+        this.index.put("dog", "jumps over the lazy dog.");
+        this.index.put("titled", "Title", null);
+    }
+
+    @Test
+    public void testTokenize() {
+        assertEquals(Arrays.asList("jumps", "over", "the", "lazy", "dog"),
+                InvertedIndex.tokenize("jumps over the  Lazy dog."));
+        assertTrue(InvertedIndex.tokenize(" ..!").isEmpty());
+    }
+
+    @Test
+    public void testCandidatesExact() {
+        assertEquals(this.setOf("fox", "dog"), this.candidates("the"));
+        assertEquals(this.setOf("dog"), this.candidates("over the lazy"));
+        assertEquals(this.setOf(), this.candidates("over the quick"));
+    }
+
+    @Test
+    public void testCandidatesPartialTokens() {
+        assertEquals(this.setOf("titled"), this.candidates("ti"));
+        assertEquals(this.setOf("fox", "dog"), this.candidates("he"));
+        assertEquals(this.setOf("dog"), this.candidates("mps over"));
+        assertEquals(this.setOf("dog"), this.candidates("over th"));
+        assertEquals(this.setOf("fox"), this.candidates("quick b"));
+    }
+
+    @Test
+    public void testCandidatesNoTokens() {
+        assertFalse(this.index.candidates("").isPresent());
+        assertFalse(this.index.candidates(" . ").isPresent());
+    }
+
+    @Test
+    public void testPutReplaces() {
+        this.index.put("fox", "something else");
+        assertEquals(this.setOf("dog"), this.candidates("the"));
+        assertEquals(this.setOf("fox"), this.candidates("else"));
+        assertEquals(3, this.index.size());
+    }
+
+    @Test
+    public void testRemove() {
+        assertTrue(this.index.remove("dog"));
+        assertFalse(this.index.remove("dog"));
+        assertFalse(this.index.contains("dog"));
+        assertEquals(this.setOf("fox"), this.candidates("the"));
+        assertEquals(this.setOf(), this.candidates("lazy"));
+    }
+
+    @Test
+    public void testClear() {
+        this.index.clear();
+        assertEquals(0, this.index.size());
+        assertEquals(this.setOf(), this.candidates("the"));
+    }
+
+    @Test
+    public void testMayContain() {
+        assertTrue(this.index.mayContain("dog", "lazy do"));
+        assertFalse(this.index.mayContain("dog", "quick"));
+        assertTrue(this.index.mayContain("unindexed", "quick"));
+        assertTrue(this.index.mayContain("fox", "  "));
+    }
+
+    @Test
+    public void testPostingAndLengths() {
+        assertEquals(1, this.index.posting("the").get("fox"));
+        assertTrue(this.index.posting("missing").isEmpty());
+        this.index.put("twice", "the the");
+        assertEquals(2, this.index.posting("the").get("twice"));
+        assertEquals(2, this.index.length("twice"));
+        assertEquals(0, this.index.length("unindexed"));
+        assertEquals(4 + 5 + 1 + 2, this.index.totalLength());
+        this.index.remove("twice");
+        assertEquals(4 + 5 + 1, this.index.totalLength());
+    }
+
+    @Test
+    public void testUpdateMatchesPut() {
+        this.index.update("fox", "quick brown", "slow red red");
+        assertFalse(this.index.candidates("quick").get().contains("fox"));
+        assertTrue(this.index.posting("brown").isEmpty());
+        assertEquals(2, this.index.posting("red").get("fox"));
+        assertEquals(1, this.index.posting("the").get("fox"));
+        assertEquals(1, this.index.posting("the").get("dog"));
+        assertEquals(5, this.index.length("fox"));
+        assertEquals(5 + 5 + 1, this.index.totalLength());
+        assertEquals(this.setOf("fox"), this.candidates("ed re"));
+    }
+
+    @Test
+    public void testCandidatesInfix() {
+        assertEquals(this.setOf("fox", "dog"), this.candidates("o"));
+        assertEquals(this.setOf("fox"), this.candidates("ui"));
+        assertEquals(this.setOf("fox"), this.candidates("uic"));
+        assertEquals(this.setOf("dog"), this.candidates("az"));
+        assertEquals(this.setOf("dog"), this.candidates("ump"));
+        assertEquals(this.setOf("titled"), this.candidates("itl"));
+        assertEquals(this.setOf(), this.candidates("uicx"));
+        assertEquals(this.setOf(), this.candidates("qk"));
+    }
+
+    @Test
+    public void testCandidatesInfixAfterChanges() {
+        this.index.update("fox", "quick", "slow");
+        assertEquals(this.setOf(), this.candidates("uic"));
+        assertEquals(this.setOf("fox"), this.candidates("lo"));
+        this.index.remove("dog");
+        assertEquals(this.setOf(), this.candidates("az"));
+        this.index.put("lazy", "Lazier");
+        assertEquals(this.setOf("lazy"), this.candidates("azie"));
+    }
+
+    @Test
+    public void testUpdateUnindexed() {
+        assertThrows(IllegalArgumentException.class, () -> this.index.update("unindexed", "", "text"));
+        assertFalse(this.index.contains("unindexed"));
+    }
+
+    private Set<String> candidates(String query) {
+        Optional<Set<String>> candidates = this.index.candidates(query);
+        assertTrue(candidates.isPresent());
+        return candidates.get();
+    }
+
+    private Set<String> setOf(String... items) {
+        Set<String> set = new HashSet<>();
+        Collections.addAll(set, items);
+        return set;
+    }
+}
@@ -1,8 +1,14 @@
 package utils;
 
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class LockableTest {
@@ -13,6 +19,11 @@ public class LockableTest {
         this.lockable = new Lockable();
     }
 
+    @AfterEach
+    public void tearDown() {
+        Lockable.setWorkFactor(Lockable.DEFAULT_WORK_FACTOR);
+    }
+
     @Test
     public void testLock() {
         assertFalse(this.lockable.isLocked());
@@ -80,4 +91,155 @@ public class LockableTest {
         this.lockable.lock("password");
         assertTrue(this.lockable.hasLock());
     }
+
+    @Test
+    public void testLockAsync() {
+        this.lockable.lockAsync("password").join();
+        assertTrue(this.lockable.isLocked());
+        assertTrue(this.lockable.isCorrectPassword("password"));
+    }
+
+    @Test
+    public void testLockAsyncAppliesOnExecutor() {
+        List<Runnable> applied = new CopyOnWriteArrayList<>();
+        CompletableFuture<Void> locked = this.lockable.lockAsync("password", applied::add);
+        while (applied.isEmpty()) {
+            Thread.yield();
+        }
+        assertFalse(this.lockable.isLocked());
+        assertFalse(locked.isDone());
+
+        applied.get(0).run();
+        assertTrue(locked.isDone());
+        assertTrue(this.lockable.isLocked());
+        assertTrue(this.lockable.isCorrectPassword("password"));
+    }
+
+    @Test
+    public void testUpdatePasswordAsync() {
+        this.lockable.lock("password");
+        this.lockable.unlock("password");
+        this.lockable.updatePasswordAsync("new password").join();
+        assertTrue(this.lockable.isLocked());
+        assertTrue(this.lockable.isCorrectPassword("new password"));
+    }
+
+    @Test
+    public void testUnlockAsync() {
+        this.lockable.lock("password");
+        assertFalse(this.lockable.unlockAsync("wrong password").join());
+        assertTrue(this.lockable.isLocked());
+        assertTrue(this.lockable.unlockAsync("password").join());
+        assertFalse(this.lockable.isLocked());
+    }
+
+    @Test
+    public void testUnlockAsyncAfterPasswordChanged() {
+        this.lockable.lock("password");
+        List<Runnable> applied = new CopyOnWriteArrayList<>();
+        CompletableFuture<Boolean> unlocked = this.lockable.unlockAsync("password", applied::add);
+        this.lockable.updatePassword("new password");
+        while (applied.isEmpty()) {
+            Thread.yield();
+        }
+        applied.get(0).run();
+        assertFalse(unlocked.join());
+        assertTrue(this.lockable.isLocked());
+    }
+
+    @Test
+    public void testUnlockRemembersPassword() {
+        this.lockable.lock("password");
+        String hash = this.lockable.getPasswordHash();
+        // the password a lock is made with is remembered too
+        assertTrue(Lockable.getSessions().verify(hash, "password"));
+        Lockable.getSessions().forget(hash);
+        assertFalse(Lockable.getSessions().verify(hash, "password"));
+        assertTrue(this.lockable.unlock("password"));
+        assertTrue(Lockable.getSessions().verify(hash, "password"));
+
+        this.lockable.lockIfPasswordSet();
+        assertFalse(this.lockable.unlock("wrong password"));
+        assertTrue(this.lockable.unlock("password"));
+        assertFalse(this.lockable.isLocked());
+    }
+
+    @Test
+    public void testPasswordChangeForgetsSession() {
+        this.lockable.lock("password");
+        String hash = this.lockable.getPasswordHash();
+        this.lockable.unlock("password");
+        this.lockable.updatePassword("new password");
+        assertFalse(Lockable.getSessions().verify(hash, "password"));
+        assertFalse(this.lockable.unlock("password"));
+    }
+
+    @Test
+    public void testPasswordChangeKeepsSessionOfSharedHash() {
+        this.lockable.lock("password");
+        String hash = this.lockable.getPasswordHash();
+        Lockable sharing = new Lockable();
+        sharing.setPasswordHash(hash);
+        this.lockable.updatePassword("new password");
+        // the other lock still holds the hash, so its session stays open
+        assertTrue(Lockable.getSessions().verify(hash, "password"));
+        sharing.setPasswordHash(null);
+        assertFalse(Lockable.getSessions().verify(hash, "password"));
+    }
+
+    @Test
+    public void testWorkFactor() {
+        this.lockable.lock("password");
+        assertEquals(Lockable.DEFAULT_WORK_FACTOR, Lockable.workFactorOf(this.lockable.getPasswordHash()));
+        Lockable.setWorkFactor(Lockable.MIN_WORK_FACTOR);
+        assertEquals(Lockable.MIN_WORK_FACTOR, Lockable.getWorkFactor());
+        this.lockable.updatePassword("password");
+        assertEquals(Lockable.MIN_WORK_FACTOR, Lockable.workFactorOf(this.lockable.getPasswordHash()));
+    }
+
+    @Test
+    public void testUnlockRehashesWeakHash() {
+        Lockable.setWorkFactor(Lockable.MIN_WORK_FACTOR);
+        this.lockable.lock("password");
+        Lockable.setWorkFactor(Lockable.MIN_WORK_FACTOR + 1);
+        assertFalse(this.lockable.unlock("wrong password"));
+        assertEquals(Lockable.MIN_WORK_FACTOR, Lockable.workFactorOf(this.lockable.getPasswordHash()));
+
+        assertTrue(this.lockable.unlock("password"));
+        assertEquals(Lockable.MIN_WORK_FACTOR + 1, Lockable.workFactorOf(this.lockable.getPasswordHash()));
+        assertTrue(this.lockable.isCorrectPassword("password"));
+    }
+
+    @Test
+    public void testUnlockKeepsStrongHash() {
+        this.lockable.lock("password");
+        String hash = this.lockable.getPasswordHash();
+        Lockable.setWorkFactor(Lockable.MIN_WORK_FACTOR);
+        assertTrue(this.lockable.unlock("password"));
+        assertEquals(hash, this.lockable.getPasswordHash());
+    }
+
+    @Test
+    public void testUnlockAsyncRehashesWeakHash() {
+        Lockable.setWorkFactor(Lockable.MIN_WORK_FACTOR);
+        this.lockable.lock("password");
+        Lockable.setWorkFactor(Lockable.MIN_WORK_FACTOR + 1);
+        assertTrue(this.lockable.unlockAsync("password").join());
+        assertEquals(Lockable.MIN_WORK_FACTOR + 1, Lockable.workFactorOf(this.lockable.getPasswordHash()));
+        assertTrue(this.lockable.isCorrectPassword("password"));
+    }
+
+    @Test
+    public void testCalibrateWorkFactor() {
+        assertEquals(Lockable.MIN_WORK_FACTOR, Lockable.calibrateWorkFactor(Duration.ZERO, Lockable.MIN_WORK_FACTOR));
+        int cost = Lockable.calibrateWorkFactor(Duration.ofMillis(50), Lockable.MIN_WORK_FACTOR);
+        assertTrue(cost >= Lockable.MIN_WORK_FACTOR && cost <= Lockable.MAX_WORK_FACTOR);
+    }
+
+    @Test
+    public void testCalibrateWorkFactorAsync() {
+        int cost = Lockable.calibrateWorkFactorAsync(Duration.ZERO).join();
+        assertEquals(Lockable.DEFAULT_WORK_FACTOR, cost);
+        assertEquals(cost, Lockable.getWorkFactor());
+    }
 }
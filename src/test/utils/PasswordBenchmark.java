@@ -0,0 +1,38 @@
+package utils;
+
+import org.mindrot.jbcrypt.BCrypt;
+
+// Reports how long hashing and checking a password take at each BCrypt work factor,
+// and which work factor calibration picks on this machine.
+//
+// Run with the lowest and highest work factor to measure as arguments, e.g. 8 14.
+public class PasswordBenchmark {
+    private static final String PASSWORD = "correct horse battery staple";
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) {
+        int lowest = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int highest = args.length > 1 ? Integer.parseInt(args[1]) : 13;
+        for (int cost = lowest; cost <= highest; cost++) {
+            benchmark(cost);
+        }
+        System.out.printf("calibrated work factor for %d ms: %d%n", Lockable.DEFAULT_VERIFY_TARGET.toMillis(),
+                Lockable.calibrateWorkFactor(Lockable.DEFAULT_VERIFY_TARGET, Lockable.MIN_WORK_FACTOR));
+    }
+
+    // EFFECTS: prints the best hash and verify times at the work factor over several rounds
+    private static void benchmark(int cost) {
+        long bestHash = Long.MAX_VALUE;
+        long bestVerify = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            String hash = BCrypt.hashpw(PASSWORD, BCrypt.gensalt(cost));
+            bestHash = Math.min(bestHash, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            BCrypt.checkpw(PASSWORD, hash);
+            bestVerify = Math.min(bestVerify, System.nanoTime() - start);
+        }
+        System.out.printf("cost %2d  hash %7.1f ms  verify %7.1f ms%n", cost, bestHash / 1e6, bestVerify / 1e6);
+    }
+}
@@ -0,0 +1,81 @@
+package utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PieceTableTest {
+    private PieceTable table;
+
+    @BeforeEach
+    public void setUp() {
+        this.table = new PieceTable("hello world");
+    }
+
+    @Test
+    public void testInsertAndDelete() {
+        this.table.insert(5, ",");
+        this.table.insert(12, "!");
+        this.table.insert(0, ">> ");
+        assertEquals(">> hello, world!", this.table.toString());
+        this.table.delete(0, 3);
+        this.table.delete(5, 1);
+        assertEquals("hello world!", this.table.toString());
+        assertEquals(12, this.table.length());
+        assertEquals('w', this.table.charAt(6));
+        assertEquals("lo wo", this.table.subSequence(3, 8).toString());
+    }
+
+    @Test
+    public void testReplace() {
+        this.table.replace(6, 5, "there");
+        assertEquals("hello there", this.table.toString());
+        this.table.replace(0, 11, "");
+        assertEquals("", this.table.toString());
+        assertEquals(0, this.table.pieceCount());
+        this.table.insert(0, "again");
+        assertEquals("again", this.table.toString());
+    }
+
+    @Test
+    public void testTypingExtendsPiece() {
+        this.table.insert(5, "a");
+        int pieces = this.table.pieceCount();
+        this.table.insert(6, "b");
+        this.table.insert(7, "c");
+        assertEquals(pieces, this.table.pieceCount());
+        assertEquals("helloabc world", this.table.toString());
+    }
+
+    @Test
+    public void testOutOfRange() {
+        assertThrows(IndexOutOfBoundsException.class, () -> this.table.delete(8, 4));
+        assertThrows(IndexOutOfBoundsException.class, () -> this.table.insert(-1, "x"));
+        assertThrows(IndexOutOfBoundsException.class, () -> this.table.charAt(11));
+        assertThrows(IndexOutOfBoundsException.class, () -> this.table.subSequence(4, 2));
+        assertEquals("hello world", this.table.toString());
+    }
+
+    @Test
+    public void testMatchesStringBuilder() {
+        Random random = new Random(42);
+        StringBuilder expected = new StringBuilder("hello world");
+        for (int i = 0; i < 5000; i++) {
+            int offset = random.nextInt(expected.length() + 1);
+            int length = random.nextInt(Math.min(4, expected.length() - offset) + 1);
+            String text = random.nextBoolean() ? "" : Integer.toString(i);
+            expected.replace(offset, offset + length, text);
+            this.table.replace(offset, length, text);
+            if (i % 97 == 0) {
+                assertEquals(expected.toString(), this.table.toString());
+                int at = random.nextInt(expected.length());
+                assertEquals(expected.charAt(at), this.table.charAt(at));
+            }
+            assertTrue(this.table.pieceCount() <= PieceTable.MAX_PIECES);
+        }
+        assertEquals(expected.toString(), this.table.toString());
+    }
+}
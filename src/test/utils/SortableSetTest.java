@@ -4,7 +4,10 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
 import java.util.Optional;
 
@@ -114,4 +117,169 @@ public class SortableSetTest {
             assertEquals(item, setIterator.next());
         }
     }
+
+    @Test
+    public void testContains() {
+        assertTrue(this.set.contains(1));
+        assertFalse(this.set.contains(3));
+        this.set.remove(1);
+        assertFalse(this.set.contains(1));
+    }
+
+    @Test
+    public void testIndexOf() {
+        this.set.add(3);
+        assertEquals(2, this.set.indexOf(3));
+        this.set.remove(1);
+        assertEquals(0, this.set.indexOf(2));
+        assertEquals(1, this.set.indexOf(3));
+        assertEquals(-1, this.set.indexOf(1));
+    }
+
+    @Test
+    public void testRemoveFromMiddle() {
+        this.set.add(3);
+        this.set.add(4);
+        assertTrue(this.set.remove(2));
+        assertEquals(3, this.set.size());
+        assertEquals(3, this.set.get(1));
+        assertEquals(4, this.set.get(2));
+        assertTrue(this.set.add(2));
+        assertEquals(2, this.set.get(3));
+    }
+
+    @Test
+    public void testGetAndIndexOfAcrossChunksWithRemovals() {
+        ArrayList<Integer> expected = new ArrayList<>(Arrays.asList(1, 2));
+        for (int i = 3; i <= 5 * SortableSet.CHUNK_SIZE; i++) {
+            this.set.add(i);
+            expected.add(i);
+        }
+        SortableSet<Integer> before = this.set.snapshot();
+        for (int i = 3; i <= 5 * SortableSet.CHUNK_SIZE; i += 3) {
+            this.set.remove(i);
+            expected.remove((Integer) i);
+        }
+        assertEquals(expected.size(), this.set.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), this.set.get(i));
+            assertEquals(i, this.set.indexOf(expected.get(i)));
+        }
+        assertEquals(-1, this.set.indexOf(3));
+        assertEquals(-1, this.set.orderOf(3));
+        assertTrue(this.set.orderOf(expected.get(10)) < this.set.orderOf(expected.get(11)));
+        assertEquals(3, before.get(2));
+        assertEquals(5 * SortableSet.CHUNK_SIZE - 1, before.indexOf(5 * SortableSet.CHUNK_SIZE));
+    }
+
+    @Test
+    public void testRemovingMostItemsKeepsOrder() {
+        for (int i = 3; i <= 3 * SortableSet.CHUNK_SIZE; i++) {
+            this.set.add(i);
+        }
+        for (int i = 1; i < 3 * SortableSet.CHUNK_SIZE; i++) {
+            this.set.remove(i);
+        }
+        assertEquals(1, this.set.size());
+        assertEquals(3 * SortableSet.CHUNK_SIZE, this.set.get(0));
+        assertEquals(0, this.set.indexOf(3 * SortableSet.CHUNK_SIZE));
+        assertTrue(this.set.add(1));
+        assertEquals(Arrays.asList(3 * SortableSet.CHUNK_SIZE, 1), this.set.getItems());
+    }
+
+    @Test
+    public void testModifications() {
+        int before = this.set.getModifications();
+        SortableSet<Integer> snapshot = this.set.snapshot();
+        this.set.add(3);
+        this.set.add(3);
+        this.set.remove(1);
+        this.set.remove(1);
+        this.set.sort(Comparator.reverseOrder());
+        assertEquals(before + 3, this.set.getModifications());
+        assertEquals(before, snapshot.getModifications());
+        assertEquals(before + 3, this.set.snapshot().getModifications());
+    }
+
+    @Test
+    public void testIteratorSkipsRemoved() {
+        this.set.add(3);
+        this.set.remove(2);
+        Iterator<Integer> setIterator = this.set.iterator();
+        assertEquals(1, setIterator.next());
+        assertEquals(3, setIterator.next());
+        assertFalse(setIterator.hasNext());
+    }
+
+    @Test
+    public void testSnapshotIsNotAffectedByChanges() {
+        for (int i = 3; i <= 2 * SortableSet.CHUNK_SIZE; i++) {
+            this.set.add(i);
+        }
+        ArrayList<Integer> items = this.set.getItems();
+        SortableSet<Integer> snapshot = this.set.snapshot();
+        this.set.remove(1);
+        this.set.remove(2 * SortableSet.CHUNK_SIZE);
+        this.set.add(0);
+        this.set.sort(Comparator.reverseOrder());
+        assertTrue(snapshot.isSnapshot());
+        assertEquals(items, snapshot.getItems());
+        assertEquals(items.size(), snapshot.size());
+        assertEquals(1, snapshot.get(0));
+        assertTrue(snapshot.contains(2 * SortableSet.CHUNK_SIZE));
+        assertFalse(snapshot.contains(0));
+        assertEquals(0, this.set.get(this.set.size() - 1));
+    }
+
+    @Test
+    public void testChangesAfterSeveralSnapshots() {
+        SortableSet<Integer> first = this.set.snapshot();
+        this.set.remove(1);
+        SortableSet<Integer> second = this.set.snapshot();
+        this.set.add(3);
+        assertEquals(Arrays.asList(1, 2), first.getItems());
+        assertEquals(Collections.singletonList(2), second.getItems());
+        assertEquals(Arrays.asList(2, 3), this.set.getItems());
+        assertSame(second, second.snapshot());
+    }
+
+    @Test
+    public void testSnapshotCannotBeChanged() {
+        SortableSet<Integer> snapshot = this.set.snapshot();
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.add(3));
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.remove(1));
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.sort(Comparator.naturalOrder()));
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.setItems(new ArrayList<>()));
+        assertFalse(this.set.isSnapshot());
+    }
+
+    @Test
+    public void testRemoveWhileIterating() {
+        for (int i = 3; i <= SortableSet.CHUNK_SIZE + 1; i++) {
+            this.set.add(i);
+        }
+        ArrayList<Integer> items = this.set.getItems();
+        ArrayList<Integer> iterated = new ArrayList<>();
+        for (Integer item : this.set.snapshot()) {
+            if (item == SortableSet.CHUNK_SIZE) {
+                this.set.remove(SortableSet.CHUNK_SIZE + 1);
+                this.set.remove(1);
+                this.set.add(0);
+            }
+            iterated.add(item);
+        }
+        assertEquals(items, iterated);
+        assertEquals(SortableSet.CHUNK_SIZE, this.set.size());
+        assertFalse(this.set.contains(SortableSet.CHUNK_SIZE + 1));
+        assertEquals(0, this.set.get(this.set.size() - 1));
+    }
+
+    @Test
+    public void testIteratorFailsAfterChange() {
+        Iterator<Integer> setIterator = this.set.iterator();
+        assertEquals(1, setIterator.next());
+        this.set.add(3);
+        assertTrue(setIterator.hasNext());
+        assertThrows(ConcurrentModificationException.class, setIterator::next);
+    }
 }
@@ -0,0 +1,118 @@
+package utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UnlockSessionsTest {
+    private static final String HASH = "$2a$10$hash";
+    private long now;
+    private UnlockSessions sessions;
+
+    @BeforeEach
+    public void setUp() {
+        this.now = 0;
+        this.sessions = new UnlockSessions(Duration.ofSeconds(10), () -> this.now);
+    }
+
+    @Test
+    public void testVerifyRemembered() {
+        assertFalse(this.sessions.verify(HASH, "password"));
+        this.sessions.remember(HASH, "password");
+        assertTrue(this.sessions.verify(HASH, "password"));
+        assertFalse(this.sessions.verify("$2a$10$other", "password"));
+    }
+
+    @Test
+    public void testMissClosesSession() {
+        this.sessions.remember(HASH, "password");
+        assertFalse(this.sessions.verify(HASH, "wrong password"));
+        // the right password has to go through BCrypt again before the session is reopened
+        assertFalse(this.sessions.verify(HASH, "password"));
+        assertEquals(0, this.sessions.size());
+    }
+
+    @Test
+    public void testSessionKeptWhileHashIsHeld() {
+        Object one = new Object();
+        Object two = new Object();
+        this.sessions.hold(HASH, one);
+        this.sessions.hold(HASH, two);
+        this.sessions.remember(HASH, "password");
+        this.sessions.release(HASH, one);
+        // releasing twice does not count for another lock
+        this.sessions.release(HASH, one);
+        assertTrue(this.sessions.verify(HASH, "password"));
+        this.sessions.release(HASH, two);
+        assertFalse(this.sessions.verify(HASH, "password"));
+    }
+
+    @Test
+    public void testExpiredKeyIsNotReturned() {
+        SecretKey key = new SecretKeySpec(new byte[32], "AES");
+        SecretKey other = new SecretKeySpec(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16}, "AES");
+        this.sessions.remember(HASH, "password");
+        assertSame(key, this.sessions.getKey(HASH, () -> key));
+        assertSame(key, this.sessions.getKey(HASH, () -> other));
+        this.now += Duration.ofSeconds(11).toNanos();
+        assertSame(other, this.sessions.getKey(HASH, () -> other));
+        assertEquals(0, this.sessions.size());
+    }
+
+    @Test
+    public void testLookupPurgesExpired() {
+        this.sessions.remember(HASH, "password");
+        this.now += Duration.ofSeconds(11).toNanos();
+        assertFalse(this.sessions.verify("$2a$10$other", "other"));
+        assertEquals(0, this.sessions.size());
+    }
+
+    @Test
+    public void testIdleExpiry() {
+        this.sessions.remember(HASH, "password");
+        this.now += Duration.ofSeconds(8).toNanos();
+        assertTrue(this.sessions.verify(HASH, "password"));
+        // using the entry renews it
+        this.now += Duration.ofSeconds(8).toNanos();
+        assertTrue(this.sessions.verify(HASH, "password"));
+        this.now += Duration.ofSeconds(11).toNanos();
+        assertFalse(this.sessions.verify(HASH, "password"));
+        assertEquals(0, this.sessions.size());
+    }
+
+    @Test
+    public void testForgetAndPurge() {
+        this.sessions.remember(HASH, "password");
+        this.sessions.remember("$2a$10$other", "other");
+        this.sessions.forget(HASH);
+        assertFalse(this.sessions.verify(HASH, "password"));
+        assertTrue(this.sessions.verify("$2a$10$other", "other"));
+        this.sessions.purge();
+        assertEquals(0, this.sessions.size());
+    }
+
+    @Test
+    public void testPurgeExpired() {
+        this.sessions.remember(HASH, "password");
+        this.now += Duration.ofSeconds(6).toNanos();
+        this.sessions.remember("$2a$10$other", "other");
+        this.now += Duration.ofSeconds(6).toNanos();
+        this.sessions.purgeExpired();
+        assertEquals(1, this.sessions.size());
+        assertTrue(this.sessions.verify("$2a$10$other", "other"));
+    }
+
+    @Test
+    public void testSetIdleTimeout() {
+        this.sessions.setIdleTimeout(Duration.ZERO);
+        assertEquals(Duration.ZERO, this.sessions.getIdleTimeout());
+        this.sessions.remember(HASH, "password");
+        this.now += 1;
+        assertFalse(this.sessions.verify(HASH, "password"));
+    }
+}